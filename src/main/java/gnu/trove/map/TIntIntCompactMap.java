@@ -0,0 +1,927 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package gnu.trove.map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.function.TIntFunction;
+import gnu.trove.impl.Constants;
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.procedure.TIntIntProcedure;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.TIntSet;
+
+/**
+ * A {@link TIntIntMap} optimized for very small sizes.
+ * <p>
+ * Up to {@code maxCompactSize} entries are stored in a pair of parallel
+ * {@code int[]} arrays, sorted by key, that grow as needed (an empty map does
+ * not allocate arrays at all). Lookups are binary searches on the key array.
+ * When the map grows beyond {@code maxCompactSize} entries, it is promoted to a
+ * {@link TIntIntHashMap}, and all operations are delegated to that. The map is
+ * demoted back to the compact representation only by {@link #clear()}.
+ * <p>
+ * This is intended for maps of which many instances exist, and most of them
+ * hold only a few entries.
+ */
+public class TIntIntCompactMap implements TIntIntMap
+{
+	/**
+	 * The default maximum number of entries stored in the compact
+	 * representation.
+	 */
+	public static final int DEFAULT_MAX_COMPACT_SIZE = 16;
+
+	private static final int[] EMPTY = new int[ 0 ];
+
+	private final int noEntryKey;
+
+	private final int noEntryValue;
+
+	private final int maxCompactSize;
+
+	/**
+	 * Sorted keys, valid in {@code [0, size)}. Only used if
+	 * {@code hash == null}.
+	 */
+	private int[] keys;
+
+	/**
+	 * Values, {@code values[i]} is associated with {@code keys[i]}. Only used
+	 * if {@code hash == null}.
+	 */
+	private int[] values;
+
+	/**
+	 * Number of entries. Only used if {@code hash == null}.
+	 */
+	private int size;
+
+	/**
+	 * The hash map the entries are stored in after promotion, or {@code null}
+	 * if in compact representation.
+	 */
+	private TIntIntHashMap hash;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	public TIntIntCompactMap()
+	{
+		this( Constants.DEFAULT_INT_NO_ENTRY_VALUE, Constants.DEFAULT_INT_NO_ENTRY_VALUE );
+	}
+
+	public TIntIntCompactMap( final int noEntryKey, final int noEntryValue )
+	{
+		this( noEntryKey, noEntryValue, DEFAULT_MAX_COMPACT_SIZE );
+	}
+
+	public TIntIntCompactMap( final int noEntryKey, final int noEntryValue, final int maxCompactSize )
+	{
+		if ( maxCompactSize < 0 )
+			throw new IllegalArgumentException( "maxCompactSize must not be negative" );
+		this.noEntryKey = noEntryKey;
+		this.noEntryValue = noEntryValue;
+		this.maxCompactSize = maxCompactSize;
+		this.keys = EMPTY;
+		this.values = EMPTY;
+		this.size = 0;
+		this.hash = null;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns whether entries are currently stored in the compact sorted array
+	 * representation (as opposed to a hash map).
+	 *
+	 * @return {@code true} if the compact representation is used.
+	 */
+	public boolean isCompact()
+	{
+		return hash == null;
+	}
+
+	@Override
+	public int getNoEntryKey()
+	{
+		return noEntryKey;
+	}
+
+	@Override
+	public int getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public int put( final int key, final int value )
+	{
+		if ( hash != null )
+			return hash.put( key, value );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		if ( pos >= 0 )
+		{
+			final int old = values[ pos ];
+			values[ pos ] = value;
+			return old;
+		}
+		insert( -( pos + 1 ), key, value );
+		return noEntryValue;
+	}
+
+	@Override
+	public int putIfAbsent( final int key, final int value )
+	{
+		if ( hash != null )
+			return hash.putIfAbsent( key, value );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		if ( pos >= 0 )
+			return values[ pos ];
+		insert( -( pos + 1 ), key, value );
+		return noEntryValue;
+	}
+
+	@Override
+	public void putAll( final Map< ? extends Integer, ? extends Integer > map )
+	{
+		for ( final Map.Entry< ? extends Integer, ? extends Integer > entry : map.entrySet() )
+			put( entry.getKey().intValue(), entry.getValue().intValue() );
+	}
+
+	@Override
+	public void putAll( final TIntIntMap map )
+	{
+		if ( map == this )
+			return;
+		final TIntIntIterator it = map.iterator();
+		while ( it.hasNext() )
+		{
+			it.advance();
+			put( it.key(), it.value() );
+		}
+	}
+
+	@Override
+	public int get( final int key )
+	{
+		if ( hash != null )
+			return hash.get( key );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		return pos >= 0 ? values[ pos ] : noEntryValue;
+	}
+
+	@Override
+	public void clear()
+	{
+		hash = null;
+		keys = EMPTY;
+		values = EMPTY;
+		size = 0;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	@Override
+	public int remove( final int key )
+	{
+		if ( hash != null )
+			return hash.remove( key );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		if ( pos < 0 )
+			return noEntryValue;
+		final int old = values[ pos ];
+		removeAt( pos );
+		return old;
+	}
+
+	@Override
+	public int size()
+	{
+		return hash == null ? size : hash.size();
+	}
+
+	@Override
+	public TIntSet keySet()
+	{
+		return new KeySetView();
+	}
+
+	@Override
+	public int[] keys()
+	{
+		return hash == null ? Arrays.copyOf( keys, size ) : hash.keys();
+	}
+
+	@Override
+	public int[] keys( final int[] array )
+	{
+		if ( hash != null )
+			return hash.keys( array );
+
+		final int[] dest = array.length < size ? new int[ size ] : array;
+		System.arraycopy( keys, 0, dest, 0, size );
+		return dest;
+	}
+
+	@Override
+	public TIntCollection valueCollection()
+	{
+		return new ValueCollectionView();
+	}
+
+	@Override
+	public int[] values()
+	{
+		return hash == null ? Arrays.copyOf( values, size ) : hash.values();
+	}
+
+	@Override
+	public int[] values( final int[] array )
+	{
+		if ( hash != null )
+			return hash.values( array );
+
+		final int[] dest = array.length < size ? new int[ size ] : array;
+		System.arraycopy( values, 0, dest, 0, size );
+		return dest;
+	}
+
+	@Override
+	public boolean containsValue( final int value )
+	{
+		if ( hash != null )
+			return hash.containsValue( value );
+
+		for ( int i = 0; i < size; ++i )
+			if ( values[ i ] == value )
+				return true;
+		return false;
+	}
+
+	@Override
+	public boolean containsKey( final int key )
+	{
+		return hash == null
+				? Arrays.binarySearch( keys, 0, size, key ) >= 0
+				: hash.containsKey( key );
+	}
+
+	@Override
+	public TIntIntIterator iterator()
+	{
+		return hash == null ? new CompactIterator() : hash.iterator();
+	}
+
+	@Override
+	public boolean forEachKey( final TIntProcedure procedure )
+	{
+		if ( hash != null )
+			return hash.forEachKey( procedure );
+
+		for ( int i = 0; i < size; ++i )
+			if ( !procedure.execute( keys[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachValue( final TIntProcedure procedure )
+	{
+		if ( hash != null )
+			return hash.forEachValue( procedure );
+
+		for ( int i = 0; i < size; ++i )
+			if ( !procedure.execute( values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final TIntIntProcedure procedure )
+	{
+		if ( hash != null )
+			return hash.forEachEntry( procedure );
+
+		for ( int i = 0; i < size; ++i )
+			if ( !procedure.execute( keys[ i ], values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public void transformValues( final TIntFunction function )
+	{
+		if ( hash != null )
+		{
+			hash.transformValues( function );
+			return;
+		}
+
+		for ( int i = 0; i < size; ++i )
+			values[ i ] = function.execute( values[ i ] );
+	}
+
+	@Override
+	public boolean retainEntries( final TIntIntProcedure procedure )
+	{
+		if ( hash != null )
+			return hash.retainEntries( procedure );
+
+		int j = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			if ( procedure.execute( keys[ i ], values[ i ] ) )
+			{
+				keys[ j ] = keys[ i ];
+				values[ j ] = values[ i ];
+				++j;
+			}
+		}
+		final boolean modified = j != size;
+		size = j;
+		return modified;
+	}
+
+	@Override
+	public boolean increment( final int key )
+	{
+		return adjustValue( key, 1 );
+	}
+
+	@Override
+	public boolean adjustValue( final int key, final int amount )
+	{
+		if ( hash != null )
+			return hash.adjustValue( key, amount );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		if ( pos < 0 )
+			return false;
+		values[ pos ] += amount;
+		return true;
+	}
+
+	@Override
+	public int adjustOrPutValue( final int key, final int adjustAmount, final int putAmount )
+	{
+		if ( hash != null )
+			return hash.adjustOrPutValue( key, adjustAmount, putAmount );
+
+		final int pos = Arrays.binarySearch( keys, 0, size, key );
+		if ( pos >= 0 )
+			return values[ pos ] += adjustAmount;
+		insert( -( pos + 1 ), key, putAmount );
+		return putAmount;
+	}
+
+	@Override
+	public boolean equals( final Object other )
+	{
+		if ( !( other instanceof TIntIntMap ) )
+			return false;
+		final TIntIntMap that = ( TIntIntMap ) other;
+		if ( that.size() != size() )
+			return false;
+		final TIntIntIterator it = iterator();
+		while ( it.hasNext() )
+		{
+			it.advance();
+			final int key = it.key();
+			if ( !that.containsKey( key ) || that.get( key ) != it.value() )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		if ( hash != null )
+			return hash.hashCode();
+
+		// same as TIntIntHashMap
+		int hashcode = 0;
+		for ( int i = 0; i < size; ++i )
+			hashcode += keys[ i ] ^ values[ i ];
+		return hashcode;
+	}
+
+	@Override
+	public String toString()
+	{
+		if ( hash != null )
+			return hash.toString();
+
+		final StringBuilder sb = new StringBuilder( "{" );
+		for ( int i = 0; i < size; ++i )
+		{
+			if ( i > 0 )
+				sb.append( ", " );
+			sb.append( keys[ i ] ).append( "=" ).append( values[ i ] );
+		}
+		sb.append( "}" );
+		return sb.toString();
+	}
+
+	/**
+	 * Insert a new entry at position {@code i} of the compact arrays, or
+	 * promote to a hash map if the compact representation is full.
+	 */
+	private void insert( final int i, final int key, final int value )
+	{
+		if ( size >= maxCompactSize )
+		{
+			promote();
+			hash.put( key, value );
+			return;
+		}
+
+		if ( size == keys.length )
+		{
+			final int capacity = Math.min( maxCompactSize, Math.max( 2, 2 * size ) );
+			final int[] newKeys = new int[ capacity ];
+			final int[] newValues = new int[ capacity ];
+			System.arraycopy( keys, 0, newKeys, 0, i );
+			System.arraycopy( keys, i, newKeys, i + 1, size - i );
+			System.arraycopy( values, 0, newValues, 0, i );
+			System.arraycopy( values, i, newValues, i + 1, size - i );
+			keys = newKeys;
+			values = newValues;
+		}
+		else
+		{
+			System.arraycopy( keys, i, keys, i + 1, size - i );
+			System.arraycopy( values, i, values, i + 1, size - i );
+		}
+		keys[ i ] = key;
+		values[ i ] = value;
+		++size;
+	}
+
+	private void removeAt( final int i )
+	{
+		System.arraycopy( keys, i + 1, keys, i, size - i - 1 );
+		System.arraycopy( values, i + 1, values, i, size - i - 1 );
+		--size;
+	}
+
+	/**
+	 * Move entries from the compact arrays to a newly created hash map.
+	 */
+	private void promote()
+	{
+		hash = new TIntIntHashMap( Math.max( 2 * size, Constants.DEFAULT_CAPACITY ), Constants.DEFAULT_LOAD_FACTOR, noEntryKey, noEntryValue );
+		for ( int i = 0; i < size; ++i )
+			hash.put( keys[ i ], values[ i ] );
+		keys = EMPTY;
+		values = EMPTY;
+		size = 0;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private class CompactIterator implements TIntIntIterator
+	{
+		/**
+		 * Index of the entry to be made current by the next call to
+		 * {@link #advance()}.
+		 */
+		private int cursor = 0;
+
+		/**
+		 * Index of the current entry, or -1 if there is no current entry.
+		 */
+		private int current = -1;
+
+		@Override
+		public boolean hasNext()
+		{
+			return cursor < size;
+		}
+
+		@Override
+		public void advance()
+		{
+			if ( cursor >= size )
+				throw new NoSuchElementException();
+			current = cursor++;
+		}
+
+		@Override
+		public int key()
+		{
+			return keys[ current ];
+		}
+
+		@Override
+		public int value()
+		{
+			return values[ current ];
+		}
+
+		@Override
+		public int setValue( final int val )
+		{
+			final int old = values[ current ];
+			values[ current ] = val;
+			return old;
+		}
+
+		@Override
+		public void remove()
+		{
+			if ( current < 0 )
+				throw new IllegalStateException();
+			removeAt( current );
+			cursor = current;
+			current = -1;
+		}
+	}
+
+	/**
+	 * Base class for the key and value views. Everything is implemented in
+	 * terms of {@link #contains(int)}, {@link #remove(int)} and
+	 * {@link #iterator()}, which in turn use only public map methods, so that
+	 * views remain valid across promotion.
+	 */
+	private abstract class AbstractView implements TIntCollection
+	{
+		@Override
+		public int size()
+		{
+			return TIntIntCompactMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return TIntIntCompactMap.this.isEmpty();
+		}
+
+		@Override
+		public int[] toArray()
+		{
+			return toArray( new int[ size() ] );
+		}
+
+		@Override
+		public int[] toArray( final int[] dest )
+		{
+			final int n = size();
+			final int[] array = dest.length < n ? new int[ n ] : dest;
+			final TIntIterator it = iterator();
+			int i = 0;
+			while ( it.hasNext() )
+				array[ i++ ] = it.next();
+			if ( array.length > n )
+				array[ n ] = getNoEntryValue();
+			return array;
+		}
+
+		@Override
+		public boolean add( final int entry )
+		{
+			throw new UnsupportedOperationException( "add is not supported for map views." );
+		}
+
+		@Override
+		public boolean addAll( final Collection< ? extends Integer > collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for map views." );
+		}
+
+		@Override
+		public boolean addAll( final TIntCollection collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for map views." );
+		}
+
+		@Override
+		public boolean addAll( final int[] array )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for map views." );
+		}
+
+		@Override
+		public boolean containsAll( final Collection< ? > collection )
+		{
+			for ( final Object element : collection )
+				if ( !( element instanceof Integer ) || !contains( ( ( Integer ) element ).intValue() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean containsAll( final TIntCollection collection )
+		{
+			final TIntIterator it = collection.iterator();
+			while ( it.hasNext() )
+				if ( !contains( it.next() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean containsAll( final int[] array )
+		{
+			for ( final int element : array )
+				if ( !contains( element ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean retainAll( final Collection< ? > collection )
+		{
+			boolean changed = false;
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+			{
+				if ( !collection.contains( Integer.valueOf( it.next() ) ) )
+				{
+					it.remove();
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		@Override
+		public boolean retainAll( final TIntCollection collection )
+		{
+			if ( collection == this )
+				return false;
+			boolean changed = false;
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+			{
+				if ( !collection.contains( it.next() ) )
+				{
+					it.remove();
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		@Override
+		public boolean retainAll( final int[] array )
+		{
+			final int[] sorted = array.clone();
+			Arrays.sort( sorted );
+			boolean changed = false;
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+			{
+				if ( Arrays.binarySearch( sorted, it.next() ) < 0 )
+				{
+					it.remove();
+					changed = true;
+				}
+			}
+			return changed;
+		}
+
+		@Override
+		public boolean removeAll( final Collection< ? > collection )
+		{
+			boolean changed = false;
+			for ( final Object element : collection )
+				if ( element instanceof Integer && remove( ( ( Integer ) element ).intValue() ) )
+					changed = true;
+			return changed;
+		}
+
+		@Override
+		public boolean removeAll( final TIntCollection collection )
+		{
+			if ( collection == this )
+			{
+				final boolean changed = !isEmpty();
+				clear();
+				return changed;
+			}
+			boolean changed = false;
+			final TIntIterator it = collection.iterator();
+			while ( it.hasNext() )
+				if ( remove( it.next() ) )
+					changed = true;
+			return changed;
+		}
+
+		@Override
+		public boolean removeAll( final int[] array )
+		{
+			boolean changed = false;
+			for ( final int element : array )
+				if ( remove( element ) )
+					changed = true;
+			return changed;
+		}
+
+		@Override
+		public void clear()
+		{
+			TIntIntCompactMap.this.clear();
+		}
+
+		@Override
+		public boolean forEach( final TIntProcedure procedure )
+		{
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+				if ( !procedure.execute( it.next() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public String toString()
+		{
+			final StringBuilder sb = new StringBuilder( "{" );
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+			{
+				sb.append( it.next() );
+				if ( it.hasNext() )
+					sb.append( ", " );
+			}
+			sb.append( "}" );
+			return sb.toString();
+		}
+	}
+
+	private final class KeySetView extends AbstractView implements TIntSet
+	{
+		@Override
+		public int getNoEntryValue()
+		{
+			return noEntryKey;
+		}
+
+		@Override
+		public boolean contains( final int entry )
+		{
+			return containsKey( entry );
+		}
+
+		@Override
+		public boolean remove( final int entry )
+		{
+			if ( !containsKey( entry ) )
+				return false;
+			TIntIntCompactMap.this.remove( entry );
+			return true;
+		}
+
+		@Override
+		public TIntIterator iterator()
+		{
+			final TIntIntIterator it = TIntIntCompactMap.this.iterator();
+			return new TIntIterator()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+
+				@Override
+				public int next()
+				{
+					it.advance();
+					return it.key();
+				}
+
+				@Override
+				public void remove()
+				{
+					it.remove();
+				}
+			};
+		}
+
+		@Override
+		public boolean equals( final Object other )
+		{
+			if ( !( other instanceof TIntSet ) )
+				return false;
+			final TIntSet that = ( TIntSet ) other;
+			return that.size() == size() && containsAll( that );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hashcode = 0;
+			final TIntIterator it = iterator();
+			while ( it.hasNext() )
+				hashcode += it.next();
+			return hashcode;
+		}
+	}
+
+	private final class ValueCollectionView extends AbstractView
+	{
+		@Override
+		public int getNoEntryValue()
+		{
+			return noEntryValue;
+		}
+
+		@Override
+		public boolean contains( final int entry )
+		{
+			return containsValue( entry );
+		}
+
+		@Override
+		public boolean remove( final int entry )
+		{
+			final TIntIntIterator it = TIntIntCompactMap.this.iterator();
+			while ( it.hasNext() )
+			{
+				it.advance();
+				if ( it.value() == entry )
+				{
+					it.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public TIntIterator iterator()
+		{
+			final TIntIntIterator it = TIntIntCompactMap.this.iterator();
+			return new TIntIterator()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+
+				@Override
+				public int next()
+				{
+					it.advance();
+					return it.value();
+				}
+
+				@Override
+				public void remove()
+				{
+					it.remove();
+				}
+			};
+		}
+	}
+}
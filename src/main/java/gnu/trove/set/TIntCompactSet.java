@@ -0,0 +1,484 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package gnu.trove.set;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.impl.Constants;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * A {@link TIntSet} optimized for very small sizes.
+ * <p>
+ * Up to {@code maxCompactSize} elements are stored in a sorted {@code int[]}
+ * array that grows as needed (an empty set does not allocate an array at
+ * all). Lookups are binary searches on this array. When the set grows beyond
+ * {@code maxCompactSize} elements, it is promoted to a {@link TIntHashSet}, and
+ * all operations are delegated to that. The set is demoted back to the compact
+ * representation only by {@link #clear()}.
+ * <p>
+ * This is intended for collections of which many instances exist, and most of
+ * them hold only a few elements, for example sets of neighbors of a graph
+ * vertex.
+ */
+public class TIntCompactSet implements TIntSet
+{
+	/**
+	 * The default maximum number of elements stored in the compact
+	 * representation.
+	 */
+	public static final int DEFAULT_MAX_COMPACT_SIZE = 16;
+
+	private static final int[] EMPTY = new int[ 0 ];
+
+	private final int maxCompactSize;
+
+	/**
+	 * Sorted elements, valid in {@code [0, size)}. Only used if
+	 * {@code hash == null}.
+	 */
+	private int[] elements;
+
+	/**
+	 * Number of elements. Only used if {@code hash == null}.
+	 */
+	private int size;
+
+	/**
+	 * The hash set the elements are stored in after promotion, or
+	 * {@code null} if in compact representation.
+	 */
+	private TIntHashSet hash;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	public TIntCompactSet()
+	{
+		this( DEFAULT_MAX_COMPACT_SIZE );
+	}
+
+	public TIntCompactSet( final int maxCompactSize )
+	{
+		if ( maxCompactSize < 0 )
+			throw new IllegalArgumentException( "maxCompactSize must not be negative" );
+		this.maxCompactSize = maxCompactSize;
+		this.elements = EMPTY;
+		this.size = 0;
+		this.hash = null;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns whether elements are currently stored in the compact sorted
+	 * array representation (as opposed to a hash set).
+	 *
+	 * @return {@code true} if the compact representation is used.
+	 */
+	public boolean isCompact()
+	{
+		return hash == null;
+	}
+
+	@Override
+	public int getNoEntryValue()
+	{
+		return hash == null ? Constants.DEFAULT_INT_NO_ENTRY_VALUE : hash.getNoEntryValue();
+	}
+
+	@Override
+	public int size()
+	{
+		return hash == null ? size : hash.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	@Override
+	public boolean contains( final int entry )
+	{
+		return hash == null
+				? Arrays.binarySearch( elements, 0, size, entry ) >= 0
+				: hash.contains( entry );
+	}
+
+	@Override
+	public TIntIterator iterator()
+	{
+		return hash == null ? new CompactIterator() : hash.iterator();
+	}
+
+	@Override
+	public int[] toArray()
+	{
+		return hash == null ? Arrays.copyOf( elements, size ) : hash.toArray();
+	}
+
+	@Override
+	public int[] toArray( final int[] dest )
+	{
+		if ( hash != null )
+			return hash.toArray( dest );
+
+		final int[] array = dest.length < size ? new int[ size ] : dest;
+		System.arraycopy( elements, 0, array, 0, size );
+		if ( array.length > size )
+			array[ size ] = getNoEntryValue();
+		return array;
+	}
+
+	@Override
+	public boolean add( final int entry )
+	{
+		if ( hash != null )
+			return hash.add( entry );
+
+		final int pos = Arrays.binarySearch( elements, 0, size, entry );
+		if ( pos >= 0 )
+			return false;
+
+		if ( size >= maxCompactSize )
+		{
+			promote();
+			return hash.add( entry );
+		}
+
+		final int i = -( pos + 1 );
+		if ( size == elements.length )
+		{
+			final int capacity = Math.min( maxCompactSize, Math.max( 2, 2 * size ) );
+			final int[] newElements = new int[ capacity ];
+			System.arraycopy( elements, 0, newElements, 0, i );
+			System.arraycopy( elements, i, newElements, i + 1, size - i );
+			elements = newElements;
+		}
+		else
+			System.arraycopy( elements, i, elements, i + 1, size - i );
+		elements[ i ] = entry;
+		++size;
+		return true;
+	}
+
+	@Override
+	public boolean remove( final int entry )
+	{
+		if ( hash != null )
+			return hash.remove( entry );
+
+		final int i = Arrays.binarySearch( elements, 0, size, entry );
+		if ( i < 0 )
+			return false;
+		removeAt( i );
+		return true;
+	}
+
+	@Override
+	public boolean containsAll( final Collection< ? > collection )
+	{
+		for ( final Object element : collection )
+		{
+			if ( !( element instanceof Integer ) || !contains( ( ( Integer ) element ).intValue() ) )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsAll( final TIntCollection collection )
+	{
+		if ( collection == this )
+			return true;
+		final TIntIterator it = collection.iterator();
+		while ( it.hasNext() )
+			if ( !contains( it.next() ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean containsAll( final int[] array )
+	{
+		for ( final int element : array )
+			if ( !contains( element ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean addAll( final Collection< ? extends Integer > collection )
+	{
+		boolean changed = false;
+		for ( final Integer element : collection )
+			if ( add( element.intValue() ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public boolean addAll( final TIntCollection collection )
+	{
+		if ( collection == this )
+			return false;
+		boolean changed = false;
+		final TIntIterator it = collection.iterator();
+		while ( it.hasNext() )
+			if ( add( it.next() ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public boolean addAll( final int[] array )
+	{
+		boolean changed = false;
+		for ( final int element : array )
+			if ( add( element ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll( final Collection< ? > collection )
+	{
+		boolean changed = false;
+		final TIntIterator it = iterator();
+		while ( it.hasNext() )
+		{
+			if ( !collection.contains( Integer.valueOf( it.next() ) ) )
+			{
+				it.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll( final TIntCollection collection )
+	{
+		if ( collection == this )
+			return false;
+		boolean changed = false;
+		final TIntIterator it = iterator();
+		while ( it.hasNext() )
+		{
+			if ( !collection.contains( it.next() ) )
+			{
+				it.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll( final int[] array )
+	{
+		final int[] sorted = array.clone();
+		Arrays.sort( sorted );
+		boolean changed = false;
+		final TIntIterator it = iterator();
+		while ( it.hasNext() )
+		{
+			if ( Arrays.binarySearch( sorted, it.next() ) < 0 )
+			{
+				it.remove();
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll( final Collection< ? > collection )
+	{
+		boolean changed = false;
+		for ( final Object element : collection )
+			if ( element instanceof Integer && remove( ( ( Integer ) element ).intValue() ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll( final TIntCollection collection )
+	{
+		if ( collection == this )
+		{
+			final boolean changed = !isEmpty();
+			clear();
+			return changed;
+		}
+		boolean changed = false;
+		final TIntIterator it = collection.iterator();
+		while ( it.hasNext() )
+			if ( remove( it.next() ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll( final int[] array )
+	{
+		boolean changed = false;
+		for ( final int element : array )
+			if ( remove( element ) )
+				changed = true;
+		return changed;
+	}
+
+	@Override
+	public void clear()
+	{
+		hash = null;
+		elements = EMPTY;
+		size = 0;
+	}
+
+	@Override
+	public boolean forEach( final TIntProcedure procedure )
+	{
+		if ( hash != null )
+			return hash.forEach( procedure );
+
+		for ( int i = 0; i < size; ++i )
+			if ( !procedure.execute( elements[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean equals( final Object other )
+	{
+		if ( !( other instanceof TIntSet ) )
+			return false;
+		final TIntSet that = ( TIntSet ) other;
+		return that.size() == size() && containsAll( that );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		if ( hash != null )
+			return hash.hashCode();
+
+		// same as TIntHashSet
+		int hashcode = 0;
+		for ( int i = 0; i < size; ++i )
+			hashcode += elements[ i ];
+		return hashcode;
+	}
+
+	@Override
+	public String toString()
+	{
+		if ( hash != null )
+			return hash.toString();
+
+		final StringBuilder sb = new StringBuilder( "{" );
+		for ( int i = 0; i < size; ++i )
+		{
+			if ( i > 0 )
+				sb.append( ", " );
+			sb.append( elements[ i ] );
+		}
+		sb.append( "}" );
+		return sb.toString();
+	}
+
+	private void removeAt( final int i )
+	{
+		System.arraycopy( elements, i + 1, elements, i, size - i - 1 );
+		--size;
+	}
+
+	/**
+	 * Move elements from the compact array to a newly created hash set.
+	 */
+	private void promote()
+	{
+		hash = new TIntHashSet( Math.max( 2 * size, Constants.DEFAULT_CAPACITY ) );
+		for ( int i = 0; i < size; ++i )
+			hash.add( elements[ i ] );
+		elements = EMPTY;
+		size = 0;
+	}
+
+	private class CompactIterator implements TIntIterator
+	{
+		/**
+		 * Index of the element to be returned by the next call to
+		 * {@link #next()}.
+		 */
+		private int cursor = 0;
+
+		/**
+		 * Index of the element returned by the last call to {@link #next()},
+		 * or -1 if there is no such element.
+		 */
+		private int lastRet = -1;
+
+		@Override
+		public boolean hasNext()
+		{
+			return cursor < size;
+		}
+
+		@Override
+		public int next()
+		{
+			if ( cursor >= size )
+				throw new NoSuchElementException();
+			lastRet = cursor++;
+			return elements[ lastRet ];
+		}
+
+		@Override
+		public void remove()
+		{
+			if ( lastRet < 0 )
+				throw new IllegalStateException();
+			removeAt( lastRet );
+			cursor = lastRet;
+			lastRet = -1;
+		}
+	}
+}
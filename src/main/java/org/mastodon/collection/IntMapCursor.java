@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection;
+
+/**
+ * A cursor over the entries of an {@link IntRefMap}. Values are retrieved into
+ * caller-provided references, so that iterating creates no garbage.
+ *
+ * @param <V>
+ *            value type.
+ *
+ * @see MapCursor
+ */
+public interface IntMapCursor< V >
+{
+	/**
+	 * Returns {@code true} if there are more entries.
+	 *
+	 * @return {@code true} if there are more entries.
+	 */
+	public boolean hasNext();
+
+	/**
+	 * Moves the cursor to the next entry.
+	 */
+	public void advance();
+
+	/**
+	 * Returns the key of the current entry.
+	 *
+	 * @return the key of the current entry.
+	 */
+	public int key();
+
+	/**
+	 * Returns the value of the current entry.
+	 *
+	 * @param ref
+	 *            an object reference that can be used for retrieval. Depending
+	 *            on concrete implementation, this object can be cleared,
+	 *            ignored or re-used.
+	 * @return the value of the current entry.
+	 */
+	public V value( V ref );
+
+	/**
+	 * Removes the current entry from the map.
+	 */
+	public void remove();
+}
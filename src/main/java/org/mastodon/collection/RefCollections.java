@@ -30,6 +30,7 @@ package org.mastodon.collection;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
@@ -38,6 +39,9 @@ import java.util.List;
 import java.util.Set;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.ref.CompactRefSet;
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.IntBackedRefCollections;
 import org.mastodon.collection.ref.RefArrayDeque;
 import org.mastodon.collection.ref.RefArrayList;
 import org.mastodon.collection.ref.RefArrayStack;
@@ -50,6 +54,8 @@ import org.mastodon.collection.wrap.RefSetWrapper;
 import org.mastodon.collection.wrap.RefStackWrapper;
 import org.mastodon.pool.Pool;
 
+import gnu.trove.TIntCollection;
+
 /**
  * Static utility methods to create collections for objects of a specified
  * {@link RefCollection}.
@@ -96,6 +102,46 @@ public class RefCollections
 			return wrap( new HashSet< O >( initialCapacity ) );
 	}
 
+	/**
+	 * Creates a {@link RefSet} optimized for holding only a few elements. Use
+	 * this when many sets are created, most of which are small, e.g., a set of
+	 * neighbors per graph vertex.
+	 *
+	 * @param collection
+	 *            the collection the set elements belong to.
+	 * @return a new, empty set.
+	 * @see CompactRefSet
+	 */
+	public static < O > RefSet< O > createCompactRefSet( final RefCollection< O > collection )
+	{
+		final RefPool< O > pool = tryGetRefPool( collection );
+		if ( pool != null )
+			return new CompactRefSet<>( pool );
+		else
+			return wrap( new HashSet< O >() );
+	}
+
+	/**
+	 * Creates a {@link RefSet} optimized for holding only a few elements. Up to
+	 * {@code maxCompactSize} elements are stored in a compact sorted array,
+	 * larger sets are backed by a hash set.
+	 *
+	 * @param collection
+	 *            the collection the set elements belong to.
+	 * @param maxCompactSize
+	 *            the maximum size of the compact representation.
+	 * @return a new, empty set.
+	 * @see CompactRefSet
+	 */
+	public static < O > RefSet< O > createCompactRefSet( final RefCollection< O > collection, final int maxCompactSize )
+	{
+		final RefPool< O > pool = tryGetRefPool( collection );
+		if ( pool != null )
+			return new CompactRefSet<>( pool, maxCompactSize );
+		else
+			return wrap( new HashSet< O >() );
+	}
+
 	public static < O > RefList< O > createRefList( final RefCollection< O > collection )
 	{
 		final RefPool< O > pool = tryGetRefPool( collection );
@@ -150,6 +196,161 @@ public class RefCollections
 			return wrapAsStack( new ArrayDeque< O >( initialCapacity ) );
 	}
 
+	/**
+	 * Creates a new {@link RefSet} containing all elements of {@code a} and all
+	 * elements of {@code b}.
+	 * <p>
+	 * If both collections are {@link IntBackedRefCollection}s over the same
+	 * pool, this works directly on the pool indices, without materializing
+	 * object refs.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @return the union of {@code a} and {@code b}.
+	 */
+	public static < O > RefSet< O > union( final RefCollection< O > a, final RefCollection< O > b )
+	{
+		final RefSet< O > result = createRefSet( a, a.size() + b.size() );
+		final TIntCollection ia = IntBackedRefCollections.sameIndexSpace( result, a );
+		final TIntCollection ib = IntBackedRefCollections.sameIndexSpace( result, b );
+		if ( ia != null && ib != null && result instanceof IntBackedRefCollection )
+		{
+			final TIntCollection indices = ( ( IntBackedRefCollection< O > ) result ).getIndexCollection();
+			indices.addAll( ia );
+			indices.addAll( ib );
+		}
+		else
+		{
+			result.addAll( a );
+			result.addAll( b );
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new {@link RefSet} containing all elements of {@code a} that
+	 * are also contained in {@code b}.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @return the intersection of {@code a} and {@code b}.
+	 * @see #intersection(RefCollection, RefCollection, boolean)
+	 */
+	public static < O > RefSet< O > intersection( final RefCollection< O > a, final RefCollection< O > b )
+	{
+		return intersection( a, b, false );
+	}
+
+	/**
+	 * Creates a new {@link RefSet} containing all elements of {@code a} that
+	 * are also contained in {@code b}.
+	 * <p>
+	 * If both collections are {@link IntBackedRefCollection}s over the same
+	 * pool, this works directly on the pool indices, without materializing
+	 * object refs, and optionally uses multiple threads for large collections.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return the intersection of {@code a} and {@code b}.
+	 */
+	public static < O > RefSet< O > intersection( final RefCollection< O > a, final RefCollection< O > b, final boolean parallel )
+	{
+		final RefPool< O > pool = tryGetRefPool( a );
+		final TIntCollection ia = IntBackedRefCollections.indices( a );
+		final TIntCollection ib = IntBackedRefCollections.sameIndexSpace( a, b );
+		if ( pool != null && ia != null && ib != null )
+			return fromIndices( pool, IntBackedRefCollections.intersection( ia, ib, parallel ) );
+
+		final Collection< O > lookup = asLookup( b );
+		final RefSet< O > result = createRefSet( a );
+		for ( final O o : a )
+			if ( lookup.contains( o ) )
+				result.add( o );
+		return result;
+	}
+
+	/**
+	 * Creates a new {@link RefSet} containing all elements of {@code a} that
+	 * are not contained in {@code b}.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @return the difference of {@code a} and {@code b}.
+	 * @see #difference(RefCollection, RefCollection, boolean)
+	 */
+	public static < O > RefSet< O > difference( final RefCollection< O > a, final RefCollection< O > b )
+	{
+		return difference( a, b, false );
+	}
+
+	/**
+	 * Creates a new {@link RefSet} containing all elements of {@code a} that
+	 * are not contained in {@code b}.
+	 * <p>
+	 * If both collections are {@link IntBackedRefCollection}s over the same
+	 * pool, this works directly on the pool indices, without materializing
+	 * object refs, and optionally uses multiple threads for large collections.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return the difference of {@code a} and {@code b}.
+	 */
+	public static < O > RefSet< O > difference( final RefCollection< O > a, final RefCollection< O > b, final boolean parallel )
+	{
+		final RefPool< O > pool = tryGetRefPool( a );
+		final TIntCollection ia = IntBackedRefCollections.indices( a );
+		final TIntCollection ib = IntBackedRefCollections.sameIndexSpace( a, b );
+		if ( pool != null && ia != null && ib != null )
+			return fromIndices( pool, IntBackedRefCollections.difference( ia, ib, parallel ) );
+
+		final Collection< O > lookup = asLookup( b );
+		final RefSet< O > result = createRefSet( a );
+		for ( final O o : a )
+			if ( !lookup.contains( o ) )
+				result.add( o );
+		return result;
+	}
+
+	/**
+	 * Checks whether collection {@code a} contains all elements of collection
+	 * {@code b}.
+	 * <p>
+	 * If both collections are {@link IntBackedRefCollection}s over the same
+	 * pool, this works directly on the pool indices, without materializing
+	 * object refs, and optionally uses multiple threads for large collections.
+	 *
+	 * @param a
+	 *            first collection.
+	 * @param b
+	 *            second collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return {@code true} if {@code a} contains all elements of {@code b}.
+	 */
+	public static < O > boolean containsAll( final RefCollection< O > a, final RefCollection< O > b, final boolean parallel )
+	{
+		final TIntCollection ia = IntBackedRefCollections.indices( a );
+		final TIntCollection ib = IntBackedRefCollections.sameIndexSpace( a, b );
+		if ( ia != null && ib != null )
+			return IntBackedRefCollections.containsAll( ia, ib, parallel );
+
+		return asLookup( a ).containsAll( b );
+	}
+
 	public static < O > RefPool< O > tryGetRefPool( final RefCollection< O > collection )
 	{
 		return ( collection instanceof RefPoolBackedRefCollection )
@@ -157,6 +358,26 @@ public class RefCollections
 				: null;
 	}
 
+	private static < O > RefSet< O > fromIndices( final RefPool< O > pool, final int[] indices )
+	{
+		final RefSetImp< O > set = new RefSetImp<>( pool, indices.length );
+		set.getIndexCollection().addAll( indices );
+		return set;
+	}
+
+	/**
+	 * Returns {@code collection} if it is a {@link Set}, otherwise a
+	 * {@link RefSet} containing the same elements, for fast lookup.
+	 */
+	private static < O > Collection< O > asLookup( final RefCollection< O > collection )
+	{
+		if ( collection instanceof Set )
+			return collection;
+		final RefSet< O > set = createRefSet( collection, collection.size() );
+		set.addAll( collection );
+		return set;
+	}
+
 	private static < O > RefSet< O > wrap( final Set< O > set )
 	{
 		return new RefSetWrapper<>( set );
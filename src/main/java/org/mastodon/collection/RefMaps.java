@@ -34,16 +34,19 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.ref.CompactRefIntMap;
 import org.mastodon.collection.ref.IntRefHashMap;
 import org.mastodon.collection.ref.ObjectRefHashMap;
 import org.mastodon.collection.ref.RefDoubleHashMap;
 import org.mastodon.collection.ref.RefIntHashMap;
+import org.mastodon.collection.ref.RefMultiDoubleHashMap;
 import org.mastodon.collection.ref.RefObjectHashMap;
 import org.mastodon.collection.ref.RefPoolBackedRefCollection;
 import org.mastodon.collection.ref.RefRefHashMap;
 import org.mastodon.collection.wrap.IntRefMapWrapper;
 import org.mastodon.collection.wrap.RefDoubleMapWrapper;
 import org.mastodon.collection.wrap.RefIntMapWrapper;
+import org.mastodon.collection.wrap.RefMultiDoubleMapWrapper;
 import org.mastodon.collection.wrap.RefRefMapWrapper;
 import org.mastodon.pool.Pool;
 
@@ -175,6 +178,50 @@ public class RefMaps
 			return new RefIntMapWrapper<>( noEntryValue, initialCapacity );
 	}
 
+	/**
+	 * Creates a {@link RefIntMap} optimized for holding only a few entries. Use
+	 * this when many maps are created, most of which are small, e.g., a small
+	 * lookup table per graph vertex.
+	 *
+	 * @param keyCollection
+	 *            the collection the keys belong to.
+	 * @param noEntryValue
+	 *            the value returned for keys not in the map.
+	 * @return a new, empty map.
+	 * @see CompactRefIntMap
+	 */
+	public static < K > RefIntMap< K > createCompactRefIntMap( final RefCollection< K > keyCollection, final int noEntryValue )
+	{
+		final RefPool< K > pool = tryGetRefPool( keyCollection );
+		if ( pool != null )
+			return new CompactRefIntMap<>( pool, noEntryValue );
+		else
+			return new RefIntMapWrapper<>( noEntryValue );
+	}
+
+	/**
+	 * Creates a {@link RefIntMap} optimized for holding only a few entries. Up
+	 * to {@code maxCompactSize} entries are stored in compact sorted arrays,
+	 * larger maps are backed by a hash map.
+	 *
+	 * @param keyCollection
+	 *            the collection the keys belong to.
+	 * @param noEntryValue
+	 *            the value returned for keys not in the map.
+	 * @param maxCompactSize
+	 *            the maximum size of the compact representation.
+	 * @return a new, empty map.
+	 * @see CompactRefIntMap
+	 */
+	public static < K > RefIntMap< K > createCompactRefIntMap( final RefCollection< K > keyCollection, final int noEntryValue, final int maxCompactSize )
+	{
+		final RefPool< K > pool = tryGetRefPool( keyCollection );
+		if ( pool != null )
+			return new CompactRefIntMap<>( pool, noEntryValue, maxCompactSize );
+		else
+			return new RefIntMapWrapper<>( noEntryValue );
+	}
+
 	public static < K > RefDoubleMap< K > createRefDoubleMap( final RefCollection< K > keyCollection, final double noEntryValue )
 	{
 		final RefPool< K > pool = tryGetRefPool( keyCollection );
@@ -193,6 +240,54 @@ public class RefMaps
 			return new RefDoubleMapWrapper<>( noEntryValue, initialCapacity );
 	}
 
+	/**
+	 * Creates a {@link RefMultiDoubleMap} that stores {@code numColumns}
+	 * {@code double} values per key.
+	 *
+	 * @param keyCollection
+	 *            the collection of objects used as keys.
+	 * @param numColumns
+	 *            the number of values per key.
+	 * @param noEntryValue
+	 *            the value of columns that are not set.
+	 * @param <K>
+	 *            the key type.
+	 * @return a new {@link RefMultiDoubleMap}.
+	 */
+	public static < K > RefMultiDoubleMap< K > createRefMultiDoubleMap( final RefCollection< K > keyCollection, final int numColumns, final double noEntryValue )
+	{
+		final RefPool< K > pool = tryGetRefPool( keyCollection );
+		if ( pool != null )
+			return new RefMultiDoubleHashMap<>( pool, numColumns, noEntryValue );
+		else
+			return new RefMultiDoubleMapWrapper<>( numColumns, noEntryValue );
+	}
+
+	/**
+	 * Creates a {@link RefMultiDoubleMap} that stores {@code numColumns}
+	 * {@code double} values per key.
+	 *
+	 * @param keyCollection
+	 *            the collection of objects used as keys.
+	 * @param numColumns
+	 *            the number of values per key.
+	 * @param noEntryValue
+	 *            the value of columns that are not set.
+	 * @param initialCapacity
+	 *            the expected number of keys.
+	 * @param <K>
+	 *            the key type.
+	 * @return a new {@link RefMultiDoubleMap}.
+	 */
+	public static < K > RefMultiDoubleMap< K > createRefMultiDoubleMap( final RefCollection< K > keyCollection, final int numColumns, final double noEntryValue, final int initialCapacity )
+	{
+		final RefPool< K > pool = tryGetRefPool( keyCollection );
+		if ( pool != null )
+			return new RefMultiDoubleHashMap<>( pool, numColumns, noEntryValue, initialCapacity );
+		else
+			return new RefMultiDoubleMapWrapper<>( numColumns, noEntryValue, initialCapacity );
+	}
+
 	public static < V > IntRefMap< V > createIntRefMap( final RefCollection< V > keyCollection, final int noEntryKey )
 	{
 		final RefPool< V > pool = tryGetRefPool( keyCollection );
@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+/**
+ * Interface for maps that associate a key to a fixed number of {@code double}
+ * values, the <em>columns</em> of the map.
+ * <p>
+ * This is intended to replace several parallel {@link RefDoubleMap}s with the
+ * same keys, e.g. the mean, min and max intensity of a spot. Rows are stored
+ * contiguously, so that a whole row can be read or written with a single
+ * lookup of the key. Columns that have not been set for a key are equal to
+ * {@link #getNoEntryValue()}.
+ *
+ * @param <K>
+ *            the type of the keys of the map.
+ */
+public interface RefMultiDoubleMap< K >
+{
+	/**
+	 * Procedure executed for each entry of a {@link RefMultiDoubleMap}.
+	 *
+	 * @param <K>
+	 *            the type of the keys of the map.
+	 */
+	@FunctionalInterface
+	public interface RowProcedure< K >
+	{
+		/**
+		 * Executes this procedure.
+		 *
+		 * @param key
+		 *            the key of the entry.
+		 * @param row
+		 *            the values of the entry. This array is re-used between
+		 *            calls and must not be stored or modified.
+		 * @return {@code false} to stop the iteration.
+		 */
+		public boolean execute( K key, double[] row );
+	}
+
+	/**
+	 * Returns the number of {@code double} values stored for each key.
+	 *
+	 * @return the number of columns.
+	 */
+	public int numColumns();
+
+	/**
+	 * Returns the value that represents null in this map.
+	 *
+	 * @return the value that represents null.
+	 */
+	public double getNoEntryValue();
+
+	/**
+	 * Returns the number of keys in this map.
+	 *
+	 * @return the number of keys.
+	 */
+	public int size();
+
+	/**
+	 * Returns {@code true} if this map contains no keys.
+	 *
+	 * @return {@code true} if this map contains no keys.
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * Removes all entries from this map.
+	 */
+	public void clear();
+
+	/**
+	 * Returns {@code true} if this map contains an entry for the specified
+	 * key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return {@code true} if there is an entry for the key.
+	 */
+	public boolean containsKey( Object key );
+
+	/**
+	 * Returns the value of the specified column for the specified key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param column
+	 *            the column index.
+	 * @return the value, or {@link #getNoEntryValue()} if there is no entry
+	 *         for the key.
+	 */
+	public double get( K key, int column );
+
+	/**
+	 * Copies all columns for the specified key into {@code row}. If there is
+	 * no entry for the key, {@code row} is filled with
+	 * {@link #getNoEntryValue()}.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param row
+	 *            the array to write to, of length at least
+	 *            {@link #numColumns()}.
+	 * @return {@code true} if there is an entry for the key.
+	 */
+	public boolean get( K key, double[] row );
+
+	/**
+	 * Sets the value of the specified column for the specified key. If there
+	 * was no entry for the key, the other columns are set to
+	 * {@link #getNoEntryValue()}.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param column
+	 *            the column index.
+	 * @param value
+	 *            the value.
+	 * @return the previous value of the column, or
+	 *         {@link #getNoEntryValue()} if there was no entry for the key.
+	 */
+	public double put( K key, int column, double value );
+
+	/**
+	 * Sets all columns for the specified key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param row
+	 *            the values to set, of length at least {@link #numColumns()}.
+	 * @return {@code true} if there was an entry for the key before.
+	 */
+	public boolean put( K key, double[] row );
+
+	/**
+	 * Sets all columns for the specified key and copies the previous values
+	 * into {@code replaced}.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param row
+	 *            the values to set, of length at least {@link #numColumns()}.
+	 * @param replaced
+	 *            the array to write the previous values to, filled with
+	 *            {@link #getNoEntryValue()} if there was no entry for the key.
+	 * @return {@code true} if there was an entry for the key before.
+	 */
+	public boolean put( K key, double[] row, double[] replaced );
+
+	/**
+	 * Removes the entry for the specified key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return {@code true} if there was an entry for the key.
+	 */
+	public boolean remove( Object key );
+
+	/**
+	 * Removes the entry for the specified key and copies its values into
+	 * {@code replaced}.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param replaced
+	 *            the array to write the removed values to, filled with
+	 *            {@link #getNoEntryValue()} if there was no entry for the key.
+	 * @return {@code true} if there was an entry for the key.
+	 */
+	public boolean remove( Object key, double[] replaced );
+
+	/**
+	 * Returns the keys of this map. The order of the list matches the order
+	 * of {@link #getColumn(int)}, as long as the map is not modified.
+	 *
+	 * @return a new list of the keys.
+	 */
+	public RefList< K > keys();
+
+	/**
+	 * Returns the values of the specified column for all keys, in the order
+	 * of {@link #keys()}.
+	 *
+	 * @param column
+	 *            the column index.
+	 * @return a new array of length {@link #size()}.
+	 */
+	public double[] getColumn( int column );
+
+	/**
+	 * Executes {@code procedure} for each key in the map.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference that can be used for retrieval. Depending
+	 *            on concrete implementation, this object can be cleared,
+	 *            ignored or re-used.
+	 * @return {@code false} if the loop over the keys terminated because the
+	 *         procedure returned false for some key.
+	 */
+	public boolean forEachKey( TObjectProcedure< ? super K > procedure, K ref );
+
+	/**
+	 * Executes {@code procedure} for each entry in the map.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference that can be used for retrieval. Depending
+	 *            on concrete implementation, this object can be cleared,
+	 *            ignored or re-used.
+	 * @return {@code false} if the loop over the entries terminated because
+	 *         the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( RowProcedure< ? super K > procedure, K ref );
+
+	/**
+	 * Creates an object reference that can be used for processing with this
+	 * map. Depending on concrete implementation, the object return can be
+	 * {@code null}.
+	 *
+	 * @return a new object empty reference.
+	 */
+	public K createRef();
+
+	/**
+	 * Releases a previously created object reference. For standard object maps,
+	 * this method does nothing.
+	 *
+	 * @param obj
+	 *            the object reference to release.
+	 */
+	public void releaseRef( K obj );
+}
@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.algorithm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable sort of an {@code int[]} array of values by an associated
+ * {@code double[]} array of keys. Both arrays are permuted together. Large
+ * arrays are sorted by a fork/join merge sort in the common
+ * {@link ForkJoinPool}.
+ * <p>
+ * Keys are ordered as by {@link Double#compare(double, double)}, i.e.,
+ * {@code NaN} is sorted after all other values.
+ */
+public class DoubleKeySort
+{
+	/**
+	 * Sub-arrays shorter than this are sorted sequentially.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+	/**
+	 * Sub-arrays shorter than this are sorted by insertion sort.
+	 */
+	private static final int INSERTION_THRESHOLD = 32;
+
+	/**
+	 * Sort {@code values} by {@code keys}, using multiple threads for large
+	 * arrays.
+	 *
+	 * @param keys
+	 *            sort keys, {@code keys[i]} is the key of {@code values[i]}.
+	 * @param values
+	 *            values to sort.
+	 */
+	public static void sort( final double[] keys, final int[] values )
+	{
+		sort( keys, values, true );
+	}
+
+	/**
+	 * Sort {@code values} by {@code keys}.
+	 *
+	 * @param keys
+	 *            sort keys, {@code keys[i]} is the key of {@code values[i]}.
+	 * @param values
+	 *            values to sort.
+	 * @param parallel
+	 *            whether to use multiple threads for large arrays.
+	 */
+	public static void sort( final double[] keys, final int[] values, final boolean parallel )
+	{
+		if ( keys.length != values.length )
+			throw new IllegalArgumentException( "keys and values must have the same length" );
+
+		final int n = keys.length;
+		if ( n < 2 )
+			return;
+
+		final double[] tmpKeys = new double[ n ];
+		final int[] tmpValues = new int[ n ];
+		if ( parallel && n >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1 )
+			ForkJoinPool.commonPool().invoke( new SortTask( keys, values, tmpKeys, tmpValues, 0, n ) );
+		else
+			mergeSort( keys, values, tmpKeys, tmpValues, 0, n );
+	}
+
+	private static class SortTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double[] keys;
+
+		private final int[] values;
+
+		private final double[] tmpKeys;
+
+		private final int[] tmpValues;
+
+		private final int from;
+
+		private final int to;
+
+		SortTask( final double[] keys, final int[] values, final double[] tmpKeys, final int[] tmpValues, final int from, final int to )
+		{
+			this.keys = keys;
+			this.values = values;
+			this.tmpKeys = tmpKeys;
+			this.tmpValues = tmpValues;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from < PARALLEL_THRESHOLD )
+			{
+				mergeSort( keys, values, tmpKeys, tmpValues, from, to );
+				return;
+			}
+			final int mid = ( from + to ) >>> 1;
+			invokeAll(
+					new SortTask( keys, values, tmpKeys, tmpValues, from, mid ),
+					new SortTask( keys, values, tmpKeys, tmpValues, mid, to ) );
+			merge( keys, values, tmpKeys, tmpValues, from, mid, to );
+		}
+	}
+
+	/**
+	 * Sort range {@code [from, to)} sequentially.
+	 */
+	private static void mergeSort( final double[] keys, final int[] values, final double[] tmpKeys, final int[] tmpValues, final int from, final int to )
+	{
+		if ( to - from < INSERTION_THRESHOLD )
+		{
+			insertionSort( keys, values, from, to );
+			return;
+		}
+		final int mid = ( from + to ) >>> 1;
+		mergeSort( keys, values, tmpKeys, tmpValues, from, mid );
+		mergeSort( keys, values, tmpKeys, tmpValues, mid, to );
+		merge( keys, values, tmpKeys, tmpValues, from, mid, to );
+	}
+
+	private static void insertionSort( final double[] keys, final int[] values, final int from, final int to )
+	{
+		for ( int i = from + 1; i < to; ++i )
+		{
+			final double key = keys[ i ];
+			final int value = values[ i ];
+			int j = i - 1;
+			while ( j >= from && Double.compare( keys[ j ], key ) > 0 )
+			{
+				keys[ j + 1 ] = keys[ j ];
+				values[ j + 1 ] = values[ j ];
+				--j;
+			}
+			keys[ j + 1 ] = key;
+			values[ j + 1 ] = value;
+		}
+	}
+
+	/**
+	 * Merge sorted ranges {@code [from, mid)} and {@code [mid, to)}.
+	 */
+	private static void merge( final double[] keys, final int[] values, final double[] tmpKeys, final int[] tmpValues, final int from, final int mid, final int to )
+	{
+		// already in order?
+		if ( Double.compare( keys[ mid - 1 ], keys[ mid ] ) <= 0 )
+			return;
+
+		final int n = mid - from;
+		System.arraycopy( keys, from, tmpKeys, from, n );
+		System.arraycopy( values, from, tmpValues, from, n );
+
+		int i = from;
+		int j = mid;
+		int k = from;
+		while ( i < mid && j < to )
+		{
+			if ( Double.compare( keys[ j ], tmpKeys[ i ] ) < 0 )
+			{
+				keys[ k ] = keys[ j ];
+				values[ k++ ] = values[ j++ ];
+			}
+			else
+			{
+				keys[ k ] = tmpKeys[ i ];
+				values[ k++ ] = tmpValues[ i++ ];
+			}
+		}
+		final int remaining = mid - i;
+		System.arraycopy( tmpKeys, i, keys, k, remaining );
+		System.arraycopy( tmpValues, i, values, k, remaining );
+	}
+
+	private DoubleKeySort()
+	{}
+}
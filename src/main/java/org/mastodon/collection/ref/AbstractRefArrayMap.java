@@ -0,0 +1,476 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.mastodon.RefPool;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.procedure.TObjectProcedure;
+import gnu.trove.set.TIntSet;
+
+/**
+ * Base class for dense maps from {@link RefPool} objects to primitive values
+ * that are stored in an array indexed by {@link RefPool#getId(Object) pool
+ * index}. Keeps track of which pool indices have a mapping in a presence
+ * bitmap, and provides the key-related part of the map API on top of it.
+ * <p>
+ * Subclasses own the value array and implement {@link #ensureCapacity(int)},
+ * {@link #clearValue(int)} and {@link #clearValues()}.
+ *
+ * @param <K>
+ *            key type.
+ *
+ * @see RefDoubleArrayMap
+ * @see RefIntArrayMap
+ */
+public abstract class AbstractRefArrayMap< K >
+{
+	protected final RefPool< K > pool;
+
+	protected final Class< K > keyType;
+
+	/**
+	 * Which pool indices have a mapping.
+	 */
+	protected final BitSet present;
+
+	protected int size;
+
+	protected AbstractRefArrayMap( final RefPool< K > pool, final int initialCapacity )
+	{
+		this.pool = pool;
+		this.keyType = pool.getRefClass();
+		present = new BitSet( initialCapacity );
+		size = 0;
+	}
+
+	/**
+	 * Makes sure that keys with pool index up to {@code capacity - 1} can be
+	 * stored without growing the backing array.
+	 *
+	 * @param capacity
+	 *            the minimum capacity.
+	 */
+	public abstract void ensureCapacity( final int capacity );
+
+	/**
+	 * Sets the value at the specified pool index to the no-entry value.
+	 *
+	 * @param index
+	 *            the pool index.
+	 */
+	protected abstract void clearValue( final int index );
+
+	/**
+	 * Sets all values to the no-entry value.
+	 */
+	protected abstract void clearValues();
+
+	/**
+	 * Makes sure that a value for {@code key} can be stored without growing
+	 * the backing array.
+	 *
+	 * @param key
+	 *            the key.
+	 */
+	public void ensureCapacityFor( final K key )
+	{
+		ensureCapacity( pool.getId( key ) + 1 );
+	}
+
+	/**
+	 * Returns whether there is a mapping for the specified pool index.
+	 *
+	 * @param index
+	 *            the pool index of the key.
+	 * @return whether there is a mapping for {@code index}.
+	 */
+	public boolean containsIndex( final int index )
+	{
+		return present.get( index );
+	}
+
+	/**
+	 * Marks the specified pool index as mapped.
+	 *
+	 * @param index
+	 *            the pool index.
+	 */
+	protected void setPresent( final int index )
+	{
+		if ( !present.get( index ) )
+		{
+			present.set( index );
+			++size;
+		}
+	}
+
+	/**
+	 * Removes the mapping for the specified pool index.
+	 *
+	 * @param index
+	 *            the pool index.
+	 * @return {@code true} if there was a mapping for {@code index}.
+	 */
+	protected boolean removeIndex( final int index )
+	{
+		if ( !present.get( index ) )
+			return false;
+		clearValue( index );
+		present.clear( index );
+		--size;
+		return true;
+	}
+
+	/**
+	 * Removes the mappings for all pool indices that satisfy the specified
+	 * predicate.
+	 *
+	 * @param predicate
+	 *            the predicate.
+	 * @return {@code true} if any mapping was removed.
+	 */
+	protected boolean removeIndicesIf( final IntPredicate predicate )
+	{
+		boolean modified = false;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+		{
+			if ( predicate.test( i ) )
+			{
+				removeIndex( i );
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Returns the pool index of {@code key}, or {@code -1} if {@code key} is
+	 * not of the key type of this map.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the pool index of {@code key}, or {@code -1}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	protected int indexOf( final Object key )
+	{
+		return keyType.isInstance( key ) ? pool.getId( ( K ) key ) : -1;
+	}
+
+	public void clear()
+	{
+		clearValues();
+		present.clear();
+		size = 0;
+	}
+
+	public boolean containsKey( final Object key )
+	{
+		final int index = indexOf( key );
+		return index >= 0 && present.get( index );
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public Set< K > keySet()
+	{
+		return new RefSetImp<>( pool, new KeySetView() );
+	}
+
+	public Object[] keys()
+	{
+		return keySet().toArray();
+	}
+
+	public K[] keys( final K[] array )
+	{
+		return keySet().toArray( array );
+	}
+
+	public boolean forEachKey( final TObjectProcedure< ? super K > procedure, final K ref )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( !procedure.execute( pool.getObject( i, ref ) ) )
+				return false;
+		return true;
+	}
+
+	public boolean forEachKey( final TObjectProcedure< ? super K > procedure )
+	{
+		final K ref = createRef();
+		final boolean result = forEachKey( procedure, ref );
+		releaseRef( ref );
+		return result;
+	}
+
+	public K createRef()
+	{
+		return pool.createRef();
+	}
+
+	public void releaseRef( final K obj )
+	{
+		pool.releaseRef( obj );
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Iterates over the mapped pool indices in ascending order. Supports
+	 * removal of the current mapping.
+	 */
+	protected class IndexIterator
+	{
+		/**
+		 * The current pool index, or {@code -1} before the first call to
+		 * {@link #advance()}.
+		 */
+		protected int current;
+
+		private int next;
+
+		protected IndexIterator()
+		{
+			current = -1;
+			next = present.nextSetBit( 0 );
+		}
+
+		public void advance()
+		{
+			if ( next < 0 )
+				throw new NoSuchElementException();
+			current = next;
+			next = present.nextSetBit( current + 1 );
+		}
+
+		public boolean hasNext()
+		{
+			return next >= 0;
+		}
+
+		public void remove()
+		{
+			if ( current < 0 || !present.get( current ) )
+				throw new IllegalStateException();
+			removeIndex( current );
+		}
+	}
+
+	/**
+	 * Live view of the mapped pool indices.
+	 */
+	private class KeySetView implements TIntSet
+	{
+		@Override
+		public int getNoEntryValue()
+		{
+			return -1;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		@Override
+		public boolean contains( final int entry )
+		{
+			return entry >= 0 && present.get( entry );
+		}
+
+		@Override
+		public TIntIterator iterator()
+		{
+			return new KeyIterator();
+		}
+
+		@Override
+		public int[] toArray()
+		{
+			return present.stream().toArray();
+		}
+
+		@Override
+		public int[] toArray( final int[] dest )
+		{
+			final int[] a = dest.length < size ? new int[ size ] : dest;
+			int j = 0;
+			for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+				a[ j++ ] = i;
+			return a;
+		}
+
+		@Override
+		public boolean add( final int entry )
+		{
+			throw new UnsupportedOperationException( "add is not supported for keyset view." );
+		}
+
+		@Override
+		public boolean remove( final int entry )
+		{
+			return entry >= 0 && removeIndex( entry );
+		}
+
+		@Override
+		public boolean containsAll( final Collection< ? > collection )
+		{
+			for ( final Object o : collection )
+				if ( !( o instanceof Integer ) || !contains( ( ( Integer ) o ).intValue() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean containsAll( final TIntCollection collection )
+		{
+			return collection.forEach( this::contains );
+		}
+
+		@Override
+		public boolean containsAll( final int[] array )
+		{
+			for ( final int i : array )
+				if ( !contains( i ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean addAll( final Collection< ? extends Integer > collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for keyset view." );
+		}
+
+		@Override
+		public boolean addAll( final TIntCollection collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for keyset view." );
+		}
+
+		@Override
+		public boolean addAll( final int[] array )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for keyset view." );
+		}
+
+		@Override
+		public boolean retainAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( i ) );
+		}
+
+		@Override
+		public boolean retainAll( final TIntCollection collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( i ) );
+		}
+
+		@Override
+		public boolean retainAll( final int[] array )
+		{
+			final int[] sorted = array.clone();
+			Arrays.sort( sorted );
+			return removeIndicesIf( i -> Arrays.binarySearch( sorted, i ) < 0 );
+		}
+
+		@Override
+		public boolean removeAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> collection.contains( i ) );
+		}
+
+		@Override
+		public boolean removeAll( final TIntCollection collection )
+		{
+			return removeIndicesIf( i -> collection.contains( i ) );
+		}
+
+		@Override
+		public boolean removeAll( final int[] array )
+		{
+			boolean modified = false;
+			for ( final int i : array )
+				modified |= remove( i );
+			return modified;
+		}
+
+		@Override
+		public void clear()
+		{
+			AbstractRefArrayMap.this.clear();
+		}
+
+		@Override
+		public boolean forEach( final TIntProcedure procedure )
+		{
+			for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+				if ( !procedure.execute( i ) )
+					return false;
+			return true;
+		}
+	}
+
+	private class KeyIterator extends IndexIterator implements TIntIterator
+	{
+		@Override
+		public int next()
+		{
+			advance();
+			return current;
+		}
+	}
+}
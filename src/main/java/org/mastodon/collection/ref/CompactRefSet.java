@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefSet;
+
+import gnu.trove.set.TIntCompactSet;
+
+/**
+ * A {@link RefSet} implementation optimized for sets that typically hold only
+ * a few elements, based on a {@link TIntCompactSet}.
+ * <p>
+ * Up to {@code maxCompactSize} elements are stored as a sorted {@code int[]}
+ * of pool indices. Larger sets are transparently promoted to a hash set.
+ *
+ * @param <O>
+ *            the type of elements maintained by this set.
+ */
+public class CompactRefSet< O > extends RefSetImp< O >
+{
+	public CompactRefSet( final RefPool< O > pool )
+	{
+		super( pool, new TIntCompactSet() );
+	}
+
+	public CompactRefSet( final RefPool< O > pool, final int maxCompactSize )
+	{
+		super( pool, new TIntCompactSet( maxCompactSize ) );
+	}
+
+	@Override
+	public TIntCompactSet getIndexCollection()
+	{
+		return ( TIntCompactSet ) super.getIndexCollection();
+	}
+}
@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.mastodon.collection.RefCollection;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Static helpers for set operations on {@link IntBackedRefCollection}s that
+ * work directly on the backing {@link TIntCollection}s of pool indices,
+ * without materializing object refs.
+ */
+public final class IntBackedRefCollections
+{
+	/**
+	 * Operations on at least this many elements are parallelized, if
+	 * requested.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Index collections that are not sets are copied to a hash set for lookup
+	 * if they have at least this many elements.
+	 */
+	private static final int LOOKUP_SET_THRESHOLD = 16;
+
+	/**
+	 * Returns the backing index collection of {@code collection}, if it is an
+	 * {@link IntBackedRefCollection}. Otherwise, returns {@code null}.
+	 *
+	 * @param collection
+	 *            the collection.
+	 * @return the index collection of {@code collection}, or {@code null}.
+	 */
+	public static TIntCollection indices( final Object collection )
+	{
+		return ( collection instanceof IntBackedRefCollection )
+				? ( ( IntBackedRefCollection< ? > ) collection ).getIndexCollection()
+				: null;
+	}
+
+	/**
+	 * Returns the backing index collection of {@code objs}, if {@code objs} is
+	 * an {@link IntBackedRefCollection} that contains objects from the same
+	 * pool as {@code collection}. Otherwise, returns {@code null}.
+	 * <p>
+	 * If the pool of either collection is unknown (because it does not
+	 * implement {@link RefPoolBackedRefCollection}), the indices cannot be
+	 * compared and {@code null} is returned.
+	 *
+	 * @param collection
+	 *            the reference collection.
+	 * @param objs
+	 *            the collection to check.
+	 * @return the index collection of {@code objs}, or {@code null}.
+	 */
+	public static TIntCollection sameIndexSpace( final Object collection, final Object objs )
+	{
+		if ( !( objs instanceof IntBackedRefCollection )
+				|| !( collection instanceof RefPoolBackedRefCollection )
+				|| !( objs instanceof RefPoolBackedRefCollection ) )
+			return null;
+		final Object pool1 = ( ( RefPoolBackedRefCollection< ? > ) collection ).getRefPool();
+		final Object pool2 = ( ( RefPoolBackedRefCollection< ? > ) objs ).getRefPool();
+		if ( pool1 == null || pool1 != pool2 )
+			return null;
+		return ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection();
+	}
+
+	/**
+	 * Returns a {@link TIntSet} containing the elements of {@code indices},
+	 * for fast {@code contains()} lookup. If {@code indices} already is a set,
+	 * it is returned as is. Small collections are also returned as is.
+	 *
+	 * @param indices
+	 *            index collection.
+	 * @return {@code indices} or a set with the same elements.
+	 */
+	public static TIntCollection asLookup( final TIntCollection indices )
+	{
+		if ( indices instanceof TIntSet || indices.size() < LOOKUP_SET_THRESHOLD )
+			return indices;
+		return new TIntHashSet( indices );
+	}
+
+	/**
+	 * Returns a {@link Set} containing the elements of {@code objs}, for fast
+	 * {@code contains()} lookup. If {@code objs} already is a set, it is
+	 * returned as is. Small collections are also returned as is, and so are
+	 * {@link RefCollection}s, because their iterators may recycle refs.
+	 *
+	 * @param objs
+	 *            a collection.
+	 * @return {@code objs} or a set with the same elements.
+	 */
+	public static Collection< ? > asLookup( final Collection< ? > objs )
+	{
+		if ( objs instanceof Set || objs instanceof RefCollection || objs.size() < LOOKUP_SET_THRESHOLD )
+			return objs;
+		return new HashSet<>( objs );
+	}
+
+	/**
+	 * Returns the elements of {@code a} that are contained in {@code b}.
+	 * Duplicates in {@code a} are preserved.
+	 *
+	 * @param a
+	 *            first index collection.
+	 * @param b
+	 *            second index collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return elements of {@code a} that are contained in {@code b}, in
+	 *         iteration order of {@code a}.
+	 */
+	public static int[] intersection( final TIntCollection a, final TIntCollection b, final boolean parallel )
+	{
+		final TIntCollection lookup = asLookup( b );
+		return filter( a.toArray(), lookup, true, parallel );
+	}
+
+	/**
+	 * Returns the elements of {@code a} that are not contained in {@code b}.
+	 * Duplicates in {@code a} are preserved.
+	 *
+	 * @param a
+	 *            first index collection.
+	 * @param b
+	 *            second index collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return elements of {@code a} that are not contained in {@code b}, in
+	 *         iteration order of {@code a}.
+	 */
+	public static int[] difference( final TIntCollection a, final TIntCollection b, final boolean parallel )
+	{
+		final TIntCollection lookup = asLookup( b );
+		return filter( a.toArray(), lookup, false, parallel );
+	}
+
+	/**
+	 * Checks whether all elements of {@code b} are contained in {@code a}.
+	 *
+	 * @param a
+	 *            first index collection.
+	 * @param b
+	 *            second index collection.
+	 * @param parallel
+	 *            whether to use multiple threads for large collections.
+	 * @return {@code true} if {@code a} contains all elements of {@code b}.
+	 */
+	public static boolean containsAll( final TIntCollection a, final TIntCollection b, final boolean parallel )
+	{
+		final TIntCollection lookup = asLookup( a );
+		if ( parallel && b.size() >= PARALLEL_THRESHOLD )
+			return Arrays.stream( b.toArray() ).parallel().allMatch( lookup::contains );
+		return lookup.containsAll( b );
+	}
+
+	/**
+	 * Removes from {@code list} all elements that are (if {@code retain ==
+	 * false}) or are not (if {@code retain == true}) contained in
+	 * {@code lookup}. This is done in a single pass, compacting the list in
+	 * place.
+	 *
+	 * @param list
+	 *            the list to modify.
+	 * @param lookup
+	 *            elements to retain or remove.
+	 * @param retain
+	 *            whether to retain or remove elements contained in
+	 *            {@code lookup}.
+	 * @return {@code true} if the list was modified.
+	 */
+	public static boolean filterInPlace( final TIntArrayList list, final TIntCollection lookup, final boolean retain )
+	{
+		final int size = list.size();
+		int j = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			final int value = list.getQuick( i );
+			if ( lookup.contains( value ) == retain )
+				list.setQuick( j++, value );
+		}
+		if ( j == size )
+			return false;
+		list.remove( j, size - j );
+		return true;
+	}
+
+	private static int[] filter( final int[] values, final TIntCollection lookup, final boolean retain, final boolean parallel )
+	{
+		if ( parallel && values.length >= PARALLEL_THRESHOLD )
+			return IntStream.of( values ).parallel().filter( v -> lookup.contains( v ) == retain ).toArray();
+
+		int j = 0;
+		for ( final int value : values )
+			if ( lookup.contains( value ) == retain )
+				values[ j++ ] = value;
+		return j == values.length ? values : Arrays.copyOf( values, j );
+	}
+
+	private IntBackedRefCollections()
+	{}
+}
@@ -35,6 +35,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.IntMapCursor;
 import org.mastodon.collection.IntRefMap;
 
 import gnu.trove.TIntCollection;
@@ -398,16 +399,97 @@ public class IntRefArrayMap< V > implements IntRefMap< V >
 	@Override
 	public boolean forEachEntry( final TIntObjectProcedure< ? super V > procedure )
 	{
-		final TIntObjectIterator< V > it = iterator();
-		while ( it.hasNext() )
+		final V ref = pool.createRef();
+		final boolean result = forEachEntry( procedure, ref );
+		pool.releaseRef( ref );
+		return result;
+	}
+
+	/**
+	 * Executes <tt>procedure</tt> for each key/value entry in the map. Values
+	 * are retrieved into the specified reference, so that no object is
+	 * allocated during iteration.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference used to retrieve values. It is passed to
+	 *            the procedure for each entry, and must not be stored by it.
+	 * @return <code>false</code> if the loop over the entries terminated
+	 *         because the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( final TIntObjectProcedure< ? super V > procedure, final V ref )
+	{
+		final int n = keyToIndexMap.size();
+		for ( int key = 0; key < n; key++ )
 		{
-			it.advance();
-			if ( !procedure.execute( it.key(), it.value() ) )
+			final int index = keyToIndexMap.getQuick( key );
+			if ( index >= 0 && !procedure.execute( key, pool.getObject( index, ref ) ) )
 				return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Returns a cursor over the entries of this map. Contrary to
+	 * {@link #iterator()}, the cursor does not hold a reference of its own:
+	 * values are retrieved into references provided by the caller.
+	 *
+	 * @return a new cursor.
+	 */
+	public IntMapCursor< V > cursor()
+	{
+		return new IntMapCursor< V >()
+		{
+			private int cursor = -1;
+
+			private int next = nextKey( 0 );
+
+			private int nextKey( final int from )
+			{
+				final int n = keyToIndexMap.size();
+				for ( int key = from; key < n; key++ )
+					if ( keyToIndexMap.getQuick( key ) >= 0 )
+						return key;
+				return n;
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < keyToIndexMap.size();
+			}
+
+			@Override
+			public void advance()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				cursor = next;
+				next = nextKey( cursor + 1 );
+			}
+
+			@Override
+			public int key()
+			{
+				return cursor;
+			}
+
+			@Override
+			public V value( final V ref )
+			{
+				return pool.getObject( keyToIndexMap.get( cursor ), ref );
+			}
+
+			@Override
+			public void remove()
+			{
+				if ( keyToIndexMap.set( cursor, NO_ENTRY_VALUE ) >= 0 )
+					--size;
+			}
+		};
+	}
+
 	@Override
 	public void transformValues( final TObjectFunction< V, V > function )
 	{
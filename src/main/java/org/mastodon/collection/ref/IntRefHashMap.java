@@ -34,6 +34,7 @@ import java.util.Map;
 
 import org.mastodon.Ref;
 import org.mastodon.RefPool;
+import org.mastodon.collection.IntMapCursor;
 import org.mastodon.collection.IntRefMap;
 
 import gnu.trove.function.TObjectFunction;
@@ -352,14 +353,72 @@ public class IntRefHashMap< V > implements IntRefMap< V >
 	@Override
 	public boolean forEachEntry( final TIntObjectProcedure< ? super V > procedure )
 	{
-		final TIntObjectIterator< V > it = iterator();
-		while ( it.hasNext() )
+		final V ref = pool.createRef();
+		final boolean result = forEachEntry( procedure, ref );
+		pool.releaseRef( ref );
+		return result;
+	}
+
+	/**
+	 * Executes <tt>procedure</tt> for each key/value entry in the map. Values
+	 * are retrieved into the specified reference, so that no object is
+	 * allocated during iteration.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference used to retrieve values. It is passed to
+	 *            the procedure for each entry, and must not be stored by it.
+	 * @return <code>false</code> if the loop over the entries terminated
+	 *         because the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( final TIntObjectProcedure< ? super V > procedure, final V ref )
+	{
+		return keyToIndexMap.forEachEntry( ( key, index ) -> procedure.execute( key, pool.getObject( index, ref ) ) );
+	}
+
+	/**
+	 * Returns a cursor over the entries of this map. Contrary to
+	 * {@link #iterator()}, the cursor does not hold a reference of its own:
+	 * values are retrieved into references provided by the caller.
+	 *
+	 * @return a new cursor.
+	 */
+	public IntMapCursor< V > cursor()
+	{
+		final TIntIntIterator it = keyToIndexMap.iterator();
+		return new IntMapCursor< V >()
 		{
-			it.advance();
-			if ( !procedure.execute( it.key(), it.value() ) )
-				return false;
-		}
-		return true;
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public void advance()
+			{
+				it.advance();
+			}
+
+			@Override
+			public int key()
+			{
+				return it.key();
+			}
+
+			@Override
+			public V value( final V ref )
+			{
+				return pool.getObject( it.value(), ref );
+			}
+
+			@Override
+			public void remove()
+			{
+				it.remove();
+			}
+		};
 	}
 
 	@Override
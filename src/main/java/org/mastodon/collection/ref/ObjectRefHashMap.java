@@ -32,14 +32,18 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.collection.ObjectRefMap;
 import org.mastodon.collection.RefCollection;
 
 import gnu.trove.impl.Constants;
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TObjectIntIterator;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TObjectObjectProcedure;
 
 /**
  * A data structure that maps objects to reference objects.
@@ -214,6 +218,79 @@ public class ObjectRefHashMap< K, V > implements ObjectRefMap< K, V >
 		return pool.createRef();
 	}
 
+	/**
+	 * Executes <tt>procedure</tt> for each key/value entry in the map. Values
+	 * are retrieved into the specified reference, so that no object is
+	 * allocated during iteration.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference used to retrieve values. It is passed to
+	 *            the procedure for each entry, and must not be stored by it.
+	 * @return <code>false</code> if the loop over the entries terminated
+	 *         because the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( final TObjectObjectProcedure< ? super K, ? super V > procedure, final V ref )
+	{
+		return indexmap.forEachEntry( ( key, index ) -> procedure.execute( key, pool.getObject( index, ref ) ) );
+	}
+
+	@Override
+	public void forEach( final BiConsumer< ? super K, ? super V > action )
+	{
+		final V ref = pool.createRef();
+		indexmap.forEachEntry( ( key, index ) -> {
+			action.accept( key, pool.getObject( index, ref ) );
+			return true;
+		} );
+		pool.releaseRef( ref );
+	}
+
+	/**
+	 * Returns a cursor over the entries of this map. Values are retrieved into
+	 * references provided by the caller. The key reference passed to
+	 * {@link MapCursor#key(Object)} is ignored.
+	 *
+	 * @return a new cursor.
+	 */
+	public MapCursor< K, V > cursor()
+	{
+		final TObjectIntIterator< K > it = indexmap.iterator();
+		return new MapCursor< K, V >()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public void advance()
+			{
+				it.advance();
+			}
+
+			@Override
+			public K key( final K ref )
+			{
+				return it.key();
+			}
+
+			@Override
+			public V value( final V ref )
+			{
+				return pool.getObject( it.value(), ref );
+			}
+
+			@Override
+			public void remove()
+			{
+				it.remove();
+			}
+		};
+	}
+
 	@Override
 	public String toString() {
 		final Iterator<Entry<K,V>> i = entrySet().iterator();
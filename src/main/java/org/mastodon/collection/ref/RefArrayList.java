@@ -36,10 +36,12 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.function.ToDoubleFunction;
 
 import org.mastodon.Ref;
 import org.mastodon.RefPool;
 import org.mastodon.collection.RefList;
+import org.mastodon.collection.algorithm.DoubleKeySort;
 
 import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
@@ -119,12 +121,12 @@ public class RefArrayList< O > implements IntBackedRefCollection< O >, RefPoolBa
 		indices.insert( index, pool.getId( obj ) );
 	}
 
-	// TODO: consider throwing exception in addAll if objs are not from same pool
 	@Override
 	public boolean addAll( final Collection< ? extends O > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.addAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return indices.addAll( objIndices );
 		else
 		{
 			for ( final O obj : objs )
@@ -136,9 +138,9 @@ public class RefArrayList< O > implements IntBackedRefCollection< O >, RefPoolBa
 	@Override
 	public boolean addAll( final int index, final Collection< ? extends O > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
 		{
-			final TIntCollection objIndices = ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection();
 			indices.insert( index, objIndices.toArray() );
 		}
 		else
@@ -198,8 +200,9 @@ public class RefArrayList< O > implements IntBackedRefCollection< O >, RefPoolBa
 	@Override
 	public boolean containsAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.containsAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return IntBackedRefCollections.asLookup( indices ).containsAll( objIndices );
 		else
 		{
 			for ( final Object obj : objs )
@@ -474,28 +477,44 @@ public class RefArrayList< O > implements IntBackedRefCollection< O >, RefPoolBa
 	@Override
 	public boolean removeAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.removeAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return IntBackedRefCollections.filterInPlace( indices, IntBackedRefCollections.asLookup( objIndices ), false );
 		else
-		{
-			boolean changed = false;
-			for ( final Object obj : objs )
-				if ( remove( obj ) )
-					changed = true;
-			return changed;
-		}
+			return filterInPlace( objs, false );
 	}
 
 	@Override
 	public boolean retainAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.retainAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return IntBackedRefCollections.filterInPlace( indices, IntBackedRefCollections.asLookup( objIndices ), true );
 		else
+			return filterInPlace( objs, true );
+	}
+
+	/**
+	 * Removes all elements that are (if {@code retain == false}) or are not (if
+	 * {@code retain == true}) contained in {@code objs}, in a single pass.
+	 */
+	private boolean filterInPlace( final Collection< ? > objs, final boolean retain )
+	{
+		final Collection< ? > lookup = IntBackedRefCollections.asLookup( objs );
+		final int size = indices.size();
+		final O ref = createRef();
+		int j = 0;
+		for ( int i = 0; i < size; ++i )
 		{
-			// TODO
-			throw new UnsupportedOperationException( "not yet implemented" );
+			final int index = indices.getQuick( i );
+			if ( lookup.contains( pool.getObject( index, ref ) ) == retain )
+				indices.setQuick( j++, index );
 		}
+		releaseRef( ref );
+		if ( j == size )
+			return false;
+		indices.remove( j, size - j );
+		return true;
 	}
 
 	@Override
@@ -535,7 +554,55 @@ public class RefArrayList< O > implements IntBackedRefCollection< O >, RefPoolBa
 	{
 		if ( indices.size() < 2 )
 			return;
-		quicksort( 0, size() - 1, comparator, createRef(), createRef() );
+		final O tmpRef1 = createRef();
+		final O tmpRef2 = createRef();
+		quicksort( 0, size() - 1, comparator, tmpRef1, tmpRef2 );
+		releaseRef( tmpRef1 );
+		releaseRef( tmpRef2 );
+	}
+
+	/**
+	 * Sorts this list by a {@code double} key computed for each element.
+	 * <p>
+	 * The key function is evaluated exactly once per element. Keys are then
+	 * sorted together with the backing indices, using multiple threads for
+	 * large lists. The sort is stable. Keys are ordered as by
+	 * {@link Double#compare(double, double)}.
+	 *
+	 * @param keyFunction
+	 *            computes the sort key of an element.
+	 */
+	public void sortByDoubleKey( final ToDoubleFunction< ? super O > keyFunction )
+	{
+		sortByDoubleKey( keyFunction, true );
+	}
+
+	/**
+	 * Sorts this list by a {@code double} key computed for each element.
+	 * <p>
+	 * The key function is evaluated exactly once per element. The sort is
+	 * stable. Keys are ordered as by {@link Double#compare(double, double)}.
+	 *
+	 * @param keyFunction
+	 *            computes the sort key of an element.
+	 * @param parallel
+	 *            whether to use multiple threads for large lists.
+	 */
+	public void sortByDoubleKey( final ToDoubleFunction< ? super O > keyFunction, final boolean parallel )
+	{
+		final int size = indices.size();
+		if ( size < 2 )
+			return;
+
+		final double[] keys = new double[ size ];
+		final O ref = createRef();
+		for ( int i = 0; i < size; ++i )
+			keys[ i ] = keyFunction.applyAsDouble( getQuick( i, ref ) );
+		releaseRef( ref );
+
+		final int[] sorted = indices.toArray();
+		DoubleKeySort.sort( keys, sorted, parallel );
+		indices.set( 0, sorted );
 	}
 
 	private void quicksort( final int low, final int high, final Comparator< ? super O > comparator, final O tmpRef1, final O tmpRef2 )
@@ -0,0 +1,560 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefDoubleMap;
+
+import gnu.trove.TDoubleCollection;
+import gnu.trove.function.TDoubleFunction;
+import gnu.trove.impl.Constants;
+import gnu.trove.impl.HashFunctions;
+import gnu.trove.iterator.TDoubleIterator;
+import gnu.trove.iterator.TObjectDoubleIterator;
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.procedure.TDoubleProcedure;
+import gnu.trove.procedure.TObjectDoubleProcedure;
+
+/**
+ * A dense {@link RefDoubleMap} implementation backed by a {@code double[]} array
+ * indexed by {@link RefPool#getId(Object) pool index}, and a presence bitmap.
+ * <p>
+ * Compared with {@link RefDoubleHashMap}, lookups do not need to probe a hash
+ * table and each entry takes only 8 bytes plus one bit.
+ * However, the array has to cover the largest pool index that has a mapping,
+ * so this is only efficient if most objects of the pool have a value.
+ * <p>
+ * Iteration order is deterministic and corresponds to the order of pool
+ * indices.
+ *
+ * @param <K>
+ *            key type.
+ */
+public class RefDoubleArrayMap< K > extends AbstractRefArrayMap< K > implements RefDoubleMap< K >
+{
+	private final double noEntryValue;
+
+	/**
+	 * Values indexed by pool index. Entries without a mapping hold
+	 * {@link #noEntryValue}.
+	 */
+	private double[] values;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	public RefDoubleArrayMap( final RefPool< K > pool, final double noEntryValue, final int initialCapacity )
+	{
+		super( pool, Math.max( initialCapacity, 1 ) );
+		this.noEntryValue = noEntryValue;
+		values = new double[ Math.max( initialCapacity, 1 ) ];
+		Arrays.fill( values, noEntryValue );
+	}
+
+	public RefDoubleArrayMap( final RefPool< K > pool, final double noEntryValue )
+	{
+		this( pool, noEntryValue, Constants.DEFAULT_CAPACITY );
+	}
+
+	/*
+	 * DENSE ACCESS
+	 */
+
+	@Override
+	public void ensureCapacity( final int capacity )
+	{
+		if ( capacity > values.length )
+		{
+			final int oldLength = values.length;
+			values = Arrays.copyOf( values, Math.max( capacity, oldLength + ( oldLength >> 1 ) ) );
+			Arrays.fill( values, oldLength, values.length, noEntryValue );
+		}
+	}
+
+	/**
+	 * Returns the backing array, indexed by pool index. Entries of objects
+	 * without a mapping (and entries beyond the largest pool index) hold
+	 * {@link #getNoEntryValue()}. The array is replaced when the map grows, so
+	 * it must not be kept across {@link #put(Object, double)}.
+	 *
+	 * @return the backing array.
+	 */
+	public double[] getArray()
+	{
+		return values;
+	}
+
+	/**
+	 * Returns the value at the specified pool index, or
+	 * {@link #getNoEntryValue()} if there is no mapping for it.
+	 *
+	 * @param index
+	 *            the pool index of the key.
+	 * @return the value.
+	 */
+	public double getQuick( final int index )
+	{
+		return index < values.length ? values[ index ] : noEntryValue;
+	}
+
+	/**
+	 * Sets the value at the specified pool index.
+	 *
+	 * @param index
+	 *            the pool index of the key.
+	 * @param value
+	 *            the value.
+	 * @return the previous value, or {@link #getNoEntryValue()} if there was
+	 *         no mapping for {@code index}.
+	 */
+	public double putQuick( final int index, final double value )
+	{
+		ensureCapacity( index + 1 );
+		final double old = values[ index ];
+		values[ index ] = value;
+		setPresent( index );
+		return old;
+	}
+
+	@Override
+	protected void clearValue( final int index )
+	{
+		values[ index ] = noEntryValue;
+	}
+
+	@Override
+	protected void clearValues()
+	{
+		Arrays.fill( values, noEntryValue );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean containsValue( final double value )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( values[ i ] == value )
+				return true;
+		return false;
+	}
+
+	@Override
+	public double get( final Object key )
+	{
+		final int index = indexOf( key );
+		return index >= 0 ? getQuick( index ) : noEntryValue;
+	}
+
+	@Override
+	public double put( final K key, final double value )
+	{
+		return putQuick( pool.getId( key ), value );
+	}
+
+	@Override
+	public double putIfAbsent( final K key, final double value )
+	{
+		final int index = pool.getId( key );
+		if ( present.get( index ) )
+			return values[ index ];
+		putQuick( index, value );
+		return noEntryValue;
+	}
+
+	@Override
+	public void putAll( final Map< ? extends K, ? extends Double > map )
+	{
+		for ( final Map.Entry< ? extends K, ? extends Double > entry : map.entrySet() )
+			put( entry.getKey(), entry.getValue().doubleValue() );
+	}
+
+	@Override
+	public void putAll( final TObjectDoubleMap< ? extends K > map )
+	{
+		map.forEachEntry( ( key, value ) -> {
+			put( key, value );
+			return true;
+		} );
+	}
+
+	@Override
+	public double remove( final Object key )
+	{
+		final int index = indexOf( key );
+		if ( index < 0 || !present.get( index ) )
+			return noEntryValue;
+		final double old = values[ index ];
+		removeIndex( index );
+		return old;
+	}
+
+	@Override
+	public double getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public double[] values()
+	{
+		return values( new double[ size ] );
+	}
+
+	@Override
+	public double[] values( final double[] array )
+	{
+		final double[] a = array.length < size ? new double[ size ] : array;
+		int j = 0;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			a[ j++ ] = values[ i ];
+		return a;
+	}
+
+	@Override
+	public TDoubleCollection valueCollection()
+	{
+		return new ValueCollectionView();
+	}
+
+	@Override
+	public TObjectDoubleIterator< K > iterator()
+	{
+		return new RefDoubleIterator();
+	}
+
+	@Override
+	public boolean increment( final K key )
+	{
+		return adjustValue( key, 1.0 );
+	}
+
+	@Override
+	public boolean adjustValue( final K key, final double amount )
+	{
+		final int index = pool.getId( key );
+		if ( !present.get( index ) )
+			return false;
+		values[ index ] += amount;
+		return true;
+	}
+
+	@Override
+	public double adjustOrPutValue( final K key, final double adjust_amount, final double put_amount )
+	{
+		final int index = pool.getId( key );
+		if ( present.get( index ) )
+			return values[ index ] += adjust_amount;
+		putQuick( index, put_amount );
+		return put_amount;
+	}
+
+	@Override
+	public boolean forEachValue( final TDoubleProcedure procedure )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( !procedure.execute( values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final TObjectDoubleProcedure< ? super K > procedure, final K ref )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( !procedure.execute( pool.getObject( i, ref ), values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final TObjectDoubleProcedure< ? super K > procedure )
+	{
+		final K ref = createRef();
+		final boolean result = forEachEntry( procedure, ref );
+		releaseRef( ref );
+		return result;
+	}
+
+	@Override
+	public void transformValues( final TDoubleFunction function )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			values[ i ] = function.execute( values[ i ] );
+	}
+
+	@Override
+	public boolean retainEntries( final TObjectDoubleProcedure< ? super K > procedure, final K ref )
+	{
+		return removeIndicesIf( i -> !procedure.execute( pool.getObject( i, ref ), values[ i ] ) );
+	}
+
+	@Override
+	public boolean retainEntries( final TObjectDoubleProcedure< ? super K > procedure )
+	{
+		final K ref = createRef();
+		final boolean result = retainEntries( procedure, ref );
+		releaseRef( ref );
+		return result;
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( this == o )
+			return true;
+		if ( o == null || getClass() != o.getClass() )
+			return false;
+
+		final RefDoubleArrayMap< ? > that = ( RefDoubleArrayMap< ? > ) o;
+
+		if ( size != that.size || !present.equals( that.present ) )
+			return false;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( values[ i ] != that.values[ i ] )
+				return false;
+		if ( !pool.equals( that.pool ) )
+			return false;
+		return keyType.equals( that.keyType );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = 0;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			result += i ^ HashFunctions.hash( values[ i ] );
+		result = 31 * result + pool.hashCode();
+		result = 31 * result + keyType.hashCode();
+		return result;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private class RefDoubleIterator extends IndexIterator implements TObjectDoubleIterator< K >
+	{
+		private final K obj = createRef();
+
+		@Override
+		public K key()
+		{
+			return pool.getObject( current, obj );
+		}
+
+		@Override
+		public double value()
+		{
+			return values[ current ];
+		}
+
+		@Override
+		public double setValue( final double val )
+		{
+			final double old = values[ current ];
+			values[ current ] = val;
+			return old;
+		}
+	}
+
+	private class ValueIterator extends IndexIterator implements TDoubleIterator
+	{
+		@Override
+		public double next()
+		{
+			advance();
+			return values[ current ];
+		}
+	}
+
+	/**
+	 * Live view of the values of this map.
+	 */
+	private class ValueCollectionView implements TDoubleCollection
+	{
+		@Override
+		public double getNoEntryValue()
+		{
+			return noEntryValue;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		@Override
+		public boolean contains( final double entry )
+		{
+			return containsValue( entry );
+		}
+
+		@Override
+		public TDoubleIterator iterator()
+		{
+			return new ValueIterator();
+		}
+
+		@Override
+		public double[] toArray()
+		{
+			return values();
+		}
+
+		@Override
+		public double[] toArray( final double[] dest )
+		{
+			return values( dest );
+		}
+
+		@Override
+		public boolean add( final double entry )
+		{
+			throw new UnsupportedOperationException( "add is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean remove( final double entry )
+		{
+			for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+				if ( values[ i ] == entry )
+					return removeIndex( i );
+			return false;
+		}
+
+		@Override
+		public boolean containsAll( final Collection< ? > collection )
+		{
+			for ( final Object o : collection )
+				if ( !( o instanceof Double ) || !containsValue( ( ( Double ) o ).doubleValue() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean containsAll( final TDoubleCollection collection )
+		{
+			return collection.forEach( RefDoubleArrayMap.this::containsValue );
+		}
+
+		@Override
+		public boolean containsAll( final double[] array )
+		{
+			for ( final double v : array )
+				if ( !containsValue( v ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean addAll( final Collection< ? extends Double > collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean addAll( final TDoubleCollection collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean addAll( final double[] array )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean retainAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean retainAll( final TDoubleCollection collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean retainAll( final double[] array )
+		{
+			final double[] sorted = array.clone();
+			Arrays.sort( sorted );
+			return removeIndicesIf( i -> Arrays.binarySearch( sorted, values[ i ] ) < 0 );
+		}
+
+		@Override
+		public boolean removeAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean removeAll( final TDoubleCollection collection )
+		{
+			return removeIndicesIf( i -> collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean removeAll( final double[] array )
+		{
+			final double[] sorted = array.clone();
+			Arrays.sort( sorted );
+			return removeIndicesIf( i -> Arrays.binarySearch( sorted, values[ i ] ) >= 0 );
+		}
+
+		@Override
+		public void clear()
+		{
+			RefDoubleArrayMap.this.clear();
+		}
+
+		@Override
+		public boolean forEach( final TDoubleProcedure procedure )
+		{
+			return forEachValue( procedure );
+		}
+	}
+}
@@ -234,13 +234,7 @@ public class RefDoubleHashMap< K > implements RefDoubleMap< K >
 	@Override
 	public boolean forEachKey( final TObjectProcedure< ? super K > procedure, final K ref )
 	{
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			if ( !procedure.execute( key ) )
-				return false;
-		}
-		return true;
+		return indexmap.forEachKey( id -> procedure.execute( pool.getObject( id, ref ) ) );
 	}
 
 	@Override
@@ -259,14 +253,7 @@ public class RefDoubleHashMap< K > implements RefDoubleMap< K >
 	@Override
 	public boolean forEachEntry( final TObjectDoubleProcedure< ? super K > procedure, final K ref )
 	{
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			final double value = indexmap.get( id );
-			if ( !procedure.execute( key, value ) )
-				return false;
-		}
-		return true;
+		return indexmap.forEachEntry( ( id, value ) -> procedure.execute( pool.getObject( id, ref ), value ) );
 	}
 
 	@Override
@@ -285,18 +272,7 @@ public class RefDoubleHashMap< K > implements RefDoubleMap< K >
 	@Override
 	public boolean retainEntries( final TObjectDoubleProcedure< ? super K > procedure, final K ref )
 	{
-		boolean modified = false;
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			final double value = indexmap.get( id );
-			if ( !procedure.execute( key, value ) )
-			{
-				remove( ref );
-				modified = true;
-			}
-		}
-		return modified;
+		return indexmap.retainEntries( ( id, value ) -> procedure.execute( pool.getObject( id, ref ), value ) );
 	}
 
 	@Override
@@ -0,0 +1,560 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefIntMap;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.function.TIntFunction;
+import gnu.trove.impl.Constants;
+import gnu.trove.impl.HashFunctions;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TObjectIntIterator;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.procedure.TObjectIntProcedure;
+
+/**
+ * A dense {@link RefIntMap} implementation backed by a {@code int[]} array
+ * indexed by {@link RefPool#getId(Object) pool index}, and a presence bitmap.
+ * <p>
+ * Compared with {@link RefIntHashMap}, lookups do not need to probe a hash
+ * table and each entry takes only 4 bytes plus one bit.
+ * However, the array has to cover the largest pool index that has a mapping,
+ * so this is only efficient if most objects of the pool have a value.
+ * <p>
+ * Iteration order is deterministic and corresponds to the order of pool
+ * indices.
+ *
+ * @param <K>
+ *            key type.
+ */
+public class RefIntArrayMap< K > extends AbstractRefArrayMap< K > implements RefIntMap< K >
+{
+	private final int noEntryValue;
+
+	/**
+	 * Values indexed by pool index. Entries without a mapping hold
+	 * {@link #noEntryValue}.
+	 */
+	private int[] values;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	public RefIntArrayMap( final RefPool< K > pool, final int noEntryValue, final int initialCapacity )
+	{
+		super( pool, Math.max( initialCapacity, 1 ) );
+		this.noEntryValue = noEntryValue;
+		values = new int[ Math.max( initialCapacity, 1 ) ];
+		Arrays.fill( values, noEntryValue );
+	}
+
+	public RefIntArrayMap( final RefPool< K > pool, final int noEntryValue )
+	{
+		this( pool, noEntryValue, Constants.DEFAULT_CAPACITY );
+	}
+
+	/*
+	 * DENSE ACCESS
+	 */
+
+	@Override
+	public void ensureCapacity( final int capacity )
+	{
+		if ( capacity > values.length )
+		{
+			final int oldLength = values.length;
+			values = Arrays.copyOf( values, Math.max( capacity, oldLength + ( oldLength >> 1 ) ) );
+			Arrays.fill( values, oldLength, values.length, noEntryValue );
+		}
+	}
+
+	/**
+	 * Returns the backing array, indexed by pool index. Entries of objects
+	 * without a mapping (and entries beyond the largest pool index) hold
+	 * {@link #getNoEntryValue()}. The array is replaced when the map grows, so
+	 * it must not be kept across {@link #put(Object, int)}.
+	 *
+	 * @return the backing array.
+	 */
+	public int[] getArray()
+	{
+		return values;
+	}
+
+	/**
+	 * Returns the value at the specified pool index, or
+	 * {@link #getNoEntryValue()} if there is no mapping for it.
+	 *
+	 * @param index
+	 *            the pool index of the key.
+	 * @return the value.
+	 */
+	public int getQuick( final int index )
+	{
+		return index < values.length ? values[ index ] : noEntryValue;
+	}
+
+	/**
+	 * Sets the value at the specified pool index.
+	 *
+	 * @param index
+	 *            the pool index of the key.
+	 * @param value
+	 *            the value.
+	 * @return the previous value, or {@link #getNoEntryValue()} if there was
+	 *         no mapping for {@code index}.
+	 */
+	public int putQuick( final int index, final int value )
+	{
+		ensureCapacity( index + 1 );
+		final int old = values[ index ];
+		values[ index ] = value;
+		setPresent( index );
+		return old;
+	}
+
+	@Override
+	protected void clearValue( final int index )
+	{
+		values[ index ] = noEntryValue;
+	}
+
+	@Override
+	protected void clearValues()
+	{
+		Arrays.fill( values, noEntryValue );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean containsValue( final int value )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( values[ i ] == value )
+				return true;
+		return false;
+	}
+
+	@Override
+	public int get( final Object key )
+	{
+		final int index = indexOf( key );
+		return index >= 0 ? getQuick( index ) : noEntryValue;
+	}
+
+	@Override
+	public int put( final K key, final int value )
+	{
+		return putQuick( pool.getId( key ), value );
+	}
+
+	@Override
+	public int putIfAbsent( final K key, final int value )
+	{
+		final int index = pool.getId( key );
+		if ( present.get( index ) )
+			return values[ index ];
+		putQuick( index, value );
+		return noEntryValue;
+	}
+
+	@Override
+	public void putAll( final Map< ? extends K, ? extends Integer > map )
+	{
+		for ( final Map.Entry< ? extends K, ? extends Integer > entry : map.entrySet() )
+			put( entry.getKey(), entry.getValue().intValue() );
+	}
+
+	@Override
+	public void putAll( final TObjectIntMap< ? extends K > map )
+	{
+		map.forEachEntry( ( key, value ) -> {
+			put( key, value );
+			return true;
+		} );
+	}
+
+	@Override
+	public int remove( final Object key )
+	{
+		final int index = indexOf( key );
+		if ( index < 0 || !present.get( index ) )
+			return noEntryValue;
+		final int old = values[ index ];
+		removeIndex( index );
+		return old;
+	}
+
+	@Override
+	public int getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public int[] values()
+	{
+		return values( new int[ size ] );
+	}
+
+	@Override
+	public int[] values( final int[] array )
+	{
+		final int[] a = array.length < size ? new int[ size ] : array;
+		int j = 0;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			a[ j++ ] = values[ i ];
+		return a;
+	}
+
+	@Override
+	public TIntCollection valueCollection()
+	{
+		return new ValueCollectionView();
+	}
+
+	@Override
+	public TObjectIntIterator< K > iterator()
+	{
+		return new RefIntIterator();
+	}
+
+	@Override
+	public boolean increment( final K key )
+	{
+		return adjustValue( key, 1 );
+	}
+
+	@Override
+	public boolean adjustValue( final K key, final int amount )
+	{
+		final int index = pool.getId( key );
+		if ( !present.get( index ) )
+			return false;
+		values[ index ] += amount;
+		return true;
+	}
+
+	@Override
+	public int adjustOrPutValue( final K key, final int adjust_amount, final int put_amount )
+	{
+		final int index = pool.getId( key );
+		if ( present.get( index ) )
+			return values[ index ] += adjust_amount;
+		putQuick( index, put_amount );
+		return put_amount;
+	}
+
+	@Override
+	public boolean forEachValue( final TIntProcedure procedure )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( !procedure.execute( values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final TObjectIntProcedure< ? super K > procedure, final K ref )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( !procedure.execute( pool.getObject( i, ref ), values[ i ] ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final TObjectIntProcedure< ? super K > procedure )
+	{
+		final K ref = createRef();
+		final boolean result = forEachEntry( procedure, ref );
+		releaseRef( ref );
+		return result;
+	}
+
+	@Override
+	public void transformValues( final TIntFunction function )
+	{
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			values[ i ] = function.execute( values[ i ] );
+	}
+
+	@Override
+	public boolean retainEntries( final TObjectIntProcedure< ? super K > procedure, final K ref )
+	{
+		return removeIndicesIf( i -> !procedure.execute( pool.getObject( i, ref ), values[ i ] ) );
+	}
+
+	@Override
+	public boolean retainEntries( final TObjectIntProcedure< ? super K > procedure )
+	{
+		final K ref = createRef();
+		final boolean result = retainEntries( procedure, ref );
+		releaseRef( ref );
+		return result;
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( this == o )
+			return true;
+		if ( o == null || getClass() != o.getClass() )
+			return false;
+
+		final RefIntArrayMap< ? > that = ( RefIntArrayMap< ? > ) o;
+
+		if ( size != that.size || !present.equals( that.present ) )
+			return false;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			if ( values[ i ] != that.values[ i ] )
+				return false;
+		if ( !pool.equals( that.pool ) )
+			return false;
+		return keyType.equals( that.keyType );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = 0;
+		for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+			result += i ^ HashFunctions.hash( values[ i ] );
+		result = 31 * result + pool.hashCode();
+		result = 31 * result + keyType.hashCode();
+		return result;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private class RefIntIterator extends IndexIterator implements TObjectIntIterator< K >
+	{
+		private final K obj = createRef();
+
+		@Override
+		public K key()
+		{
+			return pool.getObject( current, obj );
+		}
+
+		@Override
+		public int value()
+		{
+			return values[ current ];
+		}
+
+		@Override
+		public int setValue( final int val )
+		{
+			final int old = values[ current ];
+			values[ current ] = val;
+			return old;
+		}
+	}
+
+	private class ValueIterator extends IndexIterator implements TIntIterator
+	{
+		@Override
+		public int next()
+		{
+			advance();
+			return values[ current ];
+		}
+	}
+
+	/**
+	 * Live view of the values of this map.
+	 */
+	private class ValueCollectionView implements TIntCollection
+	{
+		@Override
+		public int getNoEntryValue()
+		{
+			return noEntryValue;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		@Override
+		public boolean contains( final int entry )
+		{
+			return containsValue( entry );
+		}
+
+		@Override
+		public TIntIterator iterator()
+		{
+			return new ValueIterator();
+		}
+
+		@Override
+		public int[] toArray()
+		{
+			return values();
+		}
+
+		@Override
+		public int[] toArray( final int[] dest )
+		{
+			return values( dest );
+		}
+
+		@Override
+		public boolean add( final int entry )
+		{
+			throw new UnsupportedOperationException( "add is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean remove( final int entry )
+		{
+			for ( int i = present.nextSetBit( 0 ); i >= 0; i = present.nextSetBit( i + 1 ) )
+				if ( values[ i ] == entry )
+					return removeIndex( i );
+			return false;
+		}
+
+		@Override
+		public boolean containsAll( final Collection< ? > collection )
+		{
+			for ( final Object o : collection )
+				if ( !( o instanceof Integer ) || !containsValue( ( ( Integer ) o ).intValue() ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean containsAll( final TIntCollection collection )
+		{
+			return collection.forEach( RefIntArrayMap.this::containsValue );
+		}
+
+		@Override
+		public boolean containsAll( final int[] array )
+		{
+			for ( final int v : array )
+				if ( !containsValue( v ) )
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean addAll( final Collection< ? extends Integer > collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean addAll( final TIntCollection collection )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean addAll( final int[] array )
+		{
+			throw new UnsupportedOperationException( "addAll is not supported for valueCollection view." );
+		}
+
+		@Override
+		public boolean retainAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean retainAll( final TIntCollection collection )
+		{
+			return removeIndicesIf( i -> !collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean retainAll( final int[] array )
+		{
+			final int[] sorted = array.clone();
+			Arrays.sort( sorted );
+			return removeIndicesIf( i -> Arrays.binarySearch( sorted, values[ i ] ) < 0 );
+		}
+
+		@Override
+		public boolean removeAll( final Collection< ? > collection )
+		{
+			return removeIndicesIf( i -> collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean removeAll( final TIntCollection collection )
+		{
+			return removeIndicesIf( i -> collection.contains( values[ i ] ) );
+		}
+
+		@Override
+		public boolean removeAll( final int[] array )
+		{
+			final int[] sorted = array.clone();
+			Arrays.sort( sorted );
+			return removeIndicesIf( i -> Arrays.binarySearch( sorted, values[ i ] ) >= 0 );
+		}
+
+		@Override
+		public void clear()
+		{
+			RefIntArrayMap.this.clear();
+		}
+
+		@Override
+		public boolean forEach( final TIntProcedure procedure )
+		{
+			return forEachValue( procedure );
+		}
+	}
+}
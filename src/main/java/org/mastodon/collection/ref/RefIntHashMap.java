@@ -39,6 +39,7 @@ import gnu.trove.function.TIntFunction;
 import gnu.trove.impl.Constants;
 import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.iterator.TObjectIntIterator;
+import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.procedure.TIntProcedure;
@@ -51,7 +52,7 @@ public class RefIntHashMap< K > implements RefIntMap< K >
 
 	private static final float DEFAULT_LOAD_FACTOR = Constants.DEFAULT_LOAD_FACTOR;
 
-	private final TIntIntHashMap indexmap;
+	private final TIntIntMap indexmap;
 
 	private final RefPool< K > pool;
 
@@ -73,6 +74,21 @@ public class RefIntHashMap< K > implements RefIntMap< K >
 		this( pool, noEntryValue, Constants.DEFAULT_CAPACITY );
 	}
 
+	/**
+	 * Creates a map backed by the specified map from pool index to value.
+	 *
+	 * @param pool
+	 *            the pool keys belong to.
+	 * @param indexmap
+	 *            the backing map.
+	 */
+	protected RefIntHashMap( final RefPool< K > pool, final TIntIntMap indexmap )
+	{
+		this.pool = pool;
+		this.keyType = pool.getRefClass();
+		this.indexmap = indexmap;
+	}
+
 	/*
 	 * METHODS
 	 */
@@ -234,13 +250,7 @@ public class RefIntHashMap< K > implements RefIntMap< K >
 	@Override
 	public boolean forEachKey( final TObjectProcedure< ? super K > procedure, final K ref )
 	{
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			if ( !procedure.execute( key ) )
-				return false;
-		}
-		return true;
+		return indexmap.forEachKey( id -> procedure.execute( pool.getObject( id, ref ) ) );
 	}
 
 	@Override
@@ -259,14 +269,7 @@ public class RefIntHashMap< K > implements RefIntMap< K >
 	@Override
 	public boolean forEachEntry( final TObjectIntProcedure< ? super K > procedure, final K ref )
 	{
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			final int value = indexmap.get( id );
-			if ( !procedure.execute( key, value ) )
-				return false;
-		}
-		return true;
+		return indexmap.forEachEntry( ( id, value ) -> procedure.execute( pool.getObject( id, ref ), value ) );
 	}
 
 	@Override
@@ -285,18 +288,7 @@ public class RefIntHashMap< K > implements RefIntMap< K >
 	@Override
 	public boolean retainEntries( final TObjectIntProcedure< ? super K > procedure, final K ref )
 	{
-		boolean modified = false;
-		for ( final int id : indexmap.keys() )
-		{
-			final K key = pool.getObject( id, ref );
-			final int value = indexmap.get( id );
-			if ( !procedure.execute( key, value ) )
-			{
-				remove( ref );
-				modified = true;
-			}
-		}
-		return modified;
+		return indexmap.retainEntries( ( id, value ) -> procedure.execute( pool.getObject( id, ref ), value ) );
 	}
 
 	@Override
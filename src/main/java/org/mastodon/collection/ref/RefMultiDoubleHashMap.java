@@ -0,0 +1,431 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Arrays;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefMultiDoubleMap;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+/**
+ * A {@link RefMultiDoubleMap} implemented as an open-addressing hash table
+ * with linear probing, keyed by the internal pool index of the objects.
+ * <p>
+ * Keys are stored in an {@code int[]} and the rows of all keys in a single
+ * {@code double[]}, row {@code i} occupying the columns
+ * {@code i * numColumns() ... (i + 1) * numColumns() - 1}. Getting or setting
+ * a whole row thus costs a single probe. Removal uses backward-shift deletion,
+ * so the table never contains tombstones.
+ *
+ * @param <K>
+ *            the type of the keys of the map.
+ */
+public class RefMultiDoubleHashMap< K > implements RefMultiDoubleMap< K >
+{
+	private static final int FREE = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final RefPool< K > pool;
+
+	private final Class< K > keyType;
+
+	private final int numColumns;
+
+	private final double noEntryValue;
+
+	private int[] keys;
+
+	private double[] values;
+
+	private int mask;
+
+	private int size;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	public RefMultiDoubleHashMap( final RefPool< K > pool, final int numColumns, final double noEntryValue, final int initialCapacity )
+	{
+		if ( numColumns < 1 )
+			throw new IllegalArgumentException( "Number of columns must be at least 1: " + numColumns );
+		this.pool = pool;
+		this.keyType = pool.getRefClass();
+		this.numColumns = numColumns;
+		this.noEntryValue = noEntryValue;
+		allocate( tableSizeFor( initialCapacity ) );
+	}
+
+	public RefMultiDoubleHashMap( final RefPool< K > pool, final int numColumns, final double noEntryValue )
+	{
+		this( pool, numColumns, noEntryValue, DEFAULT_CAPACITY );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public int numColumns()
+	{
+		return numColumns;
+	}
+
+	@Override
+	public double getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill( keys, FREE );
+		size = 0;
+	}
+
+	@Override
+	public boolean containsKey( final Object key )
+	{
+		return slotOf( key ) >= 0;
+	}
+
+	@Override
+	public double get( final K key, final int column )
+	{
+		checkColumn( column );
+		final int slot = find( pool.getId( key ) );
+		return slot >= 0 ? values[ slot * numColumns + column ] : noEntryValue;
+	}
+
+	@Override
+	public boolean get( final K key, final double[] row )
+	{
+		final int slot = find( pool.getId( key ) );
+		if ( slot >= 0 )
+		{
+			System.arraycopy( values, slot * numColumns, row, 0, numColumns );
+			return true;
+		}
+		Arrays.fill( row, 0, numColumns, noEntryValue );
+		return false;
+	}
+
+	@Override
+	public double put( final K key, final int column, final double value )
+	{
+		checkColumn( column );
+		final int slot = insert( pool.getId( key ) );
+		final int i = slot * numColumns + column;
+		final double old = values[ i ];
+		values[ i ] = value;
+		return old;
+	}
+
+	@Override
+	public boolean put( final K key, final double[] row )
+	{
+		return put( key, row, null );
+	}
+
+	@Override
+	public boolean put( final K key, final double[] row, final double[] replaced )
+	{
+		final int before = size;
+		final int offset = insert( pool.getId( key ) ) * numColumns;
+		if ( replaced != null )
+			System.arraycopy( values, offset, replaced, 0, numColumns );
+		System.arraycopy( row, 0, values, offset, numColumns );
+		return size == before;
+	}
+
+	@Override
+	public boolean remove( final Object key )
+	{
+		return remove( key, null );
+	}
+
+	@Override
+	public boolean remove( final Object key, final double[] replaced )
+	{
+		final int slot = slotOf( key );
+		if ( slot < 0 )
+		{
+			if ( replaced != null )
+				Arrays.fill( replaced, 0, numColumns, noEntryValue );
+			return false;
+		}
+		if ( replaced != null )
+			System.arraycopy( values, slot * numColumns, replaced, 0, numColumns );
+		removeSlot( slot );
+		return true;
+	}
+
+	@Override
+	public RefList< K > keys()
+	{
+		final RefArrayList< K > list = new RefArrayList<>( pool, size );
+		for ( final int id : keys )
+			if ( id != FREE )
+				list.getIndexCollection().add( id );
+		return list;
+	}
+
+	@Override
+	public double[] getColumn( final int column )
+	{
+		checkColumn( column );
+		final double[] result = new double[ size ];
+		for ( int slot = 0, i = 0; slot < keys.length; slot++ )
+			if ( keys[ slot ] != FREE )
+				result[ i++ ] = values[ slot * numColumns + column ];
+		return result;
+	}
+
+	@Override
+	public boolean forEachKey( final TObjectProcedure< ? super K > procedure, final K ref )
+	{
+		for ( final int id : keys )
+			if ( id != FREE && !procedure.execute( pool.getObject( id, ref ) ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final RowProcedure< ? super K > procedure, final K ref )
+	{
+		final double[] row = new double[ numColumns ];
+		for ( int slot = 0; slot < keys.length; slot++ )
+		{
+			final int id = keys[ slot ];
+			if ( id == FREE )
+				continue;
+			System.arraycopy( values, slot * numColumns, row, 0, numColumns );
+			if ( !procedure.execute( pool.getObject( id, ref ), row ) )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public K createRef()
+	{
+		return pool.createRef();
+	}
+
+	@Override
+	public void releaseRef( final K obj )
+	{
+		pool.releaseRef( obj );
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( this == o )
+			return true;
+		if ( o == null || getClass() != o.getClass() )
+			return false;
+
+		final RefMultiDoubleHashMap< ? > that = ( RefMultiDoubleHashMap< ? > ) o;
+		if ( that.pool != pool || that.numColumns != numColumns || that.size != size )
+			return false;
+		for ( int slot = 0; slot < keys.length; slot++ )
+		{
+			final int id = keys[ slot ];
+			if ( id == FREE )
+				continue;
+			final int other = that.find( id );
+			if ( other < 0 )
+				return false;
+			for ( int c = 0; c < numColumns; c++ )
+				if ( Double.compare( values[ slot * numColumns + c ], that.values[ other * numColumns + c ] ) != 0 )
+					return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int h = 0;
+		for ( int slot = 0; slot < keys.length; slot++ )
+		{
+			final int id = keys[ slot ];
+			if ( id == FREE )
+				continue;
+			int rowHash = id;
+			for ( int c = 0; c < numColumns; c++ )
+				rowHash = 31 * rowHash + Double.hashCode( values[ slot * numColumns + c ] );
+			h += rowHash;
+		}
+		return h;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void checkColumn( final int column )
+	{
+		if ( column < 0 || column >= numColumns )
+			throw new IndexOutOfBoundsException( "Column: " + column + ", number of columns: " + numColumns );
+	}
+
+	private static int tableSizeFor( final int capacity )
+	{
+		// keep load factor <= 0.5
+		final int n = Math.max( DEFAULT_CAPACITY, 2 * capacity );
+		return Integer.highestOneBit( n - 1 ) << 1;
+	}
+
+	private void allocate( final int tableSize )
+	{
+		keys = new int[ tableSize ];
+		Arrays.fill( keys, FREE );
+		values = new double[ tableSize * numColumns ];
+		mask = tableSize - 1;
+	}
+
+	private int hash( final int id )
+	{
+		final int h = id * 0x9E3779B9;
+		return ( h ^ ( h >>> 16 ) ) & mask;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private int slotOf( final Object key )
+	{
+		return keyType.isInstance( key ) ? find( pool.getId( ( K ) key ) ) : -1;
+	}
+
+	/**
+	 * Returns the slot of {@code id}, or -1 if it is not in the table.
+	 */
+	private int find( final int id )
+	{
+		int slot = hash( id );
+		while ( true )
+		{
+			final int k = keys[ slot ];
+			if ( k == id )
+				return slot;
+			if ( k == FREE )
+				return -1;
+			slot = ( slot + 1 ) & mask;
+		}
+	}
+
+	/**
+	 * Returns the slot of {@code id}, adding it with a row of
+	 * {@link #noEntryValue}s if it is not in the table.
+	 */
+	private int insert( final int id )
+	{
+		int slot = hash( id );
+		while ( true )
+		{
+			final int k = keys[ slot ];
+			if ( k == id )
+				return slot;
+			if ( k == FREE )
+				break;
+			slot = ( slot + 1 ) & mask;
+		}
+		if ( 2 * ( size + 1 ) > keys.length )
+		{
+			rehash( 2 * keys.length );
+			return insert( id );
+		}
+		keys[ slot ] = id;
+		Arrays.fill( values, slot * numColumns, ( slot + 1 ) * numColumns, noEntryValue );
+		++size;
+		return slot;
+	}
+
+	private void removeSlot( int slot )
+	{
+		keys[ slot ] = FREE;
+		--size;
+		int next = slot;
+		while ( true )
+		{
+			next = ( next + 1 ) & mask;
+			final int id = keys[ next ];
+			if ( id == FREE )
+				return;
+			final int ideal = hash( id );
+			// Leave the entry where it is if its ideal slot lies cyclically in
+			// ( slot, next ], otherwise shift it back into the hole.
+			final boolean reachable = slot <= next
+					? ( slot < ideal && ideal <= next )
+					: ( slot < ideal || ideal <= next );
+			if ( reachable )
+				continue;
+			keys[ slot ] = id;
+			System.arraycopy( values, next * numColumns, values, slot * numColumns, numColumns );
+			keys[ next ] = FREE;
+			slot = next;
+		}
+	}
+
+	private void rehash( final int tableSize )
+	{
+		final int[] oldKeys = keys;
+		final double[] oldValues = values;
+		allocate( tableSize );
+		for ( int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++ )
+		{
+			final int id = oldKeys[ oldSlot ];
+			if ( id == FREE )
+				continue;
+			int slot = hash( id );
+			while ( keys[ slot ] != FREE )
+				slot = ( slot + 1 ) & mask;
+			keys[ slot ] = id;
+			System.arraycopy( oldValues, oldSlot * numColumns, values, slot * numColumns, numColumns );
+		}
+	}
+}
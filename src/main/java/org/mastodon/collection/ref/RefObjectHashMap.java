@@ -35,10 +35,12 @@ import java.util.Map;
 import java.util.Set;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.collection.RefObjectMap;
 
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.procedure.TObjectObjectProcedure;
 
 /**
  * Incomplete!
@@ -158,6 +160,68 @@ public class RefObjectHashMap< K, V > implements RefObjectMap< K, V >
 		return ( entrySet == null ) ? ( entrySet = new EntrySet() ) : entrySet;
 	}
 
+	/**
+	 * Executes <tt>procedure</tt> for each key/value entry in the map. Keys
+	 * are retrieved into the specified reference, so that no object is
+	 * allocated during iteration.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param ref
+	 *            an object reference used to retrieve keys. It is passed to
+	 *            the procedure for each entry, and must not be stored by it.
+	 * @return <code>false</code> if the loop over the entries terminated
+	 *         because the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( final TObjectObjectProcedure< ? super K, ? super V > procedure, final K ref )
+	{
+		return indexmap.forEachEntry( ( index, value ) -> procedure.execute( pool.getObject( index, ref ), value ) );
+	}
+
+	/**
+	 * Returns a cursor over the entries of this map. Keys are retrieved into
+	 * references provided by the caller. The value reference passed to
+	 * {@link MapCursor#value(Object)} is ignored.
+	 *
+	 * @return a new cursor.
+	 */
+	public MapCursor< K, V > cursor()
+	{
+		final TIntObjectIterator< V > it = indexmap.iterator();
+		return new MapCursor< K, V >()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public void advance()
+			{
+				it.advance();
+			}
+
+			@Override
+			public K key( final K ref )
+			{
+				return pool.getObject( it.key(), ref );
+			}
+
+			@Override
+			public V value( final V ref )
+			{
+				return it.value();
+			}
+
+			@Override
+			public void remove()
+			{
+				it.remove();
+			}
+		};
+	}
+
 	final class EntrySet extends AbstractSet< Entry< K, V > >
 	{
 		@Override
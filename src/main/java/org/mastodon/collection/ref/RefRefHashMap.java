@@ -28,18 +28,22 @@
  */
 package org.mastodon.collection.ref;
 
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefRefMap;
 import org.mastodon.collection.RefSet;
 
+import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.procedure.TObjectObjectProcedure;
 
 public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 {
@@ -65,6 +69,8 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 
 	private final Class< V > valueType;
 
+	private EntrySet entrySet;
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -118,11 +124,17 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 			return false;
 	}
 
+	/**
+	 * Returns a {@link Set} view of the mappings contained in this map.
+	 * <p>
+	 * The iterators of this set are unsafe: they return the same
+	 * {@link Entry} instance at each step, and its key and value are
+	 * references that are re-used for every entry.
+	 */
 	@Override
 	public Set< Entry< K, V > > entrySet()
 	{
-		// TODO implement
-		throw new UnsupportedOperationException();
+		return ( entrySet == null ) ? ( entrySet = new EntrySet() ) : entrySet;
 	}
 
 	@Override
@@ -172,11 +184,16 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 		return put( key, value, valuePool.createRef() );
 	}
 
-	// TODO revise after implementing entrySet()
 	@Override
 	public void putAll( final Map< ? extends K, ? extends V > m )
 	{
-		if ( m instanceof RefRefMap )
+		if ( m instanceof RefRefHashMap
+				&& ( ( RefRefHashMap< ?, ? > ) m ).keyPool == keyPool
+				&& ( ( RefRefHashMap< ?, ? > ) m ).valuePool == valuePool )
+		{
+			indexmap.putAll( ( ( RefRefHashMap< ?, ? > ) m ).indexmap );
+		}
+		else if ( m instanceof RefRefMap )
 		{
 			@SuppressWarnings( "unchecked" )
 			final RefRefMap< K, V > rm = ( RefRefMap< K, V > ) m;
@@ -239,18 +256,81 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 		valuePool.releaseRef( obj );
 	}
 
-	// TODO revise after implementing entrySet()
+	/**
+	 * Executes <tt>procedure</tt> for each key/value entry in the map. Keys
+	 * and values are retrieved into the specified references, so that no
+	 * object is allocated during iteration.
+	 *
+	 * @param procedure
+	 *            the procedure to execute.
+	 * @param keyRef
+	 *            an object reference used to retrieve keys.
+	 * @param valueRef
+	 *            an object reference used to retrieve values.
+	 * @return <code>false</code> if the loop over the entries terminated
+	 *         because the procedure returned false for some entry.
+	 */
+	public boolean forEachEntry( final TObjectObjectProcedure< ? super K, ? super V > procedure, final K keyRef, final V valueRef )
+	{
+		return indexmap.forEachEntry( ( k, v ) -> procedure.execute( keyPool.getObject( k, keyRef ), valuePool.getObject( v, valueRef ) ) );
+	}
+
+	/**
+	 * Returns a cursor over the entries of this map. Keys and values are
+	 * retrieved into references provided by the caller.
+	 *
+	 * @return a new cursor.
+	 */
+	public MapCursor< K, V > cursor()
+	{
+		final TIntIntIterator it = indexmap.iterator();
+		return new MapCursor< K, V >()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public void advance()
+			{
+				it.advance();
+			}
+
+			@Override
+			public K key( final K ref )
+			{
+				return keyPool.getObject( it.key(), ref );
+			}
+
+			@Override
+			public V value( final V ref )
+			{
+				return valuePool.getObject( it.value(), ref );
+			}
+
+			@Override
+			public void remove()
+			{
+				it.remove();
+			}
+		};
+	}
+
 	@Override
 	public String toString()
 	{
 		final StringBuilder sb = new StringBuilder();
+		final K keyRef = keyPool.createRef();
 		final V ref = createValueRef();
-		final Iterator< K > it = keySet().iterator();
+		final MapCursor< K, V > it = cursor();
 		sb.append( "{ " );
 		while ( it.hasNext() )
 		{
-			final K key = it.next();
-			final V val = get( key, ref );
+			it.advance();
+			final K key = it.key( keyRef );
+			final V val = it.value( ref );
 			sb.append( key );
 			sb.append( '=' ).append( '"' );
 			sb.append( val );
@@ -261,6 +341,8 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 			}
 		}
 		sb.append( " }" );
+		keyPool.releaseRef( keyRef );
+		releaseValueRef( ref );
 		return sb.toString();
 	}
 
@@ -268,6 +350,76 @@ public class RefRefHashMap< K, V > implements RefRefMap< K, V >
 	 * INNER CLASS
 	 */
 
+	private final class EntrySet extends AbstractSet< Entry< K, V > >
+	{
+		@Override
+		public Iterator< Entry< K, V > > iterator()
+		{
+			final TIntIntIterator iter = indexmap.iterator();
+
+			final Entry< K, V > entry = new Entry< K, V >()
+			{
+				private final K keyRef = keyPool.createRef();
+
+				private final V valueRef = valuePool.createRef();
+
+				private final V replacedRef = valuePool.createRef();
+
+				@Override
+				public K getKey()
+				{
+					return keyPool.getObject( iter.key(), keyRef );
+				}
+
+				@Override
+				public V getValue()
+				{
+					return valuePool.getObject( iter.value(), valueRef );
+				}
+
+				@Override
+				public V setValue( final V value )
+				{
+					return valuePool.getObject( iter.setValue( valuePool.getId( value ) ), replacedRef );
+				}
+			};
+
+			return new Iterator< Entry< K, V > >()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return iter.hasNext();
+				}
+
+				@Override
+				public Entry< K, V > next()
+				{
+					iter.advance();
+					return entry;
+				}
+
+				@Override
+				public void remove()
+				{
+					iter.remove();
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return RefRefHashMap.this.size();
+		}
+
+		@Override
+		public void clear()
+		{
+			RefRefHashMap.this.clear();
+		}
+	}
+
 	private class CollectionValuesView implements RefPoolBackedRefCollection< V >
 	{
 
@@ -36,6 +36,7 @@ import org.mastodon.RefPool;
 import org.mastodon.collection.MaybeRefIterator;
 import org.mastodon.collection.RefSet;
 
+import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
@@ -111,8 +112,9 @@ public class RefSetImp< O > implements IntBackedRefCollection< O >, RefPoolBacke
 	@Override
 	public boolean addAll( final Collection< ? extends O > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.addAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return indices.addAll( objIndices );
 		else
 		{
 			boolean changed = false;
@@ -139,8 +141,9 @@ public class RefSetImp< O > implements IntBackedRefCollection< O >, RefPoolBacke
 	@Override
 	public boolean containsAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.containsAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return indices.containsAll( objIndices );
 		else
 		{
 			for ( final Object obj : objs )
@@ -203,8 +206,9 @@ public class RefSetImp< O > implements IntBackedRefCollection< O >, RefPoolBacke
 	@Override
 	public boolean removeAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.removeAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return indices.removeAll( objIndices );
 		else
 		{
 			boolean changed = false;
@@ -218,16 +222,18 @@ public class RefSetImp< O > implements IntBackedRefCollection< O >, RefPoolBacke
 	@Override
 	public boolean retainAll( final Collection< ? > objs )
 	{
-		if ( objs instanceof IntBackedRefCollection )
-			return indices.retainAll( ( ( IntBackedRefCollection< ? > ) objs ).getIndexCollection() );
+		final TIntCollection objIndices = IntBackedRefCollections.sameIndexSpace( this, objs );
+		if ( objIndices != null )
+			return indices.retainAll( IntBackedRefCollections.asLookup( objIndices ) );
 		else
 		{
+			final Collection< ? > lookup = IntBackedRefCollections.asLookup( objs );
 			boolean changed = false;
 			final Iterator< O > it = iterator();
 			while ( it.hasNext() )
 			{
 				final O o = it.next();
-				if ( !objs.contains( o ) )
+				if ( !lookup.contains( o ) )
 				{
 					it.remove();
 					changed = true;
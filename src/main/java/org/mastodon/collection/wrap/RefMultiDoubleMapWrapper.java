@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.wrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefMultiDoubleMap;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+/**
+ * A {@link RefMultiDoubleMap} for standard objects, backed by a
+ * {@link HashMap} from keys to {@code double[]} rows.
+ *
+ * @param <K>
+ *            the type of the keys of the map.
+ */
+public class RefMultiDoubleMapWrapper< K > implements RefMultiDoubleMap< K >
+{
+	private final HashMap< K, double[] > map;
+
+	private final int numColumns;
+
+	private final double noEntryValue;
+
+	public RefMultiDoubleMapWrapper( final int numColumns, final double noEntryValue, final int initialCapacity )
+	{
+		if ( numColumns < 1 )
+			throw new IllegalArgumentException( "Number of columns must be at least 1: " + numColumns );
+		this.map = new HashMap<>( initialCapacity );
+		this.numColumns = numColumns;
+		this.noEntryValue = noEntryValue;
+	}
+
+	public RefMultiDoubleMapWrapper( final int numColumns, final double noEntryValue )
+	{
+		this( numColumns, noEntryValue, 16 );
+	}
+
+	@Override
+	public int numColumns()
+	{
+		return numColumns;
+	}
+
+	@Override
+	public double getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return map.isEmpty();
+	}
+
+	@Override
+	public void clear()
+	{
+		map.clear();
+	}
+
+	@Override
+	public boolean containsKey( final Object key )
+	{
+		return map.containsKey( key );
+	}
+
+	@Override
+	public double get( final K key, final int column )
+	{
+		checkColumn( column );
+		final double[] row = map.get( key );
+		return row == null ? noEntryValue : row[ column ];
+	}
+
+	@Override
+	public boolean get( final K key, final double[] row )
+	{
+		final double[] values = map.get( key );
+		if ( values == null )
+		{
+			Arrays.fill( row, 0, numColumns, noEntryValue );
+			return false;
+		}
+		System.arraycopy( values, 0, row, 0, numColumns );
+		return true;
+	}
+
+	@Override
+	public double put( final K key, final int column, final double value )
+	{
+		checkColumn( column );
+		final double[] row = map.computeIfAbsent( key, k -> newRow() );
+		final double old = row[ column ];
+		row[ column ] = value;
+		return old;
+	}
+
+	@Override
+	public boolean put( final K key, final double[] row )
+	{
+		return put( key, row, null );
+	}
+
+	@Override
+	public boolean put( final K key, final double[] row, final double[] replaced )
+	{
+		final double[] values = map.get( key );
+		if ( values == null )
+		{
+			if ( replaced != null )
+				Arrays.fill( replaced, 0, numColumns, noEntryValue );
+			map.put( key, Arrays.copyOf( row, numColumns ) );
+			return false;
+		}
+		if ( replaced != null )
+			System.arraycopy( values, 0, replaced, 0, numColumns );
+		System.arraycopy( row, 0, values, 0, numColumns );
+		return true;
+	}
+
+	@Override
+	public boolean remove( final Object key )
+	{
+		return map.remove( key ) != null;
+	}
+
+	@Override
+	public boolean remove( final Object key, final double[] replaced )
+	{
+		final double[] values = map.remove( key );
+		if ( replaced != null )
+		{
+			if ( values == null )
+				Arrays.fill( replaced, 0, numColumns, noEntryValue );
+			else
+				System.arraycopy( values, 0, replaced, 0, numColumns );
+		}
+		return values != null;
+	}
+
+	@Override
+	public RefList< K > keys()
+	{
+		return new RefListWrapper<>( new ArrayList<>( map.keySet() ) );
+	}
+
+	@Override
+	public double[] getColumn( final int column )
+	{
+		checkColumn( column );
+		final double[] result = new double[ map.size() ];
+		int i = 0;
+		for ( final double[] row : map.values() )
+			result[ i++ ] = row[ column ];
+		return result;
+	}
+
+	@Override
+	public boolean forEachKey( final TObjectProcedure< ? super K > procedure, final K ref )
+	{
+		for ( final K key : map.keySet() )
+			if ( !procedure.execute( key ) )
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean forEachEntry( final RowProcedure< ? super K > procedure, final K ref )
+	{
+		final double[] row = new double[ numColumns ];
+		for ( final Map.Entry< K, double[] > entry : map.entrySet() )
+		{
+			System.arraycopy( entry.getValue(), 0, row, 0, numColumns );
+			if ( !procedure.execute( entry.getKey(), row ) )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public K createRef()
+	{
+		return null;
+	}
+
+	@Override
+	public void releaseRef( final K obj )
+	{}
+
+	private double[] newRow()
+	{
+		final double[] row = new double[ numColumns ];
+		Arrays.fill( row, noEntryValue );
+		return row;
+	}
+
+	private void checkColumn( final int column )
+	{
+		if ( column < 0 || column >= numColumns )
+			throw new IndexOutOfBoundsException( "Column: " + column + ", number of columns: " + numColumns );
+	}
+}
@@ -30,10 +30,16 @@ package org.mastodon.io;
 
 import org.mastodon.RefPool;
 
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
 
 /**
  * Maps IDs (used in a file) to objects.
+ * <p>
+ * The mapping is backed by a {@link TIntIntMap} or an {@code int[]} array
+ * from file id to pool index, or is the identity, i.e., file ids are pool
+ * indices. Serializers may check {@link #isIdentity()} to skip translating
+ * ids to objects.
  *
  * @param <O>
  *            the object type.
@@ -44,6 +50,8 @@ public final class FileIdToObjectMap< O >
 {
 	private final TIntIntMap fileIdToObjectId;
 
+	private final int[] fileIdToObjectIdArray;
+
 	private final RefPool< O > pool;
 
 	public FileIdToObjectMap(
@@ -51,12 +59,98 @@ public final class FileIdToObjectMap< O >
 			final RefPool< O > pool )
 	{
 		this.fileIdToObjectId = fileIdToObjectId;
+		this.fileIdToObjectIdArray = null;
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates a map backed by an array from file id to pool index.
+	 *
+	 * @param fileIdToObjectId
+	 *            pool indices, indexed by file id.
+	 * @param pool
+	 *            the pool.
+	 */
+	public FileIdToObjectMap(
+			final int[] fileIdToObjectId,
+			final RefPool< O > pool )
+	{
+		this.fileIdToObjectId = null;
+		this.fileIdToObjectIdArray = fileIdToObjectId;
+		this.pool = pool;
+	}
+
+	private FileIdToObjectMap( final RefPool< O > pool )
+	{
+		this.fileIdToObjectId = null;
+		this.fileIdToObjectIdArray = null;
 		this.pool = pool;
 	}
 
+	/**
+	 * Creates a map that uses file ids as pool indices, e.g., for objects
+	 * that were created in file order in an empty pool.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param <O>
+	 *            the object type.
+	 * @return the identity map.
+	 */
+	public static < O > FileIdToObjectMap< O > identity( final RefPool< O > pool )
+	{
+		return new FileIdToObjectMap<>( pool );
+	}
+
+	/**
+	 * Maps consecutive file ids to {@code objects}, in iteration order. This
+	 * is the inverse of
+	 * {@link ObjectToFileIdMap#sequential(RefPool, Iterable)}. If file ids
+	 * are the pool indices, the identity map is returned.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param objects
+	 *            the objects, in file order.
+	 * @param <O>
+	 *            the object type.
+	 * @return the map.
+	 */
+	public static < O > FileIdToObjectMap< O > sequential( final RefPool< O > pool, final Iterable< O > objects )
+	{
+		final TIntArrayList ids = new TIntArrayList();
+		boolean identity = true;
+		for ( final O o : objects )
+		{
+			final int id = pool.getId( o );
+			identity &= id == ids.size();
+			ids.add( id );
+		}
+		return identity
+				? identity( pool )
+				: new FileIdToObjectMap<>( ids.toArray(), pool );
+	}
+
 	public O getObject( final int id, final O ref )
 	{
-		return pool.getObject( fileIdToObjectId.get( id ), ref );
+		final int objectId;
+		if ( fileIdToObjectIdArray != null )
+			objectId = fileIdToObjectIdArray[ id ];
+		else if ( fileIdToObjectId != null )
+			objectId = fileIdToObjectId.get( id );
+		else
+			objectId = id;
+		return pool.getObject( objectId, ref );
+	}
+
+	/**
+	 * Returns whether file ids are pool indices.
+	 *
+	 * @return whether this is the identity map.
+	 */
+	public boolean isIdentity()
+	{
+		return fileIdToObjectId == null && fileIdToObjectIdArray == null;
 	}
 
 	public O createRef()
@@ -28,12 +28,19 @@
  */
 package org.mastodon.io;
 
+import java.util.Arrays;
+
 import org.mastodon.RefPool;
 
 import gnu.trove.map.TIntIntMap;
 
 /**
  * Maps objects to IDs (used in a file).
+ * <p>
+ * The mapping is backed by a {@link TIntIntMap} or an {@code int[]} array
+ * from pool index to file id, or is the identity, i.e., file ids are pool
+ * indices. Serializers may check {@link #isIdentity()} to skip translating
+ * objects to ids.
  *
  * @param <O>
  *            the object type.
@@ -44,6 +51,8 @@ public final class ObjectToFileIdMap< O >
 {
 	private final TIntIntMap objectIdToFileId;
 
+	private final int[] objectIdToFileIdArray;
+
 	private final RefPool< O > pool;
 
 	public ObjectToFileIdMap(
@@ -51,11 +60,112 @@ public final class ObjectToFileIdMap< O >
 			final RefPool< O > pool )
 	{
 		this.objectIdToFileId = objectIdToFileId;
+		this.objectIdToFileIdArray = null;
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates a map backed by an array from pool index to file id.
+	 *
+	 * @param objectIdToFileId
+	 *            file ids, indexed by pool index.
+	 * @param pool
+	 *            the pool.
+	 */
+	public ObjectToFileIdMap(
+			final int[] objectIdToFileId,
+			final RefPool< O > pool )
+	{
+		this.objectIdToFileId = null;
+		this.objectIdToFileIdArray = objectIdToFileId;
 		this.pool = pool;
 	}
 
+	private ObjectToFileIdMap( final RefPool< O > pool )
+	{
+		this.objectIdToFileId = null;
+		this.objectIdToFileIdArray = null;
+		this.pool = pool;
+	}
+
+	/**
+	 * Creates a map that uses pool indices as file ids.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param <O>
+	 *            the object type.
+	 * @return the identity map.
+	 */
+	public static < O > ObjectToFileIdMap< O > identity( final RefPool< O > pool )
+	{
+		return new ObjectToFileIdMap<>( pool );
+	}
+
+	/**
+	 * Assigns consecutive file ids to {@code objects}, in iteration order. If
+	 * these are the pool indices, e.g., if no objects have been deleted from
+	 * the pool, the identity map is returned.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param objects
+	 *            the objects to write, usually the pool itself.
+	 * @param <O>
+	 *            the object type.
+	 * @return the map.
+	 */
+	public static < O > ObjectToFileIdMap< O > sequential( final RefPool< O > pool, final Iterable< O > objects )
+	{
+		int[] array = new int[ 16 ];
+		Arrays.fill( array, -1 );
+		boolean identity = true;
+		int fileId = 0;
+		for ( final O o : objects )
+		{
+			final int id = pool.getId( o );
+			if ( id >= array.length )
+			{
+				final int oldLength = array.length;
+				array = Arrays.copyOf( array, Math.max( id + 1, 2 * oldLength ) );
+				Arrays.fill( array, oldLength, array.length, -1 );
+			}
+			array[ id ] = fileId;
+			identity &= id == fileId;
+			++fileId;
+		}
+		return identity
+				? identity( pool )
+				: new ObjectToFileIdMap<>( array, pool );
+	}
+
 	public int getId( final O object )
 	{
-		return objectIdToFileId.get( pool.getId( object ) );
+		final int id = pool.getId( object );
+		if ( objectIdToFileIdArray != null )
+			return objectIdToFileIdArray[ id ];
+		if ( objectIdToFileId != null )
+			return objectIdToFileId.get( id );
+		return id;
+	}
+
+	/**
+	 * Returns whether file ids are pool indices.
+	 *
+	 * @return whether this is the identity map.
+	 */
+	public boolean isIdentity()
+	{
+		return objectIdToFileId == null && objectIdToFileIdArray == null;
+	}
+
+	public O createRef()
+	{
+		return pool.createRef();
+	}
+
+	public void releaseRef( final O ref )
+	{
+		pool.releaseRef( ref );
 	}
 }
@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.labels;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.io.labels.LabelSetsSerializer.LabelSerializer;
+import org.mastodon.io.properties.PropertyColumns;
+import org.mastodon.io.properties.PropertyMapSerializer;
+import org.mastodon.labels.LabelMapping;
+import org.mastodon.labels.LabelMapping.SerialisationAccess;
+import org.mastodon.labels.LabelSets;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Serializes {@link LabelSets} in time linear in the number of labeled
+ * objects and distinct label sets.
+ * <p>
+ * The format consists of
+ * <ul>
+ * <li>a dictionary of all labels of used label sets, each written once by
+ * the {@link LabelSerializer},</li>
+ * <li>the used label sets, as a column of set sizes followed by a column of
+ * dictionary ids, sorted within each set. The first set is the empty
+ * set,</li>
+ * <li>the labeled objects, as a column of file ids followed by a column of
+ * label set indices (see {@link PropertyColumns}).</li>
+ * </ul>
+ *
+ * @param <O>
+ *            type of labeled objects.
+ * @param <T>
+ *            type of labels.
+ */
+public class CompactLabelSetsSerializer< O, T > implements PropertyMapSerializer< O, LabelSets< O, T > >
+{
+	private final LabelSets< O, T > propertyMap;
+
+	private final LabelSerializer< T > labelSerializer;
+
+	public CompactLabelSetsSerializer( final LabelSets< O, T > propertyMap, final LabelSerializer< T > labelSerializer )
+	{
+		this.propertyMap = propertyMap;
+		this.labelSerializer = labelSerializer;
+	}
+
+	@Override
+	public void writePropertyMap(
+			final ObjectToFileIdMap< O > idmap,
+			final ObjectOutputStream oos )
+					throws IOException
+	{
+		final LabelMapping< T > mapping = propertyMap.getLabelMapping();
+		final RefIntMap< O > pmap = propertyMap.getBackingProperty().getMap();
+
+		// collect entries, and number used label sets in order of first use
+		final int size = pmap.size();
+		final int[] ids = new int[ size ];
+		final int[] values = new int[ size ];
+		final TIntArrayList used = new TIntArrayList();
+		final TIntIntMap mappingIndexToFileIndex = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+		used.add( 0 );
+		mappingIndexToFileIndex.put( 0, 0 );
+		final int[] i = { 0 };
+		final O ref = idmap.createRef();
+		pmap.forEachEntry( ( final O key, final int value ) -> {
+			int fileIndex = mappingIndexToFileIndex.get( value );
+			if ( fileIndex < 0 )
+			{
+				fileIndex = used.size();
+				mappingIndexToFileIndex.put( value, fileIndex );
+				used.add( value );
+			}
+			ids[ i[ 0 ] ] = idmap.getId( key );
+			values[ i[ 0 ]++ ] = fileIndex;
+			return true;
+		}, ref );
+		idmap.releaseRef( ref );
+
+		// label dictionary, and label sets as sorted dictionary ids
+		final List< T > dictionary = new ArrayList<>();
+		final TObjectIntMap< T > labelToId = new TObjectIntHashMap<>( 16, 0.5f, -1 );
+		final int numSets = used.size();
+		final int[] setSizes = new int[ numSets ];
+		final TIntArrayList members = new TIntArrayList();
+		for ( int s = 0; s < numSets; ++s )
+		{
+			final Set< T > labels = mapping.labelsAtIndex( used.get( s ) );
+			final int start = members.size();
+			for ( final T label : labels )
+			{
+				int id = labelToId.get( label );
+				if ( id < 0 )
+				{
+					id = dictionary.size();
+					labelToId.put( label, id );
+					dictionary.add( label );
+				}
+				members.add( id );
+			}
+			members.sort( start, members.size() );
+			setSizes[ s ] = labels.size();
+		}
+
+		// LABEL DICTIONARY
+		oos.writeInt( dictionary.size() );
+		for ( final T label : dictionary )
+			labelSerializer.writeLabel( label, oos );
+
+		// LABEL SETS
+		oos.writeInt( numSets );
+		PropertyColumns.writeInts( setSizes, identity( numSets ), oos );
+		oos.writeInt( members.size() );
+		PropertyColumns.writeInts( members.toArray(), identity( members.size() ), oos );
+
+		// ENTRIES, SORTED BY ID
+		final int[] order = PropertyColumns.sortOrder( ids );
+		oos.writeInt( size );
+		PropertyColumns.writeIds( ids, order, oos );
+		PropertyColumns.writeInts( values, order, oos );
+	}
+
+	@Override
+	public void readPropertyMap(
+			final FileIdToObjectMap< O > idmap,
+			final ObjectInputStream ois )
+					throws IOException
+	{
+		propertyMap.clear();
+
+		final LabelMapping< T > mapping = propertyMap.getLabelMapping();
+		final RefIntMap< O > pmap = propertyMap.getBackingProperty().getMap();
+
+		// LABEL DICTIONARY
+		final int numLabels = ois.readInt();
+		final List< T > dictionary = new ArrayList<>( numLabels );
+		for ( int i = 0; i < numLabels; ++i )
+			dictionary.add( labelSerializer.readLabel( ois ) );
+
+		// LABEL SETS
+		final int numSets = ois.readInt();
+		final int[] setSizes = PropertyColumns.readInts( numSets, ois );
+		final int[] members = PropertyColumns.readInts( ois.readInt(), ois );
+		final ArrayList< Set< T > > labelSets = new ArrayList<>( numSets );
+		int m = 0;
+		for ( final int setSize : setSizes )
+		{
+			final Set< T > labels = new HashSet<>( 2 * setSize );
+			for ( int j = 0; j < setSize; ++j )
+				labels.add( dictionary.get( members[ m++ ] ) );
+			labelSets.add( labels );
+		}
+		new SerialisationAccess< T >( mapping ) {{ setLabelSets( labelSets ); }};
+
+		// ENTRIES
+		final int size = ois.readInt();
+		final int[] ids = PropertyColumns.readIds( size, ois );
+		final int[] values = PropertyColumns.readInts( size, ois );
+		final O ref = idmap.createRef();
+		final RefList< O > labeled = new RefArrayList<>( propertyMap.getPool(), size );
+		for ( int i = 0; i < size; ++i )
+		{
+			final O object = idmap.getObject( ids[ i ], ref );
+			labeled.add( object );
+			pmap.put( object, values[ i ] );
+		}
+		propertyMap.recomputeLabelToObjects( labeled );
+		idmap.releaseRef( ref );
+	}
+
+	@Override
+	public LabelSets< O, T > getPropertyMap()
+	{
+		return propertyMap;
+	}
+
+	private static int[] identity( final int n )
+	{
+		final int[] order = new int[ n ];
+		Arrays.setAll( order, j -> j );
+		return order;
+	}
+}
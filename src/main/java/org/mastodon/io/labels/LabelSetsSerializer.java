@@ -51,10 +51,13 @@ import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 
-/*
- * TODO: PropertyMapSerializer should work for Property, not only PropertyMap
+/**
+ * Serializes {@link LabelSets} in the original per-entry format. New files
+ * should be written with {@link CompactLabelSetsSerializer}, which is a
+ * {@link org.mastodon.io.properties.PropertyMapSerializer} and runs in
+ * linear time.
  */
-public class LabelSetsSerializer< O, T > // TODO implements PropertyMapSerializer< O, LabelSets< O, T > >
+public class LabelSetsSerializer< O, T >
 {
 	public interface LabelSerializer< T >
 	{
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map.Entry;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefObjectMap;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Serializes an {@link ObjPropertyMap} with a {@link ValueCodec} instead of
+ * Java serialization.
+ * <p>
+ * Entries are written as a column of file ids (see {@link PropertyColumns})
+ * followed by the values, in the same order, in blocks of
+ * {@value #BLOCK_SIZE}. Each block is preceded by its length in bytes, unless
+ * the codec has a {@link ValueCodec#fixedWidth() fixed width}.
+ *
+ * @param <O>
+ *            type of object which the property is attached to.
+ * @param <T>
+ *            the value type.
+ */
+public class CodecPropertyMapSerializer< O, T > implements ColumnarPropertyMapSerializer< O, ObjPropertyMap< O, T > >, IncrementalPropertyMapSerializer< O, ObjPropertyMap< O, T > >
+{
+	/**
+	 * Number of values per block.
+	 */
+	static final int BLOCK_SIZE = 4096;
+
+	private final ObjPropertyMap< O, T > propertyMap;
+
+	private final ValueCodec< T > codec;
+
+	public CodecPropertyMapSerializer( final ObjPropertyMap< O, T > propertyMap, final ValueCodec< T > codec )
+	{
+		this.propertyMap = propertyMap;
+		this.codec = codec;
+	}
+
+	@Override
+	public void writePropertyMap(
+			final ObjectToFileIdMap< O > idmap,
+			final ObjectOutputStream oos )
+					throws IOException
+	{
+		writePropertyColumns( idmap, oos );
+	}
+
+	@Override
+	public void readPropertyMap(
+			final FileIdToObjectMap< O > idmap,
+			final ObjectInputStream ois )
+					throws IOException
+	{
+		readPropertyColumns( idmap, ois );
+	}
+
+	@Override
+	public void writePropertyColumns(
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefObjectMap< O, T > pmap = propertyMap.getMap();
+		final int size = pmap.size();
+		final int[] ids = new int[ size ];
+		final Object[] values = new Object[ size ];
+		int i = 0;
+		for ( final Entry< O, T > e : pmap.entrySet() )
+		{
+			ids[ i ] = idmap.getId( e.getKey() );
+			values[ i++ ] = e.getValue();
+		}
+
+		final int[] order = PropertyColumns.sortOrder( ids );
+
+		// NUMBER OF ENTRIES
+		out.writeInt( size );
+
+		// COLUMNS, SORTED BY ID
+		PropertyColumns.writeIds( ids, order, out );
+		writeValues( values, order, out );
+	}
+
+	@Override
+	public void readPropertyColumns(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefObjectMap< O, T > pmap = propertyMap.getMap();
+		pmap.clear();
+
+		// NUMBER OF ENTRIES
+		final int size = in.readInt();
+
+		// COLUMNS
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final T[] values = readValues( size, in );
+		final O ref = idmap.createRef();
+		for ( int i = 0; i < size; i++ )
+			pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+		idmap.releaseRef( ref );
+	}
+
+	@Override
+	public void writePropertyDelta(
+			final RefCollection< O > objects,
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefObjectMap< O, T > pmap = propertyMap.getMap();
+		final TIntArrayList ids = new TIntArrayList();
+		final Object[] values = new Object[ objects.size() ];
+		final TIntArrayList removed = new TIntArrayList();
+		for ( final O key : objects )
+		{
+			final T value = pmap.get( key );
+			if ( value != null )
+			{
+				values[ ids.size() ] = value;
+				ids.add( idmap.getId( key ) );
+			}
+			else
+				removed.add( idmap.getId( key ) );
+		}
+
+		// VALUES, SORTED BY ID
+		final int[] setIds = ids.toArray();
+		final int[] order = PropertyColumns.sortOrder( setIds );
+		out.writeInt( setIds.length );
+		PropertyColumns.writeIds( setIds, order, out );
+		writeValues( values, order, out );
+
+		// REMOVALS, SORTED BY ID
+		final int[] removedIds = removed.toArray();
+		out.writeInt( removedIds.length );
+		PropertyColumns.writeIds( removedIds, PropertyColumns.sortOrder( removedIds ), out );
+	}
+
+	@Override
+	public void readPropertyDelta(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefObjectMap< O, T > pmap = propertyMap.getMap();
+		final O ref = idmap.createRef();
+
+		// VALUES
+		final int size = in.readInt();
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final T[] values = readValues( size, in );
+		for ( int i = 0; i < size; i++ )
+			pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+
+		// REMOVALS
+		final int numRemoved = in.readInt();
+		for ( final int id : PropertyColumns.readIds( numRemoved, in ) )
+			pmap.remove( idmap.getObject( id, ref ) );
+		idmap.releaseRef( ref );
+	}
+
+	@Override
+	public ObjPropertyMap< O, T > getPropertyMap()
+	{
+		return propertyMap;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private void writeValues( final Object[] values, final int[] order, final DataOutput out ) throws IOException
+	{
+		codec.reset();
+		final int width = codec.fixedWidth();
+		final Block block = new Block();
+		final DataOutputStream dos = new DataOutputStream( block );
+		for ( int i = 0; i < order.length; i += BLOCK_SIZE )
+		{
+			final int len = Math.min( BLOCK_SIZE, order.length - i );
+			block.reset();
+			for ( int j = 0; j < len; ++j )
+				codec.write( ( T ) values[ order[ i + j ] ], dos );
+			dos.flush();
+			if ( width < 0 )
+				out.writeInt( block.size() );
+			else if ( block.size() != width * len )
+				throw new IOException( "codec wrote " + block.size() + " bytes for " + len + " values of fixed width " + width );
+			out.write( block.buffer(), 0, block.size() );
+		}
+	}
+
+	private T[] readValues( final int n, final DataInput in ) throws IOException
+	{
+		codec.reset();
+		final int width = codec.fixedWidth();
+		@SuppressWarnings( "unchecked" )
+		final T[] values = ( T[] ) new Object[ n ];
+		byte[] bytes = new byte[ 0 ];
+		for ( int i = 0; i < n; i += BLOCK_SIZE )
+		{
+			final int len = Math.min( BLOCK_SIZE, n - i );
+			final int numBytes = width < 0 ? in.readInt() : width * len;
+			if ( numBytes < 0 )
+				throw new IOException( "corrupt value block" );
+			if ( bytes.length < numBytes )
+				bytes = new byte[ numBytes ];
+			in.readFully( bytes, 0, numBytes );
+			final DataInputStream block = new DataInputStream( new ByteArrayInputStream( bytes, 0, numBytes ) );
+			for ( int j = 0; j < len; ++j )
+				values[ i + j ] = codec.read( block );
+		}
+		return values;
+	}
+
+	/**
+	 * A {@link ByteArrayOutputStream} that gives access to its buffer.
+	 */
+	private static final class Block extends ByteArrayOutputStream
+	{
+		Block()
+		{
+			super( 1 << 16 );
+		}
+
+		byte[] buffer()
+		{
+			return buf;
+		}
+	}
+}
@@ -28,17 +28,24 @@
  */
 package org.mastodon.io.properties;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.UncheckedIOException;
 
+import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefDoubleMap;
+import org.mastodon.collection.ref.RefDoubleArrayMap;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
 import org.mastodon.properties.DoublePropertyMap;
 
-public class DoublePropertyMapSerializer< O > implements PropertyMapSerializer< O, DoublePropertyMap< O > >
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+public class DoublePropertyMapSerializer< O > implements ColumnarPropertyMapSerializer< O, DoublePropertyMap< O > >, IncrementalPropertyMapSerializer< O, DoublePropertyMap< O > >
 {
 	private final DoublePropertyMap< O > propertyMap;
 
@@ -103,6 +110,142 @@ public class DoublePropertyMapSerializer< O > implements PropertyMapSerializer<
 		idmap.releaseRef( ref );
 	}
 
+	@Override
+	public void writePropertyColumns(
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefDoubleMap< O > pmap = propertyMap.getMap();
+		final int size = pmap.size();
+		final int[] ids = new int[ size ];
+		final double[] values = new double[ size ];
+		if ( idmap.isIdentity() && pmap instanceof RefDoubleArrayMap )
+		{
+			// file ids are pool indices: read the backing array directly
+			final RefDoubleArrayMap< O > dense = ( RefDoubleArrayMap< O > ) pmap;
+			final double[] array = dense.getArray();
+			for ( int index = 0, i = 0; i < size; ++index )
+			{
+				if ( dense.containsIndex( index ) )
+				{
+					ids[ i ] = index;
+					values[ i++ ] = array[ index ];
+				}
+			}
+		}
+		else
+		{
+			final int[] i = { 0 };
+			final O ref = idmap.createRef();
+			pmap.forEachEntry( ( final O key, final double value ) -> {
+				ids[ i[ 0 ] ] = idmap.getId( key );
+				values[ i[ 0 ]++ ] = value;
+				return true;
+			}, ref );
+			idmap.releaseRef( ref );
+		}
+
+		final int[] order = PropertyColumns.sortOrder( ids );
+
+		// NUMBER OF ENTRIES
+		out.writeInt( size );
+
+		// COLUMNS, SORTED BY ID
+		PropertyColumns.writeIds( ids, order, out );
+		PropertyColumns.writeDoubles( values, order, out );
+	}
+
+	@Override
+	public void readPropertyColumns(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefDoubleMap< O > pmap = propertyMap.getMap();
+		pmap.clear();
+
+		// NUMBER OF ENTRIES
+		final int size = in.readInt();
+
+		// COLUMNS
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final double[] values = PropertyColumns.readDoubles( size, in );
+		if ( idmap.isIdentity() && pmap instanceof RefDoubleArrayMap )
+		{
+			final RefDoubleArrayMap< O > dense = ( RefDoubleArrayMap< O > ) pmap;
+			if ( size > 0 )
+				dense.ensureCapacity( ids[ size - 1 ] + 1 );
+			for ( int i = 0; i < size; i++ )
+				dense.putQuick( ids[ i ], values[ i ] );
+		}
+		else
+		{
+			final O ref = idmap.createRef();
+			for ( int i = 0; i < size; i++ )
+				pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+			idmap.releaseRef( ref );
+		}
+	}
+
+	@Override
+	public void writePropertyDelta(
+			final RefCollection< O > objects,
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefDoubleMap< O > pmap = propertyMap.getMap();
+		final TIntArrayList ids = new TIntArrayList();
+		final TDoubleArrayList values = new TDoubleArrayList();
+		final TIntArrayList removed = new TIntArrayList();
+		for ( final O key : objects )
+		{
+			if ( pmap.containsKey( key ) )
+			{
+				ids.add( idmap.getId( key ) );
+				values.add( pmap.get( key ) );
+			}
+			else
+				removed.add( idmap.getId( key ) );
+		}
+
+		// VALUES, SORTED BY ID
+		final int[] setIds = ids.toArray();
+		final int[] order = PropertyColumns.sortOrder( setIds );
+		out.writeInt( setIds.length );
+		PropertyColumns.writeIds( setIds, order, out );
+		PropertyColumns.writeDoubles( values.toArray(), order, out );
+
+		// REMOVALS, SORTED BY ID
+		final int[] removedIds = removed.toArray();
+		out.writeInt( removedIds.length );
+		PropertyColumns.writeIds( removedIds, PropertyColumns.sortOrder( removedIds ), out );
+	}
+
+	@Override
+	public void readPropertyDelta(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefDoubleMap< O > pmap = propertyMap.getMap();
+		final O ref = idmap.createRef();
+
+		// VALUES
+		final int size = in.readInt();
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final double[] values = PropertyColumns.readDoubles( size, in );
+		for ( int i = 0; i < size; i++ )
+			pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+
+		// REMOVALS
+		final int numRemoved = in.readInt();
+		for ( final int id : PropertyColumns.readIds( numRemoved, in ) )
+			pmap.remove( idmap.getObject( id, ref ) );
+		idmap.releaseRef( ref );
+	}
+
 	@Override
 	public DoublePropertyMap< O > getPropertyMap()
 	{
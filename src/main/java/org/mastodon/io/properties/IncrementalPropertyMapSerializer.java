@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.properties.PropertyMap;
+
+/**
+ * A {@link PropertyMapSerializer} that can also write the values of a subset
+ * of objects, to be applied on top of a previously written property map.
+ * {@link PropertyMapJournal} uses this to append changes instead of
+ * rewriting the whole map.
+ *
+ * @param <M>
+ *            the property map type
+ * @param <O>
+ *            type of object which the property is attached to.
+ */
+public interface IncrementalPropertyMapSerializer< O, M extends PropertyMap< O, ? > > extends PropertyMapSerializer< O, M >
+{
+	/**
+	 * Writes the current values of {@code objects}. Objects for which the
+	 * property is not set are written as removals.
+	 */
+	public void writePropertyDelta(
+			final RefCollection< O > objects,
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException;
+
+	/**
+	 * Applies values and removals written by
+	 * {@link #writePropertyDelta(RefCollection, ObjectToFileIdMap, DataOutput)}
+	 * to the property map. Other values are not changed.
+	 */
+	public void readPropertyDelta(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException;
+}
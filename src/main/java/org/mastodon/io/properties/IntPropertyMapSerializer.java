@@ -28,17 +28,23 @@
  */
 package org.mastodon.io.properties;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.UncheckedIOException;
 
+import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.ref.RefIntArrayMap;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
 import org.mastodon.properties.IntPropertyMap;
 
-public class IntPropertyMapSerializer< O > implements PropertyMapSerializer< O, IntPropertyMap< O > >
+import gnu.trove.list.array.TIntArrayList;
+
+public class IntPropertyMapSerializer< O > implements ColumnarPropertyMapSerializer< O, IntPropertyMap< O > >, IncrementalPropertyMapSerializer< O, IntPropertyMap< O > >
 {
 	private final IntPropertyMap< O > propertyMap;
 
@@ -103,6 +109,142 @@ public class IntPropertyMapSerializer< O > implements PropertyMapSerializer< O,
 		idmap.releaseRef( ref );
 	}
 
+	@Override
+	public void writePropertyColumns(
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefIntMap< O > pmap = propertyMap.getMap();
+		final int size = pmap.size();
+		final int[] ids = new int[ size ];
+		final int[] values = new int[ size ];
+		if ( idmap.isIdentity() && pmap instanceof RefIntArrayMap )
+		{
+			// file ids are pool indices: read the backing array directly
+			final RefIntArrayMap< O > dense = ( RefIntArrayMap< O > ) pmap;
+			final int[] array = dense.getArray();
+			for ( int index = 0, i = 0; i < size; ++index )
+			{
+				if ( dense.containsIndex( index ) )
+				{
+					ids[ i ] = index;
+					values[ i++ ] = array[ index ];
+				}
+			}
+		}
+		else
+		{
+			final int[] i = { 0 };
+			final O ref = idmap.createRef();
+			pmap.forEachEntry( ( final O key, final int value ) -> {
+				ids[ i[ 0 ] ] = idmap.getId( key );
+				values[ i[ 0 ]++ ] = value;
+				return true;
+			}, ref );
+			idmap.releaseRef( ref );
+		}
+
+		final int[] order = PropertyColumns.sortOrder( ids );
+
+		// NUMBER OF ENTRIES
+		out.writeInt( size );
+
+		// COLUMNS, SORTED BY ID
+		PropertyColumns.writeIds( ids, order, out );
+		PropertyColumns.writeInts( values, order, out );
+	}
+
+	@Override
+	public void readPropertyColumns(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefIntMap< O > pmap = propertyMap.getMap();
+		pmap.clear();
+
+		// NUMBER OF ENTRIES
+		final int size = in.readInt();
+
+		// COLUMNS
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final int[] values = PropertyColumns.readInts( size, in );
+		if ( idmap.isIdentity() && pmap instanceof RefIntArrayMap )
+		{
+			final RefIntArrayMap< O > dense = ( RefIntArrayMap< O > ) pmap;
+			if ( size > 0 )
+				dense.ensureCapacity( ids[ size - 1 ] + 1 );
+			for ( int i = 0; i < size; i++ )
+				dense.putQuick( ids[ i ], values[ i ] );
+		}
+		else
+		{
+			final O ref = idmap.createRef();
+			for ( int i = 0; i < size; i++ )
+				pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+			idmap.releaseRef( ref );
+		}
+	}
+
+	@Override
+	public void writePropertyDelta(
+			final RefCollection< O > objects,
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		final RefIntMap< O > pmap = propertyMap.getMap();
+		final TIntArrayList ids = new TIntArrayList();
+		final TIntArrayList values = new TIntArrayList();
+		final TIntArrayList removed = new TIntArrayList();
+		for ( final O key : objects )
+		{
+			if ( pmap.containsKey( key ) )
+			{
+				ids.add( idmap.getId( key ) );
+				values.add( pmap.get( key ) );
+			}
+			else
+				removed.add( idmap.getId( key ) );
+		}
+
+		// VALUES, SORTED BY ID
+		final int[] setIds = ids.toArray();
+		final int[] order = PropertyColumns.sortOrder( setIds );
+		out.writeInt( setIds.length );
+		PropertyColumns.writeIds( setIds, order, out );
+		PropertyColumns.writeInts( values.toArray(), order, out );
+
+		// REMOVALS, SORTED BY ID
+		final int[] removedIds = removed.toArray();
+		out.writeInt( removedIds.length );
+		PropertyColumns.writeIds( removedIds, PropertyColumns.sortOrder( removedIds ), out );
+	}
+
+	@Override
+	public void readPropertyDelta(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		final RefIntMap< O > pmap = propertyMap.getMap();
+		final O ref = idmap.createRef();
+
+		// VALUES
+		final int size = in.readInt();
+		final int[] ids = PropertyColumns.readIds( size, in );
+		final int[] values = PropertyColumns.readInts( size, in );
+		for ( int i = 0; i < size; i++ )
+			pmap.put( idmap.getObject( ids[ i ], ref ), values[ i ] );
+
+		// REMOVALS
+		final int numRemoved = in.readInt();
+		for ( final int id : PropertyColumns.readIds( numRemoved, in ) )
+			pmap.remove( idmap.getObject( id, ref ) );
+		idmap.releaseRef( ref );
+	}
+
 	@Override
 	public IntPropertyMap< O > getPropertyMap()
 	{
@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * A {@link IntPropertyMap} that reads its values from a property map container on
+ * first access. Created by {@link LazyPropertyMaps}.
+ *
+ * @param <O>
+ *            the type of objects for which the property is defined.
+ */
+public class LazyIntPropertyMap< O > extends IntPropertyMap< O >
+{
+	private final LazySection section;
+
+	LazyIntPropertyMap( final LazyPropertyMaps< O > maps, final String key, final RefPool< O > pool, final int noEntryValue )
+	{
+		super( pool, noEntryValue );
+		section = maps.register( key,
+				() -> maps.read( key, new IntPropertyMapSerializer<>( this ) ),
+				() -> super.getMap().clear() );
+	}
+
+	/**
+	 * Returns whether the values of this map are currently in memory.
+	 *
+	 * @return whether this map is loaded.
+	 */
+	public boolean isLoaded()
+	{
+		return section.loaded;
+	}
+
+	/**
+	 * Drops the values of this map, to be read again on the next access.
+	 * Modified maps are not evicted.
+	 *
+	 * @return whether the map was evicted.
+	 */
+	public boolean evict()
+	{
+		return section.evict();
+	}
+
+	@Override
+	public int set( final O key, final int value )
+	{
+		section.modify();
+		return super.set( key, value );
+	}
+
+	@Override
+	public Integer set( final O key, final Integer value )
+	{
+		section.modify();
+		return super.set( key, value );
+	}
+
+	@Override
+	public Integer remove( final O key )
+	{
+		section.modify();
+		return super.remove( key );
+	}
+
+	@Override
+	public void setAll( final RefCollection< O > keys, final int value )
+	{
+		section.modify();
+		super.setAll( keys, value );
+	}
+
+	@Override
+	public void setAll( final RefCollection< O > keys, final int[] values )
+	{
+		section.modify();
+		super.setAll( keys, values );
+	}
+
+	@Override
+	public int removeInt( final O key )
+	{
+		section.modify();
+		return super.removeInt( key );
+	}
+
+	@Override
+	public int getInt( final O key )
+	{
+		section.access();
+		return super.getInt( key );
+	}
+
+	@Override
+	public Integer get( final O key )
+	{
+		section.access();
+		return super.get( key );
+	}
+
+	@Override
+	public boolean isSet( final O key )
+	{
+		section.access();
+		return super.isSet( key );
+	}
+
+	@Override
+	public int size()
+	{
+		section.access();
+		return super.size();
+	}
+
+	@Override
+	public RefIntMap< O > getMap()
+	{
+		section.access();
+		return super.getMap();
+	}
+
+	@Override
+	public int[] getAll( final RefCollection< O > keys, final int[] values )
+	{
+		section.access();
+		return super.getAll( keys, values );
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		section.modify();
+		super.beforeDeleteObject( key );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		section.discard();
+		super.beforeClearPool();
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		section.access();
+		if ( o instanceof LazyIntPropertyMap )
+			( ( LazyIntPropertyMap< ? > ) o ).section.access();
+		return super.equals( o );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		section.access();
+		return super.hashCode();
+	}
+}
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.mastodon.RefPool;
+import org.mastodon.io.FileIdToObjectMap;
+
+/**
+ * Lazily loads property maps from a container written by
+ * {@link RawPropertyIO#writePropertyMaps(org.mastodon.io.ObjectToFileIdMap, PropertyMapSerializers, java.io.OutputStream)}.
+ * <p>
+ * The property maps created by this class know the section of the container
+ * that holds their values, and read it only when they are first accessed.
+ * Loaded maps that were not modified can be evicted, i.e., their values are
+ * dropped and read again on the next access. Maps are evicted explicitly (see
+ * {@link #evictAll()}), or automatically, least recently used first, when the
+ * estimated memory of loaded maps exceeds the {@link #setMemoryBudget(long)
+ * memory budget}. The memory of a map is estimated by the size of its
+ * section.
+ * <p>
+ * Deleting an object loads all maps created here, because a value of the
+ * deleted object must not be attached to a later object reusing its pool
+ * index. Modifications through {@code getMap()} are not tracked; maps
+ * modified that way must not be evicted.
+ * <p>
+ * The container file stays open until {@link #close()}. It must not be
+ * overwritten while maps are not loaded; call {@link #loadAll()} before
+ * saving to the same file.
+ *
+ * @param <O>
+ *            the type of objects for which the maps are defined.
+ */
+public class LazyPropertyMaps< O > implements Closeable
+{
+	private final FileIdToObjectMap< O > idmap;
+
+	private final SeekableByteChannel channel;
+
+	private final PropertyMapIndex index;
+
+	private final List< WeakReference< LazySection > > sections = new ArrayList<>();
+
+	private long memoryBudget = Long.MAX_VALUE;
+
+	private long loadedBytes;
+
+	private long clock;
+
+	/**
+	 * Opens a property map container.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map. It must stay valid while maps are
+	 *            loaded.
+	 * @param file
+	 *            the container file.
+	 * @throws IOException
+	 *             if the file is not a property map container, or for usual
+	 *             I/O errors.
+	 */
+	public LazyPropertyMaps( final FileIdToObjectMap< O > idmap, final Path file ) throws IOException
+	{
+		this.idmap = idmap;
+		channel = Files.newByteChannel( file );
+		try
+		{
+			index = PropertyMapIndex.read( channel );
+		}
+		catch ( final IOException e )
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	public PropertyMapIndex getIndex()
+	{
+		return index;
+	}
+
+	public LazyDoublePropertyMap< O > doublePropertyMap( final String key, final RefPool< O > pool, final double noEntryValue )
+	{
+		return new LazyDoublePropertyMap<>( this, key, pool, noEntryValue );
+	}
+
+	public LazyIntPropertyMap< O > intPropertyMap( final String key, final RefPool< O > pool, final int noEntryValue )
+	{
+		return new LazyIntPropertyMap<>( this, key, pool, noEntryValue );
+	}
+
+	/**
+	 * Creates a lazily loaded object property map.
+	 *
+	 * @param key
+	 *            the key of the section to load.
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param serializer
+	 *            creates the serializer to read the map with, e.g.
+	 *            {@code StringPropertyMapSerializer::new}.
+	 * @param <T>
+	 *            the type of the property values.
+	 * @return the lazily loaded map.
+	 */
+	public < T > LazyObjPropertyMap< O, T > objPropertyMap(
+			final String key,
+			final RefPool< O > pool,
+			final Function< ? super LazyObjPropertyMap< O, T >, ? extends PropertyMapSerializer< O, ? > > serializer )
+	{
+		return new LazyObjPropertyMap<>( this, key, pool, serializer );
+	}
+
+	/**
+	 * Sets the maximum estimated memory of loaded, unmodified maps. If it is
+	 * exceeded, least recently used maps are evicted.
+	 *
+	 * @param bytes
+	 *            the memory budget in bytes.
+	 */
+	public synchronized void setMemoryBudget( final long bytes )
+	{
+		memoryBudget = bytes;
+		trim( null );
+	}
+
+	/**
+	 * Returns the estimated memory of loaded maps.
+	 *
+	 * @return the estimated memory in bytes.
+	 */
+	public synchronized long getLoadedBytes()
+	{
+		return loadedBytes;
+	}
+
+	/**
+	 * Evicts all loaded maps that were not modified.
+	 */
+	public synchronized void evictAll()
+	{
+		for ( final LazySection section : sections() )
+			evict( section );
+	}
+
+	/**
+	 * Loads all maps, e.g., before the container file is overwritten.
+	 */
+	public synchronized void loadAll()
+	{
+		for ( final LazySection section : sections() )
+		{
+			load( section );
+			section.dirty = true;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	synchronized LazySection register( final String key, final LazySection.Loader loader, final Runnable unloader )
+	{
+		if ( !index.contains( key ) )
+			throw new IllegalArgumentException( "no section \"" + key + "\"" );
+		final LazySection section = new LazySection( this, key, index.getLength( key ), loader, unloader );
+		sections.add( new WeakReference<>( section ) );
+		return section;
+	}
+
+	/**
+	 * Reads the section {@code key} with {@code serializer}.
+	 */
+	void read( final String key, final PropertyMapSerializer< O, ? > serializer ) throws IOException
+	{
+		final PropertyMapSerializers< O > serializers = new PropertyMapSerializers<>();
+		serializers.put( key, serializer );
+		RawPropertyIO.readSection( idmap, serializers, key, index, channel );
+	}
+
+	long tick()
+	{
+		return ++clock;
+	}
+
+	synchronized void load( final LazySection section )
+	{
+		if ( section.loaded || section.loading )
+			return;
+		section.loading = true;
+		try
+		{
+			section.loader.load();
+		}
+		catch ( final IOException e )
+		{
+			section.unloader.run();
+			throw new UncheckedIOException( "cannot load property map \"" + section.key + "\"", e );
+		}
+		finally
+		{
+			section.loading = false;
+		}
+		section.loaded = true;
+		loadedBytes += section.size;
+		trim( section );
+	}
+
+	synchronized void discard( final LazySection section )
+	{
+		if ( section.loaded )
+			return;
+		section.loaded = true;
+		section.dirty = true;
+		loadedBytes += section.size;
+	}
+
+	synchronized boolean evict( final LazySection section )
+	{
+		if ( !section.loaded || section.dirty )
+			return false;
+		section.loaded = false;
+		section.unloader.run();
+		loadedBytes -= section.size;
+		return true;
+	}
+
+	/**
+	 * Evicts least recently used maps, except {@code keep}, until the loaded
+	 * maps fit in the memory budget.
+	 */
+	private void trim( final LazySection keep )
+	{
+		while ( loadedBytes > memoryBudget )
+		{
+			LazySection lru = null;
+			for ( final LazySection section : sections() )
+				if ( section != keep && section.loaded && !section.dirty && ( lru == null || section.lastAccess < lru.lastAccess ) )
+					lru = section;
+			if ( lru == null )
+				return;
+			evict( lru );
+		}
+	}
+
+	/**
+	 * Returns the sections that have not been garbage collected.
+	 */
+	private List< LazySection > sections()
+	{
+		sections.removeIf( r -> r.get() == null );
+		final List< LazySection > list = new ArrayList<>( sections.size() );
+		for ( final WeakReference< LazySection > ref : sections )
+		{
+			final LazySection section = ref.get();
+			if ( section != null )
+				list.add( section );
+		}
+		return list;
+	}
+}
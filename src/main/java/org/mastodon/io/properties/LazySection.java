@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+/**
+ * Load state of one lazily loaded property map, see {@link LazyPropertyMaps}.
+ */
+final class LazySection
+{
+	interface Loader
+	{
+		void load() throws java.io.IOException;
+	}
+
+	private final LazyPropertyMaps< ? > maps;
+
+	final String key;
+
+	/**
+	 * Size of the section in bytes, used to estimate the memory of the
+	 * loaded map.
+	 */
+	final long size;
+
+	final Loader loader;
+
+	final Runnable unloader;
+
+	volatile boolean loaded;
+
+	/**
+	 * Whether the section is being loaded by the thread holding the lock of
+	 * {@link #maps}.
+	 */
+	boolean loading;
+
+	/**
+	 * Whether the map was modified after loading. Dirty maps are not evicted.
+	 */
+	boolean dirty;
+
+	long lastAccess;
+
+	LazySection( final LazyPropertyMaps< ? > maps, final String key, final long size, final Loader loader, final Runnable unloader )
+	{
+		this.maps = maps;
+		this.key = key;
+		this.size = size;
+		this.loader = loader;
+		this.unloader = unloader;
+	}
+
+	/**
+	 * Loads the map, if necessary, before it is read.
+	 */
+	void access()
+	{
+		lastAccess = maps.tick();
+		if ( !loaded )
+			maps.load( this );
+	}
+
+	/**
+	 * Loads the map, if necessary, before it is modified.
+	 */
+	void modify()
+	{
+		access();
+		dirty = true;
+	}
+
+	/**
+	 * Marks the map as loaded without reading it, before all its values are
+	 * removed.
+	 */
+	void discard()
+	{
+		maps.discard( this );
+	}
+
+	boolean evict()
+	{
+		return maps.evict( this );
+	}
+}
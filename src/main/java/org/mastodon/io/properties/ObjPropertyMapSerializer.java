@@ -38,6 +38,16 @@ import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
 import org.mastodon.properties.ObjPropertyMap;
 
+/**
+ * Serializes an {@link ObjPropertyMap} with Java serialization of each value.
+ * For large maps, {@link CodecPropertyMapSerializer} with a
+ * {@link ValueCodec} is faster and more compact.
+ *
+ * @param <O>
+ *            type of object which the property is attached to.
+ * @param <T>
+ *            the value type.
+ */
 public class ObjPropertyMapSerializer< O, T > implements PropertyMapSerializer< O, ObjPropertyMap< O, T > >
 {
 	private final ObjPropertyMap< O, T > propertyMap;
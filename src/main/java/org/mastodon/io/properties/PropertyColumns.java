@@ -0,0 +1,303 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Block encoding of property columns for
+ * {@link ColumnarPropertyMapSerializer}s.
+ * <p>
+ * A column block stores {@code n} entries as two blocks: the file ids, sorted
+ * and delta-encoded as unsigned variable-length integers, followed by the
+ * values as raw little-endian bytes. Values are encoded and decoded in chunks
+ * with bulk {@link ByteBuffer} operations, and written with one
+ * {@link DataOutput#write(byte[], int, int)} per chunk.
+ */
+public final class PropertyColumns
+{
+	/**
+	 * Number of values encoded per {@link DataOutput#write(byte[], int, int)}.
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final int RADIX_BITS = 11;
+
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	/**
+	 * Returns the permutation that sorts {@code ids} in ascending order.
+	 * Large inputs are sorted with a two-pass radix sort.
+	 *
+	 * @param ids
+	 *            the (distinct, non-negative) file ids.
+	 * @return the sorting permutation.
+	 */
+	public static int[] sortOrder( final int[] ids )
+	{
+		final int n = ids.length;
+		final int[] order = new int[ n ];
+
+		// Fast paths for ascending and descending input. Hash maps keyed by
+		// pool index typically iterate in descending index order, and file
+		// ids are typically assigned in pool order.
+		boolean ascending = true;
+		boolean descending = true;
+		for ( int i = 1; i < n && ( ascending || descending ); ++i )
+		{
+			if ( ids[ i ] < ids[ i - 1 ] )
+				ascending = false;
+			else
+				descending = false;
+		}
+		if ( ascending || descending )
+		{
+			for ( int i = 0; i < n; ++i )
+				order[ i ] = ascending ? i : n - 1 - i;
+			return order;
+		}
+		for ( int i = 0; i < n; ++i )
+			order[ i ] = i;
+
+		if ( n < 4 * RADIX )
+		{
+			final long[] packed = new long[ n ];
+			for ( int i = 0; i < n; ++i )
+				packed[ i ] = ( ( long ) ids[ i ] << 32 ) | i;
+			Arrays.sort( packed );
+			for ( int i = 0; i < n; ++i )
+				order[ i ] = ( int ) packed[ i ];
+			return order;
+		}
+
+		// LSD radix sort on 11-bit digits, moving keys along with positions
+		int[] keys = ids.clone();
+		int[] pos = order;
+		int[] tmpKeys = new int[ n ];
+		int[] tmpPos = new int[ n ];
+		final int[] count = new int[ RADIX + 1 ];
+		for ( int shift = 0; shift < 32; shift += RADIX_BITS )
+		{
+			Arrays.fill( count, 0 );
+			for ( int i = 0; i < n; ++i )
+				++count[ ( ( keys[ i ] >>> shift ) & ( RADIX - 1 ) ) + 1 ];
+			if ( count[ 1 ] == n )
+				continue; // all digits are 0
+			for ( int d = 0; d < RADIX; ++d )
+				count[ d + 1 ] += count[ d ];
+			for ( int i = 0; i < n; ++i )
+			{
+				final int j = count[ ( keys[ i ] >>> shift ) & ( RADIX - 1 ) ]++;
+				tmpKeys[ j ] = keys[ i ];
+				tmpPos[ j ] = pos[ i ];
+			}
+			final int[] k = keys;
+			keys = tmpKeys;
+			tmpKeys = k;
+			final int[] p = pos;
+			pos = tmpPos;
+			tmpPos = p;
+		}
+		return pos;
+	}
+
+	/**
+	 * Writes ids in the order given by a permutation (see
+	 * {@link #sortOrder(int[])}), as a block of delta-encoded variable-length
+	 * integers. Deltas are encoded as unsigned, so the permuted ids must be in
+	 * ascending order for a compact encoding.
+	 *
+	 * @param ids
+	 *            the ids.
+	 * @param order
+	 *            the order in which to write {@code ids}.
+	 * @param out
+	 *            the output to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static void writeIds( final int[] ids, final int[] order, final DataOutput out ) throws IOException
+	{
+		byte[] bytes = new byte[ ids.length + 16 ];
+		int pos = 0;
+		int previous = 0;
+		for ( final int j : order )
+		{
+			if ( pos + 5 > bytes.length )
+				bytes = Arrays.copyOf( bytes, 2 * bytes.length );
+			int delta = ids[ j ] - previous;
+			previous = ids[ j ];
+			while ( ( delta & ~0x7f ) != 0 )
+			{
+				bytes[ pos++ ] = ( byte ) ( ( delta & 0x7f ) | 0x80 );
+				delta >>>= 7;
+			}
+			bytes[ pos++ ] = ( byte ) delta;
+		}
+		out.writeInt( pos );
+		out.write( bytes, 0, pos );
+	}
+
+	/**
+	 * Reads a block written by {@link #writeIds(int[], int[], DataOutput)}.
+	 *
+	 * @param n
+	 *            the number of ids.
+	 * @param in
+	 *            the input to read from.
+	 * @return the ids.
+	 * @throws IOException
+	 *             if an I/O error occurs, or the block is corrupt.
+	 */
+	public static int[] readIds( final int n, final DataInput in ) throws IOException
+	{
+		final byte[] bytes = new byte[ in.readInt() ];
+		in.readFully( bytes );
+		final int[] ids = new int[ n ];
+		int pos = 0;
+		int previous = 0;
+		try
+		{
+			for ( int i = 0; i < n; ++i )
+			{
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do
+				{
+					b = bytes[ pos++ ];
+					delta |= ( b & 0x7f ) << shift;
+					shift += 7;
+				}
+				while ( b < 0 );
+				previous += delta;
+				ids[ i ] = previous;
+			}
+		}
+		catch ( final ArrayIndexOutOfBoundsException e )
+		{
+			throw new IOException( "corrupt id column: expected " + n + " ids in " + bytes.length + " bytes" );
+		}
+		return ids;
+	}
+
+	/**
+	 * Writes values in the order given by a permutation, as little-endian
+	 * bytes.
+	 *
+	 * @param values
+	 *            the values.
+	 * @param order
+	 *            the order in which to write {@code values}.
+	 * @param out
+	 *            the output to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static void writeDoubles( final double[] values, final int[] order, final DataOutput out ) throws IOException
+	{
+		final byte[] bytes = new byte[ 8 * CHUNK_SIZE ];
+		final DoubleBuffer buffer = ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer();
+		for ( int i = 0; i < order.length; i += CHUNK_SIZE )
+		{
+			final int len = Math.min( CHUNK_SIZE, order.length - i );
+			buffer.clear();
+			for ( int j = 0; j < len; ++j )
+				buffer.put( values[ order[ i + j ] ] );
+			out.write( bytes, 0, 8 * len );
+		}
+	}
+
+	public static double[] readDoubles( final int n, final DataInput in ) throws IOException
+	{
+		final byte[] bytes = new byte[ 8 * Math.min( n, CHUNK_SIZE ) ];
+		final DoubleBuffer buffer = ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer();
+		final double[] values = new double[ n ];
+		for ( int i = 0; i < n; i += CHUNK_SIZE )
+		{
+			final int len = Math.min( CHUNK_SIZE, n - i );
+			in.readFully( bytes, 0, 8 * len );
+			buffer.clear();
+			buffer.get( values, i, len );
+		}
+		return values;
+	}
+
+	/**
+	 * Writes values in the order given by a permutation, as little-endian
+	 * bytes.
+	 *
+	 * @param values
+	 *            the values.
+	 * @param order
+	 *            the order in which to write {@code values}.
+	 * @param out
+	 *            the output to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static void writeInts( final int[] values, final int[] order, final DataOutput out ) throws IOException
+	{
+		final byte[] bytes = new byte[ 4 * CHUNK_SIZE ];
+		final IntBuffer buffer = ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+		for ( int i = 0; i < order.length; i += CHUNK_SIZE )
+		{
+			final int len = Math.min( CHUNK_SIZE, order.length - i );
+			buffer.clear();
+			for ( int j = 0; j < len; ++j )
+				buffer.put( values[ order[ i + j ] ] );
+			out.write( bytes, 0, 4 * len );
+		}
+	}
+
+	public static int[] readInts( final int n, final DataInput in ) throws IOException
+	{
+		final byte[] bytes = new byte[ 4 * Math.min( n, CHUNK_SIZE ) ];
+		final IntBuffer buffer = ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+		final int[] values = new int[ n ];
+		for ( int i = 0; i < n; i += CHUNK_SIZE )
+		{
+			final int len = Math.min( CHUNK_SIZE, n - i );
+			in.readFully( bytes, 0, 4 * len );
+			buffer.clear();
+			buffer.get( values, i, len );
+		}
+		return values;
+	}
+
+	private PropertyColumns()
+	{}
+}
@@ -0,0 +1,281 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Index of the sections of a property map container written by
+ * {@link RawPropertyIO#writePropertyMaps(org.mastodon.io.ObjectToFileIdMap, PropertyMapSerializers, java.io.OutputStream, java.util.concurrent.ForkJoinPool)}.
+ * <p>
+ * A container consists of
+ * <ul>
+ * <li>a header: {@code int} magic number and {@code int} container
+ * version,</li>
+ * <li>one independently framed section per property map,</li>
+ * <li>the index: {@code int} number of sections, and for each section its
+ * key (modified UTF-8), {@code long} offset, {@code int} length and
+ * {@code int} CRC32 checksum, followed by the {@code int} CRC32 checksum of
+ * the index itself,</li>
+ * <li>a footer: {@code long} offset of the index and {@code int} magic
+ * number.</li>
+ * </ul>
+ * Using the index, sections can be read in any order, or skipped. The
+ * checksum of a section is verified whenever it is read.
+ */
+public final class PropertyMapIndex
+{
+	static final int MAGIC = 0x4D505243; // "MPRC"
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 8;
+
+	private static final int FOOTER_SIZE = 12;
+
+	private static final class Section
+	{
+		final long offset;
+
+		final int length;
+
+		final long checksum;
+
+		Section( final long offset, final int length, final long checksum )
+		{
+			this.offset = offset;
+			this.length = length;
+			this.checksum = checksum;
+		}
+	}
+
+	private final Map< String, Section > sections = new LinkedHashMap<>();
+
+	PropertyMapIndex()
+	{}
+
+	void add( final String key, final long offset, final int length, final long checksum )
+	{
+		sections.put( key, new Section( offset, length, checksum ) );
+	}
+
+	/**
+	 * Computes the CRC32 checksum of a section.
+	 *
+	 * @param bytes
+	 *            the bytes of the section.
+	 * @return the checksum.
+	 */
+	static long checksum( final byte[] bytes )
+	{
+		final CRC32 crc = new CRC32();
+		crc.update( bytes, 0, bytes.length );
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the keys of all sections, in the order they were written.
+	 *
+	 * @return the keys.
+	 */
+	public List< String > getKeys()
+	{
+		return Collections.unmodifiableList( new ArrayList<>( sections.keySet() ) );
+	}
+
+	public boolean contains( final String key )
+	{
+		return sections.containsKey( key );
+	}
+
+	/**
+	 * Returns the length of a section in bytes.
+	 *
+	 * @param key
+	 *            the key of the section.
+	 * @return the length of the section.
+	 */
+	public int getLength( final String key )
+	{
+		return section( key ).length;
+	}
+
+	/**
+	 * Reads the bytes of a section and verifies their checksum.
+	 *
+	 * @param key
+	 *            the key of the section.
+	 * @param channel
+	 *            the container to read from.
+	 * @return the bytes of the section.
+	 * @throws IOException
+	 *             if there is no section with the specified key, if the
+	 *             checksum of the section does not match, or for usual I/O
+	 *             errors.
+	 */
+	public byte[] readSection( final String key, final SeekableByteChannel channel ) throws IOException
+	{
+		final Section section = section( key );
+		final byte[] bytes = new byte[ section.length ];
+		synchronized ( channel )
+		{
+			channel.position( section.offset );
+			readFully( channel, ByteBuffer.wrap( bytes ) );
+		}
+		if ( checksum( bytes ) != section.checksum )
+			throw new IOException( "checksum mismatch in section \"" + key + "\"" );
+		return bytes;
+	}
+
+	/**
+	 * Verifies the checksums of all sections, without decoding them.
+	 *
+	 * @param channel
+	 *            the container to read from.
+	 * @throws IOException
+	 *             if the checksum of a section does not match, or for usual
+	 *             I/O errors.
+	 */
+	public void verify( final SeekableByteChannel channel ) throws IOException
+	{
+		for ( final String key : sections.keySet() )
+			readSection( key, channel );
+	}
+
+	private Section section( final String key )
+	{
+		final Section section = sections.get( key );
+		if ( section == null )
+			throw new IllegalArgumentException( "no section \"" + key + "\"" );
+		return section;
+	}
+
+	void write( final DataOutputStream out ) throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream( bs );
+		dos.writeInt( sections.size() );
+		for ( final Map.Entry< String, Section > entry : sections.entrySet() )
+		{
+			dos.writeUTF( entry.getKey() );
+			dos.writeLong( entry.getValue().offset );
+			dos.writeInt( entry.getValue().length );
+			dos.writeInt( ( int ) entry.getValue().checksum );
+		}
+		final byte[] bytes = bs.toByteArray();
+		out.write( bytes );
+		out.writeInt( ( int ) checksum( bytes ) );
+	}
+
+	static void writeFooter( final long indexOffset, final DataOutputStream out ) throws IOException
+	{
+		out.writeLong( indexOffset );
+		out.writeInt( MAGIC );
+	}
+
+	/**
+	 * Reads the index of a property map container.
+	 *
+	 * @param channel
+	 *            the container to read from.
+	 * @return the index.
+	 * @throws IOException
+	 *             if the channel does not contain a property map container,
+	 *             or for usual I/O errors.
+	 */
+	public static PropertyMapIndex read( final SeekableByteChannel channel ) throws IOException
+	{
+		synchronized ( channel )
+		{
+			final long size = channel.size();
+			if ( size < HEADER_SIZE + FOOTER_SIZE + 8 )
+				throw new IOException( "not a property map container" );
+
+			final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+			channel.position( 0 );
+			readFully( channel, header );
+			if ( header.getInt( 0 ) != MAGIC )
+				throw new IOException( "not a property map container" );
+			final int version = header.getInt( 4 );
+			if ( version != VERSION )
+				throw new IOException( "unsupported property map container version " + version );
+
+			final ByteBuffer footer = ByteBuffer.allocate( FOOTER_SIZE );
+			channel.position( size - FOOTER_SIZE );
+			readFully( channel, footer );
+			final long indexOffset = footer.getLong( 0 );
+			if ( footer.getInt( 8 ) != MAGIC || indexOffset < HEADER_SIZE || indexOffset > size - FOOTER_SIZE )
+				throw new IOException( "corrupt property map container footer" );
+
+			final int indexLength = ( int ) ( size - FOOTER_SIZE - indexOffset ) - 4;
+			if ( indexLength < 4 )
+				throw new IOException( "corrupt property map container index" );
+			final ByteBuffer bytes = ByteBuffer.allocate( indexLength + 4 );
+			channel.position( indexOffset );
+			readFully( channel, bytes );
+			final CRC32 crc = new CRC32();
+			crc.update( bytes.array(), 0, indexLength );
+			if ( ( int ) crc.getValue() != bytes.getInt( indexLength ) )
+				throw new IOException( "checksum mismatch in property map container index" );
+			final DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes.array(), 0, indexLength ) );
+			final PropertyMapIndex index = new PropertyMapIndex();
+			final int n = in.readInt();
+			for ( int i = 0; i < n; ++i )
+			{
+				final String key = in.readUTF();
+				final long offset = in.readLong();
+				final int length = in.readInt();
+				final long checksum = in.readInt() & 0xFFFFFFFFL;
+				if ( offset < HEADER_SIZE || length < 0 || offset + length > indexOffset )
+					throw new IOException( "corrupt property map container index" );
+				index.add( key, offset, length, checksum );
+			}
+			return index;
+		}
+	}
+
+	private static void readFully( final SeekableByteChannel channel, final ByteBuffer buffer ) throws IOException
+	{
+		while ( buffer.hasRemaining() )
+			if ( channel.read( buffer ) < 0 )
+				throw new IOException( "unexpected end of property map container" );
+	}
+}
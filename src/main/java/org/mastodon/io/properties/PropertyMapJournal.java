@@ -0,0 +1,526 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.RefSetImp;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.properties.ObjectLifecycleListener;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMaps;
+
+/**
+ * Incremental saving of property maps. The maps are stored as a base
+ * container (see {@link PropertyMapIndex}) and a journal file next to it, to
+ * which the changes since the last save are appended.
+ * <p>
+ * The journal listens to the {@link PropertyChangeListener}s of all maps of
+ * its {@link PropertyMapSerializers} and records which objects changed.
+ * {@link #save(ObjectToFileIdMap)} appends one segment with the current
+ * values of these objects, or with the whole map for serializers that are not
+ * {@link IncrementalPropertyMapSerializer}s. When the journal grows beyond a
+ * fraction of the base (see {@link #setCompactionRatio(double)}), or after
+ * objects were deleted, the maps are compacted instead, i.e., written to a
+ * fresh base and the journal is started over.
+ * <p>
+ * The journal file consists of
+ * <ul>
+ * <li>a header: {@code int} magic number, {@code int} version, {@code long}
+ * length and {@code long} CRC32 checksum of the base it belongs to,</li>
+ * <li>segments: {@code int} magic number, {@code int} payload length,
+ * {@code long} CRC32 checksum of the payload, and the payload, which holds a
+ * record for each changed map.</li>
+ * </ul>
+ * A journal that does not match the base, e.g. after a crash during
+ * compaction, is ignored. Reading stops at the first incomplete or corrupt
+ * segment, and the next save overwrites it.
+ * <p>
+ * File ids must be stable between saves: a segment is applied with the
+ * {@link FileIdToObjectMap} of the objects read with the base. Changes made
+ * while listeners are paused, or through the underlying maps directly, are
+ * not tracked; call {@link #requireCompaction()} after such changes. Saving
+ * and compacting read the property maps, and must not run concurrently with
+ * modifications.
+ *
+ * @param <O>
+ *            type of object which properties are attached to.
+ */
+public class PropertyMapJournal< O >
+{
+	static final int MAGIC = 0x4D504A4C; // "MPJL"
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 24;
+
+	static final int SEGMENT_MAGIC = 0x4D505347; // "MPSG"
+
+	static final int SEGMENT_HEADER_SIZE = 16;
+
+	/**
+	 * Record written by
+	 * {@link IncrementalPropertyMapSerializer#writePropertyDelta}.
+	 */
+	private static final byte DELTA = 0;
+
+	/**
+	 * Record of the whole map, in the section format of
+	 * {@link RawPropertyIO}.
+	 */
+	private static final byte FULL = 1;
+
+	private final PropertyMapSerializers< O > serializers;
+
+	private final Path base;
+
+	private final Path journal;
+
+	private final Map< String, RefSet< O > > dirty = new LinkedHashMap<>();
+
+	private final List< Runnable > unregister = new ArrayList<>();
+
+	private final DeletionTracker< O > tracker;
+
+	private boolean compactionRequired;
+
+	private long baseLength;
+
+	private long baseChecksum;
+
+	/**
+	 * Length of the valid part of the journal file, or -1 if there is no
+	 * journal for the current base.
+	 */
+	private long journalLength;
+
+	private double compactionRatio = 0.5;
+
+	/**
+	 * Creates a journal for property maps that were not read from
+	 * {@code base}. The first save writes a new base.
+	 *
+	 * @param serializers
+	 *            serializers of the property maps to save.
+	 * @param pool
+	 *            the pool of objects the property maps are defined for.
+	 * @param base
+	 *            the base file. The journal is stored next to it, with the
+	 *            suffix {@code .journal}.
+	 */
+	public PropertyMapJournal( final PropertyMapSerializers< O > serializers, final RefPool< O > pool, final Path base )
+	{
+		this.serializers = serializers;
+		this.base = base;
+		this.journal = base.resolveSibling( base.getFileName() + ".journal" );
+		for ( final String key : serializers.getKeys() )
+		{
+			final RefSet< O > set = new RefSetImp<>( pool );
+			dirty.put( key, set );
+			final PropertyChangeListener< O > listener = new PropertyChangeListener< O >()
+			{
+				@Override
+				public void propertyChanged( final O object )
+				{
+					set.add( object );
+				}
+
+				@Override
+				public void propertiesChanged( final RefCollection< O > objects )
+				{
+					set.addAll( objects );
+				}
+			};
+			final Property< O > map = serializers.getPropertyMap( key ).getPropertyMap();
+			map.propertyChangeListeners().add( listener );
+			unregister.add( () -> map.propertyChangeListeners().remove( listener ) );
+		}
+		tracker = new DeletionTracker<>( pool, this::requireCompaction );
+		compactionRequired = true;
+		journalLength = -1;
+	}
+
+	/**
+	 * Reads property maps from a base and its journal, and creates a journal
+	 * to save subsequent changes.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map.
+	 * @param serializers
+	 *            serializers of the property maps to read and save.
+	 * @param pool
+	 *            the pool of objects the property maps are defined for.
+	 * @param base
+	 *            the base file.
+	 * @param <O>
+	 *            type of object which properties are attached to.
+	 * @return the journal.
+	 * @throws IOException
+	 *             if the base is corrupt, or for usual I/O errors.
+	 */
+	public static < O > PropertyMapJournal< O > read(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final RefPool< O > pool,
+			final Path base )
+					throws IOException
+	{
+		try ( final SeekableByteChannel channel = Files.newByteChannel( base ) )
+		{
+			RawPropertyIO.readPropertyMaps( idmap, serializers, channel );
+		}
+		final PropertyMapJournal< O > journal = new PropertyMapJournal<>( serializers, pool, base );
+		journal.baseLength = Files.size( base );
+		journal.baseChecksum = checksum( base );
+		journal.journalLength = journal.replay( idmap );
+		journal.compactionRequired = false;
+		return journal;
+	}
+
+	/**
+	 * Sets the maximum size of the journal, relative to the size of the base.
+	 * When it is exceeded, the next save compacts.
+	 *
+	 * @param ratio
+	 *            the maximum ratio of journal size to base size.
+	 */
+	public synchronized void setCompactionRatio( final double ratio )
+	{
+		compactionRatio = ratio;
+	}
+
+	/**
+	 * Makes the next save write a new base.
+	 */
+	public synchronized void requireCompaction()
+	{
+		compactionRequired = true;
+	}
+
+	/**
+	 * Saves the changes since the last save: appends them to the journal, or
+	 * compacts if required or if the journal is too large.
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @return whether the maps were compacted.
+	 * @throws IOException
+	 *             for usual I/O errors.
+	 */
+	public synchronized boolean save( final ObjectToFileIdMap< O > idmap ) throws IOException
+	{
+		if ( compactionRequired
+				|| journalLength < 0
+				|| journalLength - HEADER_SIZE > compactionRatio * baseLength )
+		{
+			compact( idmap );
+			return true;
+		}
+		append( idmap );
+		return false;
+	}
+
+	/**
+	 * Writes all property maps to a new base, replacing the previous base and
+	 * its journal. Sections are encoded in parallel on the common
+	 * {@link ForkJoinPool}.
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @throws IOException
+	 *             for usual I/O errors.
+	 */
+	public void compact( final ObjectToFileIdMap< O > idmap ) throws IOException
+	{
+		compact( idmap, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Writes all property maps to a new base, replacing the previous base and
+	 * its journal.
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @param forkJoinPool
+	 *            the pool to encode sections on.
+	 * @throws IOException
+	 *             for usual I/O errors.
+	 */
+	public synchronized void compact( final ObjectToFileIdMap< O > idmap, final ForkJoinPool forkJoinPool ) throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		RawPropertyIO.writePropertyMaps( idmap, serializers, base, forkJoinPool, crc );
+		baseLength = Files.size( base );
+		baseChecksum = crc.getValue();
+
+		// A crash before this point leaves a journal with the checksum of the
+		// previous base, which is ignored when reading.
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream( HEADER_SIZE );
+		final DataOutputStream header = new DataOutputStream( bs );
+		header.writeInt( MAGIC );
+		header.writeInt( VERSION );
+		header.writeLong( baseLength );
+		header.writeLong( baseChecksum );
+		Files.write( journal, bs.toByteArray() );
+		journalLength = HEADER_SIZE;
+
+		dirty.values().forEach( RefSet::clear );
+		compactionRequired = false;
+	}
+
+	/**
+	 * Stops listening to the property maps and the pool.
+	 */
+	public void release()
+	{
+		unregister.forEach( Runnable::run );
+		tracker.release();
+	}
+
+	/**
+	 * Appends a segment with the changes since the last save.
+	 */
+	private void append( final ObjectToFileIdMap< O > idmap ) throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final DataOutputStream payload = new DataOutputStream( bs );
+		int numRecords = 0;
+		for ( final String key : dirty.keySet() )
+			if ( !dirty.get( key ).isEmpty() )
+				++numRecords;
+		if ( numRecords == 0 )
+			return;
+
+		payload.writeInt( numRecords );
+		for ( final Map.Entry< String, RefSet< O > > entry : dirty.entrySet() )
+		{
+			final RefSet< O > objects = entry.getValue();
+			if ( objects.isEmpty() )
+				continue;
+			final String key = entry.getKey();
+			final PropertyMapSerializer< O, ? > serializer = serializers.getPropertyMap( key );
+			final byte[] record;
+			payload.writeUTF( key );
+			if ( serializer instanceof IncrementalPropertyMapSerializer )
+			{
+				final ByteArrayOutputStream rs = new ByteArrayOutputStream();
+				final DataOutputStream out = new DataOutputStream( rs );
+				( ( IncrementalPropertyMapSerializer< O, ? > ) serializer ).writePropertyDelta( objects, idmap, out );
+				out.flush();
+				record = rs.toByteArray();
+				payload.writeByte( DELTA );
+			}
+			else
+			{
+				record = RawPropertyIO.encodeSection( idmap, serializer );
+				payload.writeByte( FULL );
+			}
+			payload.writeInt( record.length );
+			payload.write( record );
+		}
+		payload.flush();
+		final byte[] bytes = bs.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update( bytes );
+
+		final ByteBuffer buffer = ByteBuffer.allocate( SEGMENT_HEADER_SIZE + bytes.length );
+		buffer.putInt( SEGMENT_MAGIC );
+		buffer.putInt( bytes.length );
+		buffer.putLong( crc.getValue() );
+		buffer.put( bytes );
+		buffer.flip();
+		try ( final FileChannel channel = FileChannel.open( journal, StandardOpenOption.WRITE ) )
+		{
+			// drop an incomplete segment left by an interrupted save
+			channel.truncate( journalLength );
+			channel.position( journalLength );
+			while ( buffer.hasRemaining() )
+				channel.write( buffer );
+			channel.force( false );
+		}
+		journalLength += SEGMENT_HEADER_SIZE + bytes.length;
+
+		dirty.values().forEach( RefSet::clear );
+	}
+
+	/**
+	 * Applies the segments of the journal, if it belongs to the base.
+	 *
+	 * @return the length of the valid part of the journal, or -1 if there is
+	 *         no journal for the base.
+	 */
+	private long replay( final FileIdToObjectMap< O > idmap ) throws IOException
+	{
+		if ( !Files.exists( journal ) )
+			return -1;
+		final long size = Files.size( journal );
+		try ( final DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( journal ), 1 << 16 ) ) )
+		{
+			try
+			{
+				if ( in.readInt() != MAGIC )
+					return -1;
+				final int version = in.readInt();
+				if ( version > VERSION )
+					throw new IOException( "unsupported journal version " + version );
+				if ( in.readLong() != baseLength || in.readLong() != baseChecksum )
+					return -1;
+			}
+			catch ( final EOFException e )
+			{
+				return -1;
+			}
+
+			long length = HEADER_SIZE;
+			while ( true )
+			{
+				final byte[] bytes;
+				try
+				{
+					if ( in.readInt() != SEGMENT_MAGIC )
+						break;
+					final int n = in.readInt();
+					if ( n < 0 || length + SEGMENT_HEADER_SIZE + n > size )
+						break;
+					bytes = new byte[ n ];
+					final long checksum = in.readLong();
+					in.readFully( bytes );
+					final CRC32 crc = new CRC32();
+					crc.update( bytes );
+					if ( crc.getValue() != checksum )
+						break;
+				}
+				catch ( final EOFException e )
+				{
+					break;
+				}
+				applySegment( idmap, bytes );
+				length += SEGMENT_HEADER_SIZE + bytes.length;
+			}
+			return length;
+		}
+	}
+
+	private void applySegment( final FileIdToObjectMap< O > idmap, final byte[] bytes ) throws IOException
+	{
+		final DataInputStream payload = new DataInputStream( new ByteArrayInputStream( bytes ) );
+		final int numRecords = payload.readInt();
+		for ( int i = 0; i < numRecords; ++i )
+		{
+			final String key = payload.readUTF();
+			final byte kind = payload.readByte();
+			final byte[] record = new byte[ payload.readInt() ];
+			payload.readFully( record );
+			final PropertyMapSerializer< O, ? > serializer = serializers.getPropertyMap( key );
+			if ( serializer == null )
+				throw new IOException( "no serializer for property map \"" + key + "\"" );
+			if ( kind == DELTA )
+			{
+				if ( !( serializer instanceof IncrementalPropertyMapSerializer ) )
+					throw new IOException( "serializer for property map \"" + key + "\" cannot read changes" );
+				( ( IncrementalPropertyMapSerializer< O, ? > ) serializer ).readPropertyDelta( idmap,
+						new DataInputStream( new ByteArrayInputStream( record ) ) );
+			}
+			else
+				RawPropertyIO.decodeSection( idmap, serializer, key, record );
+		}
+	}
+
+	private static long checksum( final Path file ) throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[ 1 << 16 ];
+		try ( final InputStream in = Files.newInputStream( file ) )
+		{
+			int n;
+			while ( ( n = in.read( buffer ) ) > 0 )
+				crc.update( buffer, 0, n );
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Registered with the pool, to notice deleted objects: their pool
+	 * indices may be reused, so changes recorded for them are no longer
+	 * valid.
+	 */
+	private static final class DeletionTracker< O > implements ObjectLifecycleListener< O >
+	{
+		private final Runnable onDelete;
+
+		private final Runnable lifecycleListenerRemover;
+
+		DeletionTracker( final RefPool< O > pool, final Runnable onDelete )
+		{
+			this.onDelete = onDelete;
+			lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+		}
+
+		void release()
+		{
+			lifecycleListenerRemover.run();
+		}
+
+		@Override
+		public void beforeDeleteObject( final O key )
+		{
+			onDelete.run();
+		}
+
+		@Override
+		public void beforeClearPool()
+		{
+			onDelete.run();
+		}
+	}
+}
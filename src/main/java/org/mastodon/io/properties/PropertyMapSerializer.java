@@ -34,10 +34,12 @@ import java.io.ObjectOutputStream;
 
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.properties.Property;
 import org.mastodon.properties.PropertyMap;
 
 /**
- * De/serialize a {@link PropertyMap} of type {@code M}.
+ * De/serialize a {@link Property} (usually a {@link PropertyMap}) of type
+ * {@code M}.
  *
  * @param <M>
  *            the property map type
@@ -46,7 +48,7 @@ import org.mastodon.properties.PropertyMap;
  *
  * @author Tobias Pietzsch
  */
-public interface PropertyMapSerializer< O, M extends PropertyMap< O, ? > >
+public interface PropertyMapSerializer< O, M extends Property< O > >
 {
 	public void writePropertyMap(
 			final ObjectToFileIdMap< O > idmap,
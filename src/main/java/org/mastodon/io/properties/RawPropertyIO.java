@@ -28,9 +28,34 @@
  */
 package org.mastodon.io.properties;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
 
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
@@ -38,8 +63,25 @@ import org.mastodon.properties.PropertyMaps;
 
 public class RawPropertyIO
 {
+	/**
+	 * Written at the start of versioned streams (see
+	 * {@link #writeVersionedPropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, ObjectOutputStream)}).
+	 * Streams in the original format start with the {@code String[]} array of
+	 * keys.
+	 */
+	static final String MAGIC = "mastodon-properties";
+
+	/**
+	 * Current format version. Version 1 adds a flag before each property map,
+	 * which is {@code true} if the map is written in column format by a
+	 * {@link ColumnarPropertyMapSerializer}.
+	 */
+	public static final int VERSION = 1;
+
 	/**
 	 * Read a collection of {@link PropertyMaps} from an object input stream.
+	 * Reads both the original format and the versioned format, which is
+	 * recognized by its {@link #MAGIC} header.
 	 *
 	 * @param idmap
 	 *            the file id-to-object map.
@@ -64,9 +106,32 @@ public class RawPropertyIO
 	{
 		try
 		{
-			final String[] keys = ( String[] ) ois.readObject();
+			final Object header = ois.readObject();
+			final int version;
+			final String[] keys;
+			if ( header instanceof String[] )
+			{
+				version = 0;
+				keys = ( String[] ) header;
+			}
+			else if ( MAGIC.equals( header ) )
+			{
+				version = ois.readInt();
+				if ( version > VERSION )
+					throw new IOException( "unsupported property map format version " + version );
+				keys = ( String[] ) ois.readObject();
+			}
+			else
+				throw new IOException( "unknown property map format" );
+
 			for ( final String key : keys )
-				serializers.getPropertyMap( key ).readPropertyMap( idmap, ois );
+			{
+				final PropertyMapSerializer< O, ? > serializer = getSerializer( serializers, key );
+				if ( version >= 1 )
+					readSection( idmap, serializer, key, ois );
+				else
+					serializer.readPropertyMap( idmap, ois );
+			}
 		}
 		catch ( final ClassNotFoundException e )
 		{
@@ -82,6 +147,12 @@ public class RawPropertyIO
 	 * {@link PropertyMapSerializer#writePropertyMap(ObjectToFileIdMap, ObjectOutputStream)}
 	 * (in the order of keys).
 	 * </p>
+	 * <p>
+	 * This is the original, unversioned format, which can be read by all
+	 * versions of this library. See
+	 * {@link #writeVersionedPropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, ObjectOutputStream)}
+	 * for a more compact format.
+	 * </p>
 	 *
 	 * @param idmap
 	 *            the object-to-file id map.
@@ -107,4 +178,504 @@ public class RawPropertyIO
 		for ( final String key : keys )
 			serializers.getPropertyMap( key ).writePropertyMap( idmap, oos );
 	}
+
+	/**
+	 * Write a collection of {@link PropertyMaps} to an object output stream,
+	 * in the versioned format.
+	 * <p>
+	 * First, writes a header with the {@link #MAGIC} string and the format
+	 * {@link #VERSION}, and a {@code String[]} array with the property map
+	 * keys (as assigned in {@link PropertyMapSerializers}). Then, in the order
+	 * of keys, writes each property map with
+	 * {@link ColumnarPropertyMapSerializer#writePropertyColumns(ObjectToFileIdMap, java.io.DataOutput)}
+	 * if the serializer supports it, or
+	 * {@link PropertyMapSerializer#writePropertyMap(ObjectToFileIdMap, ObjectOutputStream)}
+	 * otherwise.
+	 * </p>
+	 * <p>
+	 * Streams in this format can only be read by
+	 * {@link #readPropertyMaps(FileIdToObjectMap, PropertyMapSerializers, ObjectInputStream)}
+	 * of this or later versions of the library.
+	 * </p>
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @param serializers
+	 *            collection of serializers to write property maps. The
+	 *            contained keys and property maps are written to the output
+	 *            stream.
+	 * @param oos
+	 *            the output stream for serializing.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if there is a problem writing to the output stream.
+	 */
+	public static < O > void writeVersionedPropertyMaps(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final ObjectOutputStream oos )
+					throws IOException
+	{
+		final String[] keys = serializers.getKeys().toArray( new String[ 0 ] );
+		oos.writeObject( MAGIC );
+		oos.writeInt( VERSION );
+		oos.writeObject( keys );
+		for ( final String key : keys )
+			writeSection( idmap, serializers.getPropertyMap( key ), oos );
+	}
+
+	/**
+	 * Write a collection of {@link PropertyMaps} as a container of
+	 * independently framed sections, one per property map, followed by an
+	 * index (see {@link PropertyMapIndex}). Sections are encoded in parallel
+	 * on the common {@link ForkJoinPool}.
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @param serializers
+	 *            collection of serializers to write property maps.
+	 * @param out
+	 *            the output stream, positioned at the start of the file.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if there is a problem writing to the output stream.
+	 */
+	public static < O > void writePropertyMaps(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final OutputStream out )
+					throws IOException
+	{
+		writePropertyMaps( idmap, serializers, out, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Write a collection of {@link PropertyMaps} as a container of
+	 * independently framed sections, one per property map, followed by an
+	 * index (see {@link PropertyMapIndex}). Sections are encoded in parallel
+	 * on the specified {@link ForkJoinPool}, and written in the order of keys.
+	 * <p>
+	 * Section offsets are counted from the current position of {@code out},
+	 * which therefore should be the start of the file.
+	 * </p>
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @param serializers
+	 *            collection of serializers to write property maps.
+	 * @param out
+	 *            the output stream, positioned at the start of the file.
+	 * @param forkJoinPool
+	 *            the pool to encode sections on.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if there is a problem writing to the output stream.
+	 */
+	public static < O > void writePropertyMaps(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final OutputStream out,
+			final ForkJoinPool forkJoinPool )
+					throws IOException
+	{
+		final String[] keys = serializers.getKeys().toArray( new String[ 0 ] );
+		final List< EncodedSection > sections = invoke( forkJoinPool, () -> Arrays.stream( keys ).parallel()
+				.map( key -> {
+					try
+					{
+						return new EncodedSection( encodeSection( idmap, serializers.getPropertyMap( key ) ) );
+					}
+					catch ( final IOException e )
+					{
+						throw new UncheckedIOException( e );
+					}
+				} )
+				.collect( Collectors.toList() ) );
+
+		final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( out, 1 << 16 ) );
+		dos.writeInt( PropertyMapIndex.MAGIC );
+		dos.writeInt( PropertyMapIndex.VERSION );
+		final PropertyMapIndex index = new PropertyMapIndex();
+		long offset = PropertyMapIndex.HEADER_SIZE;
+		for ( int i = 0; i < keys.length; ++i )
+		{
+			final EncodedSection section = sections.get( i );
+			dos.write( section.bytes );
+			index.add( keys[ i ], offset, section.bytes.length, section.checksum );
+			offset += section.bytes.length;
+		}
+		index.write( dos );
+		PropertyMapIndex.writeFooter( offset, dos );
+		dos.flush();
+	}
+
+	/**
+	 * Write a collection of {@link PropertyMaps} as a container (see
+	 * {@link #writePropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, OutputStream, ForkJoinPool)})
+	 * to a file, such that a crash during writing never leaves a partially
+	 * written file behind.
+	 * <p>
+	 * The container is written to a temporary file next to {@code file},
+	 * which is flushed to the storage device and then moved to {@code file},
+	 * atomically where the file system supports it. If writing fails, an
+	 * existing {@code file} is left untouched.
+	 * </p>
+	 *
+	 * @param idmap
+	 *            the object-to-file id map.
+	 * @param serializers
+	 *            collection of serializers to write property maps.
+	 * @param file
+	 *            the file to write.
+	 * @param forkJoinPool
+	 *            the pool to encode sections on.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if there is a problem writing the file.
+	 */
+	public static < O > void writePropertyMaps(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final Path file,
+			final ForkJoinPool forkJoinPool )
+					throws IOException
+	{
+		writePropertyMaps( idmap, serializers, file, forkJoinPool, null );
+	}
+
+	/**
+	 * Atomically writes a container to {@code file}, and updates
+	 * {@code fileChecksum} (if not {@code null}) with all bytes written.
+	 */
+	static < O > void writePropertyMaps(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final Path file,
+			final ForkJoinPool forkJoinPool,
+			final Checksum fileChecksum )
+					throws IOException
+	{
+		final Path tmp = file.resolveSibling( file.getFileName() + ".tmp" );
+		try
+		{
+			try ( final FileChannel channel = FileChannel.open( tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+			{
+				final OutputStream out = Channels.newOutputStream( channel );
+				writePropertyMaps( idmap, serializers, fileChecksum == null ? out : new CheckedOutputStream( out, fileChecksum ), forkJoinPool );
+				channel.force( true );
+			}
+			replace( tmp, file );
+		}
+		catch ( final IOException | RuntimeException | Error e )
+		{
+			Files.deleteIfExists( tmp );
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves {@code source} to {@code target}, atomically if the file system
+	 * supports it, and flushes the directory entry to the storage device
+	 * where possible.
+	 */
+	static void replace( final Path source, final Path target ) throws IOException
+	{
+		try
+		{
+			Files.move( source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( final AtomicMoveNotSupportedException e )
+		{
+			Files.move( source, target, StandardCopyOption.REPLACE_EXISTING );
+		}
+		final Path dir = target.toAbsolutePath().getParent();
+		if ( dir != null )
+		{
+			try ( final FileChannel channel = FileChannel.open( dir, StandardOpenOption.READ ) )
+			{
+				channel.force( true );
+			}
+			catch ( final IOException e )
+			{
+				// Directories cannot be opened on some platforms (Windows).
+				// The move itself has succeeded, so this is not an error.
+			}
+		}
+	}
+
+	/**
+	 * Read all property maps from a container file written by
+	 * {@link #writePropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, Path, ForkJoinPool)}.
+	 * Sections are read, verified against their checksums, and decoded in
+	 * parallel on the specified {@link ForkJoinPool}.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map.
+	 * @param serializers
+	 *            collection of serializers to read property maps. This must
+	 *            contain serializers for all keys in the container.
+	 * @param file
+	 *            the container file.
+	 * @param forkJoinPool
+	 *            the pool to verify and decode sections on.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if a serializer cannot be found for a key in the
+	 *             container, if the container is corrupt or a checksum does
+	 *             not match, or for usual I/O errors.
+	 */
+	public static < O > void readPropertyMaps(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final Path file,
+			final ForkJoinPool forkJoinPool )
+					throws IOException
+	{
+		try ( final FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+		{
+			final PropertyMapIndex index = PropertyMapIndex.read( channel );
+			readPropertyMaps( idmap, serializers, index.getKeys(), index, channel, forkJoinPool );
+		}
+	}
+
+	/**
+	 * Read all property maps from a container written by
+	 * {@link #writePropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, OutputStream, ForkJoinPool)}.
+	 * Sections are decoded in parallel on the common {@link ForkJoinPool}.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map.
+	 * @param serializers
+	 *            collection of serializers to read property maps. This must
+	 *            contain serializers for all keys in the container.
+	 * @param channel
+	 *            the container.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if a serializer cannot be found for a key in the
+	 *             container, or the container is corrupt, or for usual I/O
+	 *             errors.
+	 */
+	public static < O > void readPropertyMaps(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final SeekableByteChannel channel )
+					throws IOException
+	{
+		final PropertyMapIndex index = PropertyMapIndex.read( channel );
+		readPropertyMaps( idmap, serializers, index.getKeys(), index, channel, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Read selected property maps from a container written by
+	 * {@link #writePropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, OutputStream, ForkJoinPool)}.
+	 * Other sections are skipped. Sections are decoded in parallel on the
+	 * specified {@link ForkJoinPool}, each verified against its checksum
+	 * right after it is read.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map.
+	 * @param serializers
+	 *            collection of serializers to read property maps. This must
+	 *            contain serializers for all {@code keys}.
+	 * @param keys
+	 *            the keys of the property maps to read.
+	 * @param index
+	 *            the index of the container, see
+	 *            {@link PropertyMapIndex#read(SeekableByteChannel)}.
+	 * @param channel
+	 *            the container.
+	 * @param forkJoinPool
+	 *            the pool to decode sections on.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if a serializer or a section cannot be found for one of the
+	 *             {@code keys}, or for usual I/O errors.
+	 */
+	public static < O > void readPropertyMaps(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final Collection< String > keys,
+			final PropertyMapIndex index,
+			final SeekableByteChannel channel,
+			final ForkJoinPool forkJoinPool )
+					throws IOException
+	{
+		final List< String > toRead = new ArrayList<>( keys );
+		for ( final String key : toRead )
+		{
+			getSerializer( serializers, key );
+			if ( !index.contains( key ) )
+				throw new IOException( "no section for property map \"" + key + "\"" );
+		}
+		invoke( forkJoinPool, () -> {
+			toRead.parallelStream().forEach( key -> {
+				try
+				{
+					readSection( idmap, serializers, key, index, channel );
+				}
+				catch ( final IOException e )
+				{
+					throw new UncheckedIOException( e );
+				}
+			} );
+			return null;
+		} );
+	}
+
+	/**
+	 * Read one property map from a container written by
+	 * {@link #writePropertyMaps(ObjectToFileIdMap, PropertyMapSerializers, OutputStream, ForkJoinPool)}.
+	 *
+	 * @param idmap
+	 *            the file id-to-object map.
+	 * @param serializers
+	 *            collection of serializers to read property maps. This must
+	 *            contain a serializer for {@code key}.
+	 * @param key
+	 *            the key of the property map to read.
+	 * @param index
+	 *            the index of the container.
+	 * @param channel
+	 *            the container.
+	 * @param <O>
+	 *            the type of objects for which the maps are defined.
+	 * @throws IOException
+	 *             if a serializer or a section cannot be found for
+	 *             {@code key}, or for usual I/O errors.
+	 */
+	public static < O > void readSection(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializers< O > serializers,
+			final String key,
+			final PropertyMapIndex index,
+			final SeekableByteChannel channel )
+					throws IOException
+	{
+		final PropertyMapSerializer< O, ? > serializer = getSerializer( serializers, key );
+		if ( !index.contains( key ) )
+			throw new IOException( "no section for property map \"" + key + "\"" );
+		decodeSection( idmap, serializer, key, index.readSection( key, channel ) );
+	}
+
+	private static < O > PropertyMapSerializer< O, ? > getSerializer( final PropertyMapSerializers< O > serializers, final String key ) throws IOException
+	{
+		final PropertyMapSerializer< O, ? > serializer = serializers.getPropertyMap( key );
+		if ( serializer == null )
+			throw new IOException( "no serializer for property map \"" + key + "\"" );
+		return serializer;
+	}
+
+	/**
+	 * Writes a flag whether the column format is used, followed by the
+	 * property map.
+	 */
+	private static < O > void writeSection(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializer< O, ? > serializer,
+			final ObjectOutputStream oos )
+					throws IOException
+	{
+		final boolean columnar = serializer instanceof ColumnarPropertyMapSerializer;
+		oos.writeBoolean( columnar );
+		if ( columnar )
+			( ( ColumnarPropertyMapSerializer< O, ? > ) serializer ).writePropertyColumns( idmap, oos );
+		else
+			serializer.writePropertyMap( idmap, oos );
+	}
+
+	private static < O > void readSection(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializer< O, ? > serializer,
+			final String key,
+			final ObjectInputStream ois )
+					throws IOException, ClassNotFoundException
+	{
+		if ( ois.readBoolean() )
+		{
+			if ( !( serializer instanceof ColumnarPropertyMapSerializer ) )
+				throw new IOException( "serializer for property map \"" + key + "\" cannot read column format" );
+			( ( ColumnarPropertyMapSerializer< O, ? > ) serializer ).readPropertyColumns( idmap, ois );
+		}
+		else
+			serializer.readPropertyMap( idmap, ois );
+	}
+
+	static < O > void decodeSection(
+			final FileIdToObjectMap< O > idmap,
+			final PropertyMapSerializer< O, ? > serializer,
+			final String key,
+			final byte[] bytes )
+					throws IOException
+	{
+		try ( final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) ) )
+		{
+			readSection( idmap, serializer, key, ois );
+		}
+		catch ( final ClassNotFoundException e )
+		{
+			throw new IOException( e );
+		}
+	}
+
+	static < O > byte[] encodeSection(
+			final ObjectToFileIdMap< O > idmap,
+			final PropertyMapSerializer< O, ? > serializer )
+					throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		try ( final ObjectOutputStream oos = new ObjectOutputStream( bs ) )
+		{
+			writeSection( idmap, serializer, oos );
+		}
+		return bs.toByteArray();
+	}
+
+	private static final class EncodedSection
+	{
+		final byte[] bytes;
+
+		final long checksum;
+
+		EncodedSection( final byte[] bytes )
+		{
+			this.bytes = bytes;
+			this.checksum = PropertyMapIndex.checksum( bytes );
+		}
+	}
+
+	/**
+	 * Runs {@code task} on {@code forkJoinPool} and waits for the result.
+	 * Unwraps {@link UncheckedIOException}s thrown by the task.
+	 */
+	private static < T > T invoke( final ForkJoinPool forkJoinPool, final Callable< T > task ) throws IOException
+	{
+		try
+		{
+			return forkJoinPool.submit( task ).get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof UncheckedIOException )
+				throw ( ( UncheckedIOException ) cause ).getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new IOException( cause );
+		}
+	}
 }
@@ -30,24 +30,39 @@ package org.mastodon.io.properties;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Map.Entry;
 
+import org.mastodon.collection.RefCollection;
 import org.mastodon.io.FileIdToObjectMap;
 import org.mastodon.io.ObjectToFileIdMap;
 import org.mastodon.properties.ObjPropertyMap;
 
-public class StringPropertyMapSerializer< O > implements PropertyMapSerializer< O, ObjPropertyMap< O, String > >
+/**
+ * Serializes an {@link ObjPropertyMap} of {@code String}s.
+ * {@link #writePropertyMap(ObjectToFileIdMap, ObjectOutputStream)} uses the
+ * original per-entry format. The column format writes repeated strings only
+ * once (see {@link ValueCodecs#internedStrings()}).
+ *
+ * @param <O>
+ *            type of object which the property is attached to.
+ */
+public class StringPropertyMapSerializer< O > implements ColumnarPropertyMapSerializer< O, ObjPropertyMap< O, String > >, IncrementalPropertyMapSerializer< O, ObjPropertyMap< O, String > >
 {
 	private final ObjPropertyMap< O, String > propertyMap;
 
+	private final CodecPropertyMapSerializer< O, String > columns;
+
 	public StringPropertyMapSerializer( final ObjPropertyMap< O, String > propertyMap )
 	{
 		this.propertyMap = propertyMap;
+		this.columns = new CodecPropertyMapSerializer<>( propertyMap, ValueCodecs.internedStrings() );
 	}
 
 	@Override
@@ -93,6 +108,43 @@ public class StringPropertyMapSerializer< O > implements PropertyMapSerializer<
 		idmap.releaseRef( ref );
 	}
 
+	@Override
+	public void writePropertyColumns(
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		columns.writePropertyColumns( idmap, out );
+	}
+
+	@Override
+	public void readPropertyColumns(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		columns.readPropertyColumns( idmap, in );
+	}
+
+	@Override
+	public void writePropertyDelta(
+			final RefCollection< O > objects,
+			final ObjectToFileIdMap< O > idmap,
+			final DataOutput out )
+					throws IOException
+	{
+		columns.writePropertyDelta( objects, idmap, out );
+	}
+
+	@Override
+	public void readPropertyDelta(
+			final FileIdToObjectMap< O > idmap,
+			final DataInput in )
+					throws IOException
+	{
+		columns.readPropertyDelta( idmap, in );
+	}
+
 	@Override
 	public ObjPropertyMap< O, String > getPropertyMap()
 	{
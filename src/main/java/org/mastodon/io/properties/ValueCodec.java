@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes property values of type {@code T} for
+ * {@link CodecPropertyMapSerializer}. See {@link ValueCodecs} for built-in
+ * codecs.
+ * <p>
+ * Values are written in blocks. A codec may keep state across the values of
+ * one block sequence, e.g., a dictionary of previously written values. Such
+ * state is cleared by {@link #reset()} before a property map is written or
+ * read, therefore a codec instance must not be shared by serializers that
+ * may run concurrently.
+ *
+ * @param <T>
+ *            the value type.
+ */
+public interface ValueCodec< T >
+{
+	/**
+	 * Writes a (non-{@code null}) value.
+	 *
+	 * @param value
+	 *            the value.
+	 * @param out
+	 *            the output to write to.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public void write( final T value, final DataOutput out ) throws IOException;
+
+	/**
+	 * Reads a value written by {@link #write(Object, DataOutput)}.
+	 *
+	 * @param in
+	 *            the input to read from.
+	 * @return the value.
+	 * @throws IOException
+	 *             if an I/O error occurs, or the input is corrupt.
+	 */
+	public T read( final DataInput in ) throws IOException;
+
+	/**
+	 * Returns the number of bytes written per value, or -1 if values have
+	 * variable width. Blocks of fixed-width values are written without
+	 * length.
+	 *
+	 * @return the number of bytes per value, or -1.
+	 */
+	public default int fixedWidth()
+	{
+		return -1;
+	}
+
+	/**
+	 * Clears the state kept across values, before a sequence of blocks is
+	 * written or read.
+	 */
+	public default void reset()
+	{}
+}
@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in {@link ValueCodec}s. Each call returns a new codec instance.
+ */
+public final class ValueCodecs
+{
+	private ValueCodecs()
+	{}
+
+	/**
+	 * Codec for {@code String}s, written as length and UTF-8 bytes. There is
+	 * no limit on the length of strings.
+	 *
+	 * @return a new codec.
+	 */
+	public static ValueCodec< String > strings()
+	{
+		return new ValueCodec< String >()
+		{
+			@Override
+			public void write( final String value, final DataOutput out ) throws IOException
+			{
+				writeString( value, out );
+			}
+
+			@Override
+			public String read( final DataInput in ) throws IOException
+			{
+				return readString( in );
+			}
+		};
+	}
+
+	/**
+	 * Codec for {@code String}s that writes each distinct string once, and
+	 * repeated strings as an index into the strings written before. When
+	 * reading, repeated strings are the same {@code String} instance.
+	 *
+	 * @return a new codec.
+	 */
+	public static ValueCodec< String > internedStrings()
+	{
+		return new ValueCodec< String >()
+		{
+			private final Map< String, Integer > written = new HashMap<>();
+
+			private final List< String > read = new ArrayList<>();
+
+			@Override
+			public void write( final String value, final DataOutput out ) throws IOException
+			{
+				final Integer index = written.putIfAbsent( value, written.size() );
+				if ( index == null )
+				{
+					// 0 marks a new string
+					writeVarInt( 0, out );
+					writeString( value, out );
+				}
+				else
+					writeVarInt( index + 1, out );
+			}
+
+			@Override
+			public String read( final DataInput in ) throws IOException
+			{
+				final int index = readVarInt( in );
+				if ( index == 0 )
+				{
+					final String value = readString( in );
+					read.add( value );
+					return value;
+				}
+				if ( index > read.size() )
+					throw new IOException( "corrupt string dictionary: index " + index + " of " + read.size() );
+				return read.get( index - 1 );
+			}
+
+			@Override
+			public void reset()
+			{
+				written.clear();
+				read.clear();
+			}
+		};
+	}
+
+	/**
+	 * Codec for {@code double[]} arrays, written as length and elements.
+	 *
+	 * @return a new codec.
+	 */
+	public static ValueCodec< double[] > doubleArrays()
+	{
+		return new ValueCodec< double[] >()
+		{
+			@Override
+			public void write( final double[] value, final DataOutput out ) throws IOException
+			{
+				writeVarInt( value.length, out );
+				for ( final double v : value )
+					out.writeDouble( v );
+			}
+
+			@Override
+			public double[] read( final DataInput in ) throws IOException
+			{
+				final double[] value = new double[ readVarInt( in ) ];
+				for ( int i = 0; i < value.length; ++i )
+					value[ i ] = in.readDouble();
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Codec for {@code int[]} arrays, written as length and elements.
+	 *
+	 * @return a new codec.
+	 */
+	public static ValueCodec< int[] > intArrays()
+	{
+		return new ValueCodec< int[] >()
+		{
+			@Override
+			public void write( final int[] value, final DataOutput out ) throws IOException
+			{
+				writeVarInt( value.length, out );
+				for ( final int v : value )
+					out.writeInt( v );
+			}
+
+			@Override
+			public int[] read( final DataInput in ) throws IOException
+			{
+				final int[] value = new int[ readVarInt( in ) ];
+				for ( int i = 0; i < value.length; ++i )
+					value[ i ] = in.readInt();
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Codec for constants of an enum, written as fixed-width ordinals. The
+	 * order of constants must not change between writing and reading.
+	 *
+	 * @param type
+	 *            the enum class.
+	 * @param <E>
+	 *            the enum type.
+	 * @return a new codec.
+	 */
+	public static < E extends Enum< E > > ValueCodec< E > enums( final Class< E > type )
+	{
+		final E[] constants = type.getEnumConstants();
+		final boolean wide = constants.length > 256;
+		return new ValueCodec< E >()
+		{
+			@Override
+			public void write( final E value, final DataOutput out ) throws IOException
+			{
+				if ( wide )
+					out.writeShort( value.ordinal() );
+				else
+					out.writeByte( value.ordinal() );
+			}
+
+			@Override
+			public E read( final DataInput in ) throws IOException
+			{
+				final int ordinal = wide ? in.readUnsignedShort() : in.readUnsignedByte();
+				if ( ordinal >= constants.length )
+					throw new IOException( "no constant with ordinal " + ordinal + " in " + type.getName() );
+				return constants[ ordinal ];
+			}
+
+			@Override
+			public int fixedWidth()
+			{
+				return wide ? 2 : 1;
+			}
+		};
+	}
+
+	static void writeString( final String value, final DataOutput out ) throws IOException
+	{
+		final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		writeVarInt( bytes.length, out );
+		out.write( bytes );
+	}
+
+	static String readString( final DataInput in ) throws IOException
+	{
+		final byte[] bytes = new byte[ readVarInt( in ) ];
+		in.readFully( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Writes a non-negative {@code int} in 1 to 5 bytes, 7 bits per byte.
+	 */
+	static void writeVarInt( int value, final DataOutput out ) throws IOException
+	{
+		while ( ( value & ~0x7f ) != 0 )
+		{
+			out.writeByte( ( value & 0x7f ) | 0x80 );
+			value >>>= 7;
+		}
+		out.writeByte( value );
+	}
+
+	static int readVarInt( final DataInput in ) throws IOException
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			if ( shift > 28 )
+				throw new IOException( "corrupt variable-length int" );
+			b = in.readByte();
+			value |= ( b & 0x7f ) << shift;
+			shift += 7;
+		}
+		while ( b < 0 );
+		if ( value < 0 )
+			throw new IOException( "corrupt variable-length int" );
+		return value;
+	}
+}
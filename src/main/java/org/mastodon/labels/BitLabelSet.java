@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.labels;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable label set, encoded as a bitmask over the bit positions
+ * assigned to labels by {@link LabelBits}. Membership tests, adding and
+ * removing labels are bit operations, and comparing sets of the same
+ * {@link LabelBits} only looks at a few words. The hash code is computed once
+ * when a set is encoded, and then updated incrementally for the labels that
+ * are added or removed.
+ * <p>
+ * {@link #hashCode()} and {@link #equals(Object)} follow the {@link java.util.Set}
+ * contract, so a {@code BitLabelSet} equals a {@link java.util.HashSet} of the
+ * same labels.
+ *
+ * @param <T>
+ *            the type of the labels.
+ */
+final class BitLabelSet< T > extends AbstractSet< T >
+{
+	final LabelBits< T > labelBits;
+
+	/**
+	 * The bitmask. The last word is non-zero, so that equal sets have equal
+	 * arrays.
+	 */
+	private final long[] words;
+
+	private final int size;
+
+	private final int hashCode;
+
+	BitLabelSet( final LabelBits< T > labelBits, final long[] words )
+	{
+		this.labelBits = labelBits;
+		this.words = trim( words );
+		int size = 0;
+		int hashCode = 0;
+		for ( int w = 0; w < this.words.length; ++w )
+		{
+			size += Long.bitCount( this.words[ w ] );
+			hashCode += hashOf( w, this.words[ w ] );
+		}
+		this.size = size;
+		this.hashCode = hashCode;
+	}
+
+	private BitLabelSet( final LabelBits< T > labelBits, final long[] words, final int size, final int hashCode )
+	{
+		this.labelBits = labelBits;
+		this.words = trim( words );
+		this.size = size;
+		this.hashCode = hashCode;
+	}
+
+	/**
+	 * Returns {@code words} without trailing zero words.
+	 */
+	private static long[] trim( final long[] words )
+	{
+		int length = words.length;
+		while ( length > 0 && words[ length - 1 ] == 0 )
+			--length;
+		return length == words.length ? words : Arrays.copyOf( words, length );
+	}
+
+	/**
+	 * Returns the sum of the hash codes of the labels in {@code word}, the
+	 * {@code w}-th word of a bitmask.
+	 */
+	private int hashOf( final int w, final long word )
+	{
+		int hashCode = 0;
+		for ( long bits = word; bits != 0; bits &= bits - 1 )
+			hashCode += labelBits.labelAt( ( w << 6 ) + Long.numberOfTrailingZeros( bits ) ).hashCode();
+		return hashCode;
+	}
+
+	/**
+	 * Returns whether the label at bit position {@code bit} is in this set.
+	 */
+	boolean get( final int bit )
+	{
+		final int w = bit >>> 6;
+		return w < words.length && ( words[ w ] & ( 1L << bit ) ) != 0;
+	}
+
+	/**
+	 * Returns this set with the label at bit position {@code bit} added.
+	 */
+	BitLabelSet< T > with( final int bit )
+	{
+		if ( get( bit ) )
+			return this;
+		final long[] copy = Arrays.copyOf( words, Math.max( words.length, ( bit >>> 6 ) + 1 ) );
+		copy[ bit >>> 6 ] |= 1L << bit;
+		return new BitLabelSet<>( labelBits, copy, size + 1, hashCode + labelBits.labelAt( bit ).hashCode() );
+	}
+
+	/**
+	 * Returns this set with the label at bit position {@code bit} removed.
+	 */
+	BitLabelSet< T > without( final int bit )
+	{
+		if ( !get( bit ) )
+			return this;
+		final long[] copy = words.clone();
+		copy[ bit >>> 6 ] &= ~( 1L << bit );
+		return new BitLabelSet<>( labelBits, copy, size - 1, hashCode - labelBits.labelAt( bit ).hashCode() );
+	}
+
+	/**
+	 * Returns the labels in this set that are not in {@code other}.
+	 */
+	BitLabelSet< T > andNot( final BitLabelSet< T > other )
+	{
+		final long[] copy = words.clone();
+		int size = this.size;
+		int hashCode = this.hashCode;
+		for ( int w = 0; w < Math.min( copy.length, other.words.length ); ++w )
+		{
+			final long removed = copy[ w ] & other.words[ w ];
+			if ( removed != 0 )
+			{
+				copy[ w ] &= ~removed;
+				size -= Long.bitCount( removed );
+				hashCode -= hashOf( w, removed );
+			}
+		}
+		return new BitLabelSet<>( labelBits, copy, size, hashCode );
+	}
+
+	@Override
+	public boolean contains( final Object label )
+	{
+		final int bit = labelBits.bitOf( label );
+		return bit >= 0 && get( bit );
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return new Iterator< T >()
+		{
+			private int w = 0;
+
+			private long word = words.length == 0 ? 0 : words[ 0 ];
+
+			@Override
+			public boolean hasNext()
+			{
+				while ( word == 0 && w < words.length - 1 )
+					word = words[ ++w ];
+				return word != 0;
+			}
+
+			@Override
+			public T next()
+			{
+				if ( !hasNext() )
+					throw new NoSuchElementException();
+				final int bit = ( w << 6 ) + Long.numberOfTrailingZeros( word );
+				word &= word - 1;
+				return labelBits.labelAt( bit );
+			}
+		};
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( o instanceof BitLabelSet && ( ( BitLabelSet< ? > ) o ).labelBits == labelBits )
+			return Arrays.equals( words, ( ( BitLabelSet< ? > ) o ).words );
+		return super.equals( o );
+	}
+}
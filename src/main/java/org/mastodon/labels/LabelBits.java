@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.labels;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns bit positions to labels, for encoding label sets as
+ * {@link BitLabelSet}s. Labels get consecutive bit positions in the order
+ * they are first used. Looking up a bit position is lock-free, assigning a
+ * new one takes the lock on this object.
+ *
+ * @param <T>
+ *            the type of the labels.
+ */
+final class LabelBits< T >
+{
+	private final ConcurrentHashMap< T, Integer > bitsByLabel = new ConcurrentHashMap<>();
+
+	/**
+	 * Maps bit positions to labels. Append-only, see
+	 * {@link LabelMapping#setAtIndex(int)}.
+	 */
+	private volatile Object[] labelsByBit = new Object[ 64 ];
+
+	private volatile int numLabels;
+
+	/**
+	 * Returns the bit position of {@code label}, or {@code -1} if the label
+	 * was never used.
+	 */
+	int bitOf( final Object label )
+	{
+		if ( label == null )
+			return -1;
+		final Integer bit = bitsByLabel.get( label );
+		return bit == null ? -1 : bit;
+	}
+
+	/**
+	 * Returns the bit position of {@code label}, assigning the next free one
+	 * if the label was never used.
+	 */
+	int bitOfOrAdd( final T label )
+	{
+		if ( label == null )
+			throw new NullPointerException( "null labels cannot be encoded as bits" );
+		final Integer bit = bitsByLabel.get( label );
+		if ( bit != null )
+			return bit;
+
+		synchronized ( this )
+		{
+			final Integer existing = bitsByLabel.get( label );
+			if ( existing != null )
+				return existing;
+
+			final int newBit = numLabels;
+			Object[] labels = labelsByBit;
+			if ( newBit == labels.length )
+				labels = Arrays.copyOf( labels, 2 * labels.length );
+			labels[ newBit ] = label;
+			labelsByBit = labels;
+			numLabels = newBit + 1;
+			bitsByLabel.put( label, newBit );
+			return newBit;
+		}
+	}
+
+	/**
+	 * Returns the label at bit position {@code bit}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	T labelAt( final int bit )
+	{
+		final Object[] labels = labelsByBit;
+		if ( bit < labels.length && labels[ bit ] != null )
+			return ( T ) labels[ bit ];
+
+		synchronized ( this )
+		{
+			if ( bit >= numLabels )
+				throw new IndexOutOfBoundsException( "Bit: " + bit + ", Size: " + numLabels );
+			return ( T ) labelsByBit[ bit ];
+		}
+	}
+
+	/**
+	 * Returns the number of labels with a bit position.
+	 */
+	int numLabels()
+	{
+		return numLabels;
+	}
+
+	/**
+	 * Encodes {@code set} as a {@link BitLabelSet}, assigning bit positions
+	 * to labels that were never used.
+	 */
+	BitLabelSet< T > encode( final Set< ? extends T > set )
+	{
+		if ( set instanceof BitLabelSet && ( ( BitLabelSet< ? > ) set ).labelBits == this )
+		{
+			@SuppressWarnings( "unchecked" )
+			final BitLabelSet< T > bits = ( BitLabelSet< T > ) set;
+			return bits;
+		}
+
+		long[] words = new long[ 0 ];
+		for ( final T label : set )
+		{
+			final int bit = bitOfOrAdd( label );
+			final int w = bit >>> 6;
+			if ( w >= words.length )
+				words = Arrays.copyOf( words, w + 1 );
+			words[ w ] |= 1L << bit;
+		}
+		return new BitLabelSet<>( this, words );
+	}
+
+	/**
+	 * Forgets all bit positions. Must not run concurrently with other
+	 * methods.
+	 */
+	synchronized void clear()
+	{
+		bitsByLabel.clear();
+		labelsByBit = new Object[ 64 ];
+		numLabels = 0;
+	}
+}
@@ -29,16 +29,13 @@
 package org.mastodon.labels;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-
-import gnu.trove.impl.Constants;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The LabelMapping maps a set of labels of an object to an index value which
@@ -47,6 +44,16 @@ import gnu.trove.map.hash.TObjectIntHashMap;
  * of labels, and functions {@link #addLabelToSetAtIndex(Object, int)},
  * {@link #removeLabelFromSetAtIndex(Object, int)} for efficiently adding and
  * removing labels to the set at a given index value.
+ * <p>
+ * The mapping can be used by multiple threads concurrently. Looking up sets,
+ * transitions between sets and diffs is lock-free. Only adding a new
+ * canonical set, which happens once per distinct label set, takes a lock.
+ * {@link #clear()} must not run concurrently with other methods.
+ * <p>
+ * Optionally, label sets are encoded as {@link BitLabelSet}s. Then adding
+ * and removing labels are bit operations, with transitions cached in arrays
+ * indexed by bit position, which is faster when there are few distinct
+ * labels.
  *
  * @param <T>
  *            the desired type of the labels, for instance {@link Integer} or
@@ -57,88 +64,128 @@ import gnu.trove.map.hash.TObjectIntHashMap;
  */
 public class LabelMapping< T >
 {
-	private static final int INT_NO_ENTRY_VALUE = -1;
-
 	/**
 	 * Maximum number of distinct label sets that can be represented by this
 	 * mapping.
 	 */
-	private static final int MAX_NUM_LABEL_SETS = Integer.MAX_VALUE;
+	private static final int MAX_NUM_LABEL_SETS = Integer.MAX_VALUE - 8;
 
 	/**
-	 * TODO
+	 * Default maximum number of diffs in the diff cache.
 	 */
-	private final HashMap< Set< T >, InternedSet< T > > internedSets;
+	static final int DEFAULT_MAX_CACHED_DIFFS = 1 << 14;
 
 	/**
-	 * Maps indices to {@link InternedSet} (canonical label sets).
-	 * {@code setsByIndex.get( i ).index == i} holds.
+	 * Maps label sets to their canonical {@link InternedSet}, using the
+	 * (cached) hash code of the set.
 	 */
-	private final ArrayList< InternedSet< T > > setsByIndex;
+	private final ConcurrentHashMap< Set< T >, InternedSet< T > > internedSets;
 
 	/**
-	 * Lookup tables for adding labels. Assume that by adding label <em>L</em>
-	 * to label set <em>S</em> we obtain <em>S' = S &cup; {L}</em>.
-	 * {@code addMapsByIndex} contains at index of set <em>S</em> a map from
-	 * <em>L</em> to index of <em>S'</em>.
-	 *
+	 * Maps indices to {@link InternedSet} (canonical label sets).
+	 * {@code setsByIndex[ i ].index == i} holds for {@code i < numSets}.
 	 * <p>
-	 * When a new <em>(L,S)</em> combination occurs for the first time in
-	 * {@link #addLabelToSetAtIndex(Object, int)}, it is added to the lookup
-	 * table.
+	 * The array is append-only. It is written only while holding the lock on
+	 * this mapping, and replaced by a larger copy when full. A set is stored
+	 * in the array before its index is published through
+	 * {@link #internedSets}.
 	 */
-	private final ArrayList< TObjectIntMap< T > > addMapsByIndex;
+	private volatile InternedSet< T >[] setsByIndex;
 
 	/**
-	 * Lookup tables for removing labels. Assume that by removing label
-	 * <em>L</em> from label set <em>S</em> we obtain <em>S' = S &setminus;
-	 * {L}</em>. {@code subMapsByIndex} contains at index of set <em>S</em> a
-	 * map from <em>L</em> to index of <em>S'</em>.
-	 *
-	 * <p>
-	 * When a new <em>(L,S)</em> combination occurs for the first time in
-	 * {@link #removeLabelFromSetAtIndex(Object, int)}, it is added to the
-	 * lookup table.
+	 * The number of valid elements in {@link #setsByIndex}.
 	 */
-	private final ArrayList< TObjectIntMap< T > > subMapsByIndex;
+	private volatile int numSets;
 
 	/**
 	 * the empty label set.
 	 */
 	private final InternedSet< T > theEmptySet;
 
+	/**
+	 * Caches diffs by pair of indices {@code (fromIndex, toIndex)}, see
+	 * {@link #diff(int, int)}. When full, diffs that were not used since the
+	 * previous eviction are removed (second-chance eviction).
+	 */
+	private final ConcurrentHashMap< DiffKey, Diff > cachedDiffs;
+
+	/**
+	 * Maximum number of diffs in {@link #cachedDiffs}.
+	 */
+	private final int maxCachedDiffs;
+
+	/**
+	 * Bit positions of labels if label sets are encoded as
+	 * {@link BitLabelSet}s, {@code null} otherwise.
+	 */
+	private final LabelBits< T > labelBits;
+
 	/**
 	 * Create a new {@code LabelMapping} that maps label sets to {@code int}s.
 	 */
 	LabelMapping()
 	{
-		internedSets = new HashMap<>();
-		setsByIndex = new ArrayList<>();
-		addMapsByIndex = new ArrayList<>();
-		subMapsByIndex = new ArrayList<>();
+		this( DEFAULT_MAX_CACHED_DIFFS, false );
+	}
+
+	/**
+	 * Create a new {@code LabelMapping} that maps label sets to {@code int}s.
+	 *
+	 * @param maxCachedDiffs
+	 *            maximum number of diffs between label sets to cache.
+	 * @param useBitSets
+	 *            whether to encode label sets as {@link BitLabelSet}s.
+	 */
+	LabelMapping( final int maxCachedDiffs, final boolean useBitSets )
+	{
+		if ( maxCachedDiffs < 1 )
+			throw new IllegalArgumentException( "maxCachedDiffs must be positive" );
+		this.maxCachedDiffs = maxCachedDiffs;
+		labelBits = useBitSets ? new LabelBits<>() : null;
+		internedSets = new ConcurrentHashMap<>();
+		setsByIndex = newSetArray( 16 );
+		cachedDiffs = new ConcurrentHashMap<>();
 
 		final HashSet< T > background = new HashSet<>( 0 );
 		theEmptySet = intern( background );
-
-		cachedDiffs = new TIntObjectHashMap<>();
 	}
 
-	void clear()
+	/**
+	 * Removes all label sets except the empty set. Must not run concurrently
+	 * with other methods.
+	 */
+	synchronized void clear()
 	{
 		// clear everything
 		internedSets.clear();
-		setsByIndex.clear();
-		addMapsByIndex.clear();
-		subMapsByIndex.clear();
 		cachedDiffs.clear();
+		theEmptySet.addTransitions.clear();
+		theEmptySet.subTransitions.clear();
+		theEmptySet.addedByBit = null;
+		theEmptySet.removedByBit = null;
+		if ( labelBits != null )
+			labelBits.clear();
 
 		// add back the empty set
-		setsByIndex.add( theEmptySet );
-		addMapsByIndex.add( new TObjectIntHashMap< T >( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, INT_NO_ENTRY_VALUE ) );
-		subMapsByIndex.add( new TObjectIntHashMap< T >( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, INT_NO_ENTRY_VALUE ) );
+		final InternedSet< T >[] sets = newSetArray( 16 );
+		sets[ 0 ] = theEmptySet;
+		setsByIndex = sets;
+		numSets = 1;
 		internedSets.put( theEmptySet.getSet(), theEmptySet );
 	}
 
+	/**
+	 * Creates an array of {@link InternedSet}s. Arrays of a generic type
+	 * cannot be created directly, so this creates a raw array. This is safe
+	 * because the array never escapes as anything other than
+	 * {@code InternedSet<T>[]}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < T > InternedSet< T >[] newSetArray( final int length )
+	{
+		return new InternedSet[ length ];
+	}
+
 	/**
 	 * Canonical representative for a label set. Contains a label set and the
 	 * index to which it is mapped.
@@ -151,11 +198,44 @@ public class LabelMapping< T >
 
 		final int index;
 
+		/**
+		 * Lookup table for adding labels. Assume that by adding label
+		 * <em>L</em> to this set <em>S</em> we obtain <em>S' = S &cup;
+		 * {L}</em>. {@code addTransitions} maps <em>L</em> to <em>S'</em>.
+		 * <p>
+		 * When a new <em>(L,S)</em> combination occurs for the first time in
+		 * {@link LabelMapping#addLabelToSetAtIndex(Object, int)}, it is added
+		 * to the lookup table.
+		 */
+		final ConcurrentHashMap< T, InternedSet< T > > addTransitions;
+
+		/**
+		 * Lookup table for removing labels. Assume that by removing label
+		 * <em>L</em> from this set <em>S</em> we obtain <em>S' = S
+		 * &setminus; {L}</em>. {@code subTransitions} maps <em>L</em> to
+		 * <em>S'</em>.
+		 * <p>
+		 * When a new <em>(L,S)</em> combination occurs for the first time in
+		 * {@link LabelMapping#removeLabelFromSetAtIndex(Object, int)}, it is
+		 * added to the lookup table.
+		 */
+		final ConcurrentHashMap< T, InternedSet< T > > subTransitions;
+
+		/**
+		 * Lookup tables for adding and removing labels when sets are encoded
+		 * as {@link BitLabelSet}s, indexed by bit position of the label.
+		 * Grown on demand. Updates may be lost when threads race, which only
+		 * means that a transition is computed again.
+		 */
+		InternedSet< T >[] addedByBit, removedByBit;
+
 		public InternedSet( final Set< T > set, final int index )
 		{
 			this.set = set;
 			this.hashCode = set.hashCode();
 			this.index = index;
+			this.addTransitions = new ConcurrentHashMap<>( 4 );
+			this.subTransitions = new ConcurrentHashMap<>( 4 );
 		}
 
 		public Set< T > getSet()
@@ -194,7 +274,22 @@ public class LabelMapping< T >
 	 */
 	InternedSet< T > setAtIndex( final int index )
 	{
-		return setsByIndex.get( index );
+		final InternedSet< T >[] sets = setsByIndex;
+		if ( index >= 0 && index < sets.length )
+		{
+			final InternedSet< T > interned = sets[ index ];
+			if ( interned != null )
+				return interned;
+		}
+
+		// The index was obtained without synchronizing with the thread that
+		// added the set. Take the lock to see the latest array.
+		synchronized ( this )
+		{
+			if ( index < 0 || index >= numSets )
+				throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + numSets );
+			return setsByIndex[ index ];
+		}
 	}
 
 	/**
@@ -212,15 +307,18 @@ public class LabelMapping< T >
 			if ( interned != null )
 				return interned;
 
-			final int intIndex = setsByIndex.size();
-			if ( intIndex > MAX_NUM_LABEL_SETS )
+			final int intIndex = numSets;
+			if ( intIndex >= MAX_NUM_LABEL_SETS )
 				throw new AssertionError( String.format( "Too many labels (or types of multiply-labeled pixels): %d maximum", intIndex ) );
 
-			final HashSet< T > srcCopy = new HashSet<>( src );
+			final Set< T > srcCopy = labelBits == null ? new HashSet<>( src ) : labelBits.encode( src );
 			interned = new InternedSet<>( srcCopy, intIndex );
-			setsByIndex.add( interned );
-			addMapsByIndex.add( new TObjectIntHashMap< T >( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, INT_NO_ENTRY_VALUE ) );
-			subMapsByIndex.add( new TObjectIntHashMap< T >( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, INT_NO_ENTRY_VALUE ) );
+			InternedSet< T >[] sets = setsByIndex;
+			if ( intIndex == sets.length )
+				sets = Arrays.copyOf( sets, ( int ) Math.min( 2L * sets.length, MAX_NUM_LABEL_SETS ) );
+			sets[ intIndex ] = interned;
+			setsByIndex = sets;
+			numSets = intIndex + 1;
 			internedSets.put( srcCopy, interned );
 			return interned;
 		}
@@ -232,23 +330,29 @@ public class LabelMapping< T >
 	 */
 	InternedSet< T > addLabelToSetAtIndex( final T label, final int index )
 	{
-		final TObjectIntMap< T > addMap = addMapsByIndex.get( index );
-		int i = addMap.get( label );
-		if ( i != INT_NO_ENTRY_VALUE )
-			return setsByIndex.get( i );
-
-		synchronized ( this )
+		final InternedSet< T > from = setAtIndex( index );
+		if ( labelBits != null )
+			return addBit( from, labelBits.bitOfOrAdd( label ) );
+		if ( label == null )
+			return add( from, label );
+
+		InternedSet< T > to = from.addTransitions.get( label );
+		if ( to == null )
 		{
-			i = addMap.get( label );
-			if ( i != INT_NO_ENTRY_VALUE )
-				return setsByIndex.get( i );
-
-			final HashSet< T > set = new HashSet<>( setsByIndex.get( index ).set );
-			set.add( label );
-			final InternedSet< T > interned = intern( set );
-			addMap.put( label, interned.index );
-			return interned;
+			// Concurrent threads compute the same canonical set.
+			to = add( from, label );
+			from.addTransitions.put( label, to );
 		}
+		return to;
+	}
+
+	private InternedSet< T > add( final InternedSet< T > from, final T label )
+	{
+		if ( from.set.contains( label ) )
+			return from;
+		final HashSet< T > set = new HashSet<>( from.set );
+		set.add( label );
+		return intern( set );
 	}
 
 	/**
@@ -257,23 +361,81 @@ public class LabelMapping< T >
 	 */
 	InternedSet< T > removeLabelFromSetAtIndex( final T label, final int index )
 	{
-		final TObjectIntMap< T > subMap = subMapsByIndex.get( index );
-		int i = subMap.get( label );
-		if ( i != INT_NO_ENTRY_VALUE )
-			return setsByIndex.get( i );
+		final InternedSet< T > from = setAtIndex( index );
+		if ( labelBits != null )
+		{
+			final int bit = labelBits.bitOf( label );
+			return bit < 0 ? from : removeBit( from, bit );
+		}
+		if ( label == null )
+			return remove( from, label );
 
-		synchronized ( this )
+		InternedSet< T > to = from.subTransitions.get( label );
+		if ( to == null )
 		{
-			i = subMap.get( label );
-			if ( i != INT_NO_ENTRY_VALUE )
-				return setsByIndex.get( i );
-
-			final HashSet< T > set = new HashSet<>( setsByIndex.get( index ).set );
-			set.remove( label );
-			final InternedSet< T > interned = intern( set );
-			subMap.put( label, interned.index );
-			return interned;
+			// Concurrent threads compute the same canonical set.
+			to = remove( from, label );
+			from.subTransitions.put( label, to );
+		}
+		return to;
+	}
+
+	private InternedSet< T > remove( final InternedSet< T > from, final T label )
+	{
+		if ( !from.set.contains( label ) )
+			return from;
+		final HashSet< T > set = new HashSet<>( from.set );
+		set.remove( label );
+		return intern( set );
+	}
+
+	private InternedSet< T > addBit( final InternedSet< T > from, final int bit )
+	{
+		final InternedSet< T >[] cached = from.addedByBit;
+		if ( cached != null && bit < cached.length )
+		{
+			final InternedSet< T > hit = cached[ bit ];
+			if ( hit != null )
+				return hit;
+		}
+
+		final BitLabelSet< T > set = ( BitLabelSet< T > ) from.set;
+		final InternedSet< T > to = set.get( bit ) ? from : intern( set.with( bit ) );
+		from.addedByBit = cache( cached, bit, to );
+		return to;
+	}
+
+	private InternedSet< T > removeBit( final InternedSet< T > from, final int bit )
+	{
+		final InternedSet< T >[] cached = from.removedByBit;
+		if ( cached != null && bit < cached.length )
+		{
+			final InternedSet< T > hit = cached[ bit ];
+			if ( hit != null )
+				return hit;
 		}
+
+		final BitLabelSet< T > set = ( BitLabelSet< T > ) from.set;
+		final InternedSet< T > to = set.get( bit ) ? intern( set.without( bit ) ) : from;
+		from.removedByBit = cache( cached, bit, to );
+		return to;
+	}
+
+	/**
+	 * Stores {@code to} at {@code bit} in the lookup table {@code cached},
+	 * growing the table if necessary. Returns the (possibly new) table.
+	 */
+	private InternedSet< T >[] cache( final InternedSet< T >[] cached, final int bit, final InternedSet< T > to )
+	{
+		final InternedSet< T >[] table;
+		if ( cached == null )
+			table = newSetArray( Math.max( bit + 1, labelBits.numLabels() ) );
+		else if ( bit >= cached.length )
+			table = Arrays.copyOf( cached, Math.max( bit + 1, labelBits.numLabels() ) );
+		else
+			table = cached;
+		table[ bit ] = to;
+		return table;
 	}
 
 	/**
@@ -283,7 +445,7 @@ public class LabelMapping< T >
 	 */
 	public int numSets()
 	{
-		return setsByIndex.size();
+		return numSets;
 	}
 
 	/**
@@ -296,7 +458,7 @@ public class LabelMapping< T >
 	// TODO: cache unmodifiable sets (in InternedSet)?
 	public Set< T > labelsAtIndex( final int index )
 	{
-		return Collections.unmodifiableSet( setsByIndex.get( index ).set );
+		return Collections.unmodifiableSet( setAtIndex( index ).set );
 	}
 
 	/**
@@ -308,7 +470,7 @@ public class LabelMapping< T >
 	public Set< T > getLabels()
 	{
 		final HashSet< T > result = new HashSet<>();
-		for ( final InternedSet< T > instance : setsByIndex )
+		for ( final InternedSet< T > instance : sets() )
 		{
 			for ( final T label : instance.set )
 			{
@@ -318,6 +480,15 @@ public class LabelMapping< T >
 		return result;
 	}
 
+	/**
+	 * Returns the canonical sets, ordered by index.
+	 */
+	private List< InternedSet< T > > sets()
+	{
+		final int n = numSets;
+		return Arrays.asList( setsByIndex ).subList( 0, n );
+	}
+
 	/**
 	 * Get the diff (elements added and elements removed) between the label set
 	 * at index {@code fromIndex} and the label set at index {@code toIndex}.
@@ -328,22 +499,87 @@ public class LabelMapping< T >
 	 */
 	Diff diff( final int fromIndex, final int toIndex )
 	{
-		TIntObjectHashMap< Diff > toIndexToDiff = cachedDiffs.get( fromIndex );
-		if ( toIndexToDiff == null )
+		final DiffKey key = new DiffKey( fromIndex, toIndex );
+		Diff diff = cachedDiffs.get( key );
+		if ( diff != null )
 		{
-			toIndexToDiff = new TIntObjectHashMap<>();
-			cachedDiffs.put( fromIndex, toIndexToDiff );
+			if ( !diff.referenced )
+				diff.referenced = true;
+			return diff;
 		}
-		Diff diff = toIndexToDiff.get( toIndex );
-		if ( diff == null )
+
+		if ( cachedDiffs.size() >= maxCachedDiffs )
+			evictDiffs();
+		diff = new Diff( fromIndex, toIndex );
+		final Diff existing = cachedDiffs.putIfAbsent( key, diff );
+		return existing == null ? diff : existing;
+	}
+
+	/**
+	 * Removes diffs from the cache until it is at most three quarters full.
+	 * Diffs that were used since the previous eviction get a second chance.
+	 */
+	private void evictDiffs()
+	{
+		synchronized ( cachedDiffs )
 		{
-			diff = new Diff( fromIndex, toIndex );
-			toIndexToDiff.put( toIndex, diff );
+			final int target = maxCachedDiffs - Math.max( 1, maxCachedDiffs / 4 );
+			for ( int pass = 0; pass < 2 && cachedDiffs.size() > target; ++pass )
+			{
+				final Iterator< Diff > it = cachedDiffs.values().iterator();
+				while ( it.hasNext() && cachedDiffs.size() > target )
+				{
+					final Diff diff = it.next();
+					if ( diff.referenced )
+						diff.referenced = false;
+					else
+						it.remove();
+				}
+			}
 		}
-		return diff;
 	}
 
-	private final TIntObjectHashMap< TIntObjectHashMap< Diff > > cachedDiffs;
+	/**
+	 * Returns the number of cached diffs.
+	 */
+	int numCachedDiffs()
+	{
+		return cachedDiffs.size();
+	}
+
+	/**
+	 * Key of {@link #cachedDiffs}. Unlike {@link Long#hashCode()} of the
+	 * combined indices, the hash code does not collide for pairs of nearby
+	 * indices.
+	 */
+	private static final class DiffKey
+	{
+		private final int fromIndex;
+
+		private final int toIndex;
+
+		DiffKey( final int fromIndex, final int toIndex )
+		{
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int h = fromIndex * 0x9e3779b9 + toIndex;
+			return h ^ ( h >>> 16 );
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof DiffKey ) )
+				return false;
+			final DiffKey other = ( DiffKey ) obj;
+			return fromIndex == other.fromIndex && toIndex == other.toIndex;
+		}
+	}
 
 	class Diff
 	{
@@ -351,10 +587,22 @@ public class LabelMapping< T >
 
 		private final Set< T > removedLabels;
 
+		/**
+		 * Whether the diff was used since the last eviction. Races on this
+		 * flag are benign, they only affect which diffs are evicted.
+		 */
+		private boolean referenced;
+
 		public Diff( final int fromIndex, final int toIndex )
 		{
-			final Set< T > fromSet = setsByIndex.get( fromIndex ).getSet();
-			final Set< T > toSet = setsByIndex.get( toIndex ).getSet();
+			final Set< T > fromSet = setAtIndex( fromIndex ).getSet();
+			final Set< T > toSet = setAtIndex( toIndex ).getSet();
+			if ( labelBits != null )
+			{
+				addedLabels = ( ( BitLabelSet< T > ) toSet ).andNot( ( BitLabelSet< T > ) fromSet );
+				removedLabels = ( ( BitLabelSet< T > ) fromSet ).andNot( ( BitLabelSet< T > ) toSet );
+				return;
+			}
 			addedLabels = new HashSet<>( toSet );
 			addedLabels.removeAll( fromSet );
 			removedLabels = new HashSet<>( fromSet );
@@ -392,11 +640,10 @@ public class LabelMapping< T >
 		protected List< Set< T > > getLabelSets()
 		{
 			final ArrayList< Set< T > > labelSets = new ArrayList<>( labelMapping.numSets() );
-			for ( final InternedSet< T > interned : labelMapping.setsByIndex )
+			for ( final InternedSet< T > interned : labelMapping.sets() )
 				labelSets.add( interned.getSet() );
 			return labelSets;
 		}
-
 		protected void setLabelSets( final List< Set< T > > labelSets )
 		{
 			if ( labelSets.isEmpty() )
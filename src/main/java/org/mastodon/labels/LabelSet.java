@@ -37,6 +37,10 @@ import org.mastodon.properties.IntPropertyMap;
 /**
  * The {@link LabelSet} represents a labeling of an object with zero or more
  * labels of type T.
+ * <p>
+ * Reading labels does not lock. Modifications are serialized by a lock on
+ * the {@link LabelSets}, so that each reads, transitions and writes the label
+ * set index atomically.
  * 
  * @param <O>
  *            the type of objects.
@@ -64,10 +68,13 @@ public class LabelSet< O, T > implements Set< T >
 
 	public void set( final LabelSet< O, T > c )
 	{
-		if ( c.pool == pool )
-			setIndex( c.getIndex() );
-		else
-			setIndex( pool.mapping.intern( c ).index );
+		final int newindex = c.pool == pool
+				? c.getIndex()
+				: pool.mapping.intern( c ).index;
+		synchronized ( pool.lock )
+		{
+			setIndex( newindex );
+		}
 	}
 
 	@Override
@@ -79,34 +86,43 @@ public class LabelSet< O, T > implements Set< T >
 	@Override
 	public boolean add( final T label )
 	{
-		final int index = getIndex();
-		final int newindex = pool.mapping.addLabelToSetAtIndex( label, index ).index;
-		if ( newindex == index )
-			return false;
-		setIndex( newindex );
-		return true;
+		synchronized ( pool.lock )
+		{
+			final int index = getIndex();
+			final int newindex = pool.mapping.addLabelToSetAtIndex( label, index ).index;
+			if ( newindex == index )
+				return false;
+			setIndex( newindex );
+			return true;
+		}
 	}
 
 	@Override
 	public boolean addAll( final Collection< ? extends T > c )
 	{
-		final int index = getIndex();
-		int newindex = index;
-		for ( final T label : c )
-			newindex = pool.mapping.addLabelToSetAtIndex( label, newindex ).index;
-		if ( newindex == index )
-			return false;
-		setIndex( newindex );
-		return true;
+		synchronized ( pool.lock )
+		{
+			final int index = getIndex();
+			int newindex = index;
+			for ( final T label : c )
+				newindex = pool.mapping.addLabelToSetAtIndex( label, newindex ).index;
+			if ( newindex == index )
+				return false;
+			setIndex( newindex );
+			return true;
+		}
 	}
 
 	@Override
 	public void clear()
 	{
-		final int index = getIndex();
-		final int newindex = pool.mapping.emptySet().index;
-		if ( newindex != index )
-			setIndex( newindex );
+		synchronized ( pool.lock )
+		{
+			final int index = getIndex();
+			final int newindex = pool.mapping.emptySet().index;
+			if ( newindex != index )
+				setIndex( newindex );
+		}
 	}
 
 	@Override
@@ -162,26 +178,32 @@ public class LabelSet< O, T > implements Set< T >
 	@Override
 	public boolean remove( final Object label )
 	{
-		final int index = getIndex();
-		final int newindex = pool.mapping.removeLabelFromSetAtIndex( ( T ) label, index ).index;
-		if ( newindex == index )
-			return false;
-		setIndex( newindex );
-		return true;
+		synchronized ( pool.lock )
+		{
+			final int index = getIndex();
+			final int newindex = pool.mapping.removeLabelFromSetAtIndex( ( T ) label, index ).index;
+			if ( newindex == index )
+				return false;
+			setIndex( newindex );
+			return true;
+		}
 	}
 
 	@SuppressWarnings( "unchecked" )
 	@Override
 	public boolean removeAll( final Collection< ? > c )
 	{
-		final int index = getIndex();
-		int newindex = index;
-		for ( final T label : ( Collection< ? extends T > ) c )
-			newindex = pool.mapping.removeLabelFromSetAtIndex( label, newindex ).index;
-		if ( newindex == index )
-			return false;
-		setIndex( newindex );
-		return true;
+		synchronized ( pool.lock )
+		{
+			final int index = getIndex();
+			int newindex = index;
+			for ( final T label : ( Collection< ? extends T > ) c )
+				newindex = pool.mapping.removeLabelFromSetAtIndex( label, newindex ).index;
+			if ( newindex == index )
+				return false;
+			setIndex( newindex );
+			return true;
+		}
 	}
 
 	@Override
@@ -240,17 +262,19 @@ public class LabelSet< O, T > implements Set< T >
 	}
 
 	/**
-	 * Get the mapping index of {@code obj} from the {@code backingProperty}.
+	 * Get the mapping index of {@code obj}. Does not lock. Modifications call
+	 * this while holding {@code pool.lock}.
 	 *
 	 * @return the mapping index of the set currently associated with {@code obj}
 	 */
-	private Integer getIndex()
+	private int getIndex()
 	{
-		return pool.backingProperty.get( obj );
+		return pool.getSetIndex( obj );
 	}
 
 	/**
 	 * Set the mapping index of {@code obj} in the {@code backingProperty}.
+	 * Must be called while holding {@code pool.lock}.
 	 */
 	private void setIndex( final int index )
 	{
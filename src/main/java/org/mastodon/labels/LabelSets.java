@@ -31,6 +31,7 @@ package org.mastodon.labels;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollection;
@@ -50,6 +51,25 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 
 	final LabelMapping< T > mapping;
 
+	/**
+	 * Guards {@code backingProperty} and the bookkeeping of label changes
+	 * when label sets are modified through {@link LabelSet}s. This allows
+	 * multiple threads to tag objects concurrently. While the lock is held,
+	 * the new label set is usually found by a lock-free lookup in the
+	 * {@link LabelMapping}. Reading label sets does not take the lock (see
+	 * {@link #setIndices}).
+	 */
+	final Object lock = new Object();
+
+	/**
+	 * The label set index of each object, by pool index. This mirrors
+	 * {@code backingProperty}, which is not safe to read while another thread
+	 * modifies it, so that {@link LabelSet}s can be read without locking. It
+	 * is updated whenever {@code backingProperty} changes, and replaced by a
+	 * larger copy while holding {@link #lock} when it needs to grow.
+	 */
+	private volatile AtomicIntegerArray setIndices;
+
 	/**
 	 * Maps label to set of objects currently having the label.
 	 */
@@ -68,8 +88,29 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 	private final ConcurrentLinkedQueue< LabelSet< O, T> > tmpObjRefs;
 
 	public LabelSets( final RefPool< O > pool )
+	{
+		this( pool, false );
+	}
+
+	/**
+	 * Creates a {@code LabelSets} property, optionally encoding label sets as
+	 * bitmasks over the labels in use.
+	 * <p>
+	 * With bitsets, adding, removing and testing labels are bit operations,
+	 * which is faster when there are few distinct labels (up to a few
+	 * hundred). Every label gets a bit position when first used, so the
+	 * encoding becomes less efficient with many labels. {@code null} labels
+	 * cannot be added.
+	 *
+	 * @param pool
+	 *            the pool of objects to label.
+	 * @param useBitSets
+	 *            whether to encode label sets as bitsets.
+	 */
+	public LabelSets( final RefPool< O > pool, final boolean useBitSets )
 	{
 		this.pool = pool;
+		setIndices = new AtomicIntegerArray( 0 );
 		backingProperty = new IntPropertyMap< O >( pool, 0 )
 		{
 			@Override
@@ -77,11 +118,41 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 			{
 				LabelSets.this.beforeDeleteObject( obj );
 				super.beforeDeleteObject( obj );
+				updateSetIndex( obj );
+			}
+
+			@Override
+			public void beforeClearPool()
+			{
+				super.beforeClearPool();
+				clearSetIndices();
+			}
+
+			@Override
+			public void clear()
+			{
+				super.clear();
+				clearSetIndices();
+			}
+
+			@Override
+			protected void notifyPropertyChanged( final O obj )
+			{
+				updateSetIndex( obj );
+				super.notifyPropertyChanged( obj );
+			}
+
+			@Override
+			protected void notifyPropertiesChanged( final RefCollection< O > objs )
+			{
+				for ( final O obj : objs )
+					updateSetIndex( obj );
+				super.notifyPropertiesChanged( objs );
 			}
 		};
 		backingProperty.beforePropertyChangeListeners().add( this::beforePropertyChange );
 		backingProperty.propertyChangeListeners().add( this::propertyChanged );
-		mapping = new LabelMapping<>();
+		mapping = new LabelMapping<>( LabelMapping.DEFAULT_MAX_CACHED_DIFFS, useBitSets );
 		labelToObjects = new ConcurrentHashMap<>();
 		tmpObjRefs = new ConcurrentLinkedQueue<>();
 		changingObjToOldSetIndex = new RefIntHashMap<>( pool, -1 );
@@ -146,9 +217,12 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 	 */
 	public void clear()
 	{
-		backingProperty.clear();
-		mapping.clear();
-		labelToObjects.clear();
+		synchronized ( lock )
+		{
+			backingProperty.clear();
+			mapping.clear();
+			labelToObjects.clear();
+		}
 	}
 
 	/**
@@ -191,14 +265,64 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 	public void recomputeLabelToObjects( final RefCollection< O > objects )
 	{
 		labelToObjects.clear();
+		clearSetIndices();
 		for ( final O obj : objects )
 		{
+			updateSetIndex( obj );
 			final Set< T > labels = mapping.setAtIndex( backingProperty.get( obj ) ).getSet();
 			for ( final T label : labels )
 				labelToObjects.computeIfAbsent( label, k -> new RefSetImp<>( pool ) ).add( obj );
 		}
 	}
 
+	/**
+	 * Returns the label set index of {@code obj}, without locking.
+	 *
+	 * @param obj
+	 *            the object.
+	 * @return the index of the label set of {@code obj} in the
+	 *         {@link LabelMapping}.
+	 */
+	int getSetIndex( final O obj )
+	{
+		final int id = pool.getId( obj );
+		final AtomicIntegerArray indices = setIndices;
+		return id < indices.length() ? indices.get( id ) : 0;
+	}
+
+	/**
+	 * Copies the label set index of {@code obj} from {@code backingProperty}
+	 * to {@link #setIndices}. Entries that were never set are 0, which is the
+	 * no-entry value of {@code backingProperty}.
+	 */
+	private void updateSetIndex( final O obj )
+	{
+		final int id = pool.getId( obj );
+		synchronized ( lock )
+		{
+			final int index = backingProperty.getInt( obj );
+			AtomicIntegerArray indices = setIndices;
+			if ( id >= indices.length() )
+			{
+				if ( index == 0 )
+					return;
+				final AtomicIntegerArray grown = new AtomicIntegerArray( Math.max( id + 1, indices.length() + ( indices.length() >> 1 ) ) );
+				for ( int i = 0; i < indices.length(); i++ )
+					grown.lazySet( i, indices.get( i ) );
+				setIndices = indices = grown;
+			}
+			indices.set( id, index );
+		}
+	}
+
+	private void clearSetIndices()
+	{
+		synchronized ( lock )
+		{
+			setIndices = new AtomicIntegerArray( 0 );
+		}
+	}
+
 	private void beforeDeleteObject( final O obj )
 	{
 		final Set< T > labels = mapping.setAtIndex( backingProperty.get( obj ) ).getSet();
@@ -206,9 +330,17 @@ public class LabelSets< O, T > extends AbstractProperty< O >
 			labelToObjects.computeIfAbsent( label, k -> new RefSetImp<>( pool ) ).remove( obj );
 	}
 
+	@Override
+	protected RefSet< O > createDirtySet()
+	{
+		return new RefSetImp<>( pool );
+	}
+
 	private void beforePropertyChange( final O obj )
 	{
-		changingObjToOldSetIndex.put( obj, backingProperty.get( obj ) );
+		// Keep the oldest index if changes are coalesced in a batch.
+		if ( !changingObjToOldSetIndex.containsKey( obj ) )
+			changingObjToOldSetIndex.put( obj, backingProperty.get( obj ) );
 		notifyBeforePropertyChange( obj );
 	}
 
@@ -28,6 +28,9 @@
  */
 package org.mastodon.pool;
 
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.RefSetImp;
 import org.mastodon.pool.PoolObjectLayout.PrimitiveField;
 import org.mastodon.properties.AbstractProperty;
 import org.mastodon.properties.undo.PropertyUndoRedoStack;
@@ -45,6 +48,8 @@ public class AbstractAttribute< O extends PoolObject< O, ?, ? > >
 {
 	final PrimitiveField field;
 
+	private final Pool< O, ? > pool;
+
 	protected MappedElement access( final O obj )
 	{
 		return obj.access;
@@ -53,6 +58,7 @@ public class AbstractAttribute< O extends PoolObject< O, ?, ? > >
 	protected AbstractAttribute( final PrimitiveField field, final Pool< O, ? > pool )
 	{
 		this.field = field;
+		this.pool = pool;
 		pool.getProperties().add( this );
 	}
 
@@ -62,6 +68,12 @@ public class AbstractAttribute< O extends PoolObject< O, ?, ? > >
 		return new AttributeUndoRedoStack<>( this );
 	}
 
+	@Override
+	protected RefSet< O > createDirtySet()
+	{
+		return new RefSetImp<>( pool );
+	}
+
 	@Override
 	public boolean isSet( final O key )
 	{
@@ -79,4 +91,16 @@ public class AbstractAttribute< O extends PoolObject< O, ?, ? > >
 	{
 		super.notifyPropertyChanged( object );
 	}
+
+	@Override
+	protected void notifyBeforePropertiesChange( final RefCollection< O > objects )
+	{
+		super.notifyBeforePropertiesChange( objects );
+	}
+
+	@Override
+	protected void notifyPropertiesChanged( final RefCollection< O > objects )
+	{
+		super.notifyPropertiesChanged( objects );
+	}
 }
@@ -45,6 +45,13 @@ import org.mastodon.undo.ByteArrayUndoRedoStack.ByteArrayRef;
  */
 public class AttributeUndoRedoStack< O extends PoolObject< O, ?, ? > > implements PropertyUndoRedoStack< O >
 {
+	/**
+	 * Size of compressed undo segments. Attribute values of consecutive edits
+	 * (e.g., positions of a moved selection) are often similar, so older
+	 * values are kept delta-compressed.
+	 */
+	private static final int SEGMENT_SIZE = 1 << 16;
+
 	private final AbstractAttribute< O > attribute;
 
 	private final ByteArrayUndoRedoStack stack;
@@ -65,6 +72,7 @@ public class AttributeUndoRedoStack< O extends PoolObject< O, ?, ? > > implement
 		offset = attribute.field.getOffset();
 		size = attribute.field.getSizeInBytes();
 		stack = new ByteArrayUndoRedoStack( 1024 * size );
+		stack.enableCompression( SEGMENT_SIZE, size );
 		ref = stack.createRef();
 		data = new byte[ size ];
 		swapdata = new byte[ size ];
@@ -121,6 +129,24 @@ public class AttributeUndoRedoStack< O extends PoolObject< O, ?, ? > > implement
 		stack.clear();
 	}
 
+	@Override
+	public long memoryUsage()
+	{
+		return stack.memoryUsage();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	public void discardOldest( final int n )
+	{
+		stack.discardOldest( n * size );
+	}
+
 	/**
 	 * Replace the element at {@code top} with the property value of {@code obj}.
 	 *
@@ -33,11 +33,16 @@ import java.util.NoSuchElementException;
 
 import org.mastodon.Options;
 import org.mastodon.RefPool;
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.RefArrayList;
 import org.mastodon.pool.MemPool.PoolIterator;
 import org.mastodon.properties.HasPropertyMaps;
 import org.mastodon.properties.PropertyMap;
 import org.mastodon.properties.PropertyMaps;
 
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIterator;
+
 /**
  * A pool of {@link PoolObject PoolObjects} all stored in a common
  * {@link MemPool}. Provides methods to {@link #createRef() create} and
@@ -114,6 +119,18 @@ public abstract class Pool< O extends PoolObject< O, ?, T >, T extends MappedEle
 		return memPool.size();
 	}
 
+	/**
+	 * Returns an upper bound (exclusive) on the internal pool indices of the
+	 * objects in the pool. Indices below the bound may be free, use
+	 * {@link #getObjectIfExists(int, PoolObject)} to check.
+	 *
+	 * @return the upper bound on pool indices.
+	 */
+	public int getIndexBound()
+	{
+		return memPool.allocatedSize;
+	}
+
 	@Override
 	public O createRef()
 	{
@@ -273,6 +290,48 @@ public abstract class Pool< O extends PoolObject< O, ?, T >, T extends MappedEle
 		memPool.free( obj.getInternalPoolIndex() );
 	}
 
+	/**
+	 * Creates {@code n} objects in uninitialized state. Registered
+	 * {@link PropertyMap}s are notified once for all objects, see
+	 * {@link PropertyMaps#objectsCreated(IntBackedRefCollection)}.
+	 *
+	 * @param n
+	 *            the number of objects to create.
+	 * @return the created objects.
+	 */
+	protected RefArrayList< O > createAll( final int n )
+	{
+		final RefArrayList< O > created = new RefArrayList<>( this, n );
+		final TIntCollection indices = created.getIndexCollection();
+		final O obj = createRef();
+		for ( int i = 0; i < n; ++i )
+		{
+			final int index = memPool.create();
+			obj.updateAccess( this, index );
+			obj.setToUninitializedState();
+			indices.add( index );
+		}
+		releaseRef( obj );
+		propertyMaps.objectsCreated( created );
+		return created;
+	}
+
+	/**
+	 * Deletes all objects in {@code objs}, which must not contain duplicates.
+	 * Registered {@link PropertyMap}s are notified once for all objects, see
+	 * {@link PropertyMaps#beforeDeleteObjects(IntBackedRefCollection)}.
+	 *
+	 * @param objs
+	 *            the objects to delete.
+	 */
+	protected void deleteAll( final IntBackedRefCollection< O > objs )
+	{
+		propertyMaps.beforeDeleteObjects( objs );
+		final TIntIterator it = objs.getIndexCollection().iterator();
+		while ( it.hasNext() )
+			memPool.free( it.next() );
+	}
+
 	public PoolCollectionWrapper< O > asRefCollection()
 	{
 		return asRefCollection;
@@ -28,6 +28,7 @@
  */
 package org.mastodon.pool.attributes;
 
+import org.mastodon.collection.RefCollection;
 import org.mastodon.pool.AbstractAttribute;
 import org.mastodon.pool.Pool;
 import org.mastodon.pool.PoolObject;
@@ -56,6 +57,46 @@ public class DoubleAttribute< O extends PoolObject< O, ?, ? > >
 		notifyPropertyChanged( key );
 	}
 
+	/**
+	 * Sets the attribute of all {@code keys} to {@code value}. Listeners
+	 * are notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param value
+	 *            the value to set.
+	 */
+	public void setAll( final RefCollection< O > keys, final double value )
+	{
+		notifyBeforePropertiesChange( keys );
+		for ( final O key : keys )
+			access( key ).putDouble( value, offset );
+		notifyPropertiesChanged( keys );
+	}
+
+	/**
+	 * Sets the attribute of all {@code keys} to the corresponding entry of
+	 * {@code values}, in the iteration order of {@code keys}. Listeners are
+	 * notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param values
+	 *            the values to set, at least {@code keys.size()} of them.
+	 */
+	public void setAll( final RefCollection< O > keys, final double[] values )
+	{
+		if ( values.length < keys.size() )
+			throw new IllegalArgumentException( "Expected " + keys.size() + " values, but got " + values.length + "." );
+		notifyBeforePropertiesChange( keys );
+		int i = 0;
+		for ( final O key : keys )
+			access( key ).putDouble( values[ i++ ], offset );
+		notifyPropertiesChanged( keys );
+	}
+
 	public double get( final O key )
 	{
 		return access( key ).getDouble( offset );
@@ -28,6 +28,13 @@
  */
 package org.mastodon.properties;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.wrap.RefSetWrapper;
 import org.scijava.listeners.Listeners;
 
 public abstract class AbstractProperty< O > implements Property< O >
@@ -36,13 +43,31 @@ public abstract class AbstractProperty< O > implements Property< O >
 
 	private Listeners.List< PropertyChangeListener< O > > changeListeners;
 
+	private Listeners.List< PropertyBatchListener< O > > batchListeners;
+
 	private boolean emitEvents;
 
+	/**
+	 * Nesting depth of {@link #beginBatch()} calls.
+	 */
+	private int batchDepth;
+
+	/**
+	 * Objects changed in the current batch. Created lazily, because it is
+	 * handed over to the {@link PropertyBatchListener}s at the end of each
+	 * batch.
+	 */
+	private RefSet< O > dirty;
+
+	private Executor batchExecutor;
+
 	protected AbstractProperty()
 	{
 		beforeChangeListeners = new Listeners.List<>();
 		changeListeners = new Listeners.List<>();
+		batchListeners = new Listeners.List<>();
 		emitEvents = true;
+		batchDepth = 0;
 	}
 
 	@Override
@@ -57,6 +82,82 @@ public abstract class AbstractProperty< O > implements Property< O >
 		return changeListeners;
 	}
 
+	/**
+	 * {@code PropertyBatchListener}s can be added/removed here.
+	 * <p>
+	 * A {@link PropertyBatchListener} is notified once at the end of each
+	 * batch (see {@link #beginBatch()}) with the set of objects whose property
+	 * changed. It is not notified about changes outside of batches.
+	 *
+	 * @return list of {@code PropertyBatchListener}s
+	 */
+	public Listeners< PropertyBatchListener< O > > propertyBatchListeners()
+	{
+		return batchListeners;
+	}
+
+	/**
+	 * Sets the executor on which {@link PropertyBatchListener}s are notified at
+	 * the end of a batch. If {@code null} (the default), they are notified
+	 * synchronously in {@link #endBatch()}.
+	 *
+	 * @param executor
+	 *            the executor, or {@code null}.
+	 */
+	public void setBatchExecutor( final Executor executor )
+	{
+		batchExecutor = executor;
+	}
+
+	@Override
+	public void beginBatch()
+	{
+		++batchDepth;
+	}
+
+	@Override
+	public void endBatch()
+	{
+		if ( batchDepth == 0 )
+			throw new IllegalStateException( "endBatch() without matching beginBatch()" );
+		if ( --batchDepth > 0 || dirty == null )
+			return;
+
+		final RefSet< O > objects = dirty;
+		dirty = null;
+		for ( final PropertyChangeListener< O > l : changeListeners.list )
+			l.propertiesChanged( objects );
+		if ( batchListeners.list.isEmpty() )
+			return;
+		if ( batchExecutor == null )
+		{
+			for ( final PropertyBatchListener< O > l : batchListeners.list )
+				l.propertiesChanged( objects );
+		}
+		else
+		{
+			final ArrayList< PropertyBatchListener< O > > listeners = batchListeners.listCopy();
+			batchExecutor.execute( () -> {
+				for ( final PropertyBatchListener< O > l : listeners )
+					l.propertiesChanged( objects );
+			} );
+		}
+	}
+
+	/**
+	 * Creates the set to collect changed objects in during a batch. Should be
+	 * overridden to return a set backed by pool indices (see
+	 * {@link org.mastodon.collection.ref.RefSetImp}) if objects are proxies
+	 * that are reused after the notification. The default implementation
+	 * wraps a plain {@link HashSet}, which is correct for regular objects.
+	 *
+	 * @return a new empty set.
+	 */
+	protected RefSet< O > createDirtySet()
+	{
+		return new RefSetWrapper<>( new HashSet<>() );
+	}
+
 	@Override
 	public void pauseListeners()
 	{
@@ -79,7 +180,38 @@ public abstract class AbstractProperty< O > implements Property< O >
 	protected void notifyPropertyChanged( final O object )
 	{
 		if ( emitEvents )
-			for ( final PropertyChangeListener< O > l : changeListeners.list )
-				l.propertyChanged( object );
+		{
+			if ( batchDepth > 0 )
+				dirtySet().add( object );
+			else
+				for ( final PropertyChangeListener< O > l : changeListeners.list )
+					l.propertyChanged( object );
+		}
+	}
+
+	protected void notifyBeforePropertiesChange( final RefCollection< O > objects )
+	{
+		if ( emitEvents )
+			for ( final BeforePropertyChangeListener< O > l : beforeChangeListeners.list )
+				l.beforePropertiesChange( objects );
+	}
+
+	protected void notifyPropertiesChanged( final RefCollection< O > objects )
+	{
+		if ( emitEvents )
+		{
+			if ( batchDepth > 0 )
+				dirtySet().addAll( objects );
+			else
+				for ( final PropertyChangeListener< O > l : changeListeners.list )
+					l.propertiesChanged( objects );
+		}
+	}
+
+	private RefSet< O > dirtySet()
+	{
+		if ( dirty == null )
+			dirty = createDirtySet();
+		return dirty;
 	}
 }
@@ -30,12 +30,23 @@ package org.mastodon.properties;
 
 import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
 import org.mastodon.collection.ref.RefPoolBackedRefCollection;
+import org.mastodon.collection.ref.RefSetImp;
 
 public abstract class AbstractPropertyMap< O, T > extends AbstractProperty< O > implements PropertyMap< O, T >
 {
 	private PropertyMaps< O > propertyMaps;
 
+	/**
+	 * The pool or collection of keys, to create sets of changed objects for
+	 * batches.
+	 */
+	private RefPool< O > keyPool;
+
+	private RefCollection< O > keyCollection;
+
 	protected AbstractPropertyMap()
 	{
 		super();
@@ -44,6 +55,7 @@ public abstract class AbstractPropertyMap< O, T > extends AbstractProperty< O >
 	@SuppressWarnings( "unchecked" )
 	protected void tryRegisterPropertyMap( final RefPool< O > pool )
 	{
+		keyPool = pool;
 		if ( pool instanceof HasPropertyMaps )
 		{
 			propertyMaps = ( ( HasPropertyMaps< O > ) pool ).getPropertyMaps();
@@ -55,12 +67,24 @@ public abstract class AbstractPropertyMap< O, T > extends AbstractProperty< O >
 
 	protected void tryRegisterPropertyMap( final RefCollection< O > collection )
 	{
+		keyCollection = collection;
 		if ( collection instanceof RefPoolBackedRefCollection )
 			tryRegisterPropertyMap( ( ( RefPoolBackedRefCollection< O > ) collection ).getRefPool() );
 //		else
 //			System.err.println( "WARNING: Creating property map for a collection/pool that does not manage PropertyMaps!" );
 	}
 
+	@Override
+	protected RefSet< O > createDirtySet()
+	{
+		if ( keyPool != null )
+			return new RefSetImp<>( keyPool );
+		else if ( keyCollection != null )
+			return RefCollections.createRefSet( keyCollection );
+		else
+			return super.createDirtySet();
+	}
+
 	protected void tryUnregisterPropertyMap()
 	{
 		if ( propertyMaps != null )
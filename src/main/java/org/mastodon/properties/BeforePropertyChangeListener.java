@@ -28,6 +28,8 @@
  */
 package org.mastodon.properties;
 
+import org.mastodon.collection.RefCollection;
+
 /**
  * A listener that is notified before a property changes (This happens when
  * {@link PropertyMap#set(Object, Object)} or {@link PropertyMap#remove(Object)}
@@ -39,4 +41,19 @@ package org.mastodon.properties;
 public interface BeforePropertyChangeListener< O >
 {
 	void beforePropertyChange( O object );
+
+	/**
+	 * Called once before the property changes for all of the specified
+	 * objects in a bulk edit (e.g. {@link DoublePropertyMap#setAll}). The
+	 * default implementation calls {@link #beforePropertyChange(Object)} for
+	 * each object.
+	 *
+	 * @param objects
+	 *            the objects whose property is about to change.
+	 */
+	default void beforePropertiesChange( final RefCollection< O > objects )
+	{
+		for ( final O object : objects )
+			beforePropertyChange( object );
+	}
 }
@@ -0,0 +1,352 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.ref.IntBackedRefCollections;
+import org.mastodon.collection.ref.RefPoolBackedRefCollection;
+
+import gnu.trove.TIntCollection;
+
+/**
+ * A read-only {@code double} property whose value is computed from other
+ * properties. Values are computed on first access and cached in a dense array
+ * indexed by pool index.
+ * <p>
+ * The property listens to changes of its source properties (see
+ * {@link #addSource(Property)} and {@link #addSource(Property, Dependents)}),
+ * and invalidates only the cached values of affected objects. Invalidation is
+ * reported to this property's own listeners, so derived properties can be
+ * chained. Cached values of deleted objects are discarded (see
+ * {@link ObjectLifecycleListener}).
+ * <p>
+ * Like property maps, this is not thread-safe.
+ * {@link #computeAll(RefCollection)} computes values in parallel, so the
+ * function must be safe to call concurrently.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ */
+public class DerivedDoublePropertyMap< O > extends AbstractProperty< O > implements ObjectLifecycleListener< O >
+{
+	/**
+	 * Maps a changed object of a source property to the objects whose derived
+	 * value depends on it.
+	 *
+	 * @param <S>
+	 *            the type of objects of the source property.
+	 * @param <O>
+	 *            the type of objects of the derived property.
+	 */
+	@FunctionalInterface
+	public interface Dependents< S, O >
+	{
+		/**
+		 * Calls {@code action} for every object whose derived value depends on
+		 * the source property value of {@code changed}.
+		 *
+		 * @param changed
+		 *            the object whose source property changed.
+		 * @param action
+		 *            to be called for every dependent object.
+		 */
+		void forEachDependent( S changed, Consumer< O > action );
+	}
+
+	private static final int MIN_CHUNK_SIZE = 1024;
+
+	private final RefPool< O > pool;
+
+	private final Runnable lifecycleListenerRemover;
+
+	private final ToDoubleFunction< O > function;
+
+	/**
+	 * Cached values, indexed by pool index.
+	 */
+	private double[] values;
+
+	/**
+	 * Which entries of {@link #values} are valid.
+	 */
+	private long[] valid;
+
+	private int size;
+
+	private final List< Runnable > sourceListenerRemovers;
+
+	/**
+	 * Creates a derived property.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param function
+	 *            computes the property value of an object.
+	 */
+	public DerivedDoublePropertyMap( final RefPool< O > pool, final ToDoubleFunction< O > function )
+	{
+		this.pool = pool;
+		this.function = function;
+		values = new double[ 64 ];
+		valid = new long[ 1 ];
+		size = 0;
+		sourceListenerRemovers = new ArrayList<>();
+		lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+	}
+
+	/**
+	 * Adds a source property. A change of the source property for an object
+	 * invalidates the derived value of the same object.
+	 *
+	 * @param source
+	 *            the source property.
+	 * @return this property.
+	 */
+	public DerivedDoublePropertyMap< O > addSource( final Property< O > source )
+	{
+		return addSource( source, ( changed, action ) -> action.accept( changed ) );
+	}
+
+	/**
+	 * Adds a source property. A change of the source property for an object
+	 * invalidates the derived values of its {@code dependents}.
+	 *
+	 * @param source
+	 *            the source property.
+	 * @param dependents
+	 *            maps changed source objects to affected objects.
+	 * @param <S>
+	 *            the type of objects of the source property.
+	 * @return this property.
+	 */
+	public < S > DerivedDoublePropertyMap< O > addSource( final Property< S > source, final Dependents< S, O > dependents )
+	{
+		final Consumer< O > invalidate = this::invalidate;
+		final PropertyChangeListener< S > listener = changed -> dependents.forEachDependent( changed, invalidate );
+		source.propertyChangeListeners().add( listener );
+		sourceListenerRemovers.add( () -> source.propertyChangeListeners().remove( listener ) );
+		return this;
+	}
+
+	public double getDouble( final O key )
+	{
+		final int index = pool.getId( key );
+		if ( isValid( index ) )
+			return values[ index ];
+
+		final double value = function.applyAsDouble( key );
+		ensureCapacity( index + 1 );
+		values[ index ] = value;
+		setValid( index );
+		++size;
+		return value;
+	}
+
+	/**
+	 * Always returns {@code true}, because the property can be computed for
+	 * every object. Use {@link #isCached(Object)} to check whether a value is
+	 * currently cached.
+	 */
+	@Override
+	public boolean isSet( final O key )
+	{
+		return true;
+	}
+
+	/**
+	 * Returns whether the value for {@code key} is cached.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return whether the value for {@code key} is cached.
+	 */
+	public boolean isCached( final O key )
+	{
+		return isValid( pool.getId( key ) );
+	}
+
+	/**
+	 * Returns the number of cached values.
+	 *
+	 * @return the number of cached values.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Invalidates the cached value of {@code key}, if any, and notifies
+	 * listeners.
+	 *
+	 * @param key
+	 *            the object.
+	 */
+	public void invalidate( final O key )
+	{
+		notifyBeforePropertyChange( key );
+		clearValid( pool.getId( key ) );
+		notifyPropertyChanged( key );
+	}
+
+	/**
+	 * Invalidates all cached values. Listeners are not notified.
+	 */
+	public void invalidateAll()
+	{
+		Arrays.fill( valid, 0 );
+		size = 0;
+	}
+
+	/**
+	 * Computes the values of all specified objects that are not cached, in
+	 * parallel.
+	 *
+	 * @param objects
+	 *            the objects to compute values for.
+	 */
+	public void computeAll( final RefCollection< O > objects )
+	{
+		// Gather indices of objects that need to be computed.
+		final int[] indices;
+		final TIntCollection ic = objects instanceof RefPoolBackedRefCollection
+				&& ( ( RefPoolBackedRefCollection< ? > ) objects ).getRefPool() == pool
+						? IntBackedRefCollections.indices( objects )
+						: null;
+		if ( ic != null )
+			indices = ic.toArray();
+		else
+		{
+			indices = new int[ objects.size() ];
+			int i = 0;
+			for ( final O o : objects )
+				indices[ i++ ] = pool.getId( o );
+		}
+		int n = 0;
+		int max = -1;
+		for ( final int index : indices )
+		{
+			if ( !isValid( index ) )
+			{
+				indices[ n++ ] = index;
+				max = Math.max( max, index );
+			}
+		}
+		if ( n == 0 )
+			return;
+		ensureCapacity( max + 1 );
+
+		// Compute in parallel. Each chunk writes distinct entries of values.
+		final int numIndices = n;
+		final int chunkSize = Math.max( MIN_CHUNK_SIZE, numIndices / ( 4 * Runtime.getRuntime().availableProcessors() ) + 1 );
+		final int numChunks = ( numIndices + chunkSize - 1 ) / chunkSize;
+		final double[] vs = values;
+		IntStream.range( 0, numChunks ).parallel().forEach( chunk -> {
+			final O ref = pool.createRef();
+			final int end = Math.min( numIndices, ( chunk + 1 ) * chunkSize );
+			for ( int i = chunk * chunkSize; i < end; i++ )
+			{
+				final int index = indices[ i ];
+				vs[ index ] = function.applyAsDouble( pool.getObject( index, ref ) );
+			}
+			pool.releaseRef( ref );
+		} );
+
+		// Mark valid sequentially, because chunks may share words of valid.
+		for ( int i = 0; i < numIndices; i++ )
+			if ( !isValid( indices[ i ] ) )
+			{
+				setValid( indices[ i ] );
+				++size;
+			}
+	}
+
+	/**
+	 * Stops listening to source properties, clears the cache and unregisters
+	 * this property.
+	 */
+	public void release()
+	{
+		sourceListenerRemovers.forEach( Runnable::run );
+		sourceListenerRemovers.clear();
+		invalidateAll();
+		lifecycleListenerRemover.run();
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		clearValid( pool.getId( key ) );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		invalidateAll();
+	}
+
+	private boolean isValid( final int index )
+	{
+		final int word = index >>> 6;
+		return word < valid.length && ( valid[ word ] & ( 1L << index ) ) != 0;
+	}
+
+	private void setValid( final int index )
+	{
+		valid[ index >>> 6 ] |= 1L << index;
+	}
+
+	private void clearValid( final int index )
+	{
+		final int word = index >>> 6;
+		if ( word < valid.length && ( valid[ word ] & ( 1L << index ) ) != 0 )
+		{
+			valid[ word ] &= ~( 1L << index );
+			--size;
+		}
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > values.length )
+		{
+			final int newLength = Math.max( capacity, values.length + ( values.length >> 1 ) );
+			values = Arrays.copyOf( values, newLength );
+			valid = Arrays.copyOf( valid, ( newLength + 63 ) >>> 6 );
+		}
+	}
+}
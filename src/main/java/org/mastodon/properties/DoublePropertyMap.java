@@ -32,10 +32,14 @@ import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefDoubleMap;
 import org.mastodon.collection.RefMaps;
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.RefDoubleArrayMap;
 import org.mastodon.collection.ref.RefDoubleHashMap;
 import org.mastodon.properties.undo.DoublePropertyUndoRedoStack;
 import org.mastodon.properties.undo.PropertyUndoRedoStack;
 
+import gnu.trove.iterator.TIntIterator;
+
 public class DoublePropertyMap< O > extends AbstractPropertyMap< O, Double >
 {
 	private final RefDoubleMap< O > map;
@@ -70,6 +74,30 @@ public class DoublePropertyMap< O > extends AbstractPropertyMap< O, Double >
 		tryRegisterPropertyMap( pool );
 	}
 
+	/**
+	 * Creates a property map that is either backed by a hash map, or, if
+	 * {@code dense} is {@code true}, by an array indexed by pool index (see
+	 * {@link RefDoubleArrayMap}). A dense map is faster and smaller if the
+	 * property is set for most objects of the pool.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param noEntryValue
+	 *            the value returned for objects without a property value.
+	 * @param initialCapacity
+	 *            the initial capacity.
+	 * @param dense
+	 *            whether to create a dense map.
+	 */
+	public DoublePropertyMap( final RefPool< O > pool, final double noEntryValue, final int initialCapacity, final boolean dense )
+	{
+		map = dense
+				? new RefDoubleArrayMap<>( pool, noEntryValue, initialCapacity )
+				: new RefDoubleHashMap<>( pool, noEntryValue, initialCapacity );
+		this.noEntryValue = noEntryValue;
+		tryRegisterPropertyMap( pool );
+	}
+
 	public double set( final O key, final double value )
 	{
 		notifyBeforePropertyChange( key );
@@ -96,6 +124,46 @@ public class DoublePropertyMap< O > extends AbstractPropertyMap< O, Double >
 		return ( old == noEntryValue ) ? null : old;
 	}
 
+	/**
+	 * Sets the property of all {@code keys} to {@code value}. Listeners are
+	 * notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param value
+	 *            the value to set.
+	 */
+	public void setAll( final RefCollection< O > keys, final double value )
+	{
+		notifyBeforePropertiesChange( keys );
+		for ( final O key : keys )
+			map.put( key, value );
+		notifyPropertiesChanged( keys );
+	}
+
+	/**
+	 * Sets the property of all {@code keys} to the corresponding entry of
+	 * {@code values}, in the iteration order of {@code keys}. Listeners are
+	 * notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param values
+	 *            the values to set, at least {@code keys.size()} of them.
+	 */
+	public void setAll( final RefCollection< O > keys, final double[] values )
+	{
+		if ( values.length < keys.size() )
+			throw new IllegalArgumentException( "Expected " + keys.size() + " values, but got " + values.length + "." );
+		notifyBeforePropertiesChange( keys );
+		int i = 0;
+		for ( final O key : keys )
+			map.put( key, values[ i++ ] );
+		notifyPropertiesChanged( keys );
+	}
+
 	public double removeDouble( final O key )
 	{
 		notifyBeforePropertyChange( key );
@@ -132,6 +200,36 @@ public class DoublePropertyMap< O > extends AbstractPropertyMap< O, Double >
 		return map;
 	}
 
+	/**
+	 * Returns whether this map is backed by an array indexed by pool index.
+	 *
+	 * @return whether this is a dense map.
+	 */
+	public boolean isDense()
+	{
+		return map instanceof RefDoubleArrayMap;
+	}
+
+	/**
+	 * Gets the property values of all {@code keys}, in the iteration order of
+	 * {@code keys}. Objects without a value get {@link #getNoEntryValue()}.
+	 *
+	 * @param keys
+	 *            the objects to get values for.
+	 * @param values
+	 *            array to store the values in, or {@code null}. If it is too
+	 *            small, a new array is allocated.
+	 * @return the array of values.
+	 */
+	public double[] getAll( final RefCollection< O > keys, final double[] values )
+	{
+		final double[] array = ( values == null || values.length < keys.size() ) ? new double[ keys.size() ] : values;
+		int i = 0;
+		for ( final O key : keys )
+			array[ i++ ] = map.get( key );
+		return array;
+	}
+
 	public void release()
 	{
 		map.clear();
@@ -143,6 +241,26 @@ public class DoublePropertyMap< O > extends AbstractPropertyMap< O, Double >
 		return noEntryValue;
 	}
 
+	@Override
+	public void objectCreated( final O key )
+	{
+		if ( map instanceof RefDoubleArrayMap )
+			( ( RefDoubleArrayMap< O > ) map ).ensureCapacityFor( key );
+	}
+
+	@Override
+	public void objectsCreated( final IntBackedRefCollection< O > keys )
+	{
+		if ( map instanceof RefDoubleArrayMap )
+		{
+			final TIntIterator it = keys.getIndexCollection().iterator();
+			int max = -1;
+			while ( it.hasNext() )
+				max = Math.max( max, it.next() );
+			( ( RefDoubleArrayMap< O > ) map ).ensureCapacity( max + 1 );
+		}
+	}
+
 	@Override
 	public void beforeDeleteObject( final O key )
 	{
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefMaps;
+import org.mastodon.collection.RefMultiDoubleMap;
+import org.mastodon.collection.ref.RefMultiDoubleHashMap;
+import org.mastodon.properties.undo.MultiDoublePropertyUndoRedoStack;
+import org.mastodon.properties.undo.PropertyUndoRedoStack;
+
+/**
+ * A {@link PropertyMap} that stores a fixed number of {@code double} values
+ * per object, backed by a {@link RefMultiDoubleMap}. Use this instead of
+ * several {@link DoublePropertyMap}s when the values are always computed
+ * and read together.
+ *
+ * @param <O>
+ *            type of object which the property is attached to.
+ */
+public class MultiDoublePropertyMap< O > extends AbstractPropertyMap< O, double[] >
+{
+	private final RefMultiDoubleMap< O > map;
+
+	private final double noEntryValue;
+
+	public MultiDoublePropertyMap( final RefCollection< O > pool, final int numColumns, final double noEntryValue )
+	{
+		map = RefMaps.createRefMultiDoubleMap( pool, numColumns, noEntryValue );
+		this.noEntryValue = noEntryValue;
+		tryRegisterPropertyMap( pool );
+	}
+
+	public MultiDoublePropertyMap( final RefCollection< O > pool, final int numColumns, final double noEntryValue, final int initialCapacity )
+	{
+		map = RefMaps.createRefMultiDoubleMap( pool, numColumns, noEntryValue, initialCapacity );
+		this.noEntryValue = noEntryValue;
+		tryRegisterPropertyMap( pool );
+	}
+
+	public MultiDoublePropertyMap( final RefPool< O > pool, final int numColumns, final double noEntryValue )
+	{
+		map = new RefMultiDoubleHashMap<>( pool, numColumns, noEntryValue );
+		this.noEntryValue = noEntryValue;
+		tryRegisterPropertyMap( pool );
+	}
+
+	public MultiDoublePropertyMap( final RefPool< O > pool, final int numColumns, final double noEntryValue, final int initialCapacity )
+	{
+		map = new RefMultiDoubleHashMap<>( pool, numColumns, noEntryValue, initialCapacity );
+		this.noEntryValue = noEntryValue;
+		tryRegisterPropertyMap( pool );
+	}
+
+	/**
+	 * Sets a single column of this property for the specified object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param column
+	 *            the column index.
+	 * @param value
+	 *            the value to set.
+	 * @return the previous value of the column, or {@link #getNoEntryValue()}.
+	 */
+	public double set( final O key, final int column, final double value )
+	{
+		notifyBeforePropertyChange( key );
+		final double old = map.put( key, column, value );
+		notifyPropertyChanged( key );
+		return old;
+	}
+
+	/**
+	 * Sets all columns of this property for the specified object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param row
+	 *            the values to set, of length at least {@link #numColumns()}.
+	 * @param replaced
+	 *            the array to write the previous values to.
+	 * @return {@code true} if the property was set before.
+	 */
+	public boolean set( final O key, final double[] row, final double[] replaced )
+	{
+		notifyBeforePropertyChange( key );
+		final boolean wasSet = map.put( key, row, replaced );
+		notifyPropertyChanged( key );
+		return wasSet;
+	}
+
+	@Override
+	public double[] set( final O key, final double[] value )
+	{
+		final double[] old = new double[ map.numColumns() ];
+		return set( key, value, old ) ? old : null;
+	}
+
+	@Override
+	public double[] remove( final O key )
+	{
+		final double[] old = new double[ map.numColumns() ];
+		return remove( key, old ) ? old : null;
+	}
+
+	/**
+	 * Removes this property for the specified object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param replaced
+	 *            the array to write the removed values to.
+	 * @return {@code true} if the property was set before.
+	 */
+	public boolean remove( final O key, final double[] replaced )
+	{
+		notifyBeforePropertyChange( key );
+		final boolean wasSet = map.remove( key, replaced );
+		notifyPropertyChanged( key );
+		return wasSet;
+	}
+
+	public double getDouble( final O key, final int column )
+	{
+		return map.get( key, column );
+	}
+
+	/**
+	 * Copies all columns of this property for the specified object into
+	 * {@code row}.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param row
+	 *            the array to write to, of length at least
+	 *            {@link #numColumns()}.
+	 * @return {@code true} if the property is set for {@code key}.
+	 */
+	public boolean get( final O key, final double[] row )
+	{
+		return map.get( key, row );
+	}
+
+	@Override
+	public double[] get( final O key )
+	{
+		final double[] row = new double[ map.numColumns() ];
+		return map.get( key, row ) ? row : null;
+	}
+
+	@Override
+	public boolean isSet( final O key )
+	{
+		return map.containsKey( key );
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	public int numColumns()
+	{
+		return map.numColumns();
+	}
+
+	public RefMultiDoubleMap< O > getMap()
+	{
+		return map;
+	}
+
+	public void release()
+	{
+		map.clear();
+		tryUnregisterPropertyMap();
+	}
+
+	public double getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		map.remove( key );
+	}
+
+	@Override
+	public PropertyUndoRedoStack< O > createUndoRedoStack()
+	{
+		return new MultiDoublePropertyUndoRedoStack<>( this );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		map.clear();
+	}
+
+	@Override
+	public void clear()
+	{
+		map.clear();
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		if ( this == o )
+			return true;
+		if ( o == null || getClass() != o.getClass() )
+			return false;
+
+		final MultiDoublePropertyMap< ? > that = ( MultiDoublePropertyMap< ? > ) o;
+
+		return map.equals( that.map );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return map.hashCode();
+	}
+}
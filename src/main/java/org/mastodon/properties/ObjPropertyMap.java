@@ -28,6 +28,9 @@
  */
 package org.mastodon.properties;
 
+import java.util.Iterator;
+import java.util.List;
+
 import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefMaps;
@@ -73,6 +76,46 @@ public class ObjPropertyMap< O, T > extends AbstractPropertyMap< O, T >
 		return old;
 	}
 
+	/**
+	 * Sets the property of all {@code keys} to {@code value}. Listeners are
+	 * notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param value
+	 *            the value to set.
+	 */
+	public void setAll( final RefCollection< O > keys, final T value )
+	{
+		notifyBeforePropertiesChange( keys );
+		for ( final O key : keys )
+			map.put( key, value );
+		notifyPropertiesChanged( keys );
+	}
+
+	/**
+	 * Sets the property of all {@code keys} to the corresponding element of
+	 * {@code values}, in the iteration order of {@code keys}. Listeners are
+	 * notified once for the whole collection, so that the change can be
+	 * recorded as a single undoable edit.
+	 *
+	 * @param keys
+	 *            the objects to modify.
+	 * @param values
+	 *            the values to set, at least {@code keys.size()} of them.
+	 */
+	public void setAll( final RefCollection< O > keys, final List< ? extends T > values )
+	{
+		if ( values.size() < keys.size() )
+			throw new IllegalArgumentException( "Expected " + keys.size() + " values, but got " + values.size() + "." );
+		notifyBeforePropertiesChange( keys );
+		final Iterator< ? extends T > vi = values.iterator();
+		for ( final O key : keys )
+			map.put( key, vi.next() );
+		notifyPropertiesChanged( keys );
+	}
+
 	@Override
 	public T remove( final O key )
 	{
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import org.mastodon.collection.ref.IntBackedRefCollection;
+
+/**
+ * A listener that is notified by {@link PropertyMaps} when objects are added
+ * to or removed from a pool. Unlike a {@link PropertyMap}, it does not hold
+ * values of its own. This is meant for structures derived from properties
+ * (indices, statistics, etc.) that have to forget deleted objects, because
+ * their pool indices may be reused.
+ * <p>
+ * Such structures register with the pool in their constructor, using
+ * {@link PropertyMaps#addLifecycleListener(org.mastodon.RefPool,
+ * ObjectLifecycleListener)}, and remove themselves again when they are
+ * released. Listeners are only weakly referenced.
+ *
+ * @param <O>
+ *            the type of objects in the pool.
+ *
+ * @see PropertyMaps#addLifecycleListener(org.mastodon.RefPool,
+ *      ObjectLifecycleListener)
+ */
+public interface ObjectLifecycleListener< O >
+{
+	/**
+	 * Called after a new object was added to the pool. The default
+	 * implementation does nothing.
+	 *
+	 * @param key
+	 *            the object just created.
+	 */
+	default void objectCreated( final O key )
+	{}
+
+	/**
+	 * Called before an object is removed from the pool.
+	 *
+	 * @param key
+	 *            the object to be deleted.
+	 */
+	void beforeDeleteObject( O key );
+
+	/**
+	 * Called after objects were added to the pool in bulk. The default
+	 * implementation calls {@link #objectCreated(Object)} for each object.
+	 *
+	 * @param keys
+	 *            the objects just created.
+	 */
+	default void objectsCreated( final IntBackedRefCollection< O > keys )
+	{
+		for ( final O key : keys )
+			objectCreated( key );
+	}
+
+	/**
+	 * Called before objects are removed from the pool in bulk. The default
+	 * implementation calls {@link #beforeDeleteObject(Object)} for each
+	 * object.
+	 *
+	 * @param keys
+	 *            the objects to be deleted.
+	 */
+	default void beforeDeleteObjects( final IntBackedRefCollection< O > keys )
+	{
+		for ( final O key : keys )
+			beforeDeleteObject( key );
+	}
+
+	/**
+	 * Called before the pool is cleared.
+	 */
+	void beforeClearPool();
+}
@@ -79,6 +79,34 @@ public interface Property< O >
 	 */
 	Listeners< PropertyChangeListener< O > > propertyChangeListeners();
 
+	/**
+	 * Start a batch of changes. Until the matching {@link #endBatch()},
+	 * {@link PropertyChangeListener}s are not notified per change. Instead,
+	 * the changed objects are collected, and delivered once at the end of the
+	 * batch, to {@link PropertyChangeListener#propertiesChanged} and to the
+	 * {@link PropertyBatchListener}s. {@link BeforePropertyChangeListener}s
+	 * are still notified before every change.
+	 * <p>
+	 * Batches can be nested; notifications are sent at the end of the
+	 * outermost batch.
+	 * <p>
+	 * The default implementation does nothing, i.e., listeners are notified
+	 * per change.
+	 */
+	default void beginBatch()
+	{}
+
+	/**
+	 * End a batch of changes started with {@link #beginBatch()}.
+	 * <p>
+	 * The default implementation does nothing.
+	 *
+	 * @throws IllegalStateException
+	 *             if there is no matching {@link #beginBatch()}.
+	 */
+	default void endBatch()
+	{}
+
 	/**
 	 * Pause sending events to {@link BeforePropertyChangeListener}s and
 	 * {@link PropertyChangeListener}s.
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import org.mastodon.collection.RefSet;
+
+/**
+ * A listener that is notified once at the end of a batch of property changes
+ * (see {@link Property#beginBatch()} and {@link Property#endBatch()}).
+ *
+ * @param <O>
+ *            the type of objects in which the property is defined.
+ */
+public interface PropertyBatchListener< O >
+{
+	/**
+	 * Called at the end of a batch, with the set of all objects whose property
+	 * changed during the batch. Each object is contained only once, no matter
+	 * how often it changed. The set is owned by the listeners and is not
+	 * modified afterwards.
+	 * <p>
+	 * If a batch executor is set (see
+	 * {@link AbstractProperty#setBatchExecutor(java.util.concurrent.Executor)}),
+	 * this is called on the executor.
+	 *
+	 * @param objects
+	 *            the objects whose property changed.
+	 */
+	void propertiesChanged( RefSet< O > objects );
+}
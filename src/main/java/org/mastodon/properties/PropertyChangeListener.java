@@ -28,6 +28,8 @@
  */
 package org.mastodon.properties;
 
+import org.mastodon.collection.RefCollection;
+
 /**
  * A listener that is notified when a property was changed. (This happens when
  * {@link PropertyMap#set(Object, Object)} or {@link PropertyMap#remove(Object)}
@@ -39,4 +41,18 @@ package org.mastodon.properties;
 public interface PropertyChangeListener< O >
 {
 	void propertyChanged( O object );
+
+	/**
+	 * Called once after the property changed for all of the specified objects
+	 * in a bulk edit (e.g. {@link DoublePropertyMap#setAll}). The default
+	 * implementation calls {@link #propertyChanged(Object)} for each object.
+	 *
+	 * @param objects
+	 *            the objects whose property changed.
+	 */
+	default void propertiesChanged( final RefCollection< O > objects )
+	{
+		for ( final O object : objects )
+			propertyChanged( object );
+	}
 }
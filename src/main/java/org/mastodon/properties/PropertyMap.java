@@ -28,6 +28,8 @@
  */
 package org.mastodon.properties;
 
+import org.mastodon.collection.ref.IntBackedRefCollection;
+
 /**
  * A map from objects {@code O} to properties {@code T}.
  * <p>
@@ -103,6 +105,42 @@ public interface PropertyMap< O, T > extends Property< O >
 	 */
 	public void beforeDeleteObject( final O key );
 
+	/**
+	 * For internal use.
+	 * <p>
+	 * This is called by
+	 * {@link PropertyMaps#objectsCreated(IntBackedRefCollection)} when objects
+	 * were added in bulk. The default implementation calls
+	 * {@link #objectCreated(Object)} for each object.
+	 * </p>
+	 *
+	 * @param keys
+	 *            the objects just created.
+	 */
+	public default void objectsCreated( final IntBackedRefCollection< O > keys )
+	{
+		for ( final O key : keys )
+			objectCreated( key );
+	}
+
+	/**
+	 * For internal use.
+	 * <p>
+	 * This is called by
+	 * {@link PropertyMaps#beforeDeleteObjects(IntBackedRefCollection)} when
+	 * objects are about to be deleted in bulk. The default implementation
+	 * calls {@link #beforeDeleteObject(Object)} for each object.
+	 * </p>
+	 *
+	 * @param keys
+	 *            the objects to be deleted.
+	 */
+	public default void beforeDeleteObjects( final IntBackedRefCollection< O > keys )
+	{
+		for ( final O key : keys )
+			beforeDeleteObject( key );
+	}
+
 	/**
 	 * For internal use.
 	 * <p>
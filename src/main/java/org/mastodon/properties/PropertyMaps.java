@@ -29,11 +29,12 @@
 package org.mastodon.properties;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 import org.mastodon.RefPool;
+import org.mastodon.collection.ref.IntBackedRefCollection;
 
 /**
  * Maintains a list of {@link PropertyMap}s, typically for a {@link RefPool}.
@@ -45,6 +46,19 @@ import org.mastodon.RefPool;
  * makes it easier to create temporary maps without worrying about book-keeping.
  * Nevertheless, it is possible to explicitly remove maps.
  * </p>
+ * <p>
+ * Events are dispatched from an array of the registered maps, which is
+ * rebuilt only when maps are added or removed. Bulk creation and deletion of
+ * objects can be forwarded with {@link #objectsCreated(IntBackedRefCollection)}
+ * and {@link #beforeDeleteObjects(IntBackedRefCollection)}, which make one
+ * call per map instead of one per map and object.
+ * </p>
+ * <p>
+ * Structures that are derived from properties but are not {@link PropertyMap}s
+ * themselves can register an {@link ObjectLifecycleListener} to receive the
+ * same object creation and deletion events. Listeners are also only weakly
+ * referenced.
+ * </p>
  *
  * @param <O>
  *            object type (key type for all {@link PropertyMap}s)
@@ -53,7 +67,15 @@ import org.mastodon.RefPool;
  */
 public class PropertyMaps< O >
 {
-	private final List< WeakReference< PropertyMap< O, ? > > > maps = new CopyOnWriteArrayList<>();
+	private final WeakList< PropertyMap< O, ? > > maps = new WeakList<>();
+
+	private final WeakList< ObjectLifecycleListener< O > > listeners = new WeakList<>();
+
+	/**
+	 * Nesting depth of {@link #beginBatch()} calls, to bring maps that are
+	 * added during a batch into the same state.
+	 */
+	private int batchDepth = 0;
 
 	/**
 	 * Add a {@link PropertyMap}. The specified property map will be notified
@@ -64,53 +86,178 @@ public class PropertyMaps< O >
 	 */
 	public void addPropertyMap( final PropertyMap< O, ? > map )
 	{
-		maps.add( new WeakReference< PropertyMap< O, ? > >( map ) );
+		maps.add( map );
+		for ( int i = 0; i < batchDepth; ++i )
+			map.beginBatch();
 	}
 
 	/**
 	 * Remove a {@link PropertyMap}. The specified property map will no longer
-	 * be notified about addition and removal of objects.
+	 * be notified about addition and removal of objects. If the map is removed
+	 * during a batch, the batches that it was brought into are ended.
 	 *
 	 * @param map
 	 *            the map to remove.
 	 */
 	public void removePropertyMap( final PropertyMap< O, ? > map )
 	{
-		maps.removeIf( r -> map.equals( r.get() ) );
+		if ( maps.remove( map ) )
+			for ( int i = 0; i < batchDepth; ++i )
+				map.endBatch();
+	}
+
+	/**
+	 * Add an {@link ObjectLifecycleListener}. The specified listener will be
+	 * notified about addition and removal of objects, after the property maps.
+	 * It is only weakly referenced, so it must be kept reachable elsewhere.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 */
+	public void addLifecycleListener( final ObjectLifecycleListener< O > listener )
+	{
+		listeners.add( listener );
+	}
+
+	/**
+	 * Remove an {@link ObjectLifecycleListener}. The specified listener will
+	 * no longer be notified about addition and removal of objects.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 */
+	public void removeLifecycleListener( final ObjectLifecycleListener< O > listener )
+	{
+		listeners.remove( listener );
+	}
+
+	/**
+	 * Returns the {@link PropertyMaps} of the specified pool, or {@code null}
+	 * if the pool does not manage property maps.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param <O>
+	 *            the type of objects in the pool.
+	 * @return the {@link PropertyMaps} of {@code pool}, or {@code null}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static < O > PropertyMaps< O > of( final RefPool< O > pool )
+	{
+		return pool instanceof HasPropertyMaps
+				? ( ( HasPropertyMaps< O > ) pool ).getPropertyMaps()
+				: null;
+	}
+
+	/**
+	 * Adds an {@link ObjectLifecycleListener} to the {@link PropertyMaps} of
+	 * the specified pool. Does nothing if the pool does not manage property
+	 * maps.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param listener
+	 *            the listener to add.
+	 * @param <O>
+	 *            the type of objects in the pool.
+	 * @return an action that removes {@code listener} again.
+	 */
+	public static < O > Runnable addLifecycleListener( final RefPool< O > pool, final ObjectLifecycleListener< O > listener )
+	{
+		final PropertyMaps< O > propertyMaps = of( pool );
+		if ( propertyMaps == null )
+			return () -> {};
+		propertyMaps.addLifecycleListener( listener );
+		return () -> propertyMaps.removeLifecycleListener( listener );
 	}
 
 	/**
 	 * Forward to {@link PropertyMap#beforeDeleteObject(Object)} of all
-	 * registered property maps. Also cleans up maps that have been garbage
-	 * collected.
+	 * registered property maps and lifecycle listeners. Also cleans up maps
+	 * that have been garbage collected.
 	 *
 	 * @param key
 	 *            the object whose create deletion is to be notified.
 	 */
 	public void beforeDeleteObject( final O key )
 	{
-		forEachPropertyMap( m -> m.beforeDeleteObject( key ) );
+		boolean cleanUp = false;
+		for ( final WeakReference< PropertyMap< O, ? > > ref : maps.dispatch )
+		{
+			final PropertyMap< O, ? > map = ref.get();
+			if ( map != null )
+				map.beforeDeleteObject( key );
+			else
+				cleanUp = true;
+		}
+		if ( cleanUp )
+			maps.cleanUp();
+		if ( listeners.dispatch.length > 0 )
+			listeners.forEach( l -> l.beforeDeleteObject( key ) );
+	}
+
+	/**
+	 * Forward to {@link PropertyMap#beforeDeleteObjects(IntBackedRefCollection)}
+	 * of all registered property maps and lifecycle listeners. Also cleans up
+	 * maps that have been garbage collected.
+	 *
+	 * @param keys
+	 *            the objects whose deletion is to be notified.
+	 */
+	public void beforeDeleteObjects( final IntBackedRefCollection< O > keys )
+	{
+		maps.forEach( m -> m.beforeDeleteObjects( keys ) );
+		listeners.forEach( l -> l.beforeDeleteObjects( keys ) );
 	}
 
 	/**
 	 * Forward to {@link PropertyMap#objectCreated(Object)} of all registered
-	 * property maps. Also cleans up maps that have been garbage collected.
+	 * property maps and lifecycle listeners. Also cleans up maps that have
+	 * been garbage collected.
 	 *
 	 * @param key
 	 *            the object whose create addition is to be notified.
 	 */
 	public void objectCreated( final O key )
 	{
-		forEachPropertyMap( m -> m.objectCreated( key ) );
+		boolean cleanUp = false;
+		for ( final WeakReference< PropertyMap< O, ? > > ref : maps.dispatch )
+		{
+			final PropertyMap< O, ? > map = ref.get();
+			if ( map != null )
+				map.objectCreated( key );
+			else
+				cleanUp = true;
+		}
+		if ( cleanUp )
+			maps.cleanUp();
+		if ( listeners.dispatch.length > 0 )
+			listeners.forEach( l -> l.objectCreated( key ) );
+	}
+
+	/**
+	 * Forward to {@link PropertyMap#objectsCreated(IntBackedRefCollection)} of
+	 * all registered property maps and lifecycle listeners. Also cleans up
+	 * maps that have been garbage collected.
+	 *
+	 * @param keys
+	 *            the objects whose creation is to be notified.
+	 */
+	public void objectsCreated( final IntBackedRefCollection< O > keys )
+	{
+		maps.forEach( m -> m.objectsCreated( keys ) );
+		listeners.forEach( l -> l.objectsCreated( keys ) );
 	}
 
 	/**
 	 * Forward to {@link PropertyMap#beforeClearPool()} of all registered
-	 * property maps. Also cleans up maps that have been garbage collected.
+	 * property maps and lifecycle listeners. Also cleans up maps that have
+	 * been garbage collected.
 	 */
 	public void beforeClearPool()
 	{
-		forEachPropertyMap( PropertyMap::beforeClearPool );
+		maps.forEach( PropertyMap::beforeClearPool );
+		listeners.forEach( ObjectLifecycleListener::beforeClearPool );
 	}
 
 	/**
@@ -119,7 +266,7 @@ public class PropertyMaps< O >
 	 */
 	public void pauseListeners()
 	{
-		forEachPropertyMap( PropertyMap::pauseListeners );
+		maps.forEach( PropertyMap::pauseListeners );
 	}
 
 	/**
@@ -128,21 +275,90 @@ public class PropertyMaps< O >
 	 */
 	public void resumeListeners()
 	{
-		forEachPropertyMap( PropertyMap::resumeListeners );
+		maps.forEach( PropertyMap::resumeListeners );
 	}
 
-	private void forEachPropertyMap( final Consumer< PropertyMap< O, ? > > consumer )
+	/**
+	 * Forward to {@link PropertyMap#beginBatch()} of all registered property
+	 * maps. Also cleans up maps that have been garbage collected.
+	 */
+	public void beginBatch()
 	{
-		boolean cleanUp = false;
-		for ( final WeakReference< PropertyMap< O, ? > > ref : maps )
+		++batchDepth;
+		maps.forEach( PropertyMap::beginBatch );
+	}
+
+	/**
+	 * Forward to {@link PropertyMap#endBatch()} of all registered property
+	 * maps. Also cleans up maps that have been garbage collected.
+	 */
+	public void endBatch()
+	{
+		if ( batchDepth == 0 )
+			throw new IllegalStateException( "endBatch() without matching beginBatch()" );
+		--batchDepth;
+		maps.forEach( PropertyMap::endBatch );
+	}
+
+	/**
+	 * A list of {@link WeakReference}s, with a copy that events are
+	 * dispatched from. The copy is rebuilt when elements are added or
+	 * removed.
+	 */
+	private static final class WeakList< T >
+	{
+		private final List< WeakReference< T > > refs = new ArrayList<>();
+
+		volatile WeakReference< T >[] dispatch = newArray( 0 );
+
+		void add( final T t )
 		{
-			final PropertyMap< O, ? > map = ref.get();
-			if ( map != null )
-				consumer.accept( map );
-			else
-				cleanUp = true;
+			synchronized ( refs )
+			{
+				refs.add( new WeakReference<>( t ) );
+				dispatch = refs.toArray( newArray( refs.size() ) );
+			}
+		}
+
+		boolean remove( final T t )
+		{
+			synchronized ( refs )
+			{
+				if ( !refs.removeIf( r -> t.equals( r.get() ) ) )
+					return false;
+				dispatch = refs.toArray( newArray( refs.size() ) );
+				return true;
+			}
+		}
+
+		void forEach( final Consumer< T > consumer )
+		{
+			boolean cleanUp = false;
+			for ( final WeakReference< T > ref : dispatch )
+			{
+				final T t = ref.get();
+				if ( t != null )
+					consumer.accept( t );
+				else
+					cleanUp = true;
+			}
+			if ( cleanUp )
+				cleanUp();
+		}
+
+		void cleanUp()
+		{
+			synchronized ( refs )
+			{
+				if ( refs.removeIf( r -> null == r.get() ) )
+					dispatch = refs.toArray( newArray( refs.size() ) );
+			}
+		}
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		private static < T > WeakReference< T >[] newArray( final int size )
+		{
+			return new WeakReference[ size ];
 		}
-		if ( cleanUp )
-			maps.removeIf( r -> null == r.get() );
 	}
 }
@@ -0,0 +1,533 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.collection.ref.RefSetImp;
+
+import gnu.trove.TIntCollection;
+
+/**
+ * An incrementally maintained sorted index over the values of a numeric
+ * property. Supports range queries, top-k and quantiles in logarithmic time
+ * (plus the size of the result).
+ * <p>
+ * The index listens to {@link PropertyChangeListener}s of the source property
+ * and updates the entry of each changed object. Entries of deleted objects
+ * are removed (see {@link ObjectLifecycleListener}). To index an attribute,
+ * use the general constructor, e.g.
+ * {@code new SortedPropertyIndex<>( pool, pool, attribute, attribute::get )}.
+ * <p>
+ * Entries are stored in a treap whose nodes are identified by the pool index
+ * of the object, so updates do not allocate. Ties are ordered by pool index.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ */
+public class SortedPropertyIndex< O > implements ObjectLifecycleListener< O >
+{
+	private static final int NONE = -1;
+
+	private final RefPool< O > pool;
+
+	private final Runnable lifecycleListenerRemover;
+
+	private final Property< O > source;
+
+	private final ToDoubleFunction< O > value;
+
+	private final PropertyChangeListener< O > listener;
+
+	/*
+	 * Treap nodes, indexed by pool index. size[ i ] == 0 means that object i
+	 * is not in the index.
+	 */
+
+	private double[] keys;
+
+	private int[] left;
+
+	private int[] right;
+
+	private int[] size;
+
+	private int[] priority;
+
+	private int root;
+
+	private int seed;
+
+	/*
+	 * Results of split().
+	 */
+
+	private int splitLeft;
+
+	private int splitRight;
+
+	/**
+	 * Creates an index over a {@link DoublePropertyMap}.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param map
+	 *            the property map to index.
+	 */
+	public SortedPropertyIndex( final RefPool< O > pool, final DoublePropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getDouble );
+	}
+
+	/**
+	 * Creates an index over an {@link IntPropertyMap}.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param map
+	 *            the property map to index.
+	 */
+	public SortedPropertyIndex( final RefPool< O > pool, final IntPropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getInt );
+	}
+
+	/**
+	 * Creates an index over an arbitrary numeric property. Objects for which
+	 * {@code source} is not {@link Property#isSet(Object) set} are not
+	 * indexed.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param objects
+	 *            the objects that currently have a value.
+	 * @param source
+	 *            the property, to listen to changes.
+	 * @param value
+	 *            gets the value of an object.
+	 */
+	public SortedPropertyIndex(
+			final RefPool< O > pool,
+			final Iterable< O > objects,
+			final Property< O > source,
+			final ToDoubleFunction< O > value )
+	{
+		this.pool = pool;
+		this.source = source;
+		this.value = value;
+		keys = new double[ 16 ];
+		left = new int[ 16 ];
+		right = new int[ 16 ];
+		size = new int[ 16 ];
+		priority = new int[ 16 ];
+		root = NONE;
+		seed = 0x2545F491;
+		for ( final O o : objects )
+			update( o );
+		listener = this::update;
+		source.propertyChangeListeners().add( listener );
+		lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+	}
+
+	/**
+	 * Returns the number of objects with a value in {@code [min, max]}.
+	 *
+	 * @param min
+	 *            lower bound, inclusive.
+	 * @param max
+	 *            upper bound, inclusive.
+	 * @return the number of objects in the range.
+	 */
+	public int count( final double min, final double max )
+	{
+		return Math.max( 0, rank( max, true ) - rank( min, false ) );
+	}
+
+	/**
+	 * Returns the objects with a value in {@code [min, max]}, sorted by value.
+	 *
+	 * @param min
+	 *            lower bound, inclusive.
+	 * @param max
+	 *            upper bound, inclusive.
+	 * @return list of objects in the range.
+	 */
+	public RefList< O > range( final double min, final double max )
+	{
+		final RefArrayList< O > list = new RefArrayList<>( pool, count( min, max ) );
+		collect( root, min, max, list.getIndexCollection() );
+		return list;
+	}
+
+	/**
+	 * Returns the objects with a value in {@code [min, max]}.
+	 *
+	 * @param min
+	 *            lower bound, inclusive.
+	 * @param max
+	 *            upper bound, inclusive.
+	 * @return set of objects in the range.
+	 */
+	public RefSet< O > rangeSet( final double min, final double max )
+	{
+		final RefSetImp< O > set = new RefSetImp<>( pool, count( min, max ) );
+		collect( root, min, max, set.getIndexCollection() );
+		return set;
+	}
+
+	/**
+	 * Returns the {@code k} objects with the largest values, in descending
+	 * order of value.
+	 *
+	 * @param k
+	 *            the number of objects.
+	 * @return list of at most {@code k} objects.
+	 */
+	public RefList< O > topK( final int k )
+	{
+		final int n = size();
+		final int m = Math.min( k, n );
+		final RefArrayList< O > list = new RefArrayList<>( pool, m );
+		for ( int r = n - 1; r >= n - m; --r )
+			list.getIndexCollection().add( select( r ) );
+		return list;
+	}
+
+	/**
+	 * Returns the {@code k} objects with the smallest values, in ascending
+	 * order of value.
+	 *
+	 * @param k
+	 *            the number of objects.
+	 * @return list of at most {@code k} objects.
+	 */
+	public RefList< O > bottomK( final int k )
+	{
+		final int m = Math.min( k, size() );
+		final RefArrayList< O > list = new RefArrayList<>( pool, m );
+		for ( int r = 0; r < m; ++r )
+			list.getIndexCollection().add( select( r ) );
+		return list;
+	}
+
+	/**
+	 * Returns the {@code q}-quantile of the indexed values, that is, the value
+	 * at rank {@code floor(q * (size() - 1))}.
+	 *
+	 * @param q
+	 *            the quantile, in {@code [0, 1]}.
+	 * @return the quantile, or {@code NaN} if the index is empty.
+	 */
+	public double quantile( final double q )
+	{
+		if ( q < 0 || q > 1 )
+			throw new IllegalArgumentException( "Quantile must be in [0, 1], but was " + q );
+		final int n = size();
+		if ( n == 0 )
+			return Double.NaN;
+		return keys[ select( ( int ) Math.floor( q * ( n - 1 ) ) ) ];
+	}
+
+	/**
+	 * Returns the object at the specified rank, in ascending order of value.
+	 *
+	 * @param rank
+	 *            the rank, in {@code [0, size())}.
+	 * @param ref
+	 *            a reference object.
+	 * @return the object at {@code rank}.
+	 */
+	public O get( final int rank, final O ref )
+	{
+		if ( rank < 0 || rank >= size() )
+			throw new IndexOutOfBoundsException( "Rank " + rank + " out of range [0, " + size() + ")" );
+		return pool.getObject( select( rank ), ref );
+	}
+
+	/**
+	 * Returns the indexed value of {@code key}, or {@code null} if it is not
+	 * indexed.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return the indexed value, or {@code null}.
+	 */
+	public Double get( final O key )
+	{
+		final int id = pool.getId( key );
+		return contains( id ) ? keys[ id ] : null;
+	}
+
+	/**
+	 * Returns whether {@code key} is indexed.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return whether {@code key} is indexed.
+	 */
+	public boolean isSet( final O key )
+	{
+		return contains( pool.getId( key ) );
+	}
+
+	/**
+	 * Returns the number of indexed objects.
+	 *
+	 * @return the number of indexed objects.
+	 */
+	public int size()
+	{
+		return sizeOf( root );
+	}
+
+	/**
+	 * Stops listening to the source property and unregisters this index.
+	 */
+	public void release()
+	{
+		source.propertyChangeListeners().remove( listener );
+		Arrays.fill( size, 0 );
+		root = NONE;
+		lifecycleListenerRemover.run();
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		final int id = pool.getId( key );
+		if ( contains( id ) )
+			remove( id );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		Arrays.fill( size, 0 );
+		root = NONE;
+	}
+
+	/**
+	 * Updates the entry of {@code obj} after its property changed.
+	 */
+	private void update( final O obj )
+	{
+		final int id = pool.getId( obj );
+		if ( contains( id ) )
+			remove( id );
+		if ( source.isSet( obj ) )
+			insert( id, value.applyAsDouble( obj ) );
+	}
+
+	/*
+	 * TREAP
+	 */
+
+	private boolean contains( final int id )
+	{
+		return id < size.length && size[ id ] > 0;
+	}
+
+	private int sizeOf( final int t )
+	{
+		return t == NONE ? 0 : size[ t ];
+	}
+
+	private void updateSize( final int t )
+	{
+		size[ t ] = 1 + sizeOf( left[ t ] ) + sizeOf( right[ t ] );
+	}
+
+	/**
+	 * Whether node {@code t} is ordered before the key {@code (k, id)}.
+	 */
+	private boolean before( final int t, final double k, final int id )
+	{
+		final int c = Double.compare( keys[ t ], k );
+		return c < 0 || ( c == 0 && t < id );
+	}
+
+	private void insert( final int id, final double k )
+	{
+		ensureCapacity( id + 1 );
+		keys[ id ] = k;
+		left[ id ] = NONE;
+		right[ id ] = NONE;
+		size[ id ] = 1;
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		priority[ id ] = seed;
+		split( root, k, id );
+		root = merge( merge( splitLeft, id ), splitRight );
+	}
+
+	private void remove( final int id )
+	{
+		root = remove( root, id );
+		size[ id ] = 0;
+	}
+
+	private int remove( final int t, final int id )
+	{
+		if ( t == id )
+			return merge( left[ t ], right[ t ] );
+		if ( before( t, keys[ id ], id ) )
+			right[ t ] = remove( right[ t ], id );
+		else
+			left[ t ] = remove( left[ t ], id );
+		updateSize( t );
+		return t;
+	}
+
+	/**
+	 * Splits {@code t} into nodes before {@code (k, id)} ({@link #splitLeft})
+	 * and the rest ({@link #splitRight}).
+	 */
+	private void split( final int t, final double k, final int id )
+	{
+		if ( t == NONE )
+		{
+			splitLeft = NONE;
+			splitRight = NONE;
+		}
+		else if ( before( t, k, id ) )
+		{
+			split( right[ t ], k, id );
+			right[ t ] = splitLeft;
+			updateSize( t );
+			splitLeft = t;
+		}
+		else
+		{
+			split( left[ t ], k, id );
+			left[ t ] = splitRight;
+			updateSize( t );
+			splitRight = t;
+		}
+	}
+
+	private int merge( final int a, final int b )
+	{
+		if ( a == NONE )
+			return b;
+		if ( b == NONE )
+			return a;
+		if ( priority[ a ] > priority[ b ] )
+		{
+			right[ a ] = merge( right[ a ], b );
+			updateSize( a );
+			return a;
+		}
+		else
+		{
+			left[ b ] = merge( a, left[ b ] );
+			updateSize( b );
+			return b;
+		}
+	}
+
+	/**
+	 * Returns the number of entries with value {@code < k} (or {@code <= k} if
+	 * {@code inclusive}).
+	 */
+	private int rank( final double k, final boolean inclusive )
+	{
+		int r = 0;
+		int t = root;
+		while ( t != NONE )
+		{
+			final int c = Double.compare( keys[ t ], k );
+			if ( c < 0 || ( inclusive && c == 0 ) )
+			{
+				r += sizeOf( left[ t ] ) + 1;
+				t = right[ t ];
+			}
+			else
+				t = left[ t ];
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the node at rank {@code r}.
+	 */
+	private int select( final int r )
+	{
+		int rank = r;
+		int t = root;
+		while ( true )
+		{
+			final int l = sizeOf( left[ t ] );
+			if ( rank < l )
+				t = left[ t ];
+			else if ( rank == l )
+				return t;
+			else
+			{
+				rank -= l + 1;
+				t = right[ t ];
+			}
+		}
+	}
+
+	/**
+	 * Adds nodes of subtree {@code t} with value in {@code [min, max]} to
+	 * {@code out}, in ascending order.
+	 */
+	private void collect( final int t, final double min, final double max, final TIntCollection out )
+	{
+		if ( t == NONE )
+			return;
+		final double k = keys[ t ];
+		if ( Double.compare( k, min ) >= 0 )
+			collect( left[ t ], min, max, out );
+		if ( Double.compare( k, min ) >= 0 && Double.compare( k, max ) <= 0 )
+			out.add( t );
+		if ( Double.compare( k, max ) <= 0 )
+			collect( right[ t ], min, max, out );
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > keys.length )
+		{
+			final int n = Math.max( capacity, keys.length + ( keys.length >> 1 ) );
+			keys = Arrays.copyOf( keys, n );
+			left = Arrays.copyOf( left, n );
+			right = Arrays.copyOf( right, n );
+			size = Arrays.copyOf( size, n );
+			priority = Arrays.copyOf( priority, n );
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.snapshot;
+
+import static org.mastodon.properties.snapshot.VersionedDoubleProperty.SEGMENT_BITS;
+import static org.mastodon.properties.snapshot.VersionedDoubleProperty.SEGMENT_MASK;
+
+import org.mastodon.RefPool;
+import org.mastodon.properties.snapshot.VersionedDoubleProperty.Segment;
+
+/**
+ * An immutable view of the values of a {@link VersionedDoubleProperty} at
+ * one version. Can be read from any thread.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ */
+public class DoublePropertySnapshot< O >
+{
+	private final RefPool< O > pool;
+
+	private final Segment[] segments;
+
+	private final int size;
+
+	private final double noEntryValue;
+
+	private final long version;
+
+	DoublePropertySnapshot(
+			final RefPool< O > pool,
+			final Segment[] segments,
+			final int size,
+			final double noEntryValue,
+			final long version )
+	{
+		this.pool = pool;
+		this.segments = segments;
+		this.size = size;
+		this.noEntryValue = noEntryValue;
+		this.version = version;
+	}
+
+	public boolean isSet( final O key )
+	{
+		return isSet( pool.getId( key ) );
+	}
+
+	public double getDouble( final O key )
+	{
+		return getDouble( pool.getId( key ) );
+	}
+
+	/**
+	 * Whether the object with the specified pool index has a value.
+	 *
+	 * @param index
+	 *            the pool index.
+	 * @return {@code true} if the object has a value.
+	 */
+	public boolean isSet( final int index )
+	{
+		final int si = index >>> SEGMENT_BITS;
+		final Segment s = si < segments.length ? segments[ si ] : null;
+		return s != null && s.isSet( index & SEGMENT_MASK );
+	}
+
+	/**
+	 * Returns the value of the object with the specified pool index, or
+	 * {@link #getNoEntryValue()} if it has no value.
+	 *
+	 * @param index
+	 *            the pool index.
+	 * @return the value.
+	 */
+	public double getDouble( final int index )
+	{
+		final int si = index >>> SEGMENT_BITS;
+		final Segment s = si < segments.length ? segments[ si ] : null;
+		return s != null && s.isSet( index & SEGMENT_MASK ) ? s.values[ index & SEGMENT_MASK ] : noEntryValue;
+	}
+
+	/**
+	 * Returns an upper bound of the pool indices of objects that have a
+	 * value.
+	 *
+	 * @return the index bound.
+	 */
+	public int getIndexBound()
+	{
+		return segments.length << SEGMENT_BITS;
+	}
+
+	/**
+	 * Returns the number of objects that have a value.
+	 *
+	 * @return the number of values.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public double getNoEntryValue()
+	{
+		return noEntryValue;
+	}
+
+	/**
+	 * Returns the version of this snapshot. Versions of snapshots taken from
+	 * the same {@link VersionedDoubleProperty} increase monotonically.
+	 *
+	 * @return the version.
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+}
@@ -0,0 +1,329 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.snapshot;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjectLifecycleListener;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMaps;
+
+/**
+ * A versioned copy of a numeric property, from which immutable
+ * {@link DoublePropertySnapshot snapshots} can be taken cheaply and read by
+ * other threads while the property is modified.
+ * <p>
+ * Values are stored in fixed-size segments indexed by pool index. Taking a
+ * {@link #snapshot()} copies only the array of segment references and starts
+ * a new version. Segments shared with a snapshot are copied before they are
+ * written to (copy-on-write), so the cost of a write after a snapshot is at
+ * most one segment copy.
+ * <p>
+ * The versioned property listens to {@link PropertyChangeListener}s of the
+ * source property, and forgets the values of deleted objects. A bulk change
+ * (e.g. {@link DoublePropertyMap#setAll}, or the end of a
+ * {@link Property#beginBatch() batch}) is applied atomically, i.e., a
+ * snapshot contains either all or none of its changes.
+ * <p>
+ * The source property must be modified by a single thread at a time.
+ * {@link #snapshot()} can be called from any thread, and snapshots can be
+ * read concurrently without synchronization.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ */
+public class VersionedDoubleProperty< O > implements ObjectLifecycleListener< O >
+{
+	static final int SEGMENT_BITS = 10;
+
+	static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+	static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	static final class Segment
+	{
+		/**
+		 * The version that may write to this segment.
+		 */
+		final long owner;
+
+		final double[] values;
+
+		final long[] present;
+
+		Segment( final long owner )
+		{
+			this.owner = owner;
+			values = new double[ SEGMENT_SIZE ];
+			present = new long[ SEGMENT_SIZE >>> 6 ];
+		}
+
+		Segment( final long owner, final Segment segment )
+		{
+			this.owner = owner;
+			values = segment.values.clone();
+			present = segment.present.clone();
+		}
+
+		boolean isSet( final int i )
+		{
+			return ( present[ i >>> 6 ] & ( 1L << i ) ) != 0;
+		}
+	}
+
+	private final RefPool< O > pool;
+
+	private final Runnable lifecycleListenerRemover;
+
+	private final Property< O > source;
+
+	private final ToDoubleFunction< O > value;
+
+	private final double noEntryValue;
+
+	private final PropertyChangeListener< O > listener;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Current segments. Segments with {@code owner != version} are shared
+	 * with a snapshot. {@code null} segments are empty.
+	 */
+	private Segment[] segments;
+
+	private int size;
+
+	private long version;
+
+	/**
+	 * The snapshot of the current version, or {@code null} if there are
+	 * changes since the last snapshot.
+	 */
+	private DoublePropertySnapshot< O > last;
+
+	public VersionedDoubleProperty( final RefPool< O > pool, final DoublePropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getDouble, map.getNoEntryValue() );
+	}
+
+	public VersionedDoubleProperty( final RefPool< O > pool, final IntPropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getInt, map.getNoEntryValue() );
+	}
+
+	/**
+	 * Creates a versioned copy of an arbitrary numeric property. Objects for
+	 * which {@code source} is not {@link Property#isSet(Object) set} have no
+	 * value.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param objects
+	 *            the objects that currently have a value.
+	 * @param source
+	 *            the property, to listen to changes.
+	 * @param value
+	 *            gets the value of an object.
+	 * @param noEntryValue
+	 *            the value returned for objects that have no value.
+	 */
+	public VersionedDoubleProperty(
+			final RefPool< O > pool,
+			final Iterable< O > objects,
+			final Property< O > source,
+			final ToDoubleFunction< O > value,
+			final double noEntryValue )
+	{
+		this.pool = pool;
+		this.source = source;
+		this.value = value;
+		this.noEntryValue = noEntryValue;
+		segments = new Segment[ 1 ];
+		for ( final O o : objects )
+			update( o );
+		listener = new PropertyChangeListener< O >()
+		{
+			@Override
+			public void propertyChanged( final O obj )
+			{
+				synchronized ( lock )
+				{
+					update( obj );
+				}
+			}
+
+			@Override
+			public void propertiesChanged( final RefCollection< O > objects )
+			{
+				synchronized ( lock )
+				{
+					for ( final O o : objects )
+						update( o );
+				}
+			}
+		};
+		source.propertyChangeListeners().add( listener );
+		lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current version. If nothing changed
+	 * since the last snapshot, the same snapshot is returned. May be called
+	 * from any thread.
+	 *
+	 * @return the snapshot.
+	 */
+	public DoublePropertySnapshot< O > snapshot()
+	{
+		synchronized ( lock )
+		{
+			if ( last == null )
+			{
+				last = new DoublePropertySnapshot<>( pool, Arrays.copyOf( segments, segments.length ), size, noEntryValue, version );
+				++version;
+			}
+			return last;
+		}
+	}
+
+	public double getDouble( final O key )
+	{
+		final int id = pool.getId( key );
+		final int si = id >>> SEGMENT_BITS;
+		final Segment s = si < segments.length ? segments[ si ] : null;
+		return s != null && s.isSet( id & SEGMENT_MASK ) ? s.values[ id & SEGMENT_MASK ] : noEntryValue;
+	}
+
+	public Double get( final O key )
+	{
+		return isSet( key ) ? getDouble( key ) : null;
+	}
+
+	public boolean isSet( final O key )
+	{
+		final int id = pool.getId( key );
+		final int si = id >>> SEGMENT_BITS;
+		final Segment s = si < segments.length ? segments[ si ] : null;
+		return s != null && s.isSet( id & SEGMENT_MASK );
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Stops listening to the source property and unregisters this property.
+	 * Existing snapshots remain valid.
+	 */
+	public void release()
+	{
+		source.propertyChangeListeners().remove( listener );
+		beforeClearPool();
+		lifecycleListenerRemover.run();
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		synchronized ( lock )
+		{
+			remove( pool.getId( key ) );
+		}
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		synchronized ( lock )
+		{
+			segments = new Segment[ segments.length ];
+			size = 0;
+			last = null;
+		}
+	}
+
+	/**
+	 * Updates the value of {@code obj} after its property changed.
+	 */
+	private void update( final O obj )
+	{
+		final int id = pool.getId( obj );
+		if ( source.isSet( obj ) )
+			put( id, value.applyAsDouble( obj ) );
+		else
+			remove( id );
+	}
+
+	private void put( final int id, final double v )
+	{
+		final Segment s = writable( id >>> SEGMENT_BITS );
+		final int i = id & SEGMENT_MASK;
+		if ( !s.isSet( i ) )
+		{
+			s.present[ i >>> 6 ] |= 1L << i;
+			++size;
+		}
+		s.values[ i ] = v;
+	}
+
+	private void remove( final int id )
+	{
+		final int si = id >>> SEGMENT_BITS;
+		final int i = id & SEGMENT_MASK;
+		if ( si >= segments.length || segments[ si ] == null || !segments[ si ].isSet( i ) )
+			return;
+		final Segment s = writable( si );
+		s.present[ i >>> 6 ] &= ~( 1L << i );
+		--size;
+	}
+
+	/**
+	 * Returns segment {@code si}, after creating it, or copying it if it is
+	 * shared with a snapshot.
+	 */
+	private Segment writable( final int si )
+	{
+		last = null;
+		if ( si >= segments.length )
+			segments = Arrays.copyOf( segments, Math.max( si + 1, 2 * segments.length ) );
+		final Segment s = segments[ si ];
+		if ( s != null && s.owner == version )
+			return s;
+		final Segment w = s == null ? new Segment( version ) : new Segment( version, s );
+		segments[ si ] = w;
+		return w;
+	}
+}
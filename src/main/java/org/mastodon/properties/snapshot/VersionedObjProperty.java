@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.snapshot;
+
+import static org.mastodon.properties.snapshot.VersionedDoubleProperty.SEGMENT_BITS;
+import static org.mastodon.properties.snapshot.VersionedDoubleProperty.SEGMENT_MASK;
+import static org.mastodon.properties.snapshot.VersionedDoubleProperty.SEGMENT_SIZE;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.properties.ObjPropertyMap;
+import org.mastodon.properties.ObjectLifecycleListener;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMaps;
+
+/**
+ * A versioned copy of an object property, from which immutable
+ * {@link ObjPropertySnapshot snapshots} can be taken cheaply and read by other
+ * threads while the property is modified. See
+ * {@link VersionedDoubleProperty} for details.
+ * <p>
+ * Snapshots share the values with this property, so values must not be
+ * modified after they are set. For {@link LabelSets}, use
+ * {@link #forLabelSets(LabelSets)}, which stores the interned, unmodifiable
+ * label sets.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ * @param <T>
+ *            the type of the property values.
+ */
+public class VersionedObjProperty< O, T > implements ObjectLifecycleListener< O >
+{
+	static final class Segment
+	{
+		/**
+		 * The version that may write to this segment.
+		 */
+		final long owner;
+
+		/**
+		 * Values, {@code null} if not set.
+		 */
+		final Object[] values;
+
+		Segment( final long owner )
+		{
+			this.owner = owner;
+			values = new Object[ SEGMENT_SIZE ];
+		}
+
+		Segment( final long owner, final Segment segment )
+		{
+			this.owner = owner;
+			values = segment.values.clone();
+		}
+	}
+
+	private final RefPool< O > pool;
+
+	private final Runnable lifecycleListenerRemover;
+
+	private final Property< O > source;
+
+	private final Function< O, T > value;
+
+	private final PropertyChangeListener< O > listener;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Current segments. Segments with {@code owner != version} are shared
+	 * with a snapshot. {@code null} segments are empty.
+	 */
+	private Segment[] segments;
+
+	private int size;
+
+	private long version;
+
+	/**
+	 * The snapshot of the current version, or {@code null} if there are
+	 * changes since the last snapshot.
+	 */
+	private ObjPropertySnapshot< O, T > last;
+
+	public VersionedObjProperty( final RefPool< O > pool, final ObjPropertyMap< O, T > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::get );
+	}
+
+	/**
+	 * Creates a versioned copy of the label sets of objects.
+	 *
+	 * @param labelSets
+	 *            the label sets.
+	 * @return the versioned property.
+	 */
+	public static < O, T > VersionedObjProperty< O, Set< T > > forLabelSets( final LabelSets< O, T > labelSets )
+	{
+		return new VersionedObjProperty<>(
+				labelSets.getPool(),
+				labelSets.getBackingProperty().getMap().keySet(),
+				labelSets,
+				o -> labelSets.getLabelMapping().labelsAtIndex( labelSets.getBackingProperty().getInt( o ) ) );
+	}
+
+	/**
+	 * Creates a versioned copy of an arbitrary property. Objects for which
+	 * {@code source} is not {@link Property#isSet(Object) set}, or for which
+	 * {@code value} is {@code null}, have no value.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param objects
+	 *            the objects that currently have a value.
+	 * @param source
+	 *            the property, to listen to changes.
+	 * @param value
+	 *            gets the (immutable) value of an object.
+	 */
+	public VersionedObjProperty(
+			final RefPool< O > pool,
+			final Iterable< O > objects,
+			final Property< O > source,
+			final Function< O, T > value )
+	{
+		this.pool = pool;
+		this.source = source;
+		this.value = value;
+		segments = new Segment[ 1 ];
+		for ( final O o : objects )
+			update( o );
+		listener = new PropertyChangeListener< O >()
+		{
+			@Override
+			public void propertyChanged( final O obj )
+			{
+				synchronized ( lock )
+				{
+					update( obj );
+				}
+			}
+
+			@Override
+			public void propertiesChanged( final RefCollection< O > objects )
+			{
+				synchronized ( lock )
+				{
+					for ( final O o : objects )
+						update( o );
+				}
+			}
+		};
+		source.propertyChangeListeners().add( listener );
+		lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current version. If nothing changed
+	 * since the last snapshot, the same snapshot is returned. May be called
+	 * from any thread.
+	 *
+	 * @return the snapshot.
+	 */
+	public ObjPropertySnapshot< O, T > snapshot()
+	{
+		synchronized ( lock )
+		{
+			if ( last == null )
+			{
+				last = new ObjPropertySnapshot<>( pool, Arrays.copyOf( segments, segments.length ), size, version );
+				++version;
+			}
+			return last;
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public T get( final O key )
+	{
+		final int id = pool.getId( key );
+		final int si = id >>> SEGMENT_BITS;
+		final Segment s = si < segments.length ? segments[ si ] : null;
+		return s == null ? null : ( T ) s.values[ id & SEGMENT_MASK ];
+	}
+
+	public boolean isSet( final O key )
+	{
+		return get( key ) != null;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Stops listening to the source property and unregisters this property.
+	 * Existing snapshots remain valid.
+	 */
+	public void release()
+	{
+		source.propertyChangeListeners().remove( listener );
+		beforeClearPool();
+		lifecycleListenerRemover.run();
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		synchronized ( lock )
+		{
+			put( pool.getId( key ), null );
+		}
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		synchronized ( lock )
+		{
+			segments = new Segment[ segments.length ];
+			size = 0;
+			last = null;
+		}
+	}
+
+	/**
+	 * Updates the value of {@code obj} after its property changed.
+	 */
+	private void update( final O obj )
+	{
+		put( pool.getId( obj ), source.isSet( obj ) ? value.apply( obj ) : null );
+	}
+
+	private void put( final int id, final T v )
+	{
+		final int si = id >>> SEGMENT_BITS;
+		final int i = id & SEGMENT_MASK;
+		final Object old = si < segments.length && segments[ si ] != null ? segments[ si ].values[ i ] : null;
+		if ( old == v )
+			return;
+		writable( si ).values[ i ] = v;
+		if ( old == null )
+			++size;
+		else if ( v == null )
+			--size;
+	}
+
+	/**
+	 * Returns segment {@code si}, after creating it, or copying it if it is
+	 * shared with a snapshot.
+	 */
+	private Segment writable( final int si )
+	{
+		last = null;
+		if ( si >= segments.length )
+			segments = Arrays.copyOf( segments, Math.max( si + 1, 2 * segments.length ) );
+		final Segment s = segments[ si ];
+		if ( s != null && s.owner == version )
+			return s;
+		final Segment w = s == null ? new Segment( version ) : new Segment( version, s );
+		segments[ si ] = w;
+		return w;
+	}
+}
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.stats;
+
+import java.util.Arrays;
+
+/**
+ * A histogram with equally sized bins over {@code [min, max)}. Values outside
+ * the range are counted as underflow or overflow. Histograms with the same
+ * bins can be combined with {@link #merge(Histogram)}, and values can be
+ * {@link #remove(double) removed} for incremental maintenance.
+ */
+public class Histogram
+{
+	private final double min;
+
+	private final double max;
+
+	private final double scale;
+
+	private final long[] counts;
+
+	private long underflow;
+
+	private long overflow;
+
+	public Histogram( final double min, final double max, final int numBins )
+	{
+		if ( !( max > min ) || numBins < 1 )
+			throw new IllegalArgumentException( "Invalid histogram range [" + min + ", " + max + ") with " + numBins + " bins." );
+		this.min = min;
+		this.max = max;
+		scale = numBins / ( max - min );
+		counts = new long[ numBins ];
+	}
+
+	public Histogram( final Histogram histogram )
+	{
+		this( histogram.min, histogram.max, histogram.counts.length );
+	}
+
+	/**
+	 * Returns the bin of {@code value}, {@code -1} for underflow, or
+	 * {@link #getNumBins()} for overflow. {@code NaN} values count as
+	 * overflow.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return the bin index.
+	 */
+	public int binOf( final double value )
+	{
+		if ( value < min )
+			return -1;
+		if ( !( value < max ) )
+			return counts.length;
+		return Math.min( ( int ) ( ( value - min ) * scale ), counts.length - 1 );
+	}
+
+	public void add( final double value )
+	{
+		increment( binOf( value ), 1 );
+	}
+
+	public void remove( final double value )
+	{
+		increment( binOf( value ), -1 );
+	}
+
+	private void increment( final int bin, final int amount )
+	{
+		if ( bin < 0 )
+			underflow += amount;
+		else if ( bin >= counts.length )
+			overflow += amount;
+		else
+			counts[ bin ] += amount;
+	}
+
+	/**
+	 * Adds the counts of {@code other}, which must have the same bins.
+	 *
+	 * @param other
+	 *            the histogram to merge.
+	 * @return this histogram.
+	 */
+	public Histogram merge( final Histogram other )
+	{
+		if ( other.min != min || other.max != max || other.counts.length != counts.length )
+			throw new IllegalArgumentException( "Histograms have different bins." );
+		for ( int i = 0; i < counts.length; i++ )
+			counts[ i ] += other.counts[ i ];
+		underflow += other.underflow;
+		overflow += other.overflow;
+		return this;
+	}
+
+	public void clear()
+	{
+		Arrays.fill( counts, 0 );
+		underflow = 0;
+		overflow = 0;
+	}
+
+	public int getNumBins()
+	{
+		return counts.length;
+	}
+
+	public long getCount( final int bin )
+	{
+		return counts[ bin ];
+	}
+
+	/**
+	 * Returns a copy of the bin counts.
+	 *
+	 * @return the bin counts.
+	 */
+	public long[] getCounts()
+	{
+		return counts.clone();
+	}
+
+	public long getUnderflow()
+	{
+		return underflow;
+	}
+
+	public long getOverflow()
+	{
+		return overflow;
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Returns the lower bound of a bin.
+	 *
+	 * @param bin
+	 *            the bin index.
+	 * @return the lower bound of the bin.
+	 */
+	public double getBinMin( final int bin )
+	{
+		return min + bin / scale;
+	}
+}
@@ -0,0 +1,311 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.RefPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjectLifecycleListener;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMaps;
+
+/**
+ * Incrementally maintained statistics of a numeric property. The
+ * {@link #getSummary() summary} and attached {@link #addHistogram(double,
+ * double, int) histograms} are updated for each changed object, so looking
+ * them up does not require a pass over all values.
+ * <p>
+ * Like {@link org.mastodon.properties.SortedPropertyIndex}, this listens to
+ * {@link PropertyChangeListener}s of the source property and keeps the last
+ * seen value of each object, which is removed from the statistics before the
+ * new value is added. Deleted objects are also removed from the statistics.
+ * <p>
+ * Removing the current minimum or maximum invalidates it, and the extrema are
+ * recomputed on the next {@link #getSummary()}.
+ *
+ * @param <O>
+ *            the type of objects the property is defined for.
+ */
+public class PropertyStatistics< O > implements ObjectLifecycleListener< O >
+{
+	private final RefPool< O > pool;
+
+	private final Runnable lifecycleListenerRemover;
+
+	private final Property< O > source;
+
+	private final ToDoubleFunction< O > value;
+
+	private final PropertyChangeListener< O > listener;
+
+	private final Summary summary;
+
+	private final List< Histogram > histograms;
+
+	/**
+	 * Last seen value of each object, indexed by pool index.
+	 */
+	private double[] values;
+
+	/**
+	 * Bits of objects that have a value.
+	 */
+	private long[] present;
+
+	private boolean extremaValid;
+
+	public PropertyStatistics( final RefPool< O > pool, final DoublePropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getDouble );
+	}
+
+	public PropertyStatistics( final RefPool< O > pool, final IntPropertyMap< O > map )
+	{
+		this( pool, map.getMap().keySet(), map, map::getInt );
+	}
+
+	/**
+	 * Creates statistics of an arbitrary numeric property. Objects for which
+	 * {@code source} is not {@link Property#isSet(Object) set} are not
+	 * included.
+	 *
+	 * @param pool
+	 *            the pool of objects the property is defined for.
+	 * @param objects
+	 *            the objects that currently have a value.
+	 * @param source
+	 *            the property, to listen to changes.
+	 * @param value
+	 *            gets the value of an object.
+	 */
+	public PropertyStatistics(
+			final RefPool< O > pool,
+			final Iterable< O > objects,
+			final Property< O > source,
+			final ToDoubleFunction< O > value )
+	{
+		this.pool = pool;
+		this.source = source;
+		this.value = value;
+		summary = new Summary();
+		histograms = new ArrayList<>();
+		values = new double[ 64 ];
+		present = new long[ 1 ];
+		extremaValid = true;
+		for ( final O o : objects )
+			update( o );
+		listener = this::update;
+		source.propertyChangeListeners().add( listener );
+		lifecycleListenerRemover = PropertyMaps.addLifecycleListener( pool, this );
+	}
+
+	/**
+	 * Returns a copy of the current summary.
+	 *
+	 * @return the summary.
+	 */
+	public Summary getSummary()
+	{
+		if ( !extremaValid )
+			recomputeExtrema();
+		return new Summary( summary );
+	}
+
+	/**
+	 * Creates a histogram of the current values, which is maintained along
+	 * with the summary until it is {@link #removeHistogram(Histogram)
+	 * removed}.
+	 *
+	 * @param min
+	 *            lower bound of the first bin.
+	 * @param max
+	 *            upper bound of the last bin.
+	 * @param numBins
+	 *            the number of bins.
+	 * @return the live histogram.
+	 */
+	public Histogram addHistogram( final double min, final double max, final int numBins )
+	{
+		final Histogram histogram = new Histogram( min, max, numBins );
+		for ( int w = 0; w < present.length; ++w )
+		{
+			long bits = present[ w ];
+			while ( bits != 0 )
+			{
+				histogram.add( values[ ( w << 6 ) + Long.numberOfTrailingZeros( bits ) ] );
+				bits &= bits - 1;
+			}
+		}
+		histograms.add( histogram );
+		return histogram;
+	}
+
+	public boolean removeHistogram( final Histogram histogram )
+	{
+		return histograms.remove( histogram );
+	}
+
+	/**
+	 * Returns the value of {@code key} included in the statistics, or
+	 * {@code null} if it is not included.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return the included value, or {@code null}.
+	 */
+	public Double get( final O key )
+	{
+		final int id = pool.getId( key );
+		return contains( id ) ? values[ id ] : null;
+	}
+
+	/**
+	 * Returns whether the value of {@code key} is included in the statistics.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return whether {@code key} is included.
+	 */
+	public boolean isSet( final O key )
+	{
+		return contains( pool.getId( key ) );
+	}
+
+	/**
+	 * Returns the number of objects included in the statistics.
+	 *
+	 * @return the number of included objects.
+	 */
+	public int size()
+	{
+		return ( int ) summary.getCount();
+	}
+
+	/**
+	 * Stops listening to the source property and unregisters these statistics.
+	 */
+	public void release()
+	{
+		source.propertyChangeListeners().remove( listener );
+		reset();
+		lifecycleListenerRemover.run();
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		final int id = pool.getId( key );
+		if ( contains( id ) )
+			remove( id );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		reset();
+	}
+
+	/**
+	 * Updates the value of {@code obj} after its property changed.
+	 */
+	private void update( final O obj )
+	{
+		final int id = pool.getId( obj );
+		if ( contains( id ) )
+			remove( id );
+		if ( source.isSet( obj ) )
+			add( id, value.applyAsDouble( obj ) );
+	}
+
+	private boolean contains( final int id )
+	{
+		return ( id >>> 6 ) < present.length && ( present[ id >>> 6 ] & ( 1L << id ) ) != 0;
+	}
+
+	private void add( final int id, final double v )
+	{
+		if ( id >= values.length )
+		{
+			values = Arrays.copyOf( values, Math.max( id + 1, values.length * 2 ) );
+			present = Arrays.copyOf( present, ( values.length + 63 ) >>> 6 );
+		}
+		values[ id ] = v;
+		present[ id >>> 6 ] |= 1L << id;
+		summary.add( v );
+		for ( final Histogram histogram : histograms )
+			histogram.add( v );
+	}
+
+	private void remove( final int id )
+	{
+		final double v = values[ id ];
+		present[ id >>> 6 ] &= ~( 1L << id );
+		summary.remove( v );
+		for ( final Histogram histogram : histograms )
+			histogram.remove( v );
+		if ( v <= summary.getMin() || v >= summary.getMax() )
+			extremaValid = false;
+	}
+
+	private void recomputeExtrema()
+	{
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for ( int w = 0; w < present.length; ++w )
+		{
+			long bits = present[ w ];
+			while ( bits != 0 )
+			{
+				final double v = values[ ( w << 6 ) + Long.numberOfTrailingZeros( bits ) ];
+				if ( v < min )
+					min = v;
+				if ( v > max )
+					max = v;
+				bits &= bits - 1;
+			}
+		}
+		summary.setMinMax( min, max );
+		extremaValid = true;
+	}
+
+	private void reset()
+	{
+		Arrays.fill( present, 0 );
+		summary.clear();
+		for ( final Histogram histogram : histograms )
+			histogram.clear();
+		extremaValid = true;
+	}
+}
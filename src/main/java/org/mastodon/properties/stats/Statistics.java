@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.stats;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.mastodon.collection.RefDoubleMap;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.ref.RefDoubleArrayMap;
+import org.mastodon.collection.ref.RefIntArrayMap;
+import org.mastodon.pool.Pool;
+import org.mastodon.pool.PoolObject;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * Static methods to compute {@link Summary summaries} and {@link Histogram
+ * histograms} of numeric properties.
+ * <p>
+ * Values are read column-wise: dense property maps are scanned directly in
+ * their backing array, hash-based maps in a copy of their values, and pool
+ * attributes by pool index. The index range is split into chunks that are
+ * processed in parallel, and the partial results are merged.
+ * <p>
+ * For statistics that are maintained as the property changes, see
+ * {@link PropertyStatistics}.
+ */
+public class Statistics
+{
+	/**
+	 * Number of values processed per parallel task.
+	 */
+	static final int CHUNK_SIZE = 1 << 14;
+
+	public static Summary summarize( final DoublePropertyMap< ? > map )
+	{
+		final RefDoubleMap< ? > m = map.getMap();
+		if ( m instanceof RefDoubleArrayMap )
+		{
+			final RefDoubleArrayMap< ? > am = ( RefDoubleArrayMap< ? > ) m;
+			final double[] array = am.getArray();
+			return summarize( array.length, chunk -> ( from, to ) -> {
+				for ( int i = from; i < to; ++i )
+					if ( am.containsIndex( i ) )
+						chunk.add( array[ i ] );
+			} );
+		}
+		final double[] values = m.values();
+		return summarize( values.length, chunk -> ( from, to ) -> {
+			for ( int i = from; i < to; ++i )
+				chunk.add( values[ i ] );
+		} );
+	}
+
+	public static Summary summarize( final IntPropertyMap< ? > map )
+	{
+		final RefIntMap< ? > m = map.getMap();
+		if ( m instanceof RefIntArrayMap )
+		{
+			final RefIntArrayMap< ? > am = ( RefIntArrayMap< ? > ) m;
+			final int[] array = am.getArray();
+			return summarize( array.length, chunk -> ( from, to ) -> {
+				for ( int i = from; i < to; ++i )
+					if ( am.containsIndex( i ) )
+						chunk.add( array[ i ] );
+			} );
+		}
+		final int[] values = m.values();
+		return summarize( values.length, chunk -> ( from, to ) -> {
+			for ( int i = from; i < to; ++i )
+				chunk.add( values[ i ] );
+		} );
+	}
+
+	/**
+	 * Summarizes a numeric attribute of all objects in a pool.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param value
+	 *            gets the value of an object, e.g. a getter of the pool
+	 *            object.
+	 * @return the summary.
+	 */
+	public static < O extends PoolObject< O, ?, ? > > Summary summarize( final Pool< O, ? > pool, final ToDoubleFunction< O > value )
+	{
+		return summarize( pool.getIndexBound(), chunk -> ( from, to ) -> {
+			final O ref = pool.createRef( false );
+			for ( int i = from; i < to; ++i )
+				if ( pool.getObjectIfExists( i, ref ) != null )
+					chunk.add( value.applyAsDouble( ref ) );
+		} );
+	}
+
+	public static Histogram histogram( final DoublePropertyMap< ? > map, final double min, final double max, final int numBins )
+	{
+		final RefDoubleMap< ? > m = map.getMap();
+		if ( m instanceof RefDoubleArrayMap )
+		{
+			final RefDoubleArrayMap< ? > am = ( RefDoubleArrayMap< ? > ) m;
+			final double[] array = am.getArray();
+			return histogram( array.length, min, max, numBins, chunk -> ( from, to ) -> {
+				for ( int i = from; i < to; ++i )
+					if ( am.containsIndex( i ) )
+						chunk.add( array[ i ] );
+			} );
+		}
+		final double[] values = m.values();
+		return histogram( values.length, min, max, numBins, chunk -> ( from, to ) -> {
+			for ( int i = from; i < to; ++i )
+				chunk.add( values[ i ] );
+		} );
+	}
+
+	public static Histogram histogram( final IntPropertyMap< ? > map, final double min, final double max, final int numBins )
+	{
+		final RefIntMap< ? > m = map.getMap();
+		if ( m instanceof RefIntArrayMap )
+		{
+			final RefIntArrayMap< ? > am = ( RefIntArrayMap< ? > ) m;
+			final int[] array = am.getArray();
+			return histogram( array.length, min, max, numBins, chunk -> ( from, to ) -> {
+				for ( int i = from; i < to; ++i )
+					if ( am.containsIndex( i ) )
+						chunk.add( array[ i ] );
+			} );
+		}
+		final int[] values = m.values();
+		return histogram( values.length, min, max, numBins, chunk -> ( from, to ) -> {
+			for ( int i = from; i < to; ++i )
+				chunk.add( values[ i ] );
+		} );
+	}
+
+	/**
+	 * Computes the histogram of a numeric attribute of all objects in a pool.
+	 *
+	 * @param pool
+	 *            the pool.
+	 * @param value
+	 *            gets the value of an object, e.g. a getter of the pool
+	 *            object.
+	 * @param min
+	 *            lower bound of the first bin.
+	 * @param max
+	 *            upper bound of the last bin.
+	 * @param numBins
+	 *            the number of bins.
+	 * @return the histogram.
+	 */
+	public static < O extends PoolObject< O, ?, ? > > Histogram histogram( final Pool< O, ? > pool, final ToDoubleFunction< O > value, final double min, final double max, final int numBins )
+	{
+		return histogram( pool.getIndexBound(), min, max, numBins, chunk -> ( from, to ) -> {
+			final O ref = pool.createRef( false );
+			for ( int i = from; i < to; ++i )
+				if ( pool.getObjectIfExists( i, ref ) != null )
+					chunk.add( value.applyAsDouble( ref ) );
+		} );
+	}
+
+	/**
+	 * Adds the values in the index range {@code [from, to)} to a partial
+	 * result.
+	 */
+	private interface RangeTask
+	{
+		void run( int from, int to );
+	}
+
+	private static Summary summarize( final int length, final Function< Summary, RangeTask > task )
+	{
+		final int numChunks = ( length + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+		return IntStream.range( 0, numChunks ).parallel()
+				.mapToObj( c -> {
+					final Summary chunk = new Summary();
+					task.apply( chunk ).run( c * CHUNK_SIZE, Math.min( length, ( c + 1 ) * CHUNK_SIZE ) );
+					return chunk;
+				} )
+				.reduce( Summary::merge )
+				.orElseGet( Summary::new );
+	}
+
+	private static Histogram histogram( final int length, final double min, final double max, final int numBins, final Function< Histogram, RangeTask > task )
+	{
+		final int numChunks = ( length + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+		return IntStream.range( 0, numChunks ).parallel()
+				.mapToObj( c -> {
+					final Histogram chunk = new Histogram( min, max, numBins );
+					task.apply( chunk ).run( c * CHUNK_SIZE, Math.min( length, ( c + 1 ) * CHUNK_SIZE ) );
+					return chunk;
+				} )
+				.reduce( Histogram::merge )
+				.orElseGet( () -> new Histogram( min, max, numBins ) );
+	}
+
+	private Statistics()
+	{}
+}
@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.stats;
+
+/**
+ * Summary statistics (count, min, max, mean, variance) of a set of values.
+ * <p>
+ * Mean and variance are accumulated with Welford's algorithm, and partial
+ * summaries (e.g. of index ranges computed in parallel) can be combined with
+ * {@link #merge(Summary)}. Values can also be {@link #remove(double) removed},
+ * which updates count, mean and variance, but not min and max.
+ */
+public class Summary
+{
+	private long count;
+
+	private double mean;
+
+	private double m2;
+
+	private double min;
+
+	private double max;
+
+	public Summary()
+	{
+		clear();
+	}
+
+	public Summary( final Summary summary )
+	{
+		set( summary );
+	}
+
+	public void clear()
+	{
+		count = 0;
+		mean = 0;
+		m2 = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	public void set( final Summary summary )
+	{
+		count = summary.count;
+		mean = summary.mean;
+		m2 = summary.m2;
+		min = summary.min;
+		max = summary.max;
+	}
+
+	public void add( final double value )
+	{
+		++count;
+		final double d = value - mean;
+		mean += d / count;
+		m2 += d * ( value - mean );
+		if ( value < min )
+			min = value;
+		if ( value > max )
+			max = value;
+	}
+
+	/**
+	 * Removes a value that was previously added. Min and max are not updated.
+	 *
+	 * @param value
+	 *            the value to remove.
+	 */
+	public void remove( final double value )
+	{
+		if ( count <= 1 )
+		{
+			count = 0;
+			mean = 0;
+			m2 = 0;
+			return;
+		}
+		--count;
+		final double d = value - mean;
+		mean -= d / count;
+		m2 -= d * ( value - mean );
+		if ( m2 < 0 )
+			m2 = 0;
+	}
+
+	/**
+	 * Adds all values summarized in {@code other} to this summary.
+	 *
+	 * @param other
+	 *            the summary to merge.
+	 * @return this summary.
+	 */
+	public Summary merge( final Summary other )
+	{
+		if ( other.count == 0 )
+			return this;
+		if ( count == 0 )
+		{
+			set( other );
+			return this;
+		}
+		final long n = count + other.count;
+		final double d = other.mean - mean;
+		mean += d * other.count / n;
+		m2 += other.m2 + d * d * count * other.count / n;
+		count = n;
+		min = Math.min( min, other.min );
+		max = Math.max( max, other.max );
+		return this;
+	}
+
+	void setMinMax( final double min, final double max )
+	{
+		this.min = min;
+		this.max = max;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value, or {@code +Infinity} if there are no values.
+	 *
+	 * @return the smallest value.
+	 */
+	public double getMin()
+	{
+		return min;
+	}
+
+	/**
+	 * Returns the largest value, or {@code -Infinity} if there are no values.
+	 *
+	 * @return the largest value.
+	 */
+	public double getMax()
+	{
+		return max;
+	}
+
+	public double getSum()
+	{
+		return mean * count;
+	}
+
+	/**
+	 * Returns the mean, or {@code NaN} if there are no values.
+	 *
+	 * @return the mean.
+	 */
+	public double getMean()
+	{
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * Returns the (population) variance, or {@code NaN} if there are no
+	 * values.
+	 *
+	 * @return the variance.
+	 */
+	public double getVariance()
+	{
+		return count == 0 ? Double.NaN : m2 / count;
+	}
+
+	public double getStandardDeviation()
+	{
+		return Math.sqrt( getVariance() );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "Summary{count=%d, min=%g, max=%g, mean=%g, stddev=%g}",
+				count, min, max, getMean(), getStandardDeviation() );
+	}
+}
@@ -141,6 +141,26 @@ public class DoublePropertyUndoRedoStack< O > implements PropertyUndoRedoStack<
 		stack.setQuick( top, value );
 	}
 
+	@Override
+	public long memoryUsage()
+	{
+		return 8L * stack.size();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	public void discardOldest( final int n )
+	{
+		stack.remove( 0, n );
+		top -= n;
+		end -= n;
+	}
+
 	/**
 	 * Truncate entries starting from {@code end}.
 	 */
@@ -140,6 +140,26 @@ public class IntPropertyUndoRedoStack< O > implements PropertyUndoRedoStack< O >
 		stack.setQuick( top, value );
 	}
 
+	@Override
+	public long memoryUsage()
+	{
+		return 4L * stack.size();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	public void discardOldest( final int n )
+	{
+		stack.remove( 0, n );
+		top -= n;
+		end -= n;
+	}
+
 	/**
 	 * Truncate entries starting from {@code end}.
 	 */
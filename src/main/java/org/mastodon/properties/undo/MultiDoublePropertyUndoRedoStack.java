@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.undo;
+
+import java.util.BitSet;
+
+import org.mastodon.properties.MultiDoublePropertyMap;
+
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * A {@link PropertyUndoRedoStack} to record {@link MultiDoublePropertyMap}
+ * changes. Each record occupies {@code numColumns} consecutive elements of a
+ * {@code double} list, and a bit records whether the property was set.
+ *
+ * @param <O>
+ *            the type of object this property is defined for.
+ */
+public class MultiDoublePropertyUndoRedoStack< O > implements PropertyUndoRedoStack< O >
+{
+	private final MultiDoublePropertyMap< O > property;
+
+	private final int numColumns;
+
+	private final TDoubleArrayList stack;
+
+	private BitSet isSet;
+
+	private final double[] stackRow;
+
+	private final double[] row;
+
+	private int top;
+
+	private int end;
+
+	public MultiDoublePropertyUndoRedoStack( final MultiDoublePropertyMap< O > property )
+	{
+		this.property = property;
+		numColumns = property.numColumns();
+		stack = new TDoubleArrayList();
+		isSet = new BitSet();
+		stackRow = new double[ numColumns ];
+		row = new double[ numColumns ];
+		top = 0;
+		end = 0;
+	}
+
+	/**
+	 * Put the property values of {@code obj} at the top of the stack,
+	 * expanding the stack if necessary. Increment top.
+	 *
+	 * @param obj
+	 *            holder of the property values to push
+	 */
+	@Override
+	public void record( final O obj )
+	{
+		isSet.set( top, property.get( obj, row ) );
+		final int offset = top * numColumns;
+		if ( offset < stack.size() )
+			stack.set( offset, row );
+		else
+			stack.add( row );
+		end = ++top;
+	}
+
+	@Override
+	public void undo( final O obj )
+	{
+		if ( top > 0 )
+		{
+			--top;
+			swap( obj );
+		}
+	}
+
+	@Override
+	public void redo( final O obj )
+	{
+		if ( top < end )
+		{
+			swap( obj );
+			++top;
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		stack.clear();
+		isSet.clear();
+		top = 0;
+		end = 0;
+	}
+
+	/**
+	 * Replace the record at {@code top} with the property values of
+	 * {@code obj}.
+	 *
+	 * @param obj
+	 */
+	private void swap( final O obj )
+	{
+		final int offset = top * numColumns;
+		stack.toArray( stackRow, offset, numColumns );
+		final boolean wasSet = isSet.get( top )
+				? property.set( obj, stackRow, row )
+				: property.remove( obj, row );
+		stack.set( offset, row );
+		isSet.set( top, wasSet );
+	}
+
+	@Override
+	public long memoryUsage()
+	{
+		return 8L * stack.size() + isSet.size() / 8;
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	public void discardOldest( final int n )
+	{
+		stack.remove( 0, n * numColumns );
+		isSet = isSet.get( n, Math.max( n, isSet.length() ) );
+		top -= n;
+		end -= n;
+	}
+
+	/**
+	 * Truncate entries starting from {@code end}.
+	 */
+	public void trim()
+	{
+		stack.remove( end * numColumns, stack.size() - end * numColumns );
+		stack.trimToSize();
+		if ( isSet.length() > end )
+			isSet.clear( end, isSet.length() );
+	}
+}
@@ -139,6 +139,30 @@ public class ObjPropertyUndoRedoStack< O, T > implements PropertyUndoRedoStack<
 		stack.set( top, value );
 	}
 
+	/**
+	 * Returns an estimate of the memory used by the references on this stack.
+	 * The memory used by the referenced objects themselves is not counted.
+	 */
+	@Override
+	public long memoryUsage()
+	{
+		return 8L * stack.size();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	public void discardOldest( final int n )
+	{
+		stack.subList( 0, n ).clear();
+		top -= n;
+		end -= n;
+	}
+
 	/**
 	 * Truncate entries starting from {@code end}.
 	 */
@@ -81,4 +81,40 @@ public interface PropertyUndoRedoStack< O >
 	public void redo( final O obj );
 
 	public void clear();
+
+	/**
+	 * Returns the approximate number of bytes used to store the recorded
+	 * property values.
+	 *
+	 * @return the memory used by this stack, in bytes.
+	 */
+	public default long memoryUsage()
+	{
+		return 0;
+	}
+
+	/**
+	 * Whether {@link #discardOldest(int)} is supported.
+	 *
+	 * @return {@code true} if the oldest elements can be discarded.
+	 */
+	public default boolean supportsDiscard()
+	{
+		return false;
+	}
+
+	/**
+	 * Discard the {@code n} oldest elements of the stack, i.e., the elements
+	 * at index {@code 0 ... n-1}. Decrement {@code top} by {@code n}. This
+	 * must not be called with {@code n > top}.
+	 *
+	 * @param n
+	 *            the number of elements to discard.
+	 * @throws UnsupportedOperationException
+	 *             if {@link #supportsDiscard()} returns {@code false}.
+	 */
+	public default void discardOldest( final int n )
+	{
+		throw new UnsupportedOperationException();
+	}
 }
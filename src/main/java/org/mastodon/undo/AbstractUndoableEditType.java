@@ -62,4 +62,44 @@ public abstract class AbstractUndoableEditType
 	public abstract void undo();
 
 	public abstract void redo();
+
+	/**
+	 * Returns the approximate number of bytes used to store the data of the
+	 * edits of this type. Data stacks that are shared between edit types
+	 * should be registered with
+	 * {@link UndoRedoStack#registerDataStack(ByteArrayUndoRedoStack)} instead
+	 * of being counted here.
+	 *
+	 * @return the memory used by edits of this type, in bytes.
+	 */
+	public long memoryUsage()
+	{
+		return 0;
+	}
+
+	/**
+	 * Whether {@link #discardOldest(int)} is supported. The
+	 * {@link UndoRedoStack} only discards undo history containing edits of
+	 * types that support it.
+	 *
+	 * @return {@code true} if the oldest edits can be discarded.
+	 */
+	public boolean supportsDiscard()
+	{
+		return false;
+	}
+
+	/**
+	 * Discard the data for the {@code n} oldest recorded edits of this type.
+	 * This is called by {@link UndoRedoStack} when trimming the undo history.
+	 *
+	 * @param n
+	 *            the number of edits to discard.
+	 * @throws UnsupportedOperationException
+	 *             if {@link #supportsDiscard()} returns {@code false}.
+	 */
+	protected void discardOldest( final int n )
+	{
+		throw new UnsupportedOperationException();
+	}
 }
@@ -0,0 +1,400 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.undo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage for the oldest bytes of a {@link ByteArrayUndoRedoStack}: a stack of
+ * segments, each of which can be compressed and/or written to a spill file.
+ * <p>
+ * Compression applies a byte-wise delta filter with a fixed stride (so that
+ * sequences of records with the same layout, e.g. consecutive object ids or
+ * nearby positions, become runs of small values) followed by
+ * {@link Deflater#BEST_SPEED fast} deflate.
+ * </p>
+ */
+final class ByteArraySegments
+{
+	private static final class Segment
+	{
+		final int rawLength;
+
+		/**
+		 * Stride of the delta filter, or 0 if the segment is not compressed.
+		 */
+		final int stride;
+
+		final int storedLength;
+
+		/**
+		 * The stored bytes, or {@code null} if the segment is in the spill
+		 * file.
+		 */
+		byte[] data;
+
+		long filePosition;
+
+		Segment( final int rawLength, final int stride, final byte[] data, final int storedLength )
+		{
+			this.rawLength = rawLength;
+			this.stride = stride;
+			this.data = data;
+			this.storedLength = storedLength;
+		}
+	}
+
+	/**
+	 * Segments, oldest first.
+	 */
+	private final ArrayDeque< Segment > segments = new ArrayDeque<>();
+
+	/**
+	 * Number of bytes discarded from the start of the oldest segment.
+	 */
+	private int skip;
+
+	/**
+	 * Stride of the delta filter, or 0 if compression is disabled.
+	 */
+	private int stride;
+
+	/**
+	 * Created lazily and {@link Deflater#end() ended} when compression is
+	 * disabled or the segments are cleared, to release native zlib memory.
+	 */
+	private Deflater deflater;
+
+	/**
+	 * Created lazily and {@link Inflater#end() ended} when the segments are
+	 * cleared.
+	 */
+	private Inflater inflater;
+
+	private FileChannel spill;
+
+	private long fileEnd;
+
+	boolean isCompressing()
+	{
+		return stride > 0;
+	}
+
+	void setCompression( final int stride )
+	{
+		this.stride = stride;
+		if ( stride <= 0 )
+			endDeflater();
+	}
+
+	boolean isSpilling()
+	{
+		return spill != null;
+	}
+
+	void openSpillFile( final File file ) throws IOException
+	{
+		spill = FileChannel.open( file.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE );
+		file.deleteOnExit();
+		fileEnd = 0;
+	}
+
+	/**
+	 * Read all spilled segments back into memory and close the spill file.
+	 */
+	void closeSpillFile() throws IOException
+	{
+		if ( spill == null )
+			return;
+		for ( final Segment segment : segments )
+			if ( segment.data == null )
+				segment.data = read( segment );
+		spill.close();
+		spill = null;
+		fileEnd = 0;
+	}
+
+	/**
+	 * Returns the number of (uncompressed) bytes held in the segments.
+	 */
+	long size()
+	{
+		long size = -skip;
+		for ( final Segment segment : segments )
+			size += segment.rawLength;
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes of segments held in memory.
+	 */
+	long memoryUsage()
+	{
+		long bytes = 0;
+		for ( final Segment segment : segments )
+			if ( segment.data != null )
+				bytes += segment.storedLength;
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of (uncompressed) bytes held in segments in the spill
+	 * file.
+	 */
+	long spilledBytes()
+	{
+		long bytes = 0;
+		boolean first = true;
+		for ( final Segment segment : segments )
+		{
+			if ( segment.data == null )
+				bytes += first ? segment.rawLength - skip : segment.rawLength;
+			first = false;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Add {@code buf[offset ... offset+length-1]} as the newest segment.
+	 */
+	void push( final byte[] buf, final int offset, final int length )
+	{
+		if ( isCompressing() )
+		{
+			final byte[] filtered = new byte[ length ];
+			for ( int i = 0; i < length; ++i )
+				filtered[ i ] = i < stride
+						? buf[ offset + i ]
+						: ( byte ) ( buf[ offset + i ] - buf[ offset + i - stride ] );
+			final Deflater deflater = deflater();
+			deflater.reset();
+			deflater.setInput( filtered );
+			deflater.finish();
+			byte[] out = new byte[ Math.max( 64, length / 4 ) ];
+			int n = 0;
+			while ( !deflater.finished() )
+			{
+				if ( n == out.length )
+					out = Arrays.copyOf( out, 2 * out.length );
+				n += deflater.deflate( out, n, out.length - n );
+			}
+			if ( n < length )
+			{
+				segments.addLast( new Segment( length, stride, Arrays.copyOf( out, n ), n ) );
+				return;
+			}
+		}
+		segments.addLast( new Segment( length, 0, Arrays.copyOfRange( buf, offset, offset + length ), length ) );
+	}
+
+	/**
+	 * Write in-memory segments, oldest first, to the spill file until at most
+	 * {@code maxInMemory} bytes of segments are held in memory.
+	 */
+	void spill( final long maxInMemory )
+	{
+		long inMemory = memoryUsage();
+		final Iterator< Segment > it = segments.iterator();
+		while ( inMemory > maxInMemory && it.hasNext() )
+		{
+			final Segment segment = it.next();
+			if ( segment.data == null )
+				continue;
+			try
+			{
+				final ByteBuffer src = ByteBuffer.wrap( segment.data, 0, segment.storedLength );
+				long position = fileEnd;
+				while ( src.hasRemaining() )
+					position += spill.write( src, position );
+			}
+			catch ( final IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+			segment.filePosition = fileEnd;
+			fileEnd += segment.storedLength;
+			segment.data = null;
+			inMemory -= segment.storedLength;
+		}
+	}
+
+	/**
+	 * Remove the newest segment and return its uncompressed bytes.
+	 */
+	byte[] pop()
+	{
+		final Segment segment = segments.pollLast();
+		byte[] stored = segment.data;
+		if ( stored == null )
+		{
+			stored = read( segment );
+			fileEnd = segment.filePosition;
+		}
+		final byte[] raw = segment.stride > 0 ? decompress( stored, segment.rawLength, segment.stride ) : stored;
+		if ( segments.isEmpty() )
+		{
+			fileEnd = 0;
+			if ( skip > 0 )
+			{
+				final byte[] remaining = Arrays.copyOfRange( raw, skip, raw.length );
+				skip = 0;
+				return remaining;
+			}
+		}
+		return raw;
+	}
+
+	/**
+	 * Discard up to {@code numBytes} of the oldest bytes.
+	 *
+	 * @return the number of bytes discarded.
+	 */
+	long discardOldest( final long numBytes )
+	{
+		long discarded = 0;
+		while ( discarded < numBytes && !segments.isEmpty() )
+		{
+			final Segment oldest = segments.peekFirst();
+			final int available = oldest.rawLength - skip;
+			if ( numBytes - discarded >= available )
+			{
+				segments.pollFirst();
+				skip = 0;
+				discarded += available;
+			}
+			else
+			{
+				skip += ( int ) ( numBytes - discarded );
+				discarded = numBytes;
+			}
+		}
+		if ( segments.isEmpty() )
+			fileEnd = 0;
+		return discarded;
+	}
+
+	void clear()
+	{
+		segments.clear();
+		skip = 0;
+		fileEnd = 0;
+		endDeflater();
+		if ( inflater != null )
+		{
+			inflater.end();
+			inflater = null;
+		}
+	}
+
+	private Deflater deflater()
+	{
+		if ( deflater == null )
+			deflater = new Deflater( Deflater.BEST_SPEED, true );
+		return deflater;
+	}
+
+	private Inflater inflater()
+	{
+		if ( inflater == null )
+			inflater = new Inflater( true );
+		return inflater;
+	}
+
+	private void endDeflater()
+	{
+		if ( deflater != null )
+		{
+			deflater.end();
+			deflater = null;
+		}
+	}
+
+	private byte[] read( final Segment segment )
+	{
+		final byte[] data = new byte[ segment.storedLength ];
+		try
+		{
+			final ByteBuffer dst = ByteBuffer.wrap( data );
+			long position = segment.filePosition;
+			while ( dst.hasRemaining() )
+			{
+				final int read = spill.read( dst, position );
+				if ( read < 0 )
+					throw new IOException( "Unexpected end of spill file." );
+				position += read;
+			}
+		}
+		catch ( final IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+		return data;
+	}
+
+	private byte[] decompress( final byte[] stored, final int rawLength, final int stride )
+	{
+		final byte[] raw = new byte[ rawLength ];
+		final Inflater inflater = inflater();
+		inflater.reset();
+		inflater.setInput( stored );
+		try
+		{
+			int n = 0;
+			while ( n < rawLength )
+			{
+				final int inflated = inflater.inflate( raw, n, rawLength - n );
+				if ( inflated == 0 && ( inflater.finished() || inflater.needsInput() ) )
+					throw new IllegalStateException( "Corrupt undo segment." );
+				n += inflated;
+			}
+		}
+		catch ( final DataFormatException e )
+		{
+			throw new IllegalStateException( "Corrupt undo segment.", e );
+		}
+		for ( int i = stride; i < rawLength; ++i )
+			raw[ i ] += raw[ i - stride ];
+		return raw;
+	}
+}
@@ -28,6 +28,9 @@
  */
 package org.mastodon.undo;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -36,6 +39,15 @@ import org.mastodon.pool.ByteUtils;
 /**
  * A undo/redo stack for byte arrays of variable size. This is used to record
  * graph and attribute changes.
+ * <p>
+ * Optionally, the oldest bytes can be compressed in memory (see
+ * {@link #enableCompression(int, int)}) and/or spilled to a file when the
+ * in-memory part of the stack exceeds a given size (see
+ * {@link #enableSpilling(File, int)}). They are transparently restored when
+ * undoing reaches them. {@link ByteArrayRef}s returned by {@link #record},
+ * {@link #undo}, {@link #redo} and {@link #peek} are only valid until the next
+ * call to one of these methods.
+ * </p>
  *
  * @author Tobias Pietzsch
  */
@@ -110,8 +122,31 @@ public class ByteArrayUndoRedoStack
 
 	private final ConcurrentLinkedQueue< ByteArrayRef > tmpObjRefs;
 
+	private final int initialCapacity;
+
 	private int top;
 
+	/**
+	 * End of the recorded data in {@link #buf}. Bytes between {@link #top} and
+	 * {@code end} can be redone.
+	 */
+	private int end;
+
+	/**
+	 * The oldest bytes of the stack, below {@code buf[0]}.
+	 */
+	private final ByteArraySegments segments;
+
+	/**
+	 * Maximum number of bytes kept in memory when spilling.
+	 */
+	private int maxInMemory;
+
+	/**
+	 * Size of segments when compressing.
+	 */
+	private int segmentSize;
+
 	public ByteArrayUndoRedoStack()
 	{
 		this( DEFAULT_CAPACITY );
@@ -120,15 +155,149 @@ public class ByteArrayUndoRedoStack
 	public ByteArrayUndoRedoStack( final int capacity )
 	{
 		buf = new byte[ capacity ];
+		initialCapacity = capacity;
 		tmpObjRefs = new ConcurrentLinkedQueue<>();
+		segments = new ByteArraySegments();
 		top = 0;
+		end = 0;
+	}
+
+	/**
+	 * Spill the oldest bytes of this stack to {@code file} whenever more than
+	 * {@code maxInMemory} bytes are held in memory. The file is created or
+	 * truncated, and deleted when the JVM exits.
+	 *
+	 * @param file
+	 *            the spill file.
+	 * @param maxInMemory
+	 *            the maximum number of bytes to keep in memory.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public void enableSpilling( final File file, final int maxInMemory ) throws IOException
+	{
+		if ( maxInMemory <= 0 )
+			throw new IllegalArgumentException( "maxInMemory must be positive: " + maxInMemory );
+		disableSpilling();
+		segments.openSpillFile( file );
+		this.maxInMemory = maxInMemory;
+	}
+
+	/**
+	 * Read all spilled bytes back into memory and close the spill file.
+	 *
+	 * @throws IOException
+	 *             if reading or closing the spill file fails.
+	 */
+	public void disableSpilling() throws IOException
+	{
+		try
+		{
+			segments.closeSpillFile();
+		}
+		catch ( final UncheckedIOException e )
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Compress the oldest bytes of this stack in segments of
+	 * {@code segmentSize} bytes, keeping about {@code 2 * segmentSize}
+	 * uncompressed bytes below {@code top}. Segments are decompressed
+	 * transparently when undoing reaches them.
+	 * <p>
+	 * Before compression, each byte is replaced by its difference to the byte
+	 * {@code stride} positions earlier. If all records on this stack have the
+	 * same size, use that size as the stride.
+	 * </p>
+	 *
+	 * @param segmentSize
+	 *            the number of bytes per compressed segment.
+	 * @param stride
+	 *            the stride of the delta filter.
+	 */
+	public void enableCompression( final int segmentSize, final int stride )
+	{
+		if ( segmentSize <= 0 || stride <= 0 )
+			throw new IllegalArgumentException( "segmentSize and stride must be positive." );
+		this.segmentSize = segmentSize;
+		segments.setCompression( stride );
+	}
+
+	/**
+	 * Stop compressing new segments. Already compressed segments are kept.
+	 */
+	public void disableCompression()
+	{
+		segments.setCompression( 0 );
+	}
+
+	/**
+	 * Returns the number of bytes held in memory by this stack, i.e., the
+	 * recorded bytes in the uncompressed buffer plus the compressed segments.
+	 * The allocated buffer may be larger, up to the capacity given at
+	 * construction.
+	 *
+	 * @return the number of bytes in memory.
+	 */
+	public long memoryUsage()
+	{
+		return end + segments.memoryUsage();
+	}
+
+	/**
+	 * Returns the number of bytes of this stack currently held in the spill
+	 * file, before compression.
+	 *
+	 * @return the number of spilled bytes.
+	 */
+	public long spilledBytes()
+	{
+		return segments.spilledBytes();
+	}
+
+	/**
+	 * Returns the number of recorded bytes, including those that can be
+	 * redone and those that are compressed or spilled.
+	 *
+	 * @return the number of recorded bytes.
+	 */
+	public long size()
+	{
+		return segments.size() + end;
+	}
+
+	/**
+	 * Discard the {@code numBytes} oldest bytes of the stack. The bytes must
+	 * be below {@code top}, i.e., they must not be redoable.
+	 *
+	 * @param numBytes
+	 *            the number of bytes to discard.
+	 */
+	public void discardOldest( final int numBytes )
+	{
+		if ( numBytes > segments.size() + top )
+			throw new IllegalArgumentException( "Cannot discard " + numBytes + " bytes, only " + ( segments.size() + top ) + " below top." );
+		final int fromMemory = ( int ) ( numBytes - segments.discardOldest( numBytes ) );
+		if ( fromMemory > 0 )
+		{
+			System.arraycopy( buf, fromMemory, buf, 0, end - fromMemory );
+			top -= fromMemory;
+			end -= fromMemory;
+			shrink();
+		}
 	}
 
 	//  stack[top]
 	public ByteArrayRef peek( final int size, final ByteArrayRef ref )
 	{
 		if ( top - size < 0 )
-			return null;
+		{
+			if ( top + segments.size() < size )
+				return null;
+			reload( size );
+		}
 		ref.offset = top - size;
 		return ref;
 	}
@@ -136,8 +305,12 @@ public class ByteArrayUndoRedoStack
 	//  stack[top++] := e
 	public ByteArrayRef record( final int size, final ByteArrayRef ref )
 	{
+		if ( segments.isCompressing() ? top + size > 2 * segmentSize
+				: ( segments.isSpilling() && top + size > maxInMemory ) )
+			evict( top / 2 );
 		ref.offset = top;
 		top += size;
+		end = top;
 		ensureCapacity( top );
 		return ref;
 	}
@@ -145,6 +318,8 @@ public class ByteArrayUndoRedoStack
 	// return stack[--top]
 	public ByteArrayRef undo( final int size, final ByteArrayRef ref )
 	{
+		if ( top - size < 0 )
+			reload( size );
 		if ( top - size < 0 )
 			throw new IllegalStateException();
 
@@ -156,7 +331,7 @@ public class ByteArrayUndoRedoStack
 	// return stack[top++]
 	public ByteArrayRef redo( final int size, final ByteArrayRef ref )
 	{
-		if ( top + size > buf.length )
+		if ( top + size > end )
 			throw new IllegalStateException();
 
 		ref.offset = top;
@@ -167,6 +342,8 @@ public class ByteArrayUndoRedoStack
 	public void clear()
 	{
 		top = 0;
+		end = 0;
+		segments.clear();
 	}
 
 	public ByteArrayRef createRef()
@@ -183,6 +360,52 @@ public class ByteArrayUndoRedoStack
 			obj.pool.releaseRef( obj );
 	}
 
+	/**
+	 * Move the {@code n} oldest in-memory bytes to a new segment and shift
+	 * the remaining bytes to the start of {@link #buf}. Then spill segments
+	 * if necessary. Uncompressed segments are always spilled.
+	 */
+	private void evict( final int n )
+	{
+		if ( n <= 0 )
+			return;
+		segments.push( buf, 0, n );
+		System.arraycopy( buf, n, buf, 0, end - n );
+		top -= n;
+		end -= n;
+		shrink();
+		if ( segments.isSpilling() )
+			segments.spill( segments.isCompressing() ? Math.max( 0, maxInMemory - end ) : 0 );
+	}
+
+	/**
+	 * Release memory if the buffer has become much larger than the recorded
+	 * data.
+	 */
+	private void shrink()
+	{
+		if ( buf.length > initialCapacity && buf.length > 4L * end )
+			buf = Arrays.copyOf( buf, Math.max( initialCapacity, 2 * end ) );
+	}
+
+	/**
+	 * Move segments back to the start of {@link #buf} until at least
+	 * {@code minTop} bytes are below {@code top}, or no segments are left.
+	 */
+	private void reload( final int minTop )
+	{
+		while ( top < minTop && segments.size() > 0 )
+		{
+			final byte[] segment = segments.pop();
+			final int n = segment.length;
+			ensureCapacity( end + n );
+			System.arraycopy( buf, 0, buf, n, end );
+			System.arraycopy( segment, 0, buf, 0, n );
+			top += n;
+			end += n;
+		}
+	}
+
 	private void ensureCapacity( final int minCapacity )
 	{
 		if ( minCapacity < 0 )
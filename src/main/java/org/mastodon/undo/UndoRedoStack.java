@@ -32,6 +32,9 @@
 package org.mastodon.undo;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import gnu.trove.list.TByteList;
@@ -47,6 +50,11 @@ import gnu.trove.list.array.TByteArrayList;
  * edit is stored in separate undo/redo stacks that are members of the specific
  * {@link AbstractUndoableEditType} instances.
  * </p>
+ * <p>
+ * The memory used by the undo history can be bounded with
+ * {@link #setMemoryBudget(long)}. When the budget is exceeded, the oldest undo
+ * points are discarded, in this stack and in the stacks of all edit types.
+ * </p>
  *
  * @author Tobias Pietzsch
  */
@@ -66,6 +74,10 @@ public class UndoRedoStack implements UndoPointMarker
 
 	private int savePointIndex = -1;
 
+	private final Set< ByteArrayUndoRedoStack > dataStacks = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+	private long memoryBudget = Long.MAX_VALUE;
+
 	public UndoRedoStack( final int initialCapacity )
 	{
 		stack = new ByteStack( initialCapacity );
@@ -104,6 +116,8 @@ public class UndoRedoStack implements UndoPointMarker
 			ref.setUndoPoint( true );
 		}
 //		stack.releaseRef( ref );
+		if ( memoryBudget != Long.MAX_VALUE )
+			enforceMemoryBudget();
 	}
 
 	public void setSavePoint()
@@ -177,6 +191,135 @@ public class UndoRedoStack implements UndoPointMarker
 		stack.trimToSize();
 	}
 
+	/**
+	 * Register a data stack that is shared by several edit types, such that
+	 * it is counted once in {@link #memoryUsage()}.
+	 *
+	 * @param dataStack
+	 *            the data stack.
+	 */
+	public void registerDataStack( final ByteArrayUndoRedoStack dataStack )
+	{
+		synchronized ( dataStacks )
+		{
+			dataStacks.add( dataStack );
+		}
+	}
+
+	/**
+	 * Returns the approximate number of bytes of memory used by the undo
+	 * history: this stack, the registered data stacks, and the memory
+	 * reported by all edit types.
+	 *
+	 * @return the memory used by the undo history, in bytes.
+	 */
+	public long memoryUsage()
+	{
+		long bytes = stack.size();
+		synchronized ( dataStacks )
+		{
+			for ( final ByteArrayUndoRedoStack dataStack : dataStacks )
+				bytes += dataStack.memoryUsage();
+		}
+		synchronized ( editTypes )
+		{
+			for ( final AbstractUndoableEditType editType : editTypes )
+				bytes += editType.memoryUsage();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Set the maximum memory used by the undo history. Whenever an undo point
+	 * is set and {@link #memoryUsage()} exceeds the budget, the oldest undo
+	 * points are discarded until the history fits the budget. The most recent
+	 * undo point is always kept.
+	 *
+	 * @param bytes
+	 *            the memory budget in bytes, or {@link Long#MAX_VALUE} for no
+	 *            limit.
+	 */
+	public void setMemoryBudget( final long bytes )
+	{
+		memoryBudget = bytes;
+		if ( memoryBudget != Long.MAX_VALUE )
+			enforceMemoryBudget();
+	}
+
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Discard the {@code n} oldest undo points, i.e., all elements up to and
+	 * including the {@code n}-th element (from the bottom) that is marked as
+	 * an undo point. Only elements below {@code top} are discarded. The data
+	 * stacks of the edit types are trimmed accordingly.
+	 * <p>
+	 * Nothing is discarded if any of the affected edit types does not
+	 * {@link AbstractUndoableEditType#supportsDiscard() support discarding}.
+	 * </p>
+	 *
+	 * @param n
+	 *            the number of undo points to discard.
+	 * @return the number of undo points actually discarded.
+	 */
+	public int discardOldestUndoPoints( final int n )
+	{
+		int discarded = 0;
+		int length = 0;
+		for ( int i = 0; i < top && discarded < n; ++i )
+		{
+			ref.setIndex( i );
+			if ( ref.isUndoPoint() )
+			{
+				++discarded;
+				length = i + 1;
+			}
+		}
+		if ( length == 0 )
+			return 0;
+
+		final int[] counts = new int[ editTypes.size() ];
+		for ( int i = 0; i < length; ++i )
+		{
+			ref.setIndex( i );
+			++counts[ ref.getTypeIndex() ];
+		}
+		for ( int t = 0; t < counts.length; ++t )
+			if ( counts[ t ] > 0 && !editTypes.get( t ).supportsDiscard() )
+				return 0;
+		for ( int t = 0; t < counts.length; ++t )
+			if ( counts[ t ] > 0 )
+				editTypes.get( t ).discardOldest( counts[ t ] );
+
+		stack.remove( 0, length );
+		top -= length;
+		end -= length;
+		savePointIndex = savePointIndex >= length ? savePointIndex - length : -1;
+		return discarded;
+	}
+
+	private void enforceMemoryBudget()
+	{
+		while ( memoryUsage() > memoryBudget )
+		{
+			int undoPoints = 0;
+			for ( int i = 0; i < top; ++i )
+			{
+				ref.setIndex( i );
+				if ( ref.isUndoPoint() )
+					++undoPoints;
+			}
+			if ( undoPoints <= 1 )
+				return;
+			final int n = Math.max( 1, ( undoPoints - 1 ) / 8 );
+			if ( discardOldestUndoPoints( n ) == 0 )
+				return;
+		}
+	}
+
 	/**
 	 * Remove all entries.
 	 */
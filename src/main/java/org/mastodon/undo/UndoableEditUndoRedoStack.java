@@ -108,6 +108,21 @@ public class UndoableEditUndoRedoStack
 		stack.trimToSize();
 	}
 
+	/**
+	 * Discard the {@code n} oldest edits. Decrement {@code top} by {@code n}.
+	 *
+	 * @param n
+	 *            the number of edits to discard, at most {@code top}.
+	 */
+	public void discardOldest( final int n )
+	{
+		if ( n > top )
+			throw new IllegalArgumentException( "Cannot discard " + n + " edits, only " + top + " below top." );
+		stack.subList( 0, n ).clear();
+		top -= n;
+		end -= n;
+	}
+
 	public void clear()
 	{
 		stack.clear();
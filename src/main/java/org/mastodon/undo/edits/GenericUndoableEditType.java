@@ -67,4 +67,16 @@ public class GenericUndoableEditType< E extends UndoableEdit > extends AbstractU
 	{
 		edits.redo();
 	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return true;
+	}
+
+	@Override
+	protected void discardOldest( final int n )
+	{
+		edits.discardOldest( n );
+	}
 }
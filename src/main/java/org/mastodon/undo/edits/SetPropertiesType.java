@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.undo.edits;
+
+import static org.mastodon.pool.ByteUtils.INT_SIZE;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.properties.undo.PropertyUndoRedoStack;
+import org.mastodon.undo.AbstractUndoableEditType;
+import org.mastodon.undo.ByteArrayUndoRedoStack;
+import org.mastodon.undo.ByteArrayUndoRedoStack.ByteArrayRef;
+import org.mastodon.undo.Recorder;
+import org.mastodon.undo.UndoIdBimap;
+import org.mastodon.undo.UndoRedoStack;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Records a bulk property change (e.g.
+ * {@link org.mastodon.properties.DoublePropertyMap#setAll}) as a single
+ * compound edit. The undo ids of all objects are packed into one record of
+ * the data stack, their previous property values are stored consecutively in
+ * the {@link PropertyUndoRedoStack}, and only one element is pushed onto the
+ * {@link UndoRedoStack}.
+ *
+ * @param <O>
+ *            the type of objects whose property is changed.
+ */
+public class SetPropertiesType< O > extends AbstractUndoableEditType implements Recorder< RefCollection< O > >
+{
+	private final PropertyUndoRedoStack< O > propertyUndoRedoStack;
+
+	private final UndoIdBimap< O > undoIdBimap;
+
+	private final ByteArrayUndoRedoStack dataStack;
+
+	private final ByteArrayRef ref;
+
+	/**
+	 * Number of objects in each recorded edit.
+	 */
+	private final TIntArrayList counts;
+
+	private int top;
+
+	public SetPropertiesType(
+			final PropertyUndoRedoStack< O > propertyUndoRedoStack,
+			final UndoIdBimap< O > undoIdBimap,
+			final ByteArrayUndoRedoStack dataStack,
+			final UndoRedoStack undoRedoStack )
+	{
+		super( undoRedoStack );
+		this.propertyUndoRedoStack = propertyUndoRedoStack;
+		this.undoIdBimap = undoIdBimap;
+		this.dataStack = dataStack;
+		ref = dataStack.createRef();
+		counts = new TIntArrayList();
+		top = 0;
+		undoRedoStack.registerDataStack( dataStack );
+	}
+
+	@Override
+	public void record( final RefCollection< O > objs )
+	{
+		final int n = objs.size();
+		if ( n == 0 )
+			return;
+
+		recordType();
+		final ByteArrayRef buffer = dataStack.record( n * INT_SIZE, ref );
+		int i = 0;
+		for ( final O obj : objs )
+		{
+			buffer.putInt( i * INT_SIZE, undoIdBimap.getId( obj ) );
+			propertyUndoRedoStack.record( obj );
+			++i;
+		}
+
+		if ( top < counts.size() )
+			counts.set( top, n );
+		else
+			counts.add( n );
+		++top;
+	}
+
+	@Override
+	public void undo()
+	{
+		final int n = counts.getQuick( --top );
+		final O oref = undoIdBimap.createRef();
+		final ByteArrayRef buffer = dataStack.undo( n * INT_SIZE, ref );
+		for ( int i = n - 1; i >= 0; --i )
+		{
+			final O obj = undoIdBimap.getObject( buffer.getInt( i * INT_SIZE ), oref );
+			propertyUndoRedoStack.undo( obj );
+		}
+		undoIdBimap.releaseRef( oref );
+	}
+
+	@Override
+	public void redo()
+	{
+		final int n = counts.getQuick( top++ );
+		final O oref = undoIdBimap.createRef();
+		final ByteArrayRef buffer = dataStack.redo( n * INT_SIZE, ref );
+		for ( int i = 0; i < n; ++i )
+		{
+			final O obj = undoIdBimap.getObject( buffer.getInt( i * INT_SIZE ), oref );
+			propertyUndoRedoStack.redo( obj );
+		}
+		undoIdBimap.releaseRef( oref );
+	}
+
+	@Override
+	public long memoryUsage()
+	{
+		return propertyUndoRedoStack.memoryUsage() + ( long ) INT_SIZE * counts.size();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return propertyUndoRedoStack.supportsDiscard();
+	}
+
+	@Override
+	protected void discardOldest( final int n )
+	{
+		int numObjs = 0;
+		for ( int i = 0; i < n; ++i )
+			numObjs += counts.getQuick( i );
+		counts.remove( 0, n );
+		top -= n;
+		dataStack.discardOldest( numObjs * INT_SIZE );
+		propertyUndoRedoStack.discardOldest( numObjs );
+	}
+}
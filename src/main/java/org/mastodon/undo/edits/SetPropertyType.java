@@ -66,6 +66,7 @@ public class SetPropertyType< O > extends AbstractUndoableEditType implements Re
 		this.dataStack = dataStack;
 		ref = dataStack.createRef();
 		elmtRef = undoRedoStack.createRef();
+		undoRedoStack.registerDataStack( dataStack );
 	}
 
 	@Override
@@ -108,4 +109,23 @@ public class SetPropertyType< O > extends AbstractUndoableEditType implements Re
 		propertyUndoRedoStack.redo( obj );
 		undoIdBimap.releaseRef( oref );
 	}
+
+	@Override
+	public long memoryUsage()
+	{
+		return propertyUndoRedoStack.memoryUsage();
+	}
+
+	@Override
+	public boolean supportsDiscard()
+	{
+		return propertyUndoRedoStack.supportsDiscard();
+	}
+
+	@Override
+	protected void discardOldest( final int n )
+	{
+		dataStack.discardOldest( n * SIZE );
+		propertyUndoRedoStack.discardOldest( n );
+	}
 }
@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package gnu.trove.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+
+public class TIntIntCompactMapTest
+{
+	private static final int NO_ENTRY_KEY = -1;
+
+	private static final int NO_ENTRY_VALUE = -100;
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE, 4 );
+		assertEquals( NO_ENTRY_VALUE, map.put( 5, 50 ) );
+		assertEquals( NO_ENTRY_VALUE, map.put( 1, 10 ) );
+		assertEquals( 50, map.put( 5, 55 ) );
+		assertEquals( 10, map.putIfAbsent( 1, 11 ) );
+		assertEquals( 2, map.size() );
+		assertArrayEquals( new int[] { 1, 5 }, map.keys() );
+		assertArrayEquals( new int[] { 10, 55 }, map.values() );
+		assertEquals( 55, map.get( 5 ) );
+		assertEquals( NO_ENTRY_VALUE, map.get( 3 ) );
+
+		assertEquals( 10, map.remove( 1 ) );
+		assertEquals( NO_ENTRY_VALUE, map.remove( 1 ) );
+		assertEquals( 1, map.size() );
+	}
+
+	@Test
+	public void testAdjust()
+	{
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE );
+		assertFalse( map.increment( 3 ) );
+		assertEquals( 7, map.adjustOrPutValue( 3, 1, 7 ) );
+		assertEquals( 8, map.adjustOrPutValue( 3, 1, 7 ) );
+		assertTrue( map.increment( 3 ) );
+		assertEquals( 9, map.get( 3 ) );
+	}
+
+	@Test
+	public void testPromotion()
+	{
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE, 4 );
+		for ( int i = 0; i < 4; i++ )
+			map.put( i, 10 * i );
+		assertTrue( "Map should still be compact.", map.isCompact() );
+
+		map.put( 4, 40 );
+		assertFalse( "Map should have been promoted.", map.isCompact() );
+		assertEquals( 5, map.size() );
+		for ( int i = 0; i < 5; i++ )
+			assertEquals( 10 * i, map.get( i ) );
+		assertEquals( NO_ENTRY_VALUE, map.get( 5 ) );
+
+		map.clear();
+		assertTrue( "Cleared map should be compact.", map.isCompact() );
+	}
+
+	@Test
+	public void testViewsAcrossPromotion()
+	{
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE, 2 );
+		final TIntSet keys = map.keySet();
+		final TIntCollection values = map.valueCollection();
+		map.put( 1, 10 );
+		map.put( 2, 20 );
+		assertTrue( keys.contains( 2 ) );
+		assertTrue( values.contains( 20 ) );
+
+		map.put( 3, 30 );
+		assertFalse( map.isCompact() );
+		assertEquals( 3, keys.size() );
+		assertTrue( keys.contains( 3 ) );
+		assertTrue( values.contains( 30 ) );
+
+		assertTrue( keys.remove( 1 ) );
+		assertTrue( values.remove( 20 ) );
+		assertEquals( 1, map.size() );
+		assertEquals( 30, map.get( 3 ) );
+	}
+
+	@Test
+	public void testIterator()
+	{
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE );
+		for ( int i = 0; i < 6; i++ )
+			map.put( i, i );
+		final TIntIntIterator it = map.iterator();
+		while ( it.hasNext() )
+		{
+			it.advance();
+			if ( it.key() % 2 == 0 )
+				it.remove();
+			else
+				it.setValue( -it.value() );
+		}
+		assertArrayEquals( new int[] { 1, 3, 5 }, map.keys() );
+		assertArrayEquals( new int[] { -1, -3, -5 }, map.values() );
+	}
+
+	@Test
+	public void testRandomOperationsAgainstHashMap()
+	{
+		final Random rand = new Random( 4321 );
+		final TIntIntCompactMap map = new TIntIntCompactMap( NO_ENTRY_KEY, NO_ENTRY_VALUE, 8 );
+		final TIntIntHashMap expected = new TIntIntHashMap( 10, 0.5f, NO_ENTRY_KEY, NO_ENTRY_VALUE );
+		for ( int i = 0; i < 10000; i++ )
+		{
+			final int key = rand.nextInt( 24 );
+			final int value = rand.nextInt( 1000 );
+			switch ( rand.nextInt( 10 ) )
+			{
+			case 0:
+				if ( rand.nextInt( 20 ) == 0 )
+				{
+					map.clear();
+					expected.clear();
+				}
+				break;
+			case 1:
+			case 2:
+			case 3:
+				assertEquals( expected.remove( key ), map.remove( key ) );
+				break;
+			case 4:
+				assertEquals( expected.adjustOrPutValue( key, value, value ), map.adjustOrPutValue( key, value, value ) );
+				break;
+			case 5:
+				assertEquals( expected.retainEntries( ( k, v ) -> v % 3 != 0 ), map.retainEntries( ( k, v ) -> v % 3 != 0 ) );
+				break;
+			default:
+				assertEquals( expected.put( key, value ), map.put( key, value ) );
+				break;
+			}
+			assertEquals( expected.size(), map.size() );
+			assertEquals( expected.get( key ), map.get( key ) );
+		}
+		assertEquals( expected, map );
+		assertEquals( map, expected );
+		assertEquals( expected.hashCode(), map.hashCode() );
+	}
+}
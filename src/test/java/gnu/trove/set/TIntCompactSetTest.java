@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package gnu.trove.set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.hash.TIntHashSet;
+
+public class TIntCompactSetTest
+{
+	@Test
+	public void testAddRemoveContains()
+	{
+		final TIntCompactSet set = new TIntCompactSet( 4 );
+		assertTrue( set.isEmpty() );
+		assertTrue( set.isCompact() );
+
+		assertTrue( set.add( 5 ) );
+		assertTrue( set.add( 1 ) );
+		assertTrue( set.add( 3 ) );
+		assertFalse( set.add( 3 ) );
+		assertEquals( 3, set.size() );
+		assertArrayEquals( new int[] { 1, 3, 5 }, set.toArray() );
+		assertTrue( set.contains( 1 ) );
+		assertFalse( set.contains( 2 ) );
+
+		assertTrue( set.remove( 3 ) );
+		assertFalse( set.remove( 3 ) );
+		assertArrayEquals( new int[] { 1, 5 }, set.toArray() );
+	}
+
+	@Test
+	public void testPromotion()
+	{
+		final TIntCompactSet set = new TIntCompactSet( 4 );
+		for ( int i = 0; i < 4; i++ )
+			set.add( i );
+		assertTrue( "Set should still be compact.", set.isCompact() );
+
+		set.add( 4 );
+		assertFalse( "Set should have been promoted.", set.isCompact() );
+		assertEquals( 5, set.size() );
+		for ( int i = 0; i < 5; i++ )
+			assertTrue( set.contains( i ) );
+
+		set.clear();
+		assertTrue( "Cleared set should be compact.", set.isCompact() );
+		assertTrue( set.isEmpty() );
+	}
+
+	@Test
+	public void testIteratorRemove()
+	{
+		final TIntCompactSet set = new TIntCompactSet();
+		set.addAll( new int[] { 1, 2, 3, 4, 5, 6 } );
+		final TIntIterator it = set.iterator();
+		while ( it.hasNext() )
+			if ( it.next() % 2 == 0 )
+				it.remove();
+		assertArrayEquals( new int[] { 1, 3, 5 }, set.toArray() );
+	}
+
+	@Test
+	public void testEqualsHashCode()
+	{
+		final TIntCompactSet set = new TIntCompactSet();
+		final TIntHashSet expected = new TIntHashSet();
+		for ( final int i : new int[] { 7, -2, 13 } )
+		{
+			set.add( i );
+			expected.add( i );
+		}
+		assertEquals( expected, set );
+		assertEquals( set, expected );
+		assertEquals( expected.hashCode(), set.hashCode() );
+	}
+
+	@Test
+	public void testRandomOperationsAgainstHashSet()
+	{
+		final Random rand = new Random( 1234 );
+		final TIntCompactSet set = new TIntCompactSet( 8 );
+		final TIntHashSet expected = new TIntHashSet();
+		for ( int i = 0; i < 10000; i++ )
+		{
+			final int value = rand.nextInt( 24 );
+			switch ( rand.nextInt( 10 ) )
+			{
+			case 0:
+				if ( rand.nextInt( 20 ) == 0 )
+				{
+					set.clear();
+					expected.clear();
+				}
+				break;
+			case 1:
+			case 2:
+			case 3:
+				assertEquals( expected.remove( value ), set.remove( value ) );
+				break;
+			case 4:
+				final int[] retain = { value, value + 1, value + 2, value + 3 };
+				assertEquals( expected.retainAll( retain ), set.retainAll( retain ) );
+				break;
+			default:
+				assertEquals( expected.add( value ), set.add( value ) );
+				break;
+			}
+			assertEquals( expected.size(), set.size() );
+			assertEquals( expected.contains( value ), set.contains( value ) );
+		}
+		final int[] actual = set.toArray();
+		final int[] values = expected.toArray();
+		Arrays.sort( actual );
+		Arrays.sort( values );
+		assertArrayEquals( values, actual );
+	}
+}
@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.collection.ref.RefSetImp;
+import org.mastodon.collection.wrap.RefSetWrapper;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+public class RefCollectionsSetAlgebraTest
+{
+	private static final int N = 200_000;
+
+	private TestObjectPool pool;
+
+	private RefSetImp< TestObject > multiplesOf2;
+
+	private RefArrayList< TestObject > multiplesOf3;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( N );
+		multiplesOf2 = new RefSetImp<>( pool );
+		multiplesOf3 = new RefArrayList<>( pool );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < N; i++ )
+		{
+			pool.create( ref ).init( i );
+			if ( i % 2 == 0 )
+				multiplesOf2.add( ref );
+			if ( i % 3 == 0 )
+				multiplesOf3.add( ref );
+		}
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testUnion()
+	{
+		final RefSet< TestObject > union = RefCollections.union( multiplesOf2, multiplesOf3 );
+		assertEquals( countMatching( i -> i % 2 == 0 || i % 3 == 0 ), union.size() );
+		for ( final TestObject o : union )
+			assertTrue( o.getId() % 2 == 0 || o.getId() % 3 == 0 );
+	}
+
+	@Test
+	public void testIntersection()
+	{
+		for ( final boolean parallel : new boolean[] { false, true } )
+		{
+			final RefSet< TestObject > intersection = RefCollections.intersection( multiplesOf2, multiplesOf3, parallel );
+			assertEquals( countMatching( i -> i % 6 == 0 ), intersection.size() );
+			for ( final TestObject o : intersection )
+				assertEquals( 0, o.getId() % 6 );
+		}
+	}
+
+	@Test
+	public void testDifference()
+	{
+		for ( final boolean parallel : new boolean[] { false, true } )
+		{
+			final RefSet< TestObject > difference = RefCollections.difference( multiplesOf3, multiplesOf2, parallel );
+			assertEquals( countMatching( i -> i % 3 == 0 && i % 2 != 0 ), difference.size() );
+			for ( final TestObject o : difference )
+				assertTrue( o.getId() % 3 == 0 && o.getId() % 2 != 0 );
+		}
+	}
+
+	@Test
+	public void testContainsAll()
+	{
+		final RefSet< TestObject > multiplesOf6 = RefCollections.intersection( multiplesOf2, multiplesOf3 );
+		for ( final boolean parallel : new boolean[] { false, true } )
+		{
+			assertTrue( RefCollections.containsAll( multiplesOf2, multiplesOf6, parallel ) );
+			assertTrue( RefCollections.containsAll( multiplesOf3, multiplesOf6, parallel ) );
+			assertFalse( RefCollections.containsAll( multiplesOf2, multiplesOf3, parallel ) );
+		}
+	}
+
+	@Test
+	public void testWrappedCollections()
+	{
+		final Set< TestObject > objects = new HashSet<>();
+		for ( final TestObject o : multiplesOf3 )
+			if ( o.getId() < 100 )
+				objects.add( pool.getObject( o.getInternalPoolIndex(), pool.createRef() ) );
+		final RefSet< TestObject > wrapped = new RefSetWrapper<>( objects );
+
+		assertEquals( countMatching( i -> i < 100 && i % 6 == 0 ), RefCollections.intersection( wrapped, multiplesOf2 ).size() );
+		assertEquals( countMatching( i -> i < 100 && i % 6 == 0 ), RefCollections.intersection( multiplesOf2, wrapped ).size() );
+		assertEquals( countMatching( i -> i < 100 && i % 3 == 0 && i % 2 != 0 ), RefCollections.difference( wrapped, multiplesOf2 ).size() );
+		assertTrue( RefCollections.containsAll( multiplesOf3, wrapped, false ) );
+	}
+
+	/**
+	 * Index-backed collections whose pool is unknown must not be combined by
+	 * index.
+	 */
+	@Test
+	public void testUnknownPool()
+	{
+		final RefSetImp< TestObject > set = new RefSetImp<>( pool );
+		set.addAll( multiplesOf3 );
+		final RefSet< TestObject > unknownPool = withoutPool( set );
+
+		// the result is not index-backed, this must not try to add indices
+		RefCollections.union( unknownPool, multiplesOf2 );
+		assertEquals( countMatching( i -> i % 2 == 0 || i % 3 == 0 ), RefCollections.union( multiplesOf2, unknownPool ).size() );
+		assertEquals( countMatching( i -> i % 6 == 0 ), RefCollections.intersection( multiplesOf2, unknownPool ).size() );
+		assertEquals( countMatching( i -> i % 2 == 0 && i % 3 != 0 ), RefCollections.difference( multiplesOf2, unknownPool ).size() );
+		assertTrue( RefCollections.containsAll( unknownPool, RefCollections.intersection( multiplesOf2, multiplesOf3 ), false ) );
+	}
+
+	/**
+	 * Returns a view of {@code set} that is an {@link IntBackedRefCollection}
+	 * but does not expose its pool.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static RefSet< TestObject > withoutPool( final RefSetImp< TestObject > set )
+	{
+		return ( RefSet< TestObject > ) Proxy.newProxyInstance(
+				RefCollectionsSetAlgebraTest.class.getClassLoader(),
+				new Class< ? >[] { RefSet.class, IntBackedRefCollection.class },
+				( proxy, method, args ) -> {
+					try
+					{
+						return method.invoke( set, args );
+					}
+					catch ( final InvocationTargetException e )
+					{
+						throw e.getCause();
+					}
+				} );
+	}
+
+	@Test
+	public void testRetainAndRemoveAll()
+	{
+		final RefArrayList< TestObject > list = new RefArrayList<>( pool );
+		list.addAll( multiplesOf3 );
+		list.addAll( multiplesOf3 );
+
+		final RefArrayList< TestObject > copy = new RefArrayList<>( pool );
+		copy.addAll( list );
+		assertTrue( list.retainAll( multiplesOf2 ) );
+		assertEquals( 2 * countMatching( i -> i % 6 == 0 ), list.size() );
+
+		final ArrayList< TestObject > objects = new ArrayList<>();
+		for ( final TestObject o : multiplesOf2 )
+			objects.add( pool.getObject( o.getInternalPoolIndex(), pool.createRef() ) );
+		assertTrue( copy.removeAll( objects ) );
+		assertEquals( 2 * countMatching( i -> i % 3 == 0 && i % 2 != 0 ), copy.size() );
+
+		final RefSetImp< TestObject > set = new RefSetImp<>( pool );
+		set.addAll( multiplesOf2 );
+		assertTrue( set.retainAll( multiplesOf3 ) );
+		assertEquals( countMatching( i -> i % 6 == 0 ), set.size() );
+	}
+
+	private static int countMatching( final IntPredicate predicate )
+	{
+		int count = 0;
+		for ( int i = 0; i < N; i++ )
+			if ( predicate.test( i ) )
+				++count;
+		return count;
+	}
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefMaps;
+import org.mastodon.collection.RefSet;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+/**
+ * Measures the heap footprint of one million small {@link RefSet}s and
+ * {@link RefIntMap}s (0 to 8 entries each), comparing the default hash-based
+ * implementations with {@link CompactRefSet} and {@link CompactRefIntMap}.
+ * <p>
+ * Run with a fixed heap size, e.g. {@code -Xms4g -Xmx4g}, for stable numbers.
+ */
+public class CompactRefCollectionsMemoryBenchmark
+{
+	private static final int NUM_INSTANCES = 1_000_000;
+
+	private static final int MAX_ENTRIES = 8;
+
+	private static final int POOL_SIZE = 1000;
+
+	public static void main( final String[] args )
+	{
+		final TestObjectPool pool = new TestObjectPool( POOL_SIZE );
+		for ( int i = 0; i < POOL_SIZE; i++ )
+			pool.create().init( i );
+		final RefCollection< TestObject > collection = pool.asRefCollection();
+
+		measure( "RefSetImp       ", () -> fillSets( pool, () -> RefCollections.createRefSet( collection ) ) );
+		measure( "CompactRefSet   ", () -> fillSets( pool, () -> RefCollections.createCompactRefSet( collection ) ) );
+		measure( "RefIntHashMap   ", () -> fillMaps( pool, () -> RefMaps.createRefIntMap( collection, -1 ) ) );
+		measure( "CompactRefIntMap", () -> fillMaps( pool, () -> RefMaps.createCompactRefIntMap( collection, -1 ) ) );
+	}
+
+	private static Object[] fillSets( final TestObjectPool pool, final Supplier< RefSet< TestObject > > factory )
+	{
+		final Random rand = new Random( 1 );
+		final TestObject ref = pool.createRef();
+		final Object[] instances = new Object[ NUM_INSTANCES ];
+		for ( int i = 0; i < NUM_INSTANCES; i++ )
+		{
+			final RefSet< TestObject > set = factory.get();
+			final int n = rand.nextInt( MAX_ENTRIES + 1 );
+			for ( int j = 0; j < n; j++ )
+				set.add( pool.getObject( rand.nextInt( POOL_SIZE ), ref ) );
+			instances[ i ] = set;
+		}
+		pool.releaseRef( ref );
+		return instances;
+	}
+
+	private static Object[] fillMaps( final TestObjectPool pool, final Supplier< RefIntMap< TestObject > > factory )
+	{
+		final Random rand = new Random( 1 );
+		final TestObject ref = pool.createRef();
+		final Object[] instances = new Object[ NUM_INSTANCES ];
+		for ( int i = 0; i < NUM_INSTANCES; i++ )
+		{
+			final RefIntMap< TestObject > map = factory.get();
+			final int n = rand.nextInt( MAX_ENTRIES + 1 );
+			for ( int j = 0; j < n; j++ )
+				map.put( pool.getObject( rand.nextInt( POOL_SIZE ), ref ), j );
+			instances[ i ] = map;
+		}
+		pool.releaseRef( ref );
+		return instances;
+	}
+
+	private static void measure( final String name, final Supplier< Object[] > fill )
+	{
+		final long before = usedMemory();
+		final long start = System.currentTimeMillis();
+		Object[] instances = fill.get();
+		final long time = System.currentTimeMillis() - start;
+		final long after = usedMemory();
+		System.out.println( String.format( "%s : %6d MB, %5.1f bytes per instance, created in %d ms",
+				name,
+				( after - before ) / ( 1024 * 1024 ),
+				( double ) ( after - before ) / instances.length,
+				time ) );
+		instances = null;
+	}
+
+	private static long usedMemory()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		for ( int i = 0; i < 3; i++ )
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
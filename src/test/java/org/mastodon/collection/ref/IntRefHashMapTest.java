@@ -41,6 +41,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mastodon.collection.IntMapCursor;
 import org.mastodon.pool.TestObject;
 import org.mastodon.pool.TestObjectPool;
 
@@ -584,4 +585,42 @@ public class IntRefHashMapTest
 		final TestObject value = it.value();
 		assertEquals( "Remaining value is not the right one.", storedIds[ 0 ], value.getId() );
 	}
+
+	@Test
+	public void testForEachEntryWithRef()
+	{
+		final TestObject ref = pool.createRef();
+		final HashMap< Integer, Integer > seen = new HashMap<>();
+		final boolean ok = map.forEachEntry( ( key, value ) -> {
+			assertTrue( "Procedure should receive the provided reference.", value == ref );
+			seen.put( key, value.getId() );
+			return true;
+		}, ref );
+		assertTrue( "ForEach procedure should have terminated ok.", ok );
+		assertEquals( "All the entries have not been iterated through.", storedIds.length, seen.size() );
+		for ( final int id : storedIds )
+			assertEquals( "Unexpected value for key " + id, id, ( int ) seen.get( id ) );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testCursor()
+	{
+		final TestObject ref = pool.createRef();
+		final IntMapCursor< TestObject > cursor = map.cursor();
+		int n = 0;
+		while ( cursor.hasNext() )
+		{
+			cursor.advance();
+			final TestObject value = cursor.value( ref );
+			assertEquals( "Cursor value does not match its key.", cursor.key(), value.getId() );
+			if ( cursor.key() == storedIds[ 1 ] )
+				cursor.remove();
+			n++;
+		}
+		assertEquals( "All the entries have not been iterated through.", storedIds.length, n );
+		assertEquals( "Entry removed through the cursor is still in the map.", storedIds.length - 1, map.size() );
+		assertFalse( "Entry removed through the cursor is still in the map.", map.containsKey( storedIds[ 1 ] ) );
+		pool.releaseRef( ref );
+	}
 }
@@ -39,6 +39,7 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.pool.TestObject;
 import org.mastodon.pool.TestObjectPool;
 
@@ -257,4 +258,41 @@ public class ObjectRefHashMapTest
 		final TestObject ref = map.createValueRef();
 		assertNotNull( "Created reference object is null.", ref );
 	}
+
+	@Test
+	public void testCursor()
+	{
+		final TestObject ref = map.createValueRef();
+		final Set< String > keys = new HashSet<>();
+		final MapCursor< String, TestObject > cursor = map.cursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.advance();
+			final String key = cursor.key( null );
+			assertEquals( "Cursor value does not match its key.", map.get( key ), cursor.value( ref ) );
+			keys.add( key );
+			if ( key.equals( k2 ) )
+				cursor.remove();
+		}
+		assertEquals( "All the entries have not been iterated through.", 4, keys.size() );
+		assertFalse( "Entry removed through the cursor is still in the map.", map.containsKey( k2 ) );
+		assertEquals( "Unexpected map size after removal.", 3, map.size() );
+		map.releaseValueRef( ref );
+	}
+
+	@Test
+	public void testForEachEntryWithRef()
+	{
+		final TestObject ref = map.createValueRef();
+		final Set< String > keys = new HashSet<>();
+		final boolean ok = map.forEachEntry( ( key, value ) -> {
+			assertTrue( "Procedure should receive the provided reference.", value == ref );
+			assertEquals( "Unexpected value for key " + key, map.get( key ), value );
+			keys.add( key );
+			return true;
+		}, ref );
+		assertTrue( "ForEach procedure should have terminated ok.", ok );
+		assertEquals( "All the entries have not been iterated through.", 4, keys.size() );
+		map.releaseValueRef( ref );
+	}
 }
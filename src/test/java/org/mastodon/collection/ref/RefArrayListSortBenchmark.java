@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares sorting a {@link RefArrayList} by comparator and by {@code double}
+ * key against sorting an {@link ArrayList} of individually allocated objects.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class RefArrayListSortBenchmark
+{
+	@Param( { "10000", "1000000" } )
+	public int size;
+
+	private TestObjectPool pool;
+
+	private int[] shuffled;
+
+	private RefArrayList< TestObject > list;
+
+	private static final Comparator< TestObject > comparator = Comparator.comparingInt( TestObject::getId );
+
+	@Setup( Level.Trial )
+	public void createObjects()
+	{
+		pool = new TestObjectPool( size );
+		final Random rand = new Random( 42 );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < size; i++ )
+			pool.create( ref ).init( rand.nextInt() );
+		pool.releaseRef( ref );
+
+		shuffled = new int[ size ];
+		for ( int i = 0; i < size; i++ )
+			shuffled[ i ] = i;
+		for ( int i = size; i > 1; i-- )
+		{
+			final int j = rand.nextInt( i );
+			final int tmp = shuffled[ i - 1 ];
+			shuffled[ i - 1 ] = shuffled[ j ];
+			shuffled[ j ] = tmp;
+		}
+	}
+
+	@Setup( Level.Invocation )
+	public void shuffle()
+	{
+		list = new RefArrayList<>( pool, size );
+		list.getIndexCollection().add( shuffled );
+	}
+
+	@Benchmark
+	public RefArrayList< TestObject > sortByComparator()
+	{
+		list.sort( comparator );
+		return list;
+	}
+
+	@Benchmark
+	public RefArrayList< TestObject > sortByDoubleKey()
+	{
+		list.sortByDoubleKey( TestObject::getId, false );
+		return list;
+	}
+
+	@Benchmark
+	public RefArrayList< TestObject > sortByDoubleKeyParallel()
+	{
+		list.sortByDoubleKey( TestObject::getId, true );
+		return list;
+	}
+
+	@Benchmark
+	public ArrayList< TestObject > sortArrayList()
+	{
+		final ArrayList< TestObject > objects = new ArrayList<>( size );
+		for ( int i = 0; i < size; i++ )
+			objects.add( list.get( i ) );
+		objects.sort( comparator );
+		return objects;
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( RefArrayListSortBenchmark.class.getSimpleName() ).build();
+		new Runner( options ).run();
+	}
+}
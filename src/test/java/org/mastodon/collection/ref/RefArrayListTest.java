@@ -28,6 +28,7 @@
  */
 package org.mastodon.collection.ref;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -98,4 +99,43 @@ public class RefArrayListTest
 		}
 	}
 
+	@Test
+	public void testSortByDoubleKey()
+	{
+		list.sortByDoubleKey( o -> -o.getId() );
+
+		int previousID = Integer.MAX_VALUE;
+		for ( final TestObject testObject : list )
+		{
+			assertTrue( "List around ID " + previousID + " is not sorted.", previousID > testObject.getId() );
+			previousID = testObject.getId();
+		}
+	}
+
+	@Test
+	public void testSortByDoubleKeyParallelIsStable()
+	{
+		final int nobj = 100_000;
+		final TestObjectPool pool = new TestObjectPool( nobj );
+		final RefArrayList< TestObject > large = new RefArrayList<>( pool, nobj );
+		final Random rand = new Random( 1l );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < nobj; i++ )
+			large.add( pool.create( ref ).init( rand.nextInt( 100 ) ) );
+		pool.releaseRef( ref );
+
+		large.sortByDoubleKey( TestObject::getId );
+
+		assertEquals( nobj, large.size() );
+		final TestObject o1 = pool.createRef();
+		final TestObject o2 = pool.createRef();
+		for ( int i = 1; i < nobj; i++ )
+		{
+			large.get( i - 1, o1 );
+			large.get( i, o2 );
+			assertTrue( "List at index " + i + " is not sorted.", o1.getId() <= o2.getId() );
+			if ( o1.getId() == o2.getId() )
+				assertTrue( "Sort is not stable at index " + i + ".", o1.getInternalPoolIndex() < o2.getInternalPoolIndex() );
+		}
+	}
 }
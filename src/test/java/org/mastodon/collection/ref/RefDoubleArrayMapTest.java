@@ -0,0 +1,69 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mastodon.collection.RefDoubleMap;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+/**
+ * Runs the {@link RefDoubleHashMapTest} tests on a {@link RefDoubleArrayMap}.
+ */
+public class RefDoubleArrayMapTest extends RefDoubleHashMapTest
+{
+	@Override
+	protected RefDoubleMap< TestObject > createMap( final TestObjectPool pool, final double noEntryValue )
+	{
+		return new RefDoubleArrayMap<>( pool, noEntryValue );
+	}
+
+	@Test
+	public void testDenseAccess()
+	{
+		final RefDoubleArrayMap< TestObject > map = ( RefDoubleArrayMap< TestObject > ) this.map;
+		final double[] array = map.getArray();
+		for ( int i = 0; i < ins.size(); i++ )
+		{
+			final int index = ins.get( i ).getInternalPoolIndex();
+			assertEquals( "Backing array does not hold the expected value.", values[ i ], array[ index ], 0. );
+			assertEquals( "getQuick() does not return the expected value.", values[ i ], map.getQuick( index ), 0. );
+		}
+		for ( final TestObject out : notIns )
+			assertEquals( "Unmapped key should have the no-entry value.", noEntryValue, map.getQuick( out.getInternalPoolIndex() ), 0. );
+		assertEquals( "Index beyond capacity should have the no-entry value.", noEntryValue, map.getQuick( 1000 ), 0. );
+
+		map.ensureCapacity( 1000 );
+		assertTrue( "ensureCapacity() should grow the backing array.", map.getArray().length >= 1000 );
+		assertEquals( "Growing should not change the size.", ins.size(), map.size() );
+	}
+}
@@ -43,6 +43,7 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mastodon.collection.RefDoubleMap;
 import org.mastodon.pool.TestObject;
 import org.mastodon.pool.TestObjectPool;
 
@@ -57,22 +58,27 @@ import gnu.trove.procedure.TObjectProcedure;
 public class RefDoubleHashMapTest
 {
 
-	private double noEntryValue;
+	protected double noEntryValue;
 
-	private RefDoubleHashMap< TestObject > map;
+	protected RefDoubleMap< TestObject > map;
 
-	private ArrayList< TestObject > notIns;
+	protected ArrayList< TestObject > notIns;
 
-	private ArrayList< TestObject > ins;
+	protected ArrayList< TestObject > ins;
 
-	private double[] values;
+	protected double[] values;
+
+	protected RefDoubleMap< TestObject > createMap( final TestObjectPool pool, final double noEntryValue )
+	{
+		return new RefDoubleHashMap<>( pool, noEntryValue );
+	}
 
 	@Before
 	public void setUp() throws Exception
 	{
 		final TestObjectPool pool = new TestObjectPool( 10 );
 		noEntryValue = Double.NaN;
-		map = new RefDoubleHashMap< >( pool, noEntryValue );
+		map = createMap( pool, noEntryValue );
 		final TestObject A = pool.create().init( 1 );
 		final TestObject B = pool.create().init( 2 );
 		final TestObject C = pool.create().init( 3 );
@@ -152,7 +158,7 @@ public class RefDoubleHashMapTest
 	public void testIsEmpty()
 	{
 		final TestObjectPool pool = new TestObjectPool( 10 );
-		final RefDoubleHashMap< TestObject > lmap = new RefDoubleHashMap< >( pool, noEntryValue );
+		final RefDoubleMap< TestObject > lmap = createMap( pool, noEntryValue );
 		assertTrue( "Newly created map should be empty.", lmap.isEmpty() );
 	}
 
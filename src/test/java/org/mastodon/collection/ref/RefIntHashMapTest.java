@@ -43,6 +43,7 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mastodon.collection.RefIntMap;
 import org.mastodon.pool.TestObject;
 import org.mastodon.pool.TestObjectPool;
 
@@ -57,22 +58,27 @@ import gnu.trove.procedure.TObjectProcedure;
 public class RefIntHashMapTest
 {
 
-	private int noEntryValue;
+	protected int noEntryValue;
 
-	private RefIntHashMap< TestObject > map;
+	protected RefIntMap< TestObject > map;
 
-	private ArrayList< TestObject > notIns;
+	protected ArrayList< TestObject > notIns;
 
-	private ArrayList< TestObject > ins;
+	protected ArrayList< TestObject > ins;
 
-	private int[] values;
+	protected int[] values;
+
+	protected RefIntMap< TestObject > createMap( final TestObjectPool pool, final int noEntryValue )
+	{
+		return new RefIntHashMap<>( pool, noEntryValue );
+	}
 
 	@Before
 	public void setUp() throws Exception
 	{
 		final TestObjectPool pool = new TestObjectPool( 10 );
 		noEntryValue = -1;
-		map = new RefIntHashMap< >( pool, noEntryValue );
+		map = createMap( pool, noEntryValue );
 		final TestObject A = pool.create().init( 1 );
 		final TestObject B = pool.create().init( 2 );
 		final TestObject C = pool.create().init( 3 );
@@ -152,7 +158,7 @@ public class RefIntHashMapTest
 	public void testIsEmpty()
 	{
 		final TestObjectPool pool = new TestObjectPool( 10 );
-		final RefIntHashMap< TestObject > lmap = new RefIntHashMap< >( pool, noEntryValue );
+		final RefIntMap< TestObject > lmap = createMap( pool, noEntryValue );
 		assertTrue( "Newly created map should be empty.", lmap.isEmpty() );
 	}
 
@@ -318,7 +324,7 @@ public class RefIntHashMapTest
 	{
 		final TestObjectPool pool = new TestObjectPool( 10 );
 		final int lNoEntryValue = 1000;
-		final RefIntHashMap< TestObject > lmap = new RefIntHashMap< >( pool, lNoEntryValue );
+		final RefIntMap< TestObject > lmap = createMap( pool, lNoEntryValue );
 		assertEquals( "Unexpected 'no_entry_value'.", lNoEntryValue, lmap.getNoEntryValue() );
 	}
 
@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.collection.MapCursor;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares iterating over a {@link RefRefHashMap} through its entry set,
+ * through {@link RefRefHashMap#forEachEntry} with caller-provided references,
+ * and through a {@link MapCursor}. Run with the GC profiler to compare the
+ * allocation rates.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class RefMapIterationBenchmark
+{
+	@Param( { "1000", "100000" } )
+	public int size;
+
+	private TestObjectPool pool;
+
+	private RefRefHashMap< TestObject, TestObject > map;
+
+	private TestObject keyRef;
+
+	private TestObject valueRef;
+
+	@Setup( Level.Trial )
+	public void createMap()
+	{
+		pool = new TestObjectPool( 2 * size );
+		map = new RefRefHashMap<>( pool, pool, size );
+		keyRef = pool.createRef();
+		valueRef = pool.createRef();
+		final TestObject k = pool.createRef();
+		final TestObject v = pool.createRef();
+		for ( int i = 0; i < size; i++ )
+		{
+			pool.create( k ).init( i );
+			pool.create( v ).init( -i );
+			map.put( k, v, valueRef );
+		}
+		pool.releaseRef( k );
+		pool.releaseRef( v );
+	}
+
+	@Benchmark
+	public long entrySet()
+	{
+		long sum = 0;
+		for ( final Map.Entry< TestObject, TestObject > e : map.entrySet() )
+			sum += e.getKey().getId() - e.getValue().getId();
+		return sum;
+	}
+
+	@Benchmark
+	public long forEachEntry()
+	{
+		final long[] sum = new long[ 1 ];
+		map.forEachEntry( ( k, v ) -> {
+			sum[ 0 ] += k.getId() - v.getId();
+			return true;
+		}, keyRef, valueRef );
+		return sum[ 0 ];
+	}
+
+	@Benchmark
+	public long cursor()
+	{
+		long sum = 0;
+		final MapCursor< TestObject, TestObject > c = map.cursor();
+		while ( c.hasNext() )
+		{
+			c.advance();
+			sum += c.key( keyRef ).getId() - c.value( valueRef ).getId();
+		}
+		return sum;
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder()
+				.include( RefMapIterationBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,208 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.collection.ref;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.MultiDoublePropertyMap;
+import org.mastodon.properties.undo.PropertyUndoRedoStack;
+
+public class RefMultiDoubleHashMapTest
+{
+	private static final double NO_ENTRY = Double.NaN;
+
+	private TestObjectPool pool;
+
+	private RefMultiDoubleHashMap< TestObject > map;
+
+	private TestObject a;
+
+	private TestObject b;
+
+	private TestObject c;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		a = pool.create().init( 1 );
+		b = pool.create().init( 2 );
+		c = pool.create().init( 3 );
+		map = new RefMultiDoubleHashMap<>( pool, 3, NO_ENTRY );
+		map.put( a, new double[] { 1, 2, 3 } );
+		map.put( b, 1, 20 );
+	}
+
+	@Test
+	public void testGet()
+	{
+		assertEquals( 2, map.size() );
+		assertEquals( 3, map.get( a, 2 ), 0 );
+		assertEquals( 20, map.get( b, 1 ), 0 );
+		assertTrue( "Unset column should be the no-entry value.", Double.isNaN( map.get( b, 0 ) ) );
+		assertTrue( "Missing key should give the no-entry value.", Double.isNaN( map.get( c, 0 ) ) );
+
+		final double[] row = new double[ 3 ];
+		assertTrue( map.get( a, row ) );
+		assertArrayEquals( new double[] { 1, 2, 3 }, row, 0 );
+		assertFalse( map.get( c, row ) );
+		assertArrayEquals( new double[] { NO_ENTRY, NO_ENTRY, NO_ENTRY }, row, 0 );
+	}
+
+	@Test
+	public void testPut()
+	{
+		final double[] replaced = new double[ 3 ];
+		assertTrue( map.put( a, new double[] { 4, 5, 6 }, replaced ) );
+		assertArrayEquals( new double[] { 1, 2, 3 }, replaced, 0 );
+		assertFalse( map.put( c, new double[] { 7, 8, 9 }, replaced ) );
+		assertArrayEquals( new double[] { NO_ENTRY, NO_ENTRY, NO_ENTRY }, replaced, 0 );
+		assertEquals( 5, map.put( a, 1, 50 ), 0 );
+		assertEquals( 50, map.get( a, 1 ), 0 );
+		assertEquals( 3, map.size() );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		final double[] replaced = new double[ 3 ];
+		assertTrue( map.remove( a, replaced ) );
+		assertArrayEquals( new double[] { 1, 2, 3 }, replaced, 0 );
+		assertFalse( map.containsKey( a ) );
+		assertFalse( map.remove( a ) );
+		assertFalse( map.remove( "not a key" ) );
+		assertEquals( 1, map.size() );
+	}
+
+	@Test( expected = IndexOutOfBoundsException.class )
+	public void testBadColumn()
+	{
+		map.get( a, 3 );
+	}
+
+	@Test
+	public void testColumnExport()
+	{
+		final RefList< TestObject > keys = map.keys();
+		final double[] col1 = map.getColumn( 1 );
+		assertEquals( keys.size(), col1.length );
+		for ( int i = 0; i < keys.size(); i++ )
+			assertEquals( map.get( keys.get( i ), 1 ), col1[ i ], 0 );
+	}
+
+	@Test
+	public void testForEachEntry()
+	{
+		final Map< Integer, Double > col2 = new HashMap<>();
+		final TestObject ref = map.createRef();
+		map.forEachEntry( ( key, row ) -> {
+			col2.put( key.getId(), row[ 2 ] );
+			return true;
+		}, ref );
+		map.releaseRef( ref );
+		assertEquals( 2, col2.size() );
+		assertEquals( 3, col2.get( a.getId() ), 0 );
+		assertTrue( Double.isNaN( col2.get( b.getId() ) ) );
+	}
+
+	/**
+	 * Random puts and removes, including growth of the table and
+	 * backward-shift deletion, compared against a {@link HashMap}.
+	 */
+	@Test
+	public void testRandomAgainstHashMap()
+	{
+		final int n = 2000;
+		final TestObjectPool pool = new TestObjectPool( n );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < n; i++ )
+			pool.create( ref ).init( i );
+		final RefMultiDoubleHashMap< TestObject > map = new RefMultiDoubleHashMap<>( pool, 2, -1 );
+		final Map< Integer, double[] > truth = new HashMap<>();
+		final Random rand = new Random( 1 );
+		for ( int i = 0; i < 50000; i++ )
+		{
+			final int index = rand.nextInt( n );
+			pool.getObject( index, ref );
+			if ( rand.nextInt( 3 ) == 0 )
+			{
+				assertEquals( truth.remove( index ) != null, map.remove( ref ) );
+			}
+			else
+			{
+				final double[] row = new double[] { rand.nextDouble(), i };
+				assertEquals( truth.put( index, row ) != null, map.put( ref, row ) );
+			}
+		}
+		assertEquals( truth.size(), map.size() );
+		final double[] row = new double[ 2 ];
+		for ( int index = 0; index < n; index++ )
+		{
+			pool.getObject( index, ref );
+			final double[] expected = truth.get( index );
+			assertEquals( expected != null, map.get( ref, row ) );
+			if ( expected != null )
+				assertArrayEquals( expected, row, 0 );
+		}
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testPropertyMapUndoRedo()
+	{
+		final MultiDoublePropertyMap< TestObject > property = new MultiDoublePropertyMap<>( pool, 2, NO_ENTRY );
+		final PropertyUndoRedoStack< TestObject > stack = property.createUndoRedoStack();
+
+		stack.record( a );
+		property.set( a, new double[] { 1, 2 } );
+		stack.record( a );
+		property.set( a, 1, 3 );
+		assertArrayEquals( new double[] { 1, 3 }, property.get( a ), 0 );
+
+		stack.undo( a );
+		assertArrayEquals( new double[] { 1, 2 }, property.get( a ), 0 );
+		stack.undo( a );
+		assertFalse( property.isSet( a ) );
+		stack.redo( a );
+		stack.redo( a );
+		assertArrayEquals( new double[] { 1, 3 }, property.get( a ), 0 );
+	}
+}
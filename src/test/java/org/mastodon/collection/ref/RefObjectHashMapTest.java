@@ -36,6 +36,7 @@ import java.util.Collection;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.pool.TestObject;
 import org.mastodon.pool.TestObjectPool;
 
@@ -166,4 +167,40 @@ public class RefObjectHashMapTest
 		keySet.clear();
 		assertTrue( "After clearing the key set, the map should be empty, but was not.", map.isEmpty() );
 	}
+
+	@Test
+	public void testCursor()
+	{
+		final TestObject ref = pool.createRef();
+		final StringBuilder values = new StringBuilder();
+		final MapCursor< TestObject, String > cursor = map.cursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.advance();
+			final TestObject key = cursor.key( ref );
+			assertEquals( "Cursor value does not match its key.", map.get( key ), cursor.value( null ) );
+			values.append( cursor.value( null ) );
+			if ( key.equals( A ) )
+				cursor.remove();
+		}
+		assertEquals( "All the entries have not been iterated through.", 5, values.length() );
+		assertFalse( "Entry removed through the cursor is still in the map.", map.containsKey( A ) );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testForEachEntryWithRef()
+	{
+		final TestObject ref = pool.createRef();
+		final StringBuilder values = new StringBuilder();
+		final boolean ok = map.forEachEntry( ( key, value ) -> {
+			assertTrue( "Procedure should receive the provided reference.", key == ref );
+			assertEquals( "Unexpected value for key.", map.get( key ), value );
+			values.append( value );
+			return true;
+		}, ref );
+		assertTrue( "ForEach procedure should have terminated ok.", ok );
+		assertEquals( "All the entries have not been iterated through.", 5, values.length() );
+		pool.releaseRef( ref );
+	}
 }
@@ -35,10 +35,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
+import org.mastodon.collection.MapCursor;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefSet;
 import org.mastodon.pool.OtherTestObject;
@@ -232,4 +234,84 @@ public class RefRefHashMapTest extends RefRefHashMapAbstractTest
 		assertEquals( v2.getId(), (int) result.get( k3.getId() ) );
 		assertEquals( v3.getId(), (int) result.get( k4.getId() ) );
 	}
+
+	@Test
+	public void testEntrySet()
+	{
+		final Set< Map.Entry< TestObject, OtherTestObject > > entries = map.entrySet();
+		assertEquals( "Entry set does not have the size of the map.", 4, entries.size() );
+		final Map< Integer, Integer > result = new HashMap<>();
+		for ( final Map.Entry< TestObject, OtherTestObject > e : entries )
+			result.put( e.getKey().getId(), e.getValue().getId() );
+		assertEquals( v0.getId(), ( int ) result.get( k1.getId() ) );
+		assertEquals( v1.getId(), ( int ) result.get( k2.getId() ) );
+		assertEquals( v2.getId(), ( int ) result.get( k3.getId() ) );
+		assertEquals( v3.getId(), ( int ) result.get( k4.getId() ) );
+
+		// setValue and remove through the iterator.
+		final Iterator< Map.Entry< TestObject, OtherTestObject > > it = entries.iterator();
+		while ( it.hasNext() )
+		{
+			final Map.Entry< TestObject, OtherTestObject > e = it.next();
+			if ( e.getKey().equals( k1 ) )
+				assertEquals( "Unexpected replaced value.", v0, e.setValue( v4 ) );
+			else if ( e.getKey().equals( k2 ) )
+				it.remove();
+		}
+		assertEquals( "Value set through the entry is not in the map.", v4, map.get( k1 ) );
+		assertFalse( "Entry removed through the iterator is still in the map.", map.containsKey( k2 ) );
+		assertEquals( "Unexpected map size after removal.", 3, entries.size() );
+	}
+
+	@Test
+	public void testCursor()
+	{
+		final TestObject keyRef = pool.createRef();
+		final OtherTestObject valueRef = map.createValueRef();
+		final Map< Integer, Integer > result = new HashMap<>();
+		final MapCursor< TestObject, OtherTestObject > cursor = map.cursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.advance();
+			final TestObject key = cursor.key( keyRef );
+			final OtherTestObject value = cursor.value( valueRef );
+			assertTrue( "Cursor should use the provided references.", key == keyRef && value == valueRef );
+			result.put( key.getId(), value.getId() );
+			if ( key.equals( k3 ) )
+				cursor.remove();
+		}
+		assertEquals( 4, result.size() );
+		assertEquals( v2.getId(), ( int ) result.get( k3.getId() ) );
+		assertFalse( "Entry removed through the cursor is still in the map.", map.containsKey( k3 ) );
+		pool.releaseRef( keyRef );
+		map.releaseValueRef( valueRef );
+	}
+
+	@Test
+	public void testForEachEntryWithRefs()
+	{
+		final TestObject keyRef = pool.createRef();
+		final OtherTestObject valueRef = map.createValueRef();
+		final Map< Integer, Integer > result = new HashMap<>();
+		final boolean ok = map.forEachEntry( ( key, value ) -> {
+			result.put( key.getId(), value.getId() );
+			return result.size() < 2;
+		}, keyRef, valueRef );
+		assertFalse( "ForEach procedure should have been interrupted.", ok );
+		assertEquals( 2, result.size() );
+		pool.releaseRef( keyRef );
+		map.releaseValueRef( valueRef );
+	}
+
+	@Test
+	public void testPutAllSamePools()
+	{
+		final RefRefHashMap< TestObject, OtherTestObject > other = new RefRefHashMap<>( pool, otherPool );
+		other.put( k0, v4 );
+		other.put( k1, v1 );
+		map.putAll( other );
+		assertEquals( 5, map.size() );
+		assertEquals( v4, map.get( k0 ) );
+		assertEquals( v1, map.get( k1 ) );
+	}
 }
@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.io.properties.CodecPropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.io.properties.StringPropertyMapSerializer;
+import org.mastodon.io.properties.ValueCodecs;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.ObjPropertyMap;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+public class CodecPropertyMapSerializerTest
+{
+	private enum Color
+	{
+		RED, GREEN, BLUE
+	}
+
+	private TestObjectPool pool;
+
+	private ObjectToFileIdMap< TestObject > objectToFileIdMap;
+
+	private FileIdToObjectMap< TestObject > fileIdToObjectMap;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		final TIntIntHashMap objectIdToFileId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TIntIntHashMap fileIdToObjectId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 10000; i++ )
+		{
+			final TestObject a = pool.create( ref ).init( i );
+			objectIdToFileId.put( pool.getId( a ), 10000 - i );
+			fileIdToObjectId.put( 10000 - i, pool.getId( a ) );
+		}
+		pool.releaseRef( ref );
+		objectToFileIdMap = new ObjectToFileIdMap<>( objectIdToFileId, pool );
+		fileIdToObjectMap = new FileIdToObjectMap<>( fileIdToObjectId, pool );
+	}
+
+	private < T > ObjPropertyMap< TestObject, T > fill( final Function< Integer, T > value, final int step )
+	{
+		final ObjPropertyMap< TestObject, T > map = new ObjPropertyMap<>( pool );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < pool.size(); i += step )
+			map.set( pool.getObject( i, ref ), value.apply( i ) );
+		pool.releaseRef( ref );
+		return map;
+	}
+
+	private byte[] write( final PropertyMapSerializer< TestObject, ? > serializer ) throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		serializer.writePropertyMap( objectToFileIdMap, oos );
+		oos.close();
+		return bs.toByteArray();
+	}
+
+	private void read( final PropertyMapSerializer< TestObject, ? > serializer, final byte[] bytes ) throws IOException, ClassNotFoundException
+	{
+		serializer.readPropertyMap( fileIdToObjectMap, new ObjectInputStream( new ByteArrayInputStream( bytes ) ) );
+	}
+
+	@Test
+	public void testStrings() throws IOException, ClassNotFoundException
+	{
+		final ObjPropertyMap< TestObject, String > map = fill( i -> "sé" + i, 3 );
+		final TestObject ref = pool.createRef();
+		final char[] chars = new char[ 100000 ];
+		Arrays.fill( chars, '一' );
+		map.set( pool.getObject( 1, ref ), new String( chars ) );
+
+		final ObjPropertyMap< TestObject, String > rmap = new ObjPropertyMap<>( pool );
+		read( new CodecPropertyMapSerializer<>( rmap, ValueCodecs.strings() ),
+				write( new CodecPropertyMapSerializer<>( map, ValueCodecs.strings() ) ) );
+		assertEquals( map, rmap );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testInternedStrings() throws IOException, ClassNotFoundException
+	{
+		final ObjPropertyMap< TestObject, String > map = fill( i -> "label" + ( i % 10 ), 1 );
+		final byte[] interned = write( new CodecPropertyMapSerializer<>( map, ValueCodecs.internedStrings() ) );
+		final byte[] plain = write( new CodecPropertyMapSerializer<>( map, ValueCodecs.strings() ) );
+		assertTrue( interned.length < plain.length );
+
+		final ObjPropertyMap< TestObject, String > rmap = new ObjPropertyMap<>( pool );
+		read( new CodecPropertyMapSerializer<>( rmap, ValueCodecs.internedStrings() ), interned );
+		assertEquals( map, rmap );
+		final TestObject ref1 = pool.createRef();
+		final TestObject ref2 = pool.createRef();
+		assertSame( rmap.get( pool.getObject( 3, ref1 ) ), rmap.get( pool.getObject( 13, ref2 ) ) );
+		pool.releaseRef( ref1 );
+		pool.releaseRef( ref2 );
+	}
+
+	@Test
+	public void testArrays() throws IOException, ClassNotFoundException
+	{
+		final ObjPropertyMap< TestObject, double[] > doubles = fill( i -> new double[] { i, -i, i / 3. }, 2 );
+		final ObjPropertyMap< TestObject, double[] > rdoubles = new ObjPropertyMap<>( pool );
+		read( new CodecPropertyMapSerializer<>( rdoubles, ValueCodecs.doubleArrays() ),
+				write( new CodecPropertyMapSerializer<>( doubles, ValueCodecs.doubleArrays() ) ) );
+
+		final ObjPropertyMap< TestObject, int[] > ints = fill( i -> new int[ i % 5 ], 1 );
+		final ObjPropertyMap< TestObject, int[] > rints = new ObjPropertyMap<>( pool );
+		read( new CodecPropertyMapSerializer<>( rints, ValueCodecs.intArrays() ),
+				write( new CodecPropertyMapSerializer<>( ints, ValueCodecs.intArrays() ) ) );
+
+		assertEquals( doubles.size(), rdoubles.size() );
+		assertEquals( ints.size(), rints.size() );
+		for ( final TestObject o : pool )
+		{
+			if ( doubles.isSet( o ) )
+				assertArrayEquals( doubles.get( o ), rdoubles.get( o ), 0 );
+			assertArrayEquals( ints.get( o ), rints.get( o ) );
+		}
+	}
+
+	@Test
+	public void testEnums() throws IOException, ClassNotFoundException
+	{
+		final ObjPropertyMap< TestObject, Color > map = fill( i -> Color.values()[ i % 3 ], 1 );
+		final byte[] bytes = write( new CodecPropertyMapSerializer<>( map, ValueCodecs.enums( Color.class ) ) );
+		final ObjPropertyMap< TestObject, Color > rmap = new ObjPropertyMap<>( pool );
+		read( new CodecPropertyMapSerializer<>( rmap, ValueCodecs.enums( Color.class ) ), bytes );
+		assertEquals( map, rmap );
+	}
+
+	@Test
+	public void testStringColumnsInContainer() throws IOException, ClassNotFoundException
+	{
+		final ObjPropertyMap< TestObject, String > map = fill( i -> "label" + ( i % 10 ), 1 );
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		serializers.put( "strings", new StringPropertyMapSerializer<>( map ) );
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		RawPropertyIO.writeVersionedPropertyMaps( objectToFileIdMap, serializers, oos );
+		oos.close();
+		assertTrue( bs.size() < write( new StringPropertyMapSerializer<>( map ) ).length );
+
+		final ObjPropertyMap< TestObject, String > rmap = new ObjPropertyMap<>( pool );
+		final PropertyMapSerializers< TestObject > rserializers = new PropertyMapSerializers<>();
+		rserializers.put( "strings", new StringPropertyMapSerializer<>( rmap ) );
+		RawPropertyIO.readPropertyMaps( fileIdToObjectMap, rserializers, new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) ) );
+		assertEquals( map, rmap );
+	}
+}
@@ -29,6 +29,7 @@
 package org.mastodon.io;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -93,4 +94,22 @@ public class DoublePropertyMapSerializerTest
 
 		assertEquals( map, rmap );
 	}
+
+	@Test
+	public void testDense() throws IOException, ClassNotFoundException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		new DoublePropertyMapSerializer<>( map ).writePropertyMap( objectToFileIdMap, oos );
+		oos.close();
+
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		final DoublePropertyMap< TestObject > rmap = new DoublePropertyMap<>( pool, Double.NEGATIVE_INFINITY, 10, true );
+		new DoublePropertyMapSerializer<>( rmap ).readPropertyMap( fileIdToObjectMap, ois );
+
+		assertTrue( rmap.isDense() );
+		assertEquals( map.size(), rmap.size() );
+		for ( final TestObject o : pool )
+			assertEquals( map.getDouble( o ), rmap.getDouble( o ), 0. );
+	}
 }
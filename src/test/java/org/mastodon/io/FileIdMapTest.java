@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.io.properties.DoublePropertyMapSerializer;
+import org.mastodon.io.properties.IntPropertyMapSerializer;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+public class FileIdMapTest
+{
+	private TestObjectPool pool;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 1000; i++ )
+			pool.create( ref ).init( i );
+		pool.releaseRef( ref );
+	}
+
+	private void deleteSome()
+	{
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 1000; i += 7 )
+			pool.delete( pool.getObject( i, ref ) );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testSequentialIdentity()
+	{
+		assertTrue( ObjectToFileIdMap.sequential( pool, pool ).isIdentity() );
+		assertTrue( FileIdToObjectMap.sequential( pool, pool ).isIdentity() );
+	}
+
+	@Test
+	public void testSequential()
+	{
+		deleteSome();
+		final ObjectToFileIdMap< TestObject > objectToFileId = ObjectToFileIdMap.sequential( pool, pool );
+		final FileIdToObjectMap< TestObject > fileIdToObject = FileIdToObjectMap.sequential( pool, pool );
+		assertFalse( objectToFileId.isIdentity() );
+		assertFalse( fileIdToObject.isIdentity() );
+		final TestObject ref = pool.createRef();
+		int fileId = 0;
+		for ( final TestObject o : pool )
+		{
+			assertEquals( fileId, objectToFileId.getId( o ) );
+			assertEquals( o, fileIdToObject.getObject( fileId, ref ) );
+			++fileId;
+		}
+		pool.releaseRef( ref );
+	}
+
+	private void assertRoundTrip( final ObjectToFileIdMap< TestObject > objectToFileId, final FileIdToObjectMap< TestObject > fileIdToObject, final boolean dense ) throws IOException
+	{
+		final DoublePropertyMap< TestObject > doubles = new DoublePropertyMap<>( pool, Double.NaN, 10, dense );
+		final IntPropertyMap< TestObject > ints = new IntPropertyMap<>( pool, -1, 10, dense );
+		for ( final TestObject o : pool )
+		{
+			if ( o.getId() % 3 != 0 )
+				doubles.set( o, o.getId() * 0.5 );
+			ints.set( o, -o.getId() );
+		}
+
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		new DoublePropertyMapSerializer<>( doubles ).writePropertyColumns( objectToFileId, oos );
+		new IntPropertyMapSerializer<>( ints ).writePropertyColumns( objectToFileId, oos );
+		oos.close();
+
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN, 10, dense );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1, 10, dense );
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		new DoublePropertyMapSerializer<>( rdoubles ).readPropertyColumns( fileIdToObject, ois );
+		new IntPropertyMapSerializer<>( rints ).readPropertyColumns( fileIdToObject, ois );
+		assertEquals( doubles, rdoubles );
+		assertEquals( ints, rints );
+	}
+
+	@Test
+	public void testIdentityRoundTrip() throws IOException
+	{
+		assertRoundTrip( ObjectToFileIdMap.identity( pool ), FileIdToObjectMap.identity( pool ), true );
+		assertRoundTrip( ObjectToFileIdMap.identity( pool ), FileIdToObjectMap.identity( pool ), false );
+	}
+
+	@Test
+	public void testArrayRoundTrip() throws IOException
+	{
+		deleteSome();
+		assertRoundTrip( ObjectToFileIdMap.sequential( pool, pool ), FileIdToObjectMap.sequential( pool, pool ), true );
+		assertRoundTrip( ObjectToFileIdMap.sequential( pool, pool ), FileIdToObjectMap.sequential( pool, pool ), false );
+	}
+}
@@ -40,6 +40,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.mastodon.collection.ref.RefSetImp;
+import org.mastodon.io.labels.CompactLabelSetsSerializer;
 import org.mastodon.io.labels.LabelSetsSerializer;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.pool.TestObject;
@@ -85,25 +86,26 @@ public class LabelSetsSerializerTest
 		fileIdToObjectMap = new FileIdToObjectMap<>( fileIdToObjectId, pool );
 	}
 
+	private static final LabelSetsSerializer.LabelSerializer< Integer > labelSerializer = new LabelSetsSerializer.LabelSerializer< Integer >()
+	{
+		@Override
+		public void writeLabel( final Integer label, final ObjectOutputStream oos ) throws IOException
+		{
+			oos.writeInt( label );
+		}
+
+		@Override
+		public Integer readLabel( final ObjectInputStream ois ) throws IOException
+		{
+			return ois.readInt();
+		}
+	};
+
 	@Test
 	public void test() throws IOException, ClassNotFoundException
 	{
 		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
 		final ObjectOutputStream oos = new ObjectOutputStream( bs );
-		final LabelSetsSerializer.LabelSerializer< Integer > labelSerializer = new LabelSetsSerializer.LabelSerializer< Integer >()
-		{
-			@Override
-			public void writeLabel( final Integer label, final ObjectOutputStream oos ) throws IOException
-			{
-				oos.writeInt( label );
-			}
-
-			@Override
-			public Integer readLabel( final ObjectInputStream ois ) throws IOException
-			{
-				return ois.readInt();
-			}
-		};
 		LabelSetsSerializer.writePropertyMap( labelsets, labelSerializer, objectToFileIdMap, oos );
 		oos.close();
 
@@ -125,4 +127,88 @@ public class LabelSetsSerializerTest
 			assertEquals( ( ( RefSetImp< TestObject > ) labelsets.getLabeledWith( i ) ).getIndexCollection(), ( ( RefSetImp< TestObject > ) rlabelsets.getLabeledWith( i ) ).getIndexCollection() );
 		}
 	}
+
+	@Test
+	public void testCompact() throws IOException, ClassNotFoundException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		new CompactLabelSetsSerializer<>( labelsets, labelSerializer ).writePropertyMap( objectToFileIdMap, oos );
+		oos.close();
+
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		final LabelSets< TestObject, Integer > rlabelsets = new LabelSets<>( pool );
+		new CompactLabelSetsSerializer<>( rlabelsets, labelSerializer ).readPropertyMap( fileIdToObjectMap, ois );
+
+		pool.forEach( o -> assertEquals( labelsets.getLabels( o ), rlabelsets.getLabels( o ) ) );
+		for ( int i = 0; i < 20; ++i )
+			assertEquals( ( ( RefSetImp< TestObject > ) labelsets.getLabeledWith( i ) ).getIndexCollection(), ( ( RefSetImp< TestObject > ) rlabelsets.getLabeledWith( i ) ).getIndexCollection() );
+	}
+
+	/**
+	 * Label sets encoded as bitsets are read from and written in the same
+	 * format.
+	 */
+	@Test
+	public void testBitSets() throws IOException, ClassNotFoundException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		LabelSetsSerializer.writePropertyMap( labelsets, labelSerializer, objectToFileIdMap, oos );
+		oos.close();
+
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		final LabelSets< TestObject, Integer > bitlabelsets = new LabelSets<>( pool, true );
+		LabelSetsSerializer.readPropertyMap( bitlabelsets, labelSerializer, fileIdToObjectMap, ois );
+		pool.forEach( o -> assertEquals( labelsets.getLabels( o ), bitlabelsets.getLabels( o ) ) );
+
+		final ByteArrayOutputStream bs2 = new ByteArrayOutputStream();
+		final ObjectOutputStream oos2 = new ObjectOutputStream( bs2 );
+		new CompactLabelSetsSerializer<>( bitlabelsets, labelSerializer ).writePropertyMap( objectToFileIdMap, oos2 );
+		oos2.close();
+
+		final ObjectInputStream ois2 = new ObjectInputStream( new ByteArrayInputStream( bs2.toByteArray() ) );
+		final LabelSets< TestObject, Integer > rlabelsets = new LabelSets<>( pool );
+		new CompactLabelSetsSerializer<>( rlabelsets, labelSerializer ).readPropertyMap( fileIdToObjectMap, ois2 );
+		pool.forEach( o -> assertEquals( labelsets.getLabels( o ), rlabelsets.getLabels( o ) ) );
+		for ( int i = 0; i < 20; ++i )
+			assertEquals( ( ( RefSetImp< TestObject > ) labelsets.getLabeledWith( i ) ).getIndexCollection(), ( ( RefSetImp< TestObject > ) bitlabelsets.getLabeledWith( i ) ).getIndexCollection() );
+	}
+
+	/**
+	 * Many distinct label sets, and objects without labels.
+	 */
+	@Test
+	public void testCompactManySets() throws IOException, ClassNotFoundException
+	{
+		final TestObjectPool pool = new TestObjectPool( 10 );
+		final LabelSets< TestObject, Integer > labelsets = new LabelSets<>( pool );
+		final TIntIntHashMap objectIdToFileId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TIntIntHashMap fileIdToObjectId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 5000; i++ )
+		{
+			final TestObject a = pool.create( ref ).init( i );
+			final Set< Integer > labels = labelsets.getLabels( a );
+			for ( int bit = 0; bit < 12; ++bit )
+				if ( ( i & ( 1 << bit ) ) != 0 && i % 5 != 0 )
+					labels.add( bit );
+			objectIdToFileId.put( pool.getId( a ), 3 * i );
+			fileIdToObjectId.put( 3 * i, pool.getId( a ) );
+		}
+		pool.releaseRef( ref );
+
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		new CompactLabelSetsSerializer<>( labelsets, labelSerializer ).writePropertyMap( new ObjectToFileIdMap<>( objectIdToFileId, pool ), oos );
+		oos.close();
+
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		final LabelSets< TestObject, Integer > rlabelsets = new LabelSets<>( pool );
+		new CompactLabelSetsSerializer<>( rlabelsets, labelSerializer ).readPropertyMap( new FileIdToObjectMap<>( fileIdToObjectId, pool ), ois );
+
+		pool.forEach( o -> assertEquals( labelsets.getLabels( o ), rlabelsets.getLabels( o ) ) );
+		for ( int i = 0; i < 12; ++i )
+			assertEquals( labelsets.getLabeledWith( i ).size(), rlabelsets.getLabeledWith( i ).size() );
+	}
 }
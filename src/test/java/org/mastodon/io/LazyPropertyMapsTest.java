@@ -0,0 +1,203 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.io.properties.DoublePropertyMapSerializer;
+import org.mastodon.io.properties.IntPropertyMapSerializer;
+import org.mastodon.io.properties.LazyDoublePropertyMap;
+import org.mastodon.io.properties.LazyIntPropertyMap;
+import org.mastodon.io.properties.LazyObjPropertyMap;
+import org.mastodon.io.properties.LazyPropertyMaps;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.io.properties.StringPropertyMapSerializer;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+public class LazyPropertyMapsTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestObjectPool pool;
+
+	private DoublePropertyMap< TestObject > doubles;
+
+	private IntPropertyMap< TestObject > ints;
+
+	private ObjPropertyMap< TestObject, String > strings;
+
+	private LazyPropertyMaps< TestObject > maps;
+
+	private LazyDoublePropertyMap< TestObject > ldoubles;
+
+	private LazyIntPropertyMap< TestObject > lints;
+
+	private LazyObjPropertyMap< TestObject, String > lstrings;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		pool = new TestObjectPool( 10 );
+		doubles = new DoublePropertyMap<>( pool, Double.NaN );
+		ints = new IntPropertyMap<>( pool, -1 );
+		strings = new ObjPropertyMap<>( pool );
+		final TIntIntHashMap objectIdToFileId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TIntIntHashMap fileIdToObjectId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TestObject ref = pool.createRef();
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final TestObject a = pool.create( ref ).init( i );
+			doubles.set( a, random.nextGaussian() );
+			if ( i % 3 == 0 )
+				ints.set( a, random.nextInt() );
+			if ( i % 7 == 0 )
+				strings.set( a, "s" + i );
+			objectIdToFileId.put( pool.getId( a ), i + 100 );
+			fileIdToObjectId.put( i + 100, pool.getId( a ) );
+		}
+		pool.releaseRef( ref );
+
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		serializers.put( "doubles", new DoublePropertyMapSerializer<>( doubles ) );
+		serializers.put( "ints", new IntPropertyMapSerializer<>( ints ) );
+		serializers.put( "strings", new StringPropertyMapSerializer<>( strings ) );
+		final File file = folder.newFile();
+		try ( final OutputStream out = new FileOutputStream( file ) )
+		{
+			RawPropertyIO.writePropertyMaps( new ObjectToFileIdMap<>( objectIdToFileId, pool ), serializers, out );
+		}
+
+		maps = new LazyPropertyMaps<>( new FileIdToObjectMap<>( fileIdToObjectId, pool ), file.toPath() );
+		ldoubles = maps.doublePropertyMap( "doubles", pool, Double.NaN );
+		lints = maps.intPropertyMap( "ints", pool, -1 );
+		lstrings = maps.objPropertyMap( "strings", pool, StringPropertyMapSerializer::new );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		maps.close();
+	}
+
+	@Test
+	public void testLoadOnAccess()
+	{
+		assertFalse( ldoubles.isLoaded() );
+		assertFalse( lints.isLoaded() );
+		assertFalse( lstrings.isLoaded() );
+		assertEquals( 0, maps.getLoadedBytes() );
+
+		final TestObject ref = pool.createRef();
+		final TestObject o = pool.getObject( 21, ref );
+		assertEquals( doubles.getDouble( o ), ldoubles.getDouble( o ), 0 );
+		assertTrue( ldoubles.isLoaded() );
+		assertFalse( lints.isLoaded() );
+		assertEquals( maps.getIndex().getLength( "doubles" ), maps.getLoadedBytes() );
+
+		assertEquals( "s21", lstrings.get( o ) );
+		assertEquals( ints.size(), lints.size() );
+		assertEquals( doubles.getMap(), ldoubles.getMap() );
+		assertEquals( ints.getMap(), lints.getMap() );
+		assertEquals( strings.getMap(), lstrings.getMap() );
+	}
+
+	@Test
+	public void testEvict()
+	{
+		assertEquals( ints.size(), lints.size() );
+		assertTrue( lints.evict() );
+		assertFalse( lints.isLoaded() );
+		assertEquals( 0, maps.getLoadedBytes() );
+		assertEquals( ints.getMap(), lints.getMap() );
+	}
+
+	@Test
+	public void testModifiedMapsAreNotEvicted()
+	{
+		final TestObject ref = pool.createRef();
+		final TestObject o = pool.getObject( 1, ref );
+		lints.set( o, 42 );
+		assertFalse( lints.evict() );
+		maps.evictAll();
+		assertTrue( lints.isLoaded() );
+		assertEquals( 42, lints.getInt( o ) );
+		assertEquals( ints.size() + 1, lints.size() );
+	}
+
+	@Test
+	public void testMemoryBudget()
+	{
+		maps.setMemoryBudget( maps.getIndex().getLength( "ints" ) );
+		lints.size();
+		assertTrue( lints.isLoaded() );
+		ldoubles.size();
+		assertTrue( ldoubles.isLoaded() );
+		assertFalse( lints.isLoaded() );
+		lstrings.size();
+		assertTrue( lstrings.isLoaded() );
+		assertFalse( ldoubles.isLoaded() );
+		assertEquals( maps.getIndex().getLength( "strings" ), maps.getLoadedBytes() );
+	}
+
+	@Test
+	public void testDeleteLoadsMap()
+	{
+		final TestObject ref = pool.createRef();
+		final TestObject o = pool.getObject( 7, ref );
+		pool.delete( o );
+		assertTrue( lstrings.isLoaded() );
+		assertEquals( strings.size(), lstrings.size() );
+		assertFalse( lstrings.evict() );
+
+		final TestObject n = pool.create( ref ).init( 1000 );
+		assertFalse( lstrings.isSet( n ) );
+	}
+}
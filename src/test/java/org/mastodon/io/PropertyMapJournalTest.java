@@ -0,0 +1,259 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mastodon.io.properties.TestPropertyMapSerializers.serializers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.io.properties.PropertyMapJournal;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+public class PropertyMapJournalTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestObjectPool pool;
+
+	private DoublePropertyMap< TestObject > doubles;
+
+	private IntPropertyMap< TestObject > ints;
+
+	private ObjPropertyMap< TestObject, String > strings;
+
+	private ObjPropertyMap< TestObject, Integer > objs;
+
+	private Path base;
+
+	private Path journalFile;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		pool = new TestObjectPool( 10 );
+		doubles = new DoublePropertyMap<>( pool, Double.NaN );
+		ints = new IntPropertyMap<>( pool, -1 );
+		strings = new ObjPropertyMap<>( pool );
+		objs = new ObjPropertyMap<>( pool );
+		final TestObject ref = pool.createRef();
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < 2000; i++ )
+		{
+			final TestObject a = pool.create( ref ).init( i );
+			doubles.set( a, random.nextGaussian() );
+			if ( i % 3 == 0 )
+				ints.set( a, random.nextInt() );
+			if ( i % 7 == 0 )
+				strings.set( a, "s" + i );
+			if ( i % 11 == 0 )
+				objs.set( a, i );
+		}
+		pool.releaseRef( ref );
+		base = folder.newFolder().toPath().resolve( "properties" );
+		journalFile = base.resolveSibling( "properties.journal" );
+	}
+
+	/**
+	 * File ids are pool ids, which are stable as long as no objects are
+	 * deleted.
+	 */
+	private TIntIntHashMap identity()
+	{
+		final TIntIntHashMap map = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		for ( final TestObject o : pool )
+			map.put( pool.getId( o ), pool.getId( o ) );
+		return map;
+	}
+
+	private ObjectToFileIdMap< TestObject > objectToFileIdMap()
+	{
+		return new ObjectToFileIdMap<>( identity(), pool );
+	}
+
+	private void assertRead() throws IOException
+	{
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1 );
+		final ObjPropertyMap< TestObject, String > rstrings = new ObjPropertyMap<>( pool );
+		final ObjPropertyMap< TestObject, Integer > robjs = new ObjPropertyMap<>( pool );
+		final PropertyMapJournal< TestObject > journal = PropertyMapJournal.read(
+				new FileIdToObjectMap<>( identity(), pool ), serializers( rdoubles, rints, rstrings, robjs ), pool, base );
+		journal.release();
+		assertEquals( doubles, rdoubles );
+		assertEquals( ints, rints );
+		assertEquals( strings, rstrings );
+		assertEquals( objs, robjs );
+	}
+
+	private void modify( final int seed )
+	{
+		final Random random = new Random( seed );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 20; i++ )
+		{
+			final TestObject o = pool.getObject( random.nextInt( 2000 ), ref );
+			doubles.set( o, random.nextDouble() );
+			if ( random.nextBoolean() )
+				ints.remove( o );
+			else
+				ints.set( o, i );
+			strings.set( o, "m" + i );
+		}
+		objs.set( pool.getObject( 5, ref ), 5 );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testAppend() throws IOException
+	{
+		final PropertyMapJournal< TestObject > journal = new PropertyMapJournal<>( serializers( doubles, ints, strings, objs ), pool, base );
+		assertTrue( journal.save( objectToFileIdMap() ) );
+		assertRead();
+		final long baseSize = Files.size( base );
+		final long journalSize = Files.size( journalFile );
+
+		modify( 1 );
+		assertFalse( journal.save( objectToFileIdMap() ) );
+		assertEquals( baseSize, Files.size( base ) );
+		assertTrue( Files.size( journalFile ) > journalSize );
+		assertRead();
+
+		modify( 2 );
+		assertFalse( journal.save( objectToFileIdMap() ) );
+		assertRead();
+		journal.release();
+	}
+
+	@Test
+	public void testAppendAfterRead() throws IOException
+	{
+		new PropertyMapJournal<>( serializers( doubles, ints, strings, objs ), pool, base ).save( objectToFileIdMap() );
+		modify( 1 );
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final PropertyMapSerializers< TestObject > serializers = serializers(
+				rdoubles, new IntPropertyMap<>( pool, -1 ), new ObjPropertyMap<>( pool ), new ObjPropertyMap<>( pool ) );
+		final PropertyMapJournal< TestObject > journal = PropertyMapJournal.read( new FileIdToObjectMap<>( identity(), pool ), serializers, pool, base );
+		final TestObject ref = pool.createRef();
+		rdoubles.set( pool.getObject( 3, ref ), 42 );
+		assertFalse( journal.save( objectToFileIdMap() ) );
+		journal.release();
+
+		final DoublePropertyMap< TestObject > expected = new DoublePropertyMap<>( pool, Double.NaN );
+		final PropertyMapSerializers< TestObject > s2 = serializers( expected, new IntPropertyMap<>( pool, -1 ), new ObjPropertyMap<>( pool ), new ObjPropertyMap<>( pool ) );
+		PropertyMapJournal.read( new FileIdToObjectMap<>( identity(), pool ), s2, pool, base ).release();
+		assertEquals( 42, expected.getDouble( pool.getObject( 3, ref ) ), 0 );
+		assertEquals( rdoubles, expected );
+		pool.releaseRef( ref );
+	}
+
+	@Test
+	public void testTornSegment() throws IOException
+	{
+		final PropertyMapJournal< TestObject > journal = new PropertyMapJournal<>( serializers( doubles, ints, strings, objs ), pool, base );
+		journal.save( objectToFileIdMap() );
+		modify( 1 );
+		journal.save( objectToFileIdMap() );
+		final long length = Files.size( journalFile );
+
+		// a segment that was interrupted while writing
+		Files.write( journalFile, new byte[] { 0x4D, 0x50, 0x53, 0x47, 0, 0, 1, 0, 7 }, StandardOpenOption.APPEND );
+		assertRead();
+
+		modify( 2 );
+		journal.save( objectToFileIdMap() );
+		assertTrue( Files.size( journalFile ) > length );
+		assertRead();
+		journal.release();
+	}
+
+	@Test
+	public void testStaleJournalIsIgnored() throws IOException
+	{
+		final PropertyMapJournal< TestObject > journal = new PropertyMapJournal<>( serializers( doubles, ints, strings, objs ), pool, base );
+		journal.save( objectToFileIdMap() );
+		final TestObject ref = pool.createRef();
+		final TestObject o = pool.getObject( 0, ref );
+		doubles.set( o, 1 );
+		journal.save( objectToFileIdMap() );
+		final byte[] stale = Files.readAllBytes( journalFile );
+
+		// crash after replacing the base, before the journal was started over
+		doubles.set( o, 2 );
+		journal.compact( objectToFileIdMap() );
+		Files.write( journalFile, stale );
+		assertRead();
+		pool.releaseRef( ref );
+		journal.release();
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		final PropertyMapJournal< TestObject > journal = new PropertyMapJournal<>( serializers( doubles, ints, strings, objs ), pool, base );
+		journal.save( objectToFileIdMap() );
+		final long journalSize = Files.size( journalFile );
+
+		journal.setCompactionRatio( 0 );
+		modify( 1 );
+		assertFalse( journal.save( objectToFileIdMap() ) );
+		modify( 3 );
+		assertTrue( journal.save( objectToFileIdMap() ) );
+		assertEquals( journalSize, Files.size( journalFile ) );
+		assertRead();
+
+		journal.setCompactionRatio( 0.5 );
+		modify( 2 );
+		assertFalse( journal.save( objectToFileIdMap() ) );
+		final TestObject ref = pool.createRef();
+		pool.delete( pool.getObject( 10, ref ) );
+		pool.releaseRef( ref );
+		assertTrue( journal.save( objectToFileIdMap() ) );
+		assertRead();
+		journal.release();
+	}
+}
@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.io.properties.DoublePropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapIndex;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Loading many feature maps with {@link RawPropertyIO}: sequentially from one
+ * object stream, or from a container of independent sections decoded in
+ * parallel on a {@link ForkJoinPool} with the specified parallelism.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class RawPropertyIOBenchmark
+{
+	@Param( { "120" } )
+	public int numMaps;
+
+	@Param( { "20000" } )
+	public int numObjects;
+
+	@Param( { "1", "4" } )
+	public int parallelism;
+
+	private TestObjectPool pool;
+
+	private FileIdToObjectMap< TestObject > fileIdToObjectMap;
+
+	private byte[] stream;
+
+	private File container;
+
+	private ForkJoinPool forkJoinPool;
+
+	@Setup( Level.Trial )
+	public void write() throws IOException
+	{
+		pool = new TestObjectPool( numObjects );
+		final TIntIntHashMap objectIdToFileId = new TIntIntHashMap( numObjects, 0.75f, -1, -1 );
+		final TIntIntHashMap fileIdToObjectId = new TIntIntHashMap( numObjects, 0.75f, -1, -1 );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < numObjects; i++ )
+		{
+			final TestObject o = pool.create( ref ).init( i );
+			objectIdToFileId.put( pool.getId( o ), i );
+			fileIdToObjectId.put( i, pool.getId( o ) );
+		}
+		final ObjectToFileIdMap< TestObject > objectToFileIdMap = new ObjectToFileIdMap<>( objectIdToFileId, pool );
+		fileIdToObjectMap = new FileIdToObjectMap<>( fileIdToObjectId, pool );
+
+		final Random random = new Random( 1 );
+		final List< DoublePropertyMap< TestObject > > maps = new ArrayList<>();
+		for ( int m = 0; m < numMaps; m++ )
+		{
+			final DoublePropertyMap< TestObject > map = new DoublePropertyMap<>( pool, Double.NaN );
+			for ( final TestObject o : pool )
+				map.set( o, random.nextDouble() );
+			maps.add( map );
+		}
+		final PropertyMapSerializers< TestObject > serializers = serializers( maps );
+
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		try ( final ObjectOutputStream oos = new ObjectOutputStream( bs ) )
+		{
+			RawPropertyIO.writeVersionedPropertyMaps( objectToFileIdMap, serializers, oos );
+		}
+		stream = bs.toByteArray();
+
+		container = File.createTempFile( "properties", ".raw" );
+		container.deleteOnExit();
+		try ( final OutputStream out = new FileOutputStream( container ) )
+		{
+			RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers, out );
+		}
+
+		forkJoinPool = new ForkJoinPool( parallelism );
+	}
+
+	@TearDown( Level.Trial )
+	public void cleanUp()
+	{
+		forkJoinPool.shutdown();
+		container.delete();
+	}
+
+	private PropertyMapSerializers< TestObject > serializers( final List< DoublePropertyMap< TestObject > > maps )
+	{
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		for ( int m = 0; m < maps.size(); m++ )
+			serializers.put( "feature" + m, new DoublePropertyMapSerializer<>( maps.get( m ) ) );
+		return serializers;
+	}
+
+	private PropertyMapSerializers< TestObject > emptySerializers()
+	{
+		final List< DoublePropertyMap< TestObject > > maps = new ArrayList<>();
+		for ( int m = 0; m < numMaps; m++ )
+			maps.add( new DoublePropertyMap<>( pool, Double.NaN ) );
+		return serializers( maps );
+	}
+
+	@Benchmark
+	public PropertyMapSerializers< TestObject > readStream() throws IOException
+	{
+		final PropertyMapSerializers< TestObject > serializers = emptySerializers();
+		try ( final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( stream ) ) )
+		{
+			RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers, ois );
+		}
+		return serializers;
+	}
+
+	@Benchmark
+	public PropertyMapSerializers< TestObject > readContainer() throws IOException
+	{
+		final PropertyMapSerializers< TestObject > serializers = emptySerializers();
+		try ( final SeekableByteChannel channel = Files.newByteChannel( container.toPath() ) )
+		{
+			final PropertyMapIndex index = PropertyMapIndex.read( channel );
+			RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers, index.getKeys(), index, channel, forkJoinPool );
+		}
+		return serializers;
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( RawPropertyIOBenchmark.class.getName() ).build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,343 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mastodon.io.properties.TestPropertyMapSerializers.serializers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.io.properties.DoublePropertyMapSerializer;
+import org.mastodon.io.properties.IntPropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapIndex;
+import org.mastodon.io.properties.PropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+public class RawPropertyIOTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestObjectPool pool;
+
+	private DoublePropertyMap< TestObject > doubles;
+
+	private IntPropertyMap< TestObject > ints;
+
+	private ObjPropertyMap< TestObject, String > strings;
+
+	private ObjectToFileIdMap< TestObject > objectToFileIdMap;
+
+	private FileIdToObjectMap< TestObject > fileIdToObjectMap;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		doubles = new DoublePropertyMap<>( pool, Double.NaN );
+		ints = new IntPropertyMap<>( pool, -1 );
+		strings = new ObjPropertyMap<>( pool );
+		final TIntIntHashMap objectIdToFileId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TIntIntHashMap fileIdToObjectId = new TIntIntHashMap( 10, 0.75f, -1, -1 );
+		final TestObject ref = pool.createRef();
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < 5000; i++ )
+		{
+			final TestObject a = pool.create( ref ).init( i );
+			if ( random.nextInt( 4 ) != 0 )
+				doubles.set( a, random.nextGaussian() );
+			if ( i % 3 == 0 )
+				ints.set( a, random.nextInt() );
+			if ( i % 7 == 0 )
+				strings.set( a, "s" + i );
+			// sparse, unordered file ids, to exercise multi-byte deltas
+			final int fileId = ( i * 7919 ) % 5000 * 1000 + random.nextInt( 1000 );
+			objectIdToFileId.put( pool.getId( a ), fileId );
+			fileIdToObjectId.put( fileId, pool.getId( a ) );
+		}
+		pool.releaseRef( ref );
+
+		objectToFileIdMap = new ObjectToFileIdMap<>( objectIdToFileId, pool );
+		fileIdToObjectMap = new FileIdToObjectMap<>( fileIdToObjectId, pool );
+	}
+
+	private void assertRead( final byte[] bytes ) throws IOException
+	{
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1 );
+		final ObjPropertyMap< TestObject, String > rstrings = new ObjPropertyMap<>( pool );
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
+		RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers( rdoubles, rints, rstrings ), ois );
+		assertEquals( doubles, rdoubles );
+		assertEquals( ints, rints );
+		assertEquals( strings, rstrings );
+	}
+
+	@Test
+	public void testColumnFormat() throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		RawPropertyIO.writeVersionedPropertyMaps( objectToFileIdMap, serializers( doubles, ints, strings ), oos );
+		oos.close();
+		assertRead( bs.toByteArray() );
+	}
+
+	/**
+	 * Streams in the original format start with the keys, followed by each
+	 * map in the per-entry format. {@code writePropertyMaps} must keep
+	 * writing exactly this.
+	 */
+	@Test
+	public void testOriginalFormat() throws IOException
+	{
+		final PropertyMapSerializers< TestObject > serializers = serializers( doubles, ints, strings );
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		final String[] keys = serializers.getKeys().toArray( new String[ 0 ] );
+		oos.writeObject( keys );
+		for ( final String key : keys )
+			serializers.getPropertyMap( key ).writePropertyMap( objectToFileIdMap, oos );
+		oos.close();
+		assertRead( bs.toByteArray() );
+
+		final ByteArrayOutputStream bs2 = new ByteArrayOutputStream();
+		final ObjectOutputStream oos2 = new ObjectOutputStream( bs2 );
+		RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers, oos2 );
+		oos2.close();
+		assertArrayEquals( bs.toByteArray(), bs2.toByteArray() );
+	}
+
+	private File writeContainer( final ForkJoinPool forkJoinPool ) throws IOException
+	{
+		final File file = folder.newFile();
+		try ( final OutputStream out = new FileOutputStream( file ) )
+		{
+			RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers( doubles, ints, strings ), out, forkJoinPool );
+		}
+		return file;
+	}
+
+	@Test
+	public void testContainer() throws IOException
+	{
+		final ForkJoinPool forkJoinPool = new ForkJoinPool( 3 );
+		final File file = writeContainer( forkJoinPool );
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1 );
+		final ObjPropertyMap< TestObject, String > rstrings = new ObjPropertyMap<>( pool );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file.toPath() ) )
+		{
+			final PropertyMapIndex index = PropertyMapIndex.read( channel );
+			assertEquals( Arrays.asList( "doubles", "ints", "strings" ), index.getKeys() );
+			RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers( rdoubles, rints, rstrings ), index.getKeys(), index, channel, forkJoinPool );
+		}
+		forkJoinPool.shutdown();
+		assertEquals( doubles, rdoubles );
+		assertEquals( ints, rints );
+		assertEquals( strings, rstrings );
+	}
+
+	@Test
+	public void testContainerSkipSections() throws IOException
+	{
+		final File file = writeContainer( ForkJoinPool.commonPool() );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1 );
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		serializers.put( "ints", new IntPropertyMapSerializer<>( rints ) );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file.toPath() ) )
+		{
+			final PropertyMapIndex index = PropertyMapIndex.read( channel );
+			RawPropertyIO.readSection( fileIdToObjectMap, serializers, "ints", index, channel );
+		}
+		assertEquals( ints, rints );
+	}
+
+	@Test( expected = IOException.class )
+	public void testContainerMissingSerializer() throws IOException
+	{
+		final File file = writeContainer( ForkJoinPool.commonPool() );
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		serializers.put( "ints", new IntPropertyMapSerializer<>( new IntPropertyMap<>( pool, -1 ) ) );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file.toPath() ) )
+		{
+			RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers, channel );
+		}
+	}
+
+	@Test( expected = IOException.class )
+	public void testNotAContainer() throws IOException
+	{
+		final File file = folder.newFile();
+		Files.write( file.toPath(), Collections.nCopies( 100, "not a container" ) );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file.toPath() ) )
+		{
+			PropertyMapIndex.read( channel );
+		}
+	}
+
+	@Test
+	public void testAtomicWrite() throws IOException
+	{
+		final Path file = folder.getRoot().toPath().resolve( "properties.raw" );
+		RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers( doubles, ints, strings ), file, ForkJoinPool.commonPool() );
+		assertFalse( Files.exists( file.resolveSibling( "properties.raw.tmp" ) ) );
+
+		final DoublePropertyMap< TestObject > rdoubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final IntPropertyMap< TestObject > rints = new IntPropertyMap<>( pool, -1 );
+		final ObjPropertyMap< TestObject, String > rstrings = new ObjPropertyMap<>( pool );
+		RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers( rdoubles, rints, rstrings ), file, ForkJoinPool.commonPool() );
+		assertEquals( doubles, rdoubles );
+		assertEquals( ints, rints );
+		assertEquals( strings, rstrings );
+	}
+
+	@Test
+	public void testCorruptSection() throws IOException
+	{
+		final Path file = writeContainer( ForkJoinPool.commonPool() ).toPath();
+		final byte[] bytes = Files.readAllBytes( file );
+		bytes[ 100 ] ^= 1;
+		Files.write( file, bytes );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file ) )
+		{
+			final PropertyMapIndex index = PropertyMapIndex.read( channel );
+			index.verify( channel );
+			fail( "corrupt section not detected" );
+		}
+		catch ( final IOException e )
+		{
+			assertEquals( "checksum mismatch in section \"doubles\"", e.getMessage() );
+		}
+		try
+		{
+			RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers( doubles, ints, strings ), file, ForkJoinPool.commonPool() );
+			fail( "corrupt section not detected" );
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	@Test( expected = IOException.class )
+	public void testCorruptIndex() throws IOException
+	{
+		final Path file = writeContainer( ForkJoinPool.commonPool() ).toPath();
+		final byte[] bytes = Files.readAllBytes( file );
+		bytes[ bytes.length - 20 ] ^= 1;
+		Files.write( file, bytes );
+		try ( final SeekableByteChannel channel = Files.newByteChannel( file ) )
+		{
+			PropertyMapIndex.read( channel );
+		}
+	}
+
+	@Test
+	public void testFailedWriteKeepsFile() throws IOException
+	{
+		final Path file = folder.getRoot().toPath().resolve( "properties.raw" );
+		RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers( doubles, ints, strings ), file, ForkJoinPool.commonPool() );
+		final byte[] expected = Files.readAllBytes( file );
+
+		final PropertyMapSerializers< TestObject > serializers = serializers( doubles, ints, strings );
+		serializers.put( "failing", new PropertyMapSerializer< TestObject, IntPropertyMap< TestObject > >()
+		{
+			@Override
+			public void writePropertyMap( final ObjectToFileIdMap< TestObject > idmap, final ObjectOutputStream oos ) throws IOException
+			{
+				throw new IOException( "disk full" );
+			}
+
+			@Override
+			public void readPropertyMap( final FileIdToObjectMap< TestObject > idmap, final ObjectInputStream ois )
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public IntPropertyMap< TestObject > getPropertyMap()
+			{
+				return ints;
+			}
+		} );
+		try
+		{
+			RawPropertyIO.writePropertyMaps( objectToFileIdMap, serializers, file, ForkJoinPool.commonPool() );
+			fail( "expected IOException" );
+		}
+		catch ( final IOException e )
+		{
+			assertEquals( "disk full", e.getMessage() );
+		}
+		assertArrayEquals( expected, Files.readAllBytes( file ) );
+		assertFalse( Files.exists( file.resolveSibling( "properties.raw.tmp" ) ) );
+	}
+
+	@Test( expected = IOException.class )
+	public void testMissingSerializer() throws IOException
+	{
+		final ByteArrayOutputStream bs = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bs );
+		RawPropertyIO.writeVersionedPropertyMaps( objectToFileIdMap, serializers( doubles, ints, strings ), oos );
+		oos.close();
+
+		final PropertyMapSerializers< TestObject > serializers = new PropertyMapSerializers<>();
+		serializers.put( "doubles", new DoublePropertyMapSerializer<>( new DoublePropertyMap<>( pool, Double.NaN ) ) );
+		final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bs.toByteArray() ) );
+		RawPropertyIO.readPropertyMaps( fileIdToObjectMap, serializers, ois );
+	}
+}
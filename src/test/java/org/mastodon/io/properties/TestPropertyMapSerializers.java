@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.io.properties;
+
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+/**
+ * Creates the {@link PropertyMapSerializers} used as fixtures by the property
+ * map IO tests.
+ */
+public class TestPropertyMapSerializers
+{
+	/**
+	 * Creates serializers for a {@code double}, an {@code int} and a
+	 * {@code String} property map, with keys {@code "doubles"},
+	 * {@code "ints"} and {@code "strings"}.
+	 */
+	public static < O > PropertyMapSerializers< O > serializers(
+			final DoublePropertyMap< O > doubles,
+			final IntPropertyMap< O > ints,
+			final ObjPropertyMap< O, String > strings )
+	{
+		final PropertyMapSerializers< O > serializers = new PropertyMapSerializers<>();
+		serializers.put( "doubles", new DoublePropertyMapSerializer<>( doubles ) );
+		serializers.put( "ints", new IntPropertyMapSerializer<>( ints ) );
+		serializers.put( "strings", new StringPropertyMapSerializer<>( strings ) );
+		return serializers;
+	}
+
+	/**
+	 * Like {@link #serializers(DoublePropertyMap, IntPropertyMap,
+	 * ObjPropertyMap)}, plus a serializer for a general object property map
+	 * with key {@code "objs"}.
+	 */
+	public static < O > PropertyMapSerializers< O > serializers(
+			final DoublePropertyMap< O > doubles,
+			final IntPropertyMap< O > ints,
+			final ObjPropertyMap< O, String > strings,
+			final ObjPropertyMap< O, Integer > objs )
+	{
+		final PropertyMapSerializers< O > serializers = serializers( doubles, ints, strings );
+		serializers.put( "objs", new ObjPropertyMapSerializer<>( objs ) );
+		return serializers;
+	}
+
+	private TestPropertyMapSerializers()
+	{}
+}
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.mastodon.labels.LabelMapping.InternedSet;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+/**
+ * Runs the {@link LabelMappingTest}s with label sets encoded as
+ * {@link BitLabelSet}s, and tests the encoding.
+ */
+public class BitLabelSetTest extends LabelMappingTest
+{
+	@Override
+	protected boolean useBitSets()
+	{
+		return true;
+	}
+
+	@Test
+	public void testSetContract()
+	{
+		final LabelBits< String > labelBits = new LabelBits<>();
+		final Set< String > expected = new HashSet<>();
+		for ( int i = 0; i < 200; i += 3 )
+			expected.add( "label" + i );
+		final BitLabelSet< String > set = labelBits.encode( expected );
+		assertEquals( expected.size(), set.size() );
+		assertEquals( expected, set );
+		assertEquals( set, expected );
+		assertEquals( expected.hashCode(), set.hashCode() );
+		assertEquals( expected, new HashSet<>( set ) );
+		assertFalse( set.contains( "label1" ) );
+		assertFalse( set.contains( "unknown" ) );
+		assertFalse( set.contains( null ) );
+		assertSame( set, labelBits.encode( set ) );
+
+		// removing the highest labels must give an equal array
+		final int bit = labelBits.bitOf( "label198" );
+		assertEquals( labelBits.encode( new HashSet<>( Arrays.asList( "label198" ) ) ).without( bit ), labelBits.encode( new HashSet<>() ) );
+		assertTrue( labelBits.encode( new HashSet<>() ).isEmpty() );
+		assertFalse( labelBits.encode( new HashSet<>() ).iterator().hasNext() );
+	}
+
+	@Test
+	public void testIncrementalHashCode()
+	{
+		final LabelBits< String > labelBits = new LabelBits<>();
+		final Random random = new Random( 1 );
+		final Set< String > expected = new HashSet<>();
+		BitLabelSet< String > set = labelBits.encode( expected );
+		for ( int i = 0; i < 10000; ++i )
+		{
+			final String label = "label" + random.nextInt( 150 );
+			final int bit = labelBits.bitOfOrAdd( label );
+			final int op = random.nextInt( 5 );
+			if ( op < 3 )
+			{
+				expected.add( label );
+				set = set.with( bit );
+			}
+			else if ( op < 4 )
+			{
+				expected.remove( label );
+				set = set.without( bit );
+			}
+			else
+			{
+				final Set< String > other = new HashSet<>();
+				for ( int j = 0; j < 10; ++j )
+					other.add( "label" + random.nextInt( 150 ) );
+				expected.removeAll( other );
+				set = set.andNot( labelBits.encode( other ) );
+			}
+			assertEquals( expected.size(), set.size() );
+			assertEquals( expected.hashCode(), set.hashCode() );
+		}
+		assertEquals( expected, set );
+	}
+
+	@Test
+	public void testManyLabels()
+	{
+		final LabelMapping< Integer > mapping = new LabelMapping<>( LabelMapping.DEFAULT_MAX_CACHED_DIFFS, true );
+		final LabelMapping< Integer > reference = new LabelMapping<>( LabelMapping.DEFAULT_MAX_CACHED_DIFFS, false );
+		final Random random = new Random( 1 );
+		int index = 0;
+		int referenceIndex = 0;
+		for ( int i = 0; i < 100000; ++i )
+		{
+			final Integer label = random.nextInt( 300 );
+			final boolean add = random.nextInt( 3 ) != 0;
+			final InternedSet< Integer > interned = add
+					? mapping.addLabelToSetAtIndex( label, index )
+					: mapping.removeLabelFromSetAtIndex( label, index );
+			final InternedSet< Integer > expected = add
+					? reference.addLabelToSetAtIndex( label, referenceIndex )
+					: reference.removeLabelFromSetAtIndex( label, referenceIndex );
+			assertEquals( expected.getSet(), interned.getSet() );
+			assertEquals( expected.index, interned.index );
+			index = interned.index;
+			referenceIndex = expected.index;
+			if ( random.nextInt( 1000 ) == 0 )
+			{
+				index = 0;
+				referenceIndex = 0;
+			}
+		}
+		assertEquals( reference.numSets(), mapping.numSets() );
+	}
+
+	@Test
+	public void testClear()
+	{
+		final TestObjectPool pool = new TestObjectPool( 10 );
+		final TestObject obj = pool.create( pool.createRef() ).init( 0 );
+		final LabelSets< TestObject, String > labelSets = new LabelSets<>( pool, true );
+		labelSets.getLabels( obj ).addAll( Arrays.asList( "a", "b" ) );
+		labelSets.clear();
+		assertTrue( labelSets.getLabels( obj ).isEmpty() );
+		labelSets.getLabels( obj ).add( "c" );
+		assertEquals( new HashSet<>( Arrays.asList( "c" ) ), labelSets.getLabels( obj ) );
+		assertEquals( 2, labelSets.getLabelMapping().numSets() );
+	}
+}
@@ -0,0 +1,300 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mastodon.collection.RefSet;
+import org.mastodon.labels.LabelMapping.InternedSet;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+/**
+ * Stress tests for concurrent use of {@link LabelMapping} and
+ * {@link LabelSets}.
+ */
+public class LabelMappingTest
+{
+	private static final int NUM_THREADS = 8;
+
+	private static final int NUM_LABELS = 10;
+
+	/**
+	 * Whether to test label sets encoded as {@link BitLabelSet}s.
+	 */
+	protected boolean useBitSets()
+	{
+		return false;
+	}
+
+	/**
+	 * Runs {@code task} on {@link #NUM_THREADS} threads, which start at the
+	 * same time, and rethrows the first failure.
+	 */
+	private static void runConcurrently( final TaskFactory task ) throws Exception
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool( NUM_THREADS );
+		final CyclicBarrier barrier = new CyclicBarrier( NUM_THREADS );
+		try
+		{
+			final List< Future< Void > > futures = new ArrayList<>();
+			for ( int t = 0; t < NUM_THREADS; ++t )
+			{
+				final Callable< Void > callable = task.create( t );
+				futures.add( executor.submit( () -> {
+					barrier.await();
+					return callable.call();
+				} ) );
+			}
+			for ( final Future< Void > future : futures )
+				future.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			if ( e.getCause() instanceof Error )
+				throw ( Error ) e.getCause();
+			throw ( Exception ) e.getCause();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@FunctionalInterface
+	private interface TaskFactory
+	{
+		Callable< Void > create( int thread );
+	}
+
+	private static < T > void assertConsistent( final LabelMapping< T > mapping )
+	{
+		final Set< Set< T > > distinct = new HashSet<>();
+		for ( int i = 0; i < mapping.numSets(); ++i )
+		{
+			final InternedSet< T > interned = mapping.setAtIndex( i );
+			assertEquals( i, interned.index );
+			assertSame( interned, mapping.intern( interned.getSet() ) );
+			distinct.add( interned.getSet() );
+		}
+		assertEquals( "duplicate label sets", mapping.numSets(), distinct.size() );
+		assertTrue( mapping.setAtIndex( 0 ).getSet().isEmpty() );
+	}
+
+	@Test
+	public void testConcurrentTransitions() throws Exception
+	{
+		final LabelMapping< Integer > mapping = new LabelMapping<>( LabelMapping.DEFAULT_MAX_CACHED_DIFFS, useBitSets() );
+		runConcurrently( thread -> () -> {
+			final Random random = new Random( thread );
+			final Set< Integer > expected = new HashSet<>();
+			int index = 0;
+			for ( int i = 0; i < 50000; ++i )
+			{
+				final Integer label = random.nextInt( NUM_LABELS );
+				final InternedSet< Integer > interned;
+				if ( random.nextBoolean() )
+				{
+					interned = mapping.addLabelToSetAtIndex( label, index );
+					expected.add( label );
+				}
+				else
+				{
+					interned = mapping.removeLabelFromSetAtIndex( label, index );
+					expected.remove( label );
+				}
+				assertEquals( expected, interned.getSet() );
+				index = interned.index;
+				if ( i % 100 == 0 )
+					assertSame( interned, mapping.intern( new HashSet<>( expected ) ) );
+			}
+			return null;
+		} );
+		assertConsistent( mapping );
+	}
+
+	@Test
+	public void testConcurrentIntern() throws Exception
+	{
+		final LabelMapping< Integer > mapping = new LabelMapping<>( LabelMapping.DEFAULT_MAX_CACHED_DIFFS, useBitSets() );
+		final int numSets = 1 << NUM_LABELS;
+		final int[][] indices = new int[ NUM_THREADS ][ numSets ];
+		runConcurrently( thread -> () -> {
+			// every thread interns all subsets, in a different order
+			final List< Integer > bits = new ArrayList<>();
+			for ( int i = 0; i < numSets; ++i )
+				bits.add( i );
+			Collections.shuffle( bits, new Random( thread ) );
+			for ( final int b : bits )
+			{
+				final Set< Integer > set = new HashSet<>();
+				for ( int l = 0; l < NUM_LABELS; ++l )
+					if ( ( b & ( 1 << l ) ) != 0 )
+						set.add( l );
+				indices[ thread ][ b ] = mapping.indexOf( set );
+			}
+			return null;
+		} );
+		assertEquals( numSets, mapping.numSets() );
+		for ( int t = 1; t < NUM_THREADS; ++t )
+			for ( int b = 0; b < numSets; ++b )
+				assertEquals( indices[ 0 ][ b ], indices[ t ][ b ] );
+		assertConsistent( mapping );
+	}
+
+	@Test
+	public void testConcurrentLabelSets() throws Exception
+	{
+		final int numObjects = 4000;
+		final TestObjectPool pool = new TestObjectPool( numObjects );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < numObjects; ++i )
+			pool.create( ref ).init( i );
+		pool.releaseRef( ref );
+		final LabelSets< TestObject, String > labelSets = new LabelSets<>( pool, useBitSets() );
+
+		final List< Set< String > > expected = new ArrayList<>( numObjects );
+		for ( int i = 0; i < numObjects; ++i )
+			expected.add( new HashSet<>() );
+
+		runConcurrently( thread -> () -> {
+			final Random random = new Random( thread );
+			final TestObject obj = pool.createRef();
+			final LabelSet< TestObject, String > labels = labelSets.createRef();
+			for ( int i = 0; i < 20000; ++i )
+			{
+				// each thread modifies a disjoint stripe of objects ...
+				final int id = random.nextInt( numObjects / NUM_THREADS ) * NUM_THREADS + thread;
+				labelSets.getLabels( pool.getObject( id, obj ), labels );
+				final String label = "label" + random.nextInt( NUM_LABELS );
+				if ( random.nextInt( 3 ) != 0 )
+					assertEquals( expected.get( id ).add( label ), labels.add( label ) );
+				else
+					assertEquals( expected.get( id ).remove( label ), labels.remove( label ) );
+
+				// ... and all threads add their own label to object 0
+				if ( i % 1000 == 0 )
+					labelSets.getLabels( pool.getObject( 0, obj ), labels ).add( "thread" + thread );
+			}
+			labelSets.releaseRef( labels );
+			pool.releaseRef( obj );
+			return null;
+		} );
+
+		for ( int t = 0; t < NUM_THREADS; ++t )
+			expected.get( 0 ).add( "thread" + t );
+		final TestObject obj = pool.createRef();
+		for ( int id = 0; id < numObjects; ++id )
+			assertEquals( expected.get( id ), new HashSet<>( labelSets.getLabels( pool.getObject( id, obj ) ) ) );
+		for ( int l = 0; l < NUM_LABELS; ++l )
+		{
+			final String label = "label" + l;
+			final RefSet< TestObject > labeled = labelSets.getLabeledWith( label );
+			int n = 0;
+			for ( int id = 0; id < numObjects; ++id )
+				if ( expected.get( id ).contains( label ) )
+				{
+					assertTrue( labeled.contains( pool.getObject( id, obj ) ) );
+					++n;
+				}
+			assertEquals( n, labeled.size() );
+		}
+		assertConsistent( labelSets.getLabelMapping() );
+	}
+
+	@Test
+	public void testReadWithoutLock() throws Exception
+	{
+		final TestObjectPool pool = new TestObjectPool( 10 );
+		final TestObject obj = pool.create().init( 0 );
+		final LabelSets< TestObject, String > labelSets = new LabelSets<>( pool, useBitSets() );
+		final LabelSet< TestObject, String > labels = labelSets.getLabels( obj );
+		labels.add( "a" );
+
+		// reading labels does not wait for a modification in another thread
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			synchronized ( labelSets.lock )
+			{
+				final Future< Boolean > contains = executor.submit( () -> labels.contains( "a" ) && labels.size() == 1 );
+				assertTrue( contains.get( 10, TimeUnit.SECONDS ) );
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		// deleted objects and clear() reset the label sets
+		pool.delete( obj );
+		final TestObject reused = pool.create().init( 1 );
+		assertTrue( labelSets.getLabels( reused ).isEmpty() );
+		labelSets.getLabels( reused ).add( "b" );
+		labelSets.clear();
+		assertTrue( labelSets.getLabels( reused ).isEmpty() );
+	}
+
+	@Test
+	public void testDiffCacheEviction()
+	{
+		final int maxCachedDiffs = 16;
+		final LabelMapping< Integer > mapping = new LabelMapping<>( maxCachedDiffs, useBitSets() );
+		for ( int i = 0; i < 50; ++i )
+			mapping.indexOf( new HashSet<>( Collections.singleton( i ) ) );
+
+		// diff from 1 to 2 is used all the time and should survive eviction
+		final LabelMapping< Integer >.Diff hot = mapping.diff( 1, 2 );
+		for ( int from = 1; from < 50; ++from )
+		{
+			final LabelMapping< Integer >.Diff diff = mapping.diff( from, 0 );
+			assertEquals( mapping.setAtIndex( from ).getSet(), diff.getRemovedLabels() );
+			assertTrue( diff.getAddedLabels().isEmpty() );
+			assertTrue( mapping.numCachedDiffs() <= maxCachedDiffs );
+			assertSame( hot, mapping.diff( 1, 2 ) );
+		}
+	}
+}
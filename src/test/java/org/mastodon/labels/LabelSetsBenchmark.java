@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.labels;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Tagging objects in {@link LabelSets} from the specified number of threads,
+ * with label sets encoded as hash sets or bitsets. Each thread toggles labels
+ * on its own stripe of objects. Measures the time for toggling one label on
+ * each object, and for testing one label on each object.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class LabelSetsBenchmark
+{
+	@Param( { "1000000" } )
+	public int numObjects;
+
+	@Param( { "16", "200" } )
+	public int numLabels;
+
+	@Param( { "false", "true" } )
+	public boolean useBitSets;
+
+	@Param( { "1", "4" } )
+	public int parallelism;
+
+	private TestObjectPool pool;
+
+	private LabelSets< TestObject, Integer > labelSets;
+
+	private ForkJoinPool forkJoinPool;
+
+	/**
+	 * Counts invocations, so that objects accumulate different labels.
+	 */
+	private int round;
+
+	@Setup( Level.Trial )
+	public void setup()
+	{
+		pool = new TestObjectPool( numObjects );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < numObjects; i++ )
+			pool.create( ref ).init( i );
+		pool.releaseRef( ref );
+		labelSets = new LabelSets<>( pool, useBitSets );
+		forkJoinPool = new ForkJoinPool( parallelism );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown()
+	{
+		forkJoinPool.shutdown();
+	}
+
+	@Benchmark
+	public void toggleLabels()
+	{
+		++round;
+		forkJoinPool.submit( () -> IntStream.range( 0, parallelism ).parallel().forEach( this::toggle ) ).join();
+	}
+
+	@Benchmark
+	public int containsLabels()
+	{
+		return forkJoinPool.submit( () -> IntStream.range( 0, parallelism ).parallel().map( this::contains ).sum() ).join();
+	}
+
+	private int contains( final int thread )
+	{
+		final TestObject obj = pool.createRef();
+		final LabelSet< TestObject, Integer > labels = labelSets.createRef();
+		int count = 0;
+		for ( int id = thread; id < numObjects; id += parallelism )
+		{
+			labelSets.getLabels( pool.getObject( id, obj ), labels );
+			if ( labels.contains( id % numLabels ) )
+				++count;
+		}
+		labelSets.releaseRef( labels );
+		pool.releaseRef( obj );
+		return count;
+	}
+
+	private void toggle( final int thread )
+	{
+		final TestObject obj = pool.createRef();
+		final LabelSet< TestObject, Integer > labels = labelSets.createRef();
+		for ( int id = thread; id < numObjects; id += parallelism )
+		{
+			labelSets.getLabels( pool.getObject( id, obj ), labels );
+			final Integer label = ( id * 31 + round * 7 ) % numLabels;
+			if ( !labels.add( label ) )
+				labels.remove( label );
+		}
+		labelSets.releaseRef( labels );
+		pool.releaseRef( obj );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( LabelSetsBenchmark.class.getName() ).build();
+		new Runner( options ).run();
+	}
+}
@@ -28,6 +28,8 @@
  */
 package org.mastodon.pool;
 
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.RefArrayList;
 import org.mastodon.pool.attributes.IntAttribute;
 
 public class TestObjectPool extends Pool< TestObject, ByteMappedElement >
@@ -72,6 +74,18 @@ public class TestObjectPool extends Pool< TestObject, ByteMappedElement >
 		super.delete( obj );
 	}
 
+	@Override
+	public RefArrayList< TestObject > createAll( final int n )
+	{
+		return super.createAll( n );
+	}
+
+	@Override
+	public void deleteAll( final IntBackedRefCollection< TestObject > objs )
+	{
+		super.deleteAll( objs );
+	}
+
 	@Override
 	protected TestObject createEmptyRef()
 	{
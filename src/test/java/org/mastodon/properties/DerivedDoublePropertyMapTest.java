@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+public class DerivedDoublePropertyMapTest
+{
+	private TestObjectPool pool;
+
+	private RefArrayList< TestObject > objs;
+
+	private DoublePropertyMap< TestObject > source;
+
+	private AtomicInteger numComputed;
+
+	private DerivedDoublePropertyMap< TestObject > derived;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		objs = new RefArrayList<>( pool );
+		source = new DoublePropertyMap<>( pool, 0 );
+		for ( int i = 0; i < 10; i++ )
+		{
+			final TestObject o = pool.create().init( i );
+			objs.add( o );
+			source.set( o, i );
+		}
+		numComputed = new AtomicInteger();
+		derived = new DerivedDoublePropertyMap< TestObject >( pool, o -> {
+			numComputed.incrementAndGet();
+			return 2 * source.getDouble( o );
+		} ).addSource( source );
+	}
+
+	@Test
+	public void testLazyAndCached()
+	{
+		final TestObject o = objs.get( 3 );
+		assertFalse( derived.isCached( o ) );
+		assertEquals( 6, derived.getDouble( o ), 0 );
+		assertEquals( 6, derived.getDouble( o ), 0 );
+		assertTrue( derived.isCached( o ) );
+		assertEquals( 1, numComputed.get() );
+		assertEquals( 1, derived.size() );
+	}
+
+	@Test
+	public void testInvalidateOnlyAffected()
+	{
+		for ( final TestObject o : objs )
+			derived.getDouble( o );
+		assertEquals( 10, numComputed.get() );
+
+		final int[] numChanged = new int[ 1 ];
+		derived.propertyChangeListeners().add( o -> ++numChanged[ 0 ] );
+
+		source.set( objs.get( 5 ), 100 );
+		assertEquals( 1, numChanged[ 0 ] );
+		assertFalse( derived.isCached( objs.get( 5 ) ) );
+		assertEquals( 9, derived.size() );
+		for ( final TestObject o : objs )
+			derived.getDouble( o );
+		assertEquals( 11, numComputed.get() );
+		assertEquals( 200, derived.getDouble( objs.get( 5 ) ), 0 );
+	}
+
+	@Test
+	public void testDependents()
+	{
+		// The sum of an object's and its successor's source value.
+		final TestObject ref = pool.createRef();
+		final DerivedDoublePropertyMap< TestObject > sum = new DerivedDoublePropertyMap< TestObject >( pool, o -> {
+			final int i = objs.indexOf( o );
+			return source.getDouble( o ) + ( i + 1 < objs.size() ? source.getDouble( objs.get( i + 1, ref ) ) : 0 );
+		} ).addSource( source, ( changed, action ) -> {
+			final int i = objs.indexOf( changed );
+			action.accept( changed );
+			if ( i > 0 )
+				action.accept( objs.get( i - 1 ) );
+		} );
+		for ( final TestObject o : objs )
+			sum.getDouble( o );
+
+		source.set( objs.get( 4 ), 40 );
+		for ( int i = 0; i < objs.size(); i++ )
+			assertEquals( i == 3 || i == 4, !sum.isCached( objs.get( i ) ) );
+		assertEquals( 43, sum.getDouble( objs.get( 3 ) ), 0 );
+		assertEquals( 45, sum.getDouble( objs.get( 4 ) ), 0 );
+	}
+
+	@Test
+	public void testChained()
+	{
+		final DerivedDoublePropertyMap< TestObject > plusOne = new DerivedDoublePropertyMap< TestObject >(
+				pool, o -> derived.getDouble( o ) + 1 ).addSource( derived );
+		assertEquals( 7, plusOne.getDouble( objs.get( 3 ) ), 0 );
+		source.set( objs.get( 3 ), 10 );
+		assertFalse( plusOne.isCached( objs.get( 3 ) ) );
+		assertEquals( 21, plusOne.getDouble( objs.get( 3 ) ), 0 );
+	}
+
+	@Test
+	public void testComputeAll()
+	{
+		final TestObjectPool bigPool = new TestObjectPool( 10 );
+		final RefArrayList< TestObject > all = new RefArrayList<>( bigPool );
+		for ( int i = 0; i < 100000; i++ )
+			all.add( bigPool.create().init( i ) );
+		final AtomicInteger count = new AtomicInteger();
+		final DerivedDoublePropertyMap< TestObject > squared = new DerivedDoublePropertyMap<>( bigPool, o -> {
+			count.incrementAndGet();
+			return ( double ) o.getId() * o.getId();
+		} );
+		squared.getDouble( all.get( 7 ) );
+		squared.computeAll( all );
+		assertEquals( all.size(), count.get() );
+		assertEquals( all.size(), squared.size() );
+		final TestObject ref = bigPool.createRef();
+		for ( int i = 0; i < all.size(); i++ )
+		{
+			final TestObject o = all.get( i, ref );
+			assertTrue( squared.isCached( o ) );
+			assertEquals( ( double ) i * i, squared.getDouble( o ), 0 );
+		}
+		assertEquals( all.size(), count.get() );
+	}
+
+	@Test
+	public void testDelete()
+	{
+		final TestObject o = objs.get( 2 );
+		derived.getDouble( o );
+		pool.delete( o );
+		assertEquals( 0, derived.size() );
+	}
+
+	@Test
+	public void testRelease()
+	{
+		final TestObject o = objs.get( 2 );
+		derived.getDouble( o );
+		derived.release();
+		derived.getDouble( o );
+		source.set( o, 7 );
+		assertTrue( derived.isCached( o ) );
+	}
+}
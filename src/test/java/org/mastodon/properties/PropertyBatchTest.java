@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.IntBackedRefCollection;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+public class PropertyBatchTest
+{
+	private TestObjectPool pool;
+
+	private RefArrayList< TestObject > objs;
+
+	private DoublePropertyMap< TestObject > property;
+
+	private int numChanged;
+
+	private List< RefSet< TestObject > > batches;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		objs = new RefArrayList<>( pool );
+		for ( int i = 0; i < 5; i++ )
+			objs.add( pool.create().init( i ) );
+		property = new DoublePropertyMap<>( pool, Double.NaN );
+		numChanged = 0;
+		property.propertyChangeListeners().add( o -> ++numChanged );
+		batches = new ArrayList<>();
+		property.propertyBatchListeners().add( batches::add );
+	}
+
+	@Test
+	public void testCoalesce()
+	{
+		property.beginBatch();
+		for ( int j = 0; j < 3; j++ )
+			for ( int i = 0; i < 3; i++ )
+				property.set( objs.get( i ), j );
+		assertEquals( 0, numChanged );
+		assertTrue( batches.isEmpty() );
+		property.endBatch();
+
+		// Per-object listeners see every changed object once.
+		assertEquals( 3, numChanged );
+		assertEquals( 1, batches.size() );
+		final RefSet< TestObject > dirty = batches.get( 0 );
+		assertTrue( dirty instanceof IntBackedRefCollection );
+		assertEquals( 3, dirty.size() );
+		for ( int i = 0; i < 3; i++ )
+			assertTrue( dirty.contains( objs.get( i ) ) );
+
+		// Outside of batches, only per-object listeners are notified.
+		property.set( objs.get( 4 ), 1 );
+		assertEquals( 4, numChanged );
+		assertEquals( 1, batches.size() );
+	}
+
+	@Test
+	public void testNestedAndBulk()
+	{
+		property.beginBatch();
+		property.set( objs.get( 0 ), 1 );
+		property.beginBatch();
+		property.setAll( objs, 2 );
+		property.endBatch();
+		assertTrue( batches.isEmpty() );
+		property.endBatch();
+		assertEquals( 1, batches.size() );
+		assertEquals( objs.size(), batches.get( 0 ).size() );
+		assertEquals( objs.size(), numChanged );
+	}
+
+	@Test
+	public void testRemoveDuringBatch()
+	{
+		final PropertyMaps< TestObject > maps = new PropertyMaps<>();
+		maps.addPropertyMap( property );
+		maps.beginBatch();
+		property.set( objs.get( 0 ), 1 );
+		maps.removePropertyMap( property );
+		assertEquals( 1, numChanged );
+		assertEquals( 1, batches.size() );
+		maps.endBatch();
+
+		// The removed map is no longer in a batch.
+		property.set( objs.get( 1 ), 1 );
+		assertEquals( 2, numChanged );
+		assertEquals( 1, batches.size() );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testUnbalancedEndBatch()
+	{
+		property.endBatch();
+	}
+
+	@Test
+	public void testDefaultDirtySet()
+	{
+		final AbstractProperty< String > names = new AbstractProperty< String >()
+		{
+			@Override
+			public boolean isSet( final String key )
+			{
+				return true;
+			}
+		};
+		final List< RefSet< String > > nameBatches = new ArrayList<>();
+		names.propertyBatchListeners().add( nameBatches::add );
+
+		names.beginBatch();
+		names.notifyPropertyChanged( "a" );
+		names.notifyPropertyChanged( "b" );
+		names.notifyPropertyChanged( "a" );
+		names.endBatch();
+
+		assertEquals( 1, nameBatches.size() );
+		assertEquals( 2, nameBatches.get( 0 ).size() );
+		assertTrue( nameBatches.get( 0 ).contains( "b" ) );
+	}
+
+	@Test
+	public void testExecutor() throws InterruptedException
+	{
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final List< Thread > threads = new ArrayList<>();
+		property.propertyBatchListeners().add( s -> threads.add( Thread.currentThread() ) );
+		property.setBatchExecutor( executor );
+
+		property.beginBatch();
+		property.set( objs.get( 0 ), 1 );
+		property.endBatch();
+		executor.shutdown();
+		assertTrue( executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+
+		assertEquals( 1, batches.size() );
+		assertEquals( 1, threads.size() );
+		assertTrue( threads.get( 0 ) != Thread.currentThread() );
+	}
+}
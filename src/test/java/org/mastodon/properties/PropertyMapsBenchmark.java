@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Creating and deleting objects in a pool with many registered
+ * {@link PropertyMap}s, one object at a time or in bulk with
+ * {@code createAll} and {@code deleteAll}. Half of the maps are dense.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class PropertyMapsBenchmark
+{
+	@Param( { "1000000" } )
+	public int numObjects;
+
+	@Param( { "50" } )
+	public int numMaps;
+
+	@Param( { "false", "true" } )
+	public boolean bulk;
+
+	private TestObjectPool pool;
+
+	/**
+	 * Strong references, so that the maps stay registered.
+	 */
+	private List< PropertyMap< TestObject, ? > > maps;
+
+	@Setup( Level.Invocation )
+	public void createPool()
+	{
+		pool = new TestObjectPool( numObjects );
+		maps = new ArrayList<>();
+		for ( int i = 0; i < numMaps; i++ )
+			maps.add( new DoublePropertyMap<>( pool, Double.NaN, 16, i % 2 == 0 ) );
+	}
+
+	@Benchmark
+	public int createAndDelete()
+	{
+		final RefArrayList< TestObject > objs;
+		if ( bulk )
+			objs = pool.createAll( numObjects );
+		else
+		{
+			objs = new RefArrayList<>( pool, numObjects );
+			final TestObject ref = pool.createRef();
+			for ( int i = 0; i < numObjects; i++ )
+				objs.add( pool.create( ref ) );
+		}
+		final int size = pool.size();
+		if ( bulk )
+			pool.deleteAll( objs );
+		else
+		{
+			final TestObject ref = pool.createRef();
+			for ( int i = 0; i < numObjects; i++ )
+				pool.delete( objs.get( i, ref ) );
+		}
+		return size + maps.size();
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( PropertyMapsBenchmark.class.getName() ).build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.collection.ref.RefDoubleArrayMap;
+import org.mastodon.collection.ref.RefSetImp;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+public class PropertyMapsTest
+{
+	private TestObjectPool pool;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+	}
+
+	@Test
+	public void testBulkCreate()
+	{
+		final DoublePropertyMap< TestObject > dense = new DoublePropertyMap<>( pool, Double.NaN, 10, true );
+		final RefArrayList< TestObject > created = pool.createAll( 1000 );
+		assertEquals( 1000, created.size() );
+		assertEquals( 1000, pool.size() );
+		final RefDoubleArrayMap< TestObject > map = ( RefDoubleArrayMap< TestObject > ) dense.getMap();
+		assertTrue( map.getArray().length >= 1000 );
+		for ( final TestObject o : created )
+		{
+			o.init( o.getInternalPoolIndex() );
+			dense.set( o, o.getId() );
+		}
+		assertEquals( 999, dense.getDouble( created.get( 999 ) ), 0 );
+	}
+
+	@Test
+	public void testBulkDelete()
+	{
+		final DoublePropertyMap< TestObject > doubles = new DoublePropertyMap<>( pool, Double.NaN );
+		final ObjPropertyMap< TestObject, String > strings = new ObjPropertyMap<>( pool );
+		final RefSet< TestObject > deleted = new RefSetImp<>( pool );
+		final RefSet< TestObject > notified = new RefSetImp<>( pool );
+		final AbstractPropertyMap< TestObject, Void > custom = new ObjPropertyMap< TestObject, Void >( pool )
+		{
+			@Override
+			public void beforeDeleteObject( final TestObject key )
+			{
+				notified.add( key );
+				super.beforeDeleteObject( key );
+			}
+		};
+		final RefArrayList< TestObject > objs = new RefArrayList<>( pool );
+		for ( int i = 0; i < 100; i++ )
+		{
+			final TestObject o = pool.create().init( i );
+			objs.add( o );
+			doubles.set( o, i );
+			strings.set( o, "" + i );
+			if ( i % 2 == 0 )
+				deleted.add( o );
+		}
+
+		pool.deleteAll( ( RefSetImp< TestObject > ) deleted );
+		assertEquals( 50, pool.size() );
+		assertEquals( 50, doubles.size() );
+		assertEquals( 50, strings.size() );
+		assertEquals( 50, notified.size() );
+		assertTrue( notified.containsAll( deleted ) );
+		assertFalse( doubles.isSet( objs.get( 0 ) ) );
+		assertTrue( doubles.isSet( objs.get( 1 ) ) );
+		assertEquals( 0, custom.size() );
+	}
+
+	@Test
+	public void testRemovePropertyMap()
+	{
+		final RefSet< TestObject > notified = new RefSetImp<>( pool );
+		final ObjPropertyMap< TestObject, Void > map = new ObjPropertyMap< TestObject, Void >( pool )
+		{
+			@Override
+			public void objectCreated( final TestObject key )
+			{
+				notified.add( key );
+			}
+		};
+		pool.create().init( 0 );
+		assertEquals( 1, notified.size() );
+		pool.getPropertyMaps().removePropertyMap( map );
+		pool.create().init( 1 );
+		pool.createAll( 10 );
+		assertEquals( 1, notified.size() );
+	}
+
+	@Test
+	public void testLifecycleListener()
+	{
+		final RefSet< TestObject > created = new RefSetImp<>( pool );
+		final RefSet< TestObject > deleted = new RefSetImp<>( pool );
+		final int[] numCleared = new int[ 1 ];
+		final ObjectLifecycleListener< TestObject > listener = new ObjectLifecycleListener< TestObject >()
+		{
+			@Override
+			public void objectCreated( final TestObject key )
+			{
+				created.add( key );
+			}
+
+			@Override
+			public void beforeDeleteObject( final TestObject key )
+			{
+				deleted.add( key );
+			}
+
+			@Override
+			public void beforeClearPool()
+			{
+				++numCleared[ 0 ];
+			}
+		};
+		pool.getPropertyMaps().addLifecycleListener( listener );
+
+		final TestObject o = pool.create().init( 0 );
+		final RefArrayList< TestObject > objs = pool.createAll( 10 );
+		assertEquals( 11, created.size() );
+		assertTrue( created.containsAll( objs ) );
+
+		pool.delete( o );
+		final RefSetImp< TestObject > toDelete = new RefSetImp<>( pool );
+		toDelete.add( objs.get( 0 ) );
+		toDelete.add( objs.get( 1 ) );
+		pool.deleteAll( toDelete );
+		assertEquals( 3, deleted.size() );
+
+		pool.clear();
+		assertEquals( 1, numCleared[ 0 ] );
+
+		pool.getPropertyMaps().removeLifecycleListener( listener );
+		pool.create().init( 1 );
+		assertEquals( 11, created.size() );
+	}
+}
@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+
+public class SortedPropertyIndexTest
+{
+	private TestObjectPool pool;
+
+	private RefArrayList< TestObject > objs;
+
+	private DoublePropertyMap< TestObject > property;
+
+	private Random random;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		objs = new RefArrayList<>( pool );
+		property = new DoublePropertyMap<>( pool, Double.NaN );
+		random = new Random( 1 );
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final TestObject o = pool.create().init( i );
+			objs.add( o );
+			if ( i % 10 != 0 )
+				property.set( o, random.nextInt( 200 ) );
+		}
+	}
+
+	/**
+	 * Sorted values of all objects that have the property set.
+	 */
+	private double[] sortedValues()
+	{
+		final double[] values = property.getMap().values();
+		Arrays.sort( values );
+		return values;
+	}
+
+	private void assertConsistent( final SortedPropertyIndex< TestObject > index )
+	{
+		final double[] values = sortedValues();
+		assertEquals( values.length, index.size() );
+		for ( int i = 0; i < 20; i++ )
+		{
+			final double a = random.nextInt( 220 ) - 10;
+			final double b = a + random.nextInt( 50 );
+			int expected = 0;
+			for ( final double v : values )
+				if ( v >= a && v <= b )
+					++expected;
+			assertEquals( expected, index.count( a, b ) );
+
+			final RefList< TestObject > range = index.range( a, b );
+			assertEquals( expected, range.size() );
+			double previous = Double.NEGATIVE_INFINITY;
+			for ( final TestObject o : range )
+			{
+				final double v = property.getDouble( o );
+				assertTrue( v >= a && v <= b && v >= previous );
+				previous = v;
+			}
+			final RefSet< TestObject > set = index.rangeSet( a, b );
+			assertEquals( expected, set.size() );
+			assertTrue( set.containsAll( range ) );
+		}
+		if ( values.length > 0 )
+		{
+			assertEquals( values[ 0 ], index.quantile( 0 ), 0 );
+			assertEquals( values[ ( values.length - 1 ) / 2 ], index.quantile( 0.5 ), 0 );
+			assertEquals( values[ values.length - 1 ], index.quantile( 1 ), 0 );
+		}
+	}
+
+	@Test
+	public void testQueries()
+	{
+		final SortedPropertyIndex< TestObject > index = new SortedPropertyIndex<>( pool, property );
+		assertConsistent( index );
+
+		final double[] values = sortedValues();
+		final RefList< TestObject > top = index.topK( 10 );
+		assertEquals( 10, top.size() );
+		for ( int i = 0; i < 10; i++ )
+			assertEquals( values[ values.length - 1 - i ], property.getDouble( top.get( i ) ), 0 );
+		final RefList< TestObject > bottom = index.bottomK( 10 );
+		for ( int i = 0; i < 10; i++ )
+			assertEquals( values[ i ], property.getDouble( bottom.get( i ) ), 0 );
+		assertEquals( values.length, index.topK( 10 * values.length ).size() );
+	}
+
+	@Test
+	public void testIncrementalUpdates()
+	{
+		final SortedPropertyIndex< TestObject > index = new SortedPropertyIndex<>( pool, property );
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < 2000; i++ )
+		{
+			final TestObject o = objs.get( random.nextInt( objs.size() ), ref );
+			if ( random.nextInt( 5 ) == 0 )
+				property.remove( o );
+			else
+				property.set( o, random.nextInt( 200 ) );
+		}
+		assertConsistent( index );
+
+		// Deleted objects are removed from the index.
+		final List< TestObject > toDelete = new ArrayList<>();
+		for ( int i = 0; i < objs.size(); i += 3 )
+			toDelete.add( objs.get( i ) );
+		for ( final TestObject o : toDelete )
+		{
+			pool.delete( o );
+			assertFalse( index.isSet( o ) );
+		}
+		assertConsistent( index );
+	}
+
+	@Test
+	public void testIntProperty()
+	{
+		final IntPropertyMap< TestObject > ints = new IntPropertyMap<>( pool, -1 );
+		for ( int i = 0; i < objs.size(); i++ )
+			ints.set( objs.get( i ), objs.size() - i );
+		final SortedPropertyIndex< TestObject > index = new SortedPropertyIndex<>( pool, ints );
+		assertEquals( objs.size(), index.size() );
+		assertEquals( 1, index.quantile( 0 ), 0 );
+		assertEquals( objs.get( objs.size() - 1 ), index.bottomK( 1 ).get( 0 ) );
+		ints.set( objs.get( 0 ), 0 );
+		assertEquals( objs.get( 0 ), index.bottomK( 1 ).get( 0 ) );
+		assertEquals( 3, index.count( 0, 2 ) );
+	}
+
+	@Test
+	public void testRelease()
+	{
+		final SortedPropertyIndex< TestObject > index = new SortedPropertyIndex<>( pool, property );
+		index.release();
+		property.set( objs.get( 0 ), 1 );
+		assertEquals( 0, index.size() );
+	}
+}
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.snapshot;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reader throughput of a {@link DoublePropertyMap} under concurrent writes. A
+ * background thread continuously sets batches of values, while reader threads
+ * compute the sum over a consistent view of all values, either from a
+ * {@link VersionedDoubleProperty} snapshot, or by copying the map while
+ * holding the lock that the writer holds for each batch.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+@Threads( 4 )
+public class VersionedPropertyBenchmark
+{
+	@Param( { "100000" } )
+	public int numObjects;
+
+	@Param( { "1000" } )
+	public int batchSize;
+
+	private DoublePropertyMap< TestObject > map;
+
+	private VersionedDoubleProperty< TestObject > versioned;
+
+	private int[] ids;
+
+	private Thread writer;
+
+	private volatile boolean stop;
+
+	@Setup( Level.Trial )
+	public void startWriter()
+	{
+		final TestObjectPool pool = new TestObjectPool( numObjects );
+		final RefArrayList< TestObject > objs = new RefArrayList<>( pool, numObjects );
+		ids = new int[ numObjects ];
+		for ( int i = 0; i < numObjects; i++ )
+		{
+			final TestObject o = pool.create().init( i );
+			objs.add( o );
+			ids[ i ] = o.getInternalPoolIndex();
+		}
+		map = new DoublePropertyMap<>( pool, Double.NaN );
+		map.setAll( objs, 0 );
+		versioned = new VersionedDoubleProperty<>( pool, map );
+
+		stop = false;
+		writer = new Thread( () -> {
+			final TestObject ref = pool.createRef();
+			int next = 0;
+			double value = 0;
+			while ( !stop )
+			{
+				synchronized ( map )
+				{
+					map.beginBatch();
+					for ( int i = 0; i < batchSize; i++ )
+					{
+						map.set( objs.get( next, ref ), ++value );
+						next = ( next + 1 ) % numObjects;
+					}
+					map.endBatch();
+				}
+			}
+		} );
+		writer.start();
+	}
+
+	@TearDown( Level.Trial )
+	public void stopWriter() throws InterruptedException
+	{
+		stop = true;
+		writer.join();
+		versioned.release();
+	}
+
+	@Benchmark
+	public double readSnapshot()
+	{
+		final DoublePropertySnapshot< TestObject > snapshot = versioned.snapshot();
+		double sum = 0;
+		for ( final int id : ids )
+			sum += snapshot.getDouble( id );
+		return sum;
+	}
+
+	@Benchmark
+	public double readCopy()
+	{
+		final double[] values;
+		synchronized ( map )
+		{
+			values = map.getMap().values();
+		}
+		double sum = 0;
+		for ( final double v : values )
+			sum += v;
+		return sum;
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( VersionedPropertyBenchmark.class.getName() ).build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,207 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.ObjPropertyMap;
+
+public class VersionedPropertyTest
+{
+	private TestObjectPool pool;
+
+	private RefArrayList< TestObject > objs;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		objs = new RefArrayList<>( pool );
+		for ( int i = 0; i < 5000; i++ )
+			objs.add( pool.create().init( i ) );
+	}
+
+	@Test
+	public void testDoubleSnapshots()
+	{
+		final DoublePropertyMap< TestObject > map = new DoublePropertyMap<>( pool, Double.NaN );
+		for ( int i = 0; i < 100; i++ )
+			map.set( objs.get( i ), i );
+		final VersionedDoubleProperty< TestObject > versioned = new VersionedDoubleProperty<>( pool, map );
+
+		final DoublePropertySnapshot< TestObject > s0 = versioned.snapshot();
+		assertSame( s0, versioned.snapshot() );
+		assertEquals( 100, s0.size() );
+		assertEquals( 42, s0.getDouble( objs.get( 42 ) ), 0 );
+		assertFalse( s0.isSet( objs.get( 100 ) ) );
+		assertTrue( Double.isNaN( s0.getDouble( objs.get( 100 ) ) ) );
+
+		map.set( objs.get( 42 ), -1 );
+		map.set( objs.get( 4000 ), 4000 );
+		map.remove( objs.get( 0 ) );
+		assertEquals( -1, versioned.getDouble( objs.get( 42 ) ), 0 );
+		assertEquals( 100, versioned.size() );
+
+		// the old snapshot is unchanged
+		assertEquals( 42, s0.getDouble( objs.get( 42 ) ), 0 );
+		assertTrue( s0.isSet( objs.get( 0 ) ) );
+		assertFalse( s0.isSet( 4000 ) );
+
+		final DoublePropertySnapshot< TestObject > s1 = versioned.snapshot();
+		assertTrue( s1.getVersion() > s0.getVersion() );
+		assertEquals( -1, s1.getDouble( objs.get( 42 ) ), 0 );
+		assertEquals( 4000, s1.getDouble( 4000 ), 0 );
+		assertFalse( s1.isSet( objs.get( 0 ) ) );
+
+		pool.delete( objs.get( 1 ) );
+		assertFalse( versioned.snapshot().isSet( 1 ) );
+		assertTrue( s1.isSet( 1 ) );
+
+		pool.clear();
+		assertEquals( 0, versioned.snapshot().size() );
+		assertEquals( 100, s1.size() );
+	}
+
+	@Test
+	public void testObjSnapshots()
+	{
+		final ObjPropertyMap< TestObject, String > map = new ObjPropertyMap<>( pool );
+		map.set( objs.get( 1 ), "a" );
+		final VersionedObjProperty< TestObject, String > versioned = new VersionedObjProperty<>( pool, map );
+		final ObjPropertySnapshot< TestObject, String > s0 = versioned.snapshot();
+		map.set( objs.get( 1 ), "b" );
+		map.set( objs.get( 2000 ), "c" );
+		final ObjPropertySnapshot< TestObject, String > s1 = versioned.snapshot();
+		assertEquals( "a", s0.get( objs.get( 1 ) ) );
+		assertNull( s0.get( 2000 ) );
+		assertEquals( 1, s0.size() );
+		assertEquals( "b", s1.get( objs.get( 1 ) ) );
+		assertEquals( "c", s1.get( 2000 ) );
+		assertEquals( 2, s1.size() );
+		map.remove( objs.get( 1 ) );
+		assertFalse( versioned.snapshot().isSet( objs.get( 1 ) ) );
+		assertEquals( 1, versioned.snapshot().size() );
+	}
+
+	@Test
+	public void testLabelSetSnapshots()
+	{
+		final LabelSets< TestObject, String > labelSets = new LabelSets<>( pool );
+		labelSets.getLabels( objs.get( 3 ) ).add( "x" );
+		final VersionedObjProperty< TestObject, Set< String > > versioned = VersionedObjProperty.forLabelSets( labelSets );
+		final ObjPropertySnapshot< TestObject, Set< String > > s0 = versioned.snapshot();
+		labelSets.getLabels( objs.get( 3 ) ).add( "y" );
+		assertEquals( new HashSet<>( Arrays.asList( "x" ) ), s0.get( 3 ) );
+		assertEquals( new HashSet<>( Arrays.asList( "x", "y" ) ), versioned.snapshot().get( 3 ) );
+	}
+
+	/**
+	 * A writer sets all values to the same generation number, alternately
+	 * with {@code setAll} and in a batch. Readers check that each snapshot
+	 * they see has a single generation for all objects, and that generations
+	 * and versions never decrease.
+	 */
+	@Test
+	public void testConcurrentReaders() throws InterruptedException
+	{
+		final DoublePropertyMap< TestObject > map = new DoublePropertyMap<>( pool, Double.NaN );
+		map.setAll( objs, 0 );
+		final VersionedDoubleProperty< TestObject > versioned = new VersionedDoubleProperty<>( pool, map );
+		final int n = objs.size();
+		final int[] ids = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+			ids[ i ] = objs.get( i ).getInternalPoolIndex();
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference< String > failure = new AtomicReference<>();
+		final List< Thread > readers = new ArrayList<>();
+		for ( int t = 0; t < 4; t++ )
+		{
+			final Thread reader = new Thread( () -> {
+				long lastVersion = -1;
+				double lastGeneration = -1;
+				while ( !done.get() && failure.get() == null )
+				{
+					final DoublePropertySnapshot< TestObject > snapshot = versioned.snapshot();
+					final double generation = snapshot.getDouble( ids[ 0 ] );
+					if ( snapshot.getVersion() < lastVersion || generation < lastGeneration )
+						failure.set( "went back from generation " + lastGeneration + " to " + generation );
+					for ( int i = 0; i < n; i++ )
+						if ( snapshot.getDouble( ids[ i ] ) != generation )
+							failure.set( "inconsistent snapshot at generation " + generation );
+					if ( snapshot.size() != n )
+						failure.set( "expected " + n + " values, but snapshot has " + snapshot.size() );
+					lastVersion = snapshot.getVersion();
+					lastGeneration = generation;
+				}
+			} );
+			readers.add( reader );
+			reader.start();
+		}
+
+		final TestObject ref = pool.createRef();
+		for ( int g = 1; g <= 300; g++ )
+		{
+			if ( g % 2 == 0 )
+				map.setAll( objs, g );
+			else
+			{
+				map.beginBatch();
+				for ( int i = 0; i < n; i++ )
+					map.set( objs.get( i, ref ), g );
+				map.endBatch();
+			}
+		}
+		done.set( true );
+		for ( final Thread reader : readers )
+			reader.join();
+
+		assertNull( failure.get() );
+		assertEquals( 300, versioned.snapshot().getDouble( ids[ n - 1 ] ), 0 );
+	}
+}
@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.properties.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+public class StatisticsTest
+{
+	private static final double EPS = 1e-9;
+
+	private TestObjectPool pool;
+
+	private RefArrayList< TestObject > objs;
+
+	private Random random;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		objs = new RefArrayList<>( pool );
+		random = new Random( 1 );
+		for ( int i = 0; i < 40000; i++ )
+			objs.add( pool.create().init( i ) );
+	}
+
+	/**
+	 * Summary computed sequentially with the two-pass formula.
+	 */
+	private static void assertSummary( final double[] values, final int n, final Summary summary )
+	{
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < n; i++ )
+		{
+			sum += values[ i ];
+			min = Math.min( min, values[ i ] );
+			max = Math.max( max, values[ i ] );
+		}
+		final double mean = sum / n;
+		double ss = 0;
+		for ( int i = 0; i < n; i++ )
+			ss += ( values[ i ] - mean ) * ( values[ i ] - mean );
+		assertEquals( n, summary.getCount() );
+		assertEquals( min, summary.getMin(), 0 );
+		assertEquals( max, summary.getMax(), 0 );
+		assertEquals( mean, summary.getMean(), EPS );
+		assertEquals( ss / n, summary.getVariance(), 1e-6 );
+	}
+
+	@Test
+	public void testSummaryMerge()
+	{
+		final double[] values = new double[ 1000 ];
+		final Summary a = new Summary();
+		final Summary b = new Summary();
+		for ( int i = 0; i < values.length; i++ )
+		{
+			values[ i ] = random.nextGaussian() * 10 + 100;
+			( i < 300 ? a : b ).add( values[ i ] );
+		}
+		assertSummary( values, values.length, a.merge( b ) );
+		assertSummary( values, values.length, new Summary().merge( a ) );
+
+		final Summary empty = new Summary();
+		assertEquals( 0, empty.getCount() );
+		assertTrue( Double.isNaN( empty.getMean() ) );
+		assertTrue( Double.isNaN( empty.getVariance() ) );
+	}
+
+	@Test
+	public void testSummaryRemove()
+	{
+		final double[] values = new double[ 100 ];
+		final Summary summary = new Summary();
+		for ( int i = 0; i < values.length; i++ )
+		{
+			values[ i ] = random.nextDouble();
+			summary.add( values[ i ] );
+		}
+		for ( int i = 99; i >= 50; i-- )
+			summary.remove( values[ i ] );
+		final Summary expected = new Summary();
+		for ( int i = 0; i < 50; i++ )
+			expected.add( values[ i ] );
+		assertEquals( expected.getCount(), summary.getCount() );
+		assertEquals( expected.getMean(), summary.getMean(), EPS );
+		assertEquals( expected.getVariance(), summary.getVariance(), EPS );
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final Histogram h = new Histogram( 0, 10, 5 );
+		h.add( -1 );
+		h.add( 0 );
+		h.add( 1.99 );
+		h.add( 2 );
+		h.add( 9.99 );
+		h.add( 10 );
+		h.add( Double.NaN );
+		assertArrayEquals( new long[] { 2, 1, 0, 0, 1 }, h.getCounts() );
+		assertEquals( 1, h.getUnderflow() );
+		assertEquals( 2, h.getOverflow() );
+		assertEquals( 4, h.getBinMin( 2 ), EPS );
+		h.remove( 0 );
+		assertEquals( 1, h.getCount( 0 ) );
+	}
+
+	@Test
+	public void testDoublePropertyMap()
+	{
+		for ( final boolean dense : new boolean[] { false, true } )
+		{
+			final DoublePropertyMap< TestObject > map = new DoublePropertyMap<>( pool, Double.NaN, 10, dense );
+			final double[] values = new double[ objs.size() ];
+			int n = 0;
+			final Histogram expected = new Histogram( 0, 1, 10 );
+			for ( final TestObject o : objs )
+			{
+				if ( o.getId() % 3 == 0 )
+					continue;
+				final double v = random.nextDouble();
+				map.set( o, v );
+				values[ n++ ] = v;
+				expected.add( v );
+			}
+			assertSummary( values, n, Statistics.summarize( map ) );
+			assertArrayEquals( expected.getCounts(), Statistics.histogram( map, 0, 1, 10 ).getCounts() );
+		}
+	}
+
+	@Test
+	public void testIntPropertyMap()
+	{
+		for ( final boolean dense : new boolean[] { false, true } )
+		{
+			final IntPropertyMap< TestObject > map = new IntPropertyMap<>( pool, -1, 10, dense );
+			final double[] values = new double[ objs.size() ];
+			int n = 0;
+			for ( final TestObject o : objs )
+			{
+				if ( o.getId() % 5 == 0 )
+					continue;
+				final int v = random.nextInt( 1000 );
+				map.set( o, v );
+				values[ n++ ] = v;
+			}
+			assertSummary( values, n, Statistics.summarize( map ) );
+			final Histogram h = Statistics.histogram( map, 0, 1000, 100 );
+			long total = 0;
+			for ( int i = 0; i < h.getNumBins(); i++ )
+				total += h.getCount( i );
+			assertEquals( n, total );
+		}
+	}
+
+	@Test
+	public void testPoolAttribute()
+	{
+		final TestObject ref = pool.createRef();
+		for ( int i = 0; i < objs.size(); i += 7 )
+			pool.delete( objs.get( i, ref ) );
+		final double[] values = new double[ objs.size() ];
+		int n = 0;
+		for ( final TestObject o : pool )
+			values[ n++ ] = o.getId();
+		assertSummary( values, n, Statistics.summarize( pool, TestObject::getId ) );
+		final Histogram h = Statistics.histogram( pool, TestObject::getId, 0, objs.size(), 4 );
+		assertEquals( n, h.getCount( 0 ) + h.getCount( 1 ) + h.getCount( 2 ) + h.getCount( 3 ) );
+	}
+
+	@Test
+	public void testIncremental()
+	{
+		final DoublePropertyMap< TestObject > map = new DoublePropertyMap<>( pool, Double.NaN );
+		final int m = 2000;
+		final double[] values = new double[ m ];
+		for ( int i = 0; i < m; i++ )
+			map.set( objs.get( i ), random.nextInt( 100 ) );
+
+		final PropertyStatistics< TestObject > stats = new PropertyStatistics<>( pool, map );
+		final Histogram histogram = stats.addHistogram( 0, 100, 10 );
+		for ( int k = 0; k < 5000; k++ )
+		{
+			final TestObject o = objs.get( random.nextInt( m ) );
+			switch ( random.nextInt( 4 ) )
+			{
+			case 0:
+				map.remove( o );
+				break;
+			default:
+				map.set( o, random.nextInt( 120 ) - 10 );
+				break;
+			}
+			if ( k % 500 == 0 )
+			{
+				int n = 0;
+				for ( final double v : map.getMap().values() )
+					values[ n++ ] = v;
+				assertSummary( values, n, stats.getSummary() );
+				assertEquals( n, stats.size() );
+				assertHistogram( map, histogram );
+			}
+		}
+
+		final TestObject o = objs.get( 0 );
+		map.set( o, 1000 );
+		final long count = stats.getSummary().getCount();
+		assertEquals( 1000, stats.getSummary().getMax(), 0 );
+		pool.delete( o );
+		assertFalse( stats.isSet( o ) );
+		assertEquals( count - 1, stats.getSummary().getCount() );
+		assertTrue( stats.getSummary().getMax() < 1000 );
+	}
+
+	private static void assertHistogram( final DoublePropertyMap< TestObject > map, final Histogram histogram )
+	{
+		final Histogram expected = new Histogram( histogram.getMin(), histogram.getMax(), histogram.getNumBins() );
+		for ( final double v : map.getMap().values() )
+			expected.add( v );
+		assertArrayEquals( expected.getCounts(), histogram.getCounts() );
+		assertEquals( expected.getUnderflow(), histogram.getUnderflow() );
+		assertEquals( expected.getOverflow(), histogram.getOverflow() );
+	}
+}
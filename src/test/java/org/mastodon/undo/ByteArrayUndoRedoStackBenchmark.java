@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.undo;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.pool.ByteUtils;
+import org.mastodon.undo.ByteArrayUndoRedoStack.ByteArrayRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Undo latency and memory of {@link ByteArrayUndoRedoStack} with and without
+ * segment compression, on a bulk-edit workload: a selection of spots is moved
+ * several times, recording an object id (as {@code SetPropertyType} does) and
+ * the previous 3D position (as {@code AttributeUndoRedoStack} does) for every
+ * spot and move. The compression ratio is printed at the end of each trial.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class ByteArrayUndoRedoStackBenchmark
+{
+	private static final int POSITION_SIZE = 3 * ByteUtils.DOUBLE_SIZE;
+
+	@Param( { "100000" } )
+	public int numSpots;
+
+	@Param( { "5" } )
+	public int numMoves;
+
+	@Param( { "false", "true" } )
+	public boolean compressed;
+
+	private double[] positions;
+
+	private ByteArrayUndoRedoStack ids;
+
+	private ByteArrayUndoRedoStack values;
+
+	private long rawBytes;
+
+	private long memoryBytes;
+
+	@Setup( Level.Trial )
+	public void createSpots()
+	{
+		final Random rand = new Random( 1 );
+		positions = new double[ 3 * numSpots ];
+		for ( int i = 0; i < numSpots; i++ )
+		{
+			// spots detected in scan order, roughly on a grid
+			positions[ 3 * i ] = 10 * ( i % 100 ) + rand.nextDouble();
+			positions[ 3 * i + 1 ] = 10 * ( ( i / 100 ) % 100 ) + rand.nextDouble();
+			positions[ 3 * i + 2 ] = 2 * ( i / 10000 ) + rand.nextDouble();
+		}
+	}
+
+	@Setup( Level.Invocation )
+	public void recordMoves()
+	{
+		ids = new ByteArrayUndoRedoStack( 1024 );
+		values = new ByteArrayUndoRedoStack( 1024 * POSITION_SIZE );
+		if ( compressed )
+		{
+			ids.enableCompression( 1 << 16, ByteUtils.INT_SIZE );
+			values.enableCompression( 1 << 16, POSITION_SIZE );
+		}
+		final ByteArrayRef idRef = ids.createRef();
+		final ByteArrayRef valueRef = values.createRef();
+		final byte[] position = new byte[ POSITION_SIZE ];
+		for ( int m = 0; m < numMoves; m++ )
+		{
+			for ( int i = 0; i < numSpots; i++ )
+			{
+				ids.record( ByteUtils.INT_SIZE, idRef ).putInt( 0, i );
+				for ( int d = 0; d < 3; d++ )
+				{
+					ByteUtils.putDouble( positions[ 3 * i + d ], position, d * ByteUtils.DOUBLE_SIZE );
+					positions[ 3 * i + d ] += 0.5;
+				}
+				values.record( POSITION_SIZE, valueRef ).putBytes( 0, position );
+			}
+		}
+		ids.releaseRef( idRef );
+		values.releaseRef( valueRef );
+		rawBytes = ids.size() + values.size();
+		memoryBytes = ids.memoryUsage() + values.memoryUsage();
+	}
+
+	@Benchmark
+	public double undoAll()
+	{
+		final ByteArrayRef idRef = ids.createRef();
+		final ByteArrayRef valueRef = values.createRef();
+		final byte[] position = new byte[ POSITION_SIZE ];
+		double sum = 0;
+		for ( int n = numMoves * numSpots; n > 0; n-- )
+		{
+			sum += ids.undo( ByteUtils.INT_SIZE, idRef ).getInt( 0 );
+			values.undo( POSITION_SIZE, valueRef ).getBytes( 0, position );
+			sum += ByteUtils.getDouble( position, 0 );
+		}
+		return sum;
+	}
+
+	@TearDown( Level.Trial )
+	public void printCompressionRatio()
+	{
+		System.out.println();
+		System.out.println( String.format( "compressed = %s: %d bytes recorded, %d bytes in memory, ratio %.2f",
+				compressed, rawBytes, memoryBytes, ( double ) rawBytes / memoryBytes ) );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options options = new OptionsBuilder().include( ByteArrayUndoRedoStackBenchmark.class.getSimpleName() ).build();
+		new Runner( options ).run();
+	}
+}
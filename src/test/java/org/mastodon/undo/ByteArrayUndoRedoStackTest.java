@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.undo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.undo.ByteArrayUndoRedoStack.ByteArrayRef;
+
+public class ByteArrayUndoRedoStackTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int N = 10000;
+
+	@Test
+	public void testSpillAndReload() throws IOException
+	{
+		final ByteArrayUndoRedoStack stack = new ByteArrayUndoRedoStack( 256 );
+		final File file = folder.newFile( "undo.spill" );
+		stack.enableSpilling( file, 1024 );
+		final ByteArrayRef ref = stack.createRef();
+
+		for ( int i = 0; i < N; i++ )
+			stack.record( 4, ref ).putInt( 0, i );
+		assertTrue( "Bytes should have been spilled.", stack.spilledBytes() > 0 );
+		assertTrue( "In-memory part should respect the limit.", stack.memoryUsage() <= 1024 );
+		assertEquals( 4L * N, stack.spilledBytes() + stack.memoryUsage() );
+
+		for ( int i = N - 1; i >= N / 2; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+		for ( int i = N / 2; i < N; i++ )
+			assertEquals( i, stack.redo( 4, ref ).getInt( 0 ) );
+		for ( int i = N - 1; i >= 0; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+		assertEquals( 0, stack.spilledBytes() );
+		assertNull( stack.peek( 4, ref ) );
+
+		stack.disableSpilling();
+	}
+
+	@Test
+	public void testDiscardOldest() throws IOException
+	{
+		final ByteArrayUndoRedoStack stack = new ByteArrayUndoRedoStack( 256 );
+		stack.enableSpilling( folder.newFile( "undo.spill" ), 1024 );
+		final ByteArrayRef ref = stack.createRef();
+
+		for ( int i = 0; i < N; i++ )
+			stack.record( 4, ref ).putInt( 0, i );
+		stack.discardOldest( 4 * ( N - 100 ) );
+		assertEquals( 400, stack.spilledBytes() + stack.memoryUsage() );
+		for ( int i = N - 1; i >= N - 100; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+		assertNull( stack.peek( 4, ref ) );
+		stack.disableSpilling();
+	}
+
+	@Test
+	public void testDisableSpillingReloadsEverything() throws IOException
+	{
+		final ByteArrayUndoRedoStack stack = new ByteArrayUndoRedoStack( 256 );
+		stack.enableSpilling( folder.newFile( "undo.spill" ), 1024 );
+		final ByteArrayRef ref = stack.createRef();
+
+		for ( int i = 0; i < N; i++ )
+			stack.record( 4, ref ).putInt( 0, i );
+		stack.disableSpilling();
+		assertEquals( 0, stack.spilledBytes() );
+		assertEquals( 4L * N, stack.memoryUsage() );
+		for ( int i = N - 1; i >= 0; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+	}
+
+	@Test
+	public void testCompression()
+	{
+		final ByteArrayUndoRedoStack stack = new ByteArrayUndoRedoStack( 256 );
+		stack.enableCompression( 1024, 4 );
+		final ByteArrayRef ref = stack.createRef();
+
+		for ( int i = 0; i < N; i++ )
+			stack.record( 4, ref ).putInt( 0, i );
+		assertEquals( 4L * N, stack.size() );
+		assertTrue( "Consecutive ids should compress well.", stack.memoryUsage() < N );
+
+		for ( int i = N - 1; i >= N / 3; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+		for ( int i = N / 3; i < N / 2; i++ )
+			assertEquals( i, stack.redo( 4, ref ).getInt( 0 ) );
+		for ( int i = N / 2; i < N; i++ )
+			stack.record( 4, ref ).putInt( 0, -i );
+		for ( int i = N - 1; i >= N / 2; i-- )
+			assertEquals( -i, stack.undo( 4, ref ).getInt( 0 ) );
+		for ( int i = N / 2 - 1; i >= 0; i-- )
+			assertEquals( i, stack.undo( 4, ref ).getInt( 0 ) );
+		assertNull( stack.peek( 4, ref ) );
+	}
+
+	@Test
+	public void testCompressionWithSpillingAndDiscard() throws IOException
+	{
+		final ByteArrayUndoRedoStack stack = new ByteArrayUndoRedoStack( 256 );
+		stack.enableCompression( 512, 4 );
+		stack.enableSpilling( folder.newFile( "undo.spill" ), 1024 );
+		final ByteArrayRef ref = stack.createRef();
+
+		for ( int i = 0; i < 10 * N; i++ )
+			stack.record( 4, ref ).putInt( 0, i * 31 );
+		assertTrue( "Segments should have been spilled.", stack.spilledBytes() > 0 );
+		assertTrue( "In-memory part should respect the limit.", stack.memoryUsage() <= 1024 + 1024 );
+
+		// discard in the middle of a segment
+		stack.discardOldest( 4 * 1001 );
+		for ( int i = 10 * N - 1; i >= 1001; i-- )
+			assertEquals( i * 31, stack.undo( 4, ref ).getInt( 0 ) );
+		assertNull( stack.peek( 4, ref ) );
+		stack.disableSpilling();
+	}
+}
@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * Mastodon Collections
+ * %%
+ * Copyright (C) 2015 - 2025 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.undo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.pool.TestObject;
+import org.mastodon.pool.TestObjectPool;
+import org.mastodon.properties.BeforePropertyChangeListener;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.undo.PropertyUndoRedoStack;
+import org.mastodon.undo.edits.GenericUndoableEditType;
+import org.mastodon.undo.edits.SetPropertiesType;
+import org.mastodon.undo.edits.SetPropertyType;
+
+public class UndoRedoStackTest
+{
+	private TestObjectPool pool;
+
+	private TestObject obj;
+
+	private IntPropertyMap< TestObject > property;
+
+	private UndoRedoStack undoRedoStack;
+
+	private SetPropertyType< TestObject > setProperty;
+
+	private SetPropertiesType< TestObject > setProperties;
+
+	private GenericUndoableEditType< UndoableEdit > generic;
+
+	private int genericState;
+
+	@Before
+	public void setUp()
+	{
+		pool = new TestObjectPool( 10 );
+		obj = pool.create().init( 1 );
+		property = new IntPropertyMap<>( pool, -1 );
+		undoRedoStack = new UndoRedoStack( 16 );
+		final PropertyUndoRedoStack< TestObject > propertyStack = property.createUndoRedoStack();
+		final UndoIdBimap< TestObject > undoIdBimap = new UndoIdBimap<>( pool );
+		final ByteArrayUndoRedoStack dataStack = new ByteArrayUndoRedoStack( 64 );
+		setProperty = new SetPropertyType<>( propertyStack, undoIdBimap, dataStack, undoRedoStack );
+		setProperties = new SetPropertiesType<>( propertyStack, undoIdBimap, dataStack, undoRedoStack );
+		generic = new GenericUndoableEditType<>( undoRedoStack );
+		genericState = 0;
+	}
+
+	/**
+	 * Sets the property to {@code value} and increments the generic state, as
+	 * one undo point.
+	 */
+	private void edit( final int value )
+	{
+		setProperty.record( obj );
+		property.set( obj, value );
+		generic.record( new UndoableEdit()
+		{
+			@Override
+			public void undo()
+			{
+				--genericState;
+			}
+
+			@Override
+			public void redo()
+			{
+				++genericState;
+			}
+		} );
+		++genericState;
+		undoRedoStack.setUndoPoint();
+	}
+
+	@Test
+	public void testDiscardOldestUndoPoints()
+	{
+		for ( int i = 0; i < 10; i++ )
+			edit( i );
+		assertEquals( 3, undoRedoStack.discardOldestUndoPoints( 3 ) );
+
+		// The remaining 7 undo points still undo correctly.
+		for ( int i = 8; i >= 2; i-- )
+		{
+			undoRedoStack.undo();
+			assertEquals( i, property.getInt( obj ) );
+		}
+		assertEquals( 3, genericState );
+
+		// No further undo is possible.
+		undoRedoStack.undo();
+		assertEquals( 2, property.getInt( obj ) );
+		assertEquals( 3, genericState );
+
+		for ( int i = 0; i < 7; i++ )
+			undoRedoStack.redo();
+		assertEquals( 9, property.getInt( obj ) );
+		assertEquals( 10, genericState );
+	}
+
+	@Test
+	public void testMemoryBudget()
+	{
+		for ( int i = 0; i < 1000; i++ )
+			edit( i );
+		final long unbounded = undoRedoStack.memoryUsage();
+		assertTrue( "Memory usage should be reported.", unbounded > 0 );
+
+		final long budget = unbounded / 10;
+		undoRedoStack.setMemoryBudget( budget );
+		assertTrue( "Memory usage should respect the budget.", undoRedoStack.memoryUsage() <= budget );
+		for ( int i = 1000; i < 2000; i++ )
+			edit( i );
+		assertTrue( "Memory usage should respect the budget.", undoRedoStack.memoryUsage() <= budget );
+
+		// Undo as far as possible: all per-type stacks stay consistent.
+		int undos = 0;
+		int expected = 1999;
+		while ( true )
+		{
+			undoRedoStack.undo();
+			if ( property.getInt( obj ) == expected )
+				break;
+			assertEquals( --expected, property.getInt( obj ) );
+			assertEquals( expected + 1, genericState );
+			++undos;
+		}
+		assertTrue( "Some history should have been kept.", undos > 0 );
+	}
+
+	/**
+	 * Undo with listeners paused, so that undoing is not recorded again.
+	 */
+	private void undoQuiet()
+	{
+		property.pauseListeners();
+		undoRedoStack.undo();
+		property.resumeListeners();
+	}
+
+	private void redoQuiet()
+	{
+		property.pauseListeners();
+		undoRedoStack.redo();
+		property.resumeListeners();
+	}
+
+	@Test
+	public void testSetAllRecordsCompoundEdit()
+	{
+		final RefArrayList< TestObject > objs = new RefArrayList<>( pool );
+		for ( int i = 0; i < 5; i++ )
+			objs.add( pool.create().init( 10 + i ) );
+		final int[] numChanged = new int[ 2 ];
+		property.beforePropertyChangeListeners().add( new BeforePropertyChangeListener< TestObject >()
+		{
+			@Override
+			public void beforePropertyChange( final TestObject object )
+			{
+				setProperty.record( object );
+			}
+
+			@Override
+			public void beforePropertiesChange( final RefCollection< TestObject > objects )
+			{
+				setProperties.record( objects );
+			}
+		} );
+		property.propertyChangeListeners().add( new PropertyChangeListener< TestObject >()
+		{
+			@Override
+			public void propertyChanged( final TestObject object )
+			{
+				++numChanged[ 0 ];
+			}
+
+			@Override
+			public void propertiesChanged( final RefCollection< TestObject > objects )
+			{
+				++numChanged[ 1 ];
+			}
+		} );
+
+		property.set( objs.get( 0 ), 1 );
+		undoRedoStack.setUndoPoint();
+		property.setAll( objs, new int[] { 10, 11, 12, 13, 14 } );
+		undoRedoStack.setUndoPoint();
+		property.setAll( objs, 20 );
+		undoRedoStack.setUndoPoint();
+		assertEquals( 1, numChanged[ 0 ] );
+		assertEquals( 2, numChanged[ 1 ] );
+
+		undoQuiet();
+		for ( int i = 0; i < 5; i++ )
+			assertEquals( 10 + i, property.getInt( objs.get( i ) ) );
+		undoQuiet();
+		assertEquals( 1, property.getInt( objs.get( 0 ) ) );
+		for ( int i = 1; i < 5; i++ )
+			assertEquals( -1, property.getInt( objs.get( i ) ) );
+		redoQuiet();
+		redoQuiet();
+		for ( int i = 0; i < 5; i++ )
+			assertEquals( 20, property.getInt( objs.get( i ) ) );
+
+		// Discarding the single edit keeps the compound edits undoable.
+		assertEquals( 1, undoRedoStack.discardOldestUndoPoints( 1 ) );
+		undoQuiet();
+		undoQuiet();
+		assertEquals( 1, property.getInt( objs.get( 0 ) ) );
+		assertEquals( -1, property.getInt( objs.get( 4 ) ) );
+	}
+}